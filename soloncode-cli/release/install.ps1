@@ -194,6 +194,11 @@ try {
         if ($JavaMajor -ge 21) {
             $JavaArgs += "--enable-native-access=ALL-UNNAMED"
         }
+        # 使用安装时生成的类数据共享归档（AppCDS，Java 13+）；JDK 或 jar 变化时归档自动失效
+        $CdsArchive = Join-Path $JarDir "soloncode.jsa"
+        if ($JavaMajor -ge 13 -and (Test-Path $CdsArchive)) {
+            $JavaArgs += @("-Xshare:auto", "-XX:SharedArchiveFile=$CdsArchive", "-Xlog:cds*=off")
+        }
     }
 } catch {
     # 版本检测失败时忽略，继续执行
@@ -230,6 +235,8 @@ for /f "tokens=3" %%v in ('java -version 2^>^&1 ^| findstr /i version') do (
     set "VER=!VER:~1!"
     for /f "tokens=1 delims=." %%j in ("!VER!") do (
         if %%j GEQ 21 set "JAVA_OPTS=!JAVA_OPTS! --enable-native-access=ALL-UNNAMED"
+        rem 使用安装时生成的类数据共享归档（AppCDS，Java 13+）
+        if %%j GEQ 13 if exist "!SCRIPT_DIR!soloncode.jsa" set "JAVA_OPTS=!JAVA_OPTS! -Xshare:auto "-XX:SharedArchiveFile=!SCRIPT_DIR!soloncode.jsa" -Xlog:cds*=off"
     )
 )
 
@@ -254,10 +261,53 @@ JAVA_OPTS="-Dfile.encoding=UTF-8"
 if [ -n "$JAVA_VER" ] && [ "$JAVA_VER" -ge 21 ]; then
     JAVA_OPTS="$JAVA_OPTS --enable-native-access=ALL-UNNAMED"
 fi
-java $JAVA_OPTS -jar "$SCRIPT_DIR/soloncode-cli.jar" "$@"
+CDS_OPTS=()
+if [ -f "$SCRIPT_DIR/soloncode.jsa" ] && [ -n "$JAVA_VER" ] && [ "$JAVA_VER" -ge 13 ]; then
+    CDS_OPTS=(-Xshare:auto "-XX:SharedArchiveFile=$SCRIPT_DIR/soloncode.jsa" "-Xlog:cds*=off")
+fi
+java $JAVA_OPTS "${CDS_OPTS[@]}" -jar "$SCRIPT_DIR/soloncode-cli.jar" "$@"
 '@
 Set-Content -Path $LAUNCHER_SH -Value $LAUNCHER_SH_CONTENT -Encoding UTF8 -NoNewline
 Write-Host "      Created: soloncode (for Git Bash)" -ForegroundColor Gray
+# 生成类数据共享归档（AppCDS，需 Java 13+），缩短启动时间
+Write-Host ""
+Write-Host "Generating class data sharing archive..." -ForegroundColor Yellow
+$CDS_ARCHIVE = Join-Path $TARGET_BIN_DIR "soloncode.jsa"
+if (Test-Path $CDS_ARCHIVE) {
+    Remove-Item $CDS_ARCHIVE -Force
+}
+$JAVA_MAJOR = 0
+if ($javaVersion -match '"(\d+)') {
+    $JAVA_MAJOR = [int]$Matches[1]
+}
+if ($JAVA_MAJOR -ge 13) {
+    # 以 'soloncode version' 走一遍完整启动（容器、配置、引擎、终端），退出时写出已加载的类
+    $CDS_WORK_DIR = Join-Path ([System.IO.Path]::GetTempPath()) ("soloncode-cds-" + [Guid]::NewGuid())
+    New-Item -ItemType Directory -Path $CDS_WORK_DIR -Force | Out-Null
+    try {
+        $CdsProcess = New-Object System.Diagnostics.Process
+        $CdsProcess.StartInfo.FileName = "java"
+        $CdsProcess.StartInfo.Arguments = "-Dfile.encoding=UTF-8 `"-XX:ArchiveClassesAtExit=$CDS_ARCHIVE`" -jar `"$JAR_FILE`" version"
+        $CdsProcess.StartInfo.WorkingDirectory = $CDS_WORK_DIR
+        $CdsProcess.StartInfo.RedirectStandardError = $true
+        $CdsProcess.StartInfo.RedirectStandardOutput = $true
+        $CdsProcess.StartInfo.UseShellExecute = $false
+        $CdsProcess.Start() | Out-Null
+        $CdsProcess.StandardOutput.ReadToEnd() | Out-Null
+        $CdsProcess.StandardError.ReadToEnd() | Out-Null
+        $CdsProcess.WaitForExit()
+    } catch {
+        # 生成失败不影响安装与启动
+    }
+    Remove-Item $CDS_WORK_DIR -Recurse -Force -ErrorAction SilentlyContinue
+    if (Test-Path $CDS_ARCHIVE) {
+        Write-Host "      Created: soloncode.jsa" -ForegroundColor Gray
+    } else {
+        Write-Host "      Skipped (archive generation failed, startup is unaffected)" -ForegroundColor Gray
+    }
+} else {
+    Write-Host "      Skipped (requires Java 13+)" -ForegroundColor Gray
+}
 # =============================================
 # 配置 PATH 环境变量
 # =============================================
@@ -296,6 +346,7 @@ Write-Host "    |   +-- soloncode-cli.jar"
 Write-Host "    |   +-- soloncode.ps1   (PowerShell launcher)"
 Write-Host "    |   +-- soloncode.bat   (CMD launcher)"
 Write-Host "    |   +-- soloncode       (Git Bash launcher)"
+Write-Host "    |   +-- soloncode.jsa   (class data sharing archive, Java 13+)"
 Write-Host "    |   +-- uninstall.ps1   (uninstall script)"
 Write-Host "    |   +-- uninstall.cmd   (uninstall script)"
 Write-Host "    +-- skills/        (skill modules)"
@@ -193,19 +193,49 @@ if [ -n "$JAVA_VER" ] && [ "$JAVA_VER" -ge 21 ]; then
     JAVA_OPTS="$JAVA_OPTS --enable-native-access=ALL-UNNAMED"
 fi
 
+# 使用安装时生成的类数据共享归档（AppCDS，Java 13+）；JDK 或 jar 变化时归档自动失效，不影响启动
+CDS_OPTS=()
+if [ -f "$SCRIPT_DIR/soloncode.jsa" ] && [ -n "$JAVA_VER" ] && [ "$JAVA_VER" -ge 13 ]; then
+    CDS_OPTS=(-Xshare:auto "-XX:SharedArchiveFile=$SCRIPT_DIR/soloncode.jsa" "-Xlog:cds*=off")
+fi
+
 # Git Bash / MSYS terminals on Windows often need winpty for correct line editing.
 if [ -n "$MSYSTEM" ]; then
     JAVA_OPTS="$JAVA_OPTS -Djline.terminal.type=xterm-256color"
     if [ -t 0 ] && [ -t 1 ] && command -v winpty >/dev/null 2>&1; then
-        exec winpty java $JAVA_OPTS -jar "$SCRIPT_DIR/soloncode-cli.jar" "$@"
+        exec winpty java $JAVA_OPTS "${CDS_OPTS[@]}" -jar "$SCRIPT_DIR/soloncode-cli.jar" "$@"
     fi
 fi
 
-java $JAVA_OPTS -jar "$SCRIPT_DIR/soloncode-cli.jar" "$@"
+java $JAVA_OPTS "${CDS_OPTS[@]}" -jar "$SCRIPT_DIR/soloncode-cli.jar" "$@"
 LAUNCHER_EOF
 chmod +x "$TARGET_BIN_DIR/soloncode"
 echo "      Created: $TARGET_BIN_DIR/soloncode"
 
+# =============================================
+# 生成类数据共享归档（AppCDS，需 Java 13+），缩短启动时间
+# =============================================
+echo ""
+echo "Generating class data sharing archive..."
+CDS_ARCHIVE="$TARGET_BIN_DIR/soloncode.jsa"
+rm -f "$CDS_ARCHIVE"
+
+JAVA_MAJOR=$(java -version 2>&1 | head -n1 | grep -oE '"[0-9]+' | grep -oE '[0-9]+' | head -1)
+if [ -n "$JAVA_MAJOR" ] && [ "$JAVA_MAJOR" -ge 13 ]; then
+    # 以 'soloncode version' 走一遍完整启动（容器、配置、引擎、终端），退出时写出已加载的类
+    CDS_WORK_DIR=$(mktemp -d)
+    if (cd "$CDS_WORK_DIR" && java -Dfile.encoding=UTF-8 -XX:ArchiveClassesAtExit="$CDS_ARCHIVE" \
+            -jar "$TARGET_BIN_DIR/soloncode-cli.jar" version < /dev/null > /dev/null 2>&1) && [ -f "$CDS_ARCHIVE" ]; then
+        echo "      Created: $CDS_ARCHIVE"
+    else
+        rm -f "$CDS_ARCHIVE"
+        echo "      Skipped (archive generation failed, startup is unaffected)"
+    fi
+    rm -rf "$CDS_WORK_DIR"
+else
+    echo "      Skipped (requires Java 13+)"
+fi
+
 # =============================================
 # 配置 PATH 环境变量（兼容多种 shell 和系统）
 # =============================================
@@ -339,6 +369,7 @@ echo "    ├── AGENTS.md       (agents config, preserved if exists)"
 echo "    ├── bin/            (executables)"
 echo "    │   ├── soloncode-cli.jar"
 echo "    │   ├── soloncode       (launcher)"
+echo "    │   ├── soloncode.jsa   (class data sharing archive, Java 13+)"
 echo "    │   └── uninstall.sh    (uninstall script)"
 echo "    └── skills/        (skill modules)"
 echo ""
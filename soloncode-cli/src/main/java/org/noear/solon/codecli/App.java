@@ -20,6 +20,8 @@ import org.noear.solon.SolonApp;
 import org.noear.solon.codecli.config.AgentFlags;
 import org.noear.solon.codecli.config.AgentSettings;
 import org.noear.solon.codecli.config.entity.GeneralGroupDo;
+import org.noear.solon.codecli.portal.printmode.PrintClient;
+import org.noear.solon.codecli.util.StartupProfiler;
 import org.noear.solon.core.util.Assert;
 import org.noear.solon.scheduling.annotation.EnableScheduling;
 import org.noear.solon.web.cors.CrossFilter;
@@ -37,6 +39,17 @@ import java.net.URL;
 public class App {
 
     public static void main(String[] args) {
+        // --profile-startup：按阶段记录启动耗时
+        StartupProfiler.start(args);
+
+        // 0. soloncode run 优先交给当前工作区的常驻进程（soloncode daemon），省去容器与引擎启动
+        int daemonExitCode = PrintClient.tryRun(args);
+        if (daemonExitCode != PrintClient.NOT_HANDLED) {
+            System.exit(daemonExitCode);
+            return;
+        }
+        StartupProfiler.mark("daemon-probe");
+
         // 1. 移除 JUL 默认的控制台处理器
         SLF4JBridgeHandler.removeHandlersForRootLogger();
         // 2. 添加 SLF4J 处理器
@@ -56,8 +69,10 @@ public class App {
         URL configUrl = AgentFlags.getConfigUrl();
 
         app.cfg().loadAdd(configUrl);
+        StartupProfiler.mark("config");
 
         initAgentSettings(app);
+        StartupProfiler.mark("settings");
 
         //推入容器
         //app.context().wrapAndPut(AgentProperties.class, c);
@@ -21,6 +21,7 @@ import org.noear.solon.codecli.config.ProxyConfig;
 import org.noear.solon.codecli.config.entity.ApiSourceDo;
 import org.noear.solon.codecli.config.entity.McpServerDo;
 import org.noear.solon.codecli.config.entity.ModelDo;
+import org.noear.solon.codecli.config.entity.ModelGroupDo;
 import org.noear.solon.codecli.config.entity.LspServerDo;
 import org.noear.solon.codecli.config.entity.MountDo;
 import org.noear.solon.codecli.memory.MemoryProvider;
@@ -28,6 +29,7 @@ import org.noear.solon.codecli.portal.*;
 import org.noear.solon.codecli.portal.acp.AcpLink;
 import org.noear.solon.codecli.portal.cli.CliShell;
 import org.noear.solon.codecli.portal.desktop.WsController;
+import org.noear.solon.codecli.portal.printmode.PrintDaemon;
 import org.noear.solon.codecli.portal.printmode.PrintMode;
 import org.noear.solon.codecli.portal.printmode.PrintModeOptions;
 import org.noear.solon.codecli.portal.desktop.WsGate;
@@ -38,6 +40,7 @@ import org.noear.solon.codecli.portal.web.WebSettingsController;
 import org.noear.solon.codecli.portal.web.WebGate;
 import org.noear.solon.codecli.portal.web.settings.*;
 import org.noear.solon.codecli.session.SessionManager;
+import org.noear.solon.codecli.util.StartupProfiler;
 import org.noear.solon.core.AppContext;
 import org.noear.solon.core.BeanWrap;
 import org.noear.solon.core.util.JavaUtil;
@@ -46,6 +49,7 @@ import org.noear.solon.net.http.HttpConfiguration;
 import org.noear.solon.net.http.HttpExtension;
 import org.noear.solon.net.http.HttpUtils;
 import org.noear.solon.net.websocket.WebSocketRouter;
+import org.noear.solon.codecli.config.models.ModelRouter;
 import org.noear.solon.codecli.config.models.ModelsAdapterManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +60,8 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -79,6 +85,7 @@ public class Configurator {
     SessionManager sessionManager;
 
     private LoopScheduler loopScheduler;
+    private final AtomicBoolean systemLspServersAdded = new AtomicBoolean();
 
     @Bean
     public SessionManager sessionManager() {
@@ -87,6 +94,8 @@ public class Configurator {
 
     @Bean
     public HarnessEngine agentRuntime(AgentSettings settings, SessionManager sessionManager) throws Exception {
+        StartupProfiler.mark("container");
+
         String stealthIdentity = "<!--\n" +
                 "  @poweredby: soloncode\n" +
                 "  @build: " + AgentFlags.getVersion() + "\n" +
@@ -101,6 +110,10 @@ public class Configurator {
 
         String workspace = AgentFlags.getUserDir();
 
+        // 模型组：按健康度在成员间路由
+        ModelRouter.getInstance().setGroups(agentSettings::getModelGroups);
+        ModelRouter.getInstance().setDefaultModel(agentSettings::getDefaultModel);
+
         HarnessEngine engine = HarnessEngine.of(workspace, AgentFlags.getHarnessHome())
                 .userAgent(settings.getGeneral().getUserAgent())
                 .systemPrompt(stealthIdentity + AgentFlags.getAgentsMd())
@@ -130,9 +143,15 @@ public class Configurator {
                     ProxyConfig.applyIfNeeded(http);
                 })
                 .build();
-
-
-        engine.setDefaultModel(settings.getDefaultModel());
+        StartupProfiler.mark("engine");
+
+        // 默认模型为组名时，引擎默认取首个成员
+        ModelGroupDo defaultGroup = agentSettings.getModelGroups().get(settings.getDefaultModel());
+        if (defaultGroup != null && defaultGroup.getMembers().size() > 0) {
+            engine.setDefaultModel(defaultGroup.getMembers().get(0));
+        } else {
+            engine.setDefaultModel(settings.getDefaultModel());
+        }
         for (ModelDo model : agentSettings.getModels().values()) {
             engine.addModel(model);
         }
@@ -193,10 +212,17 @@ public class Configurator {
         engine.getCommandRegistry().register(new GoalCommand(loopCommand));
 
         engine.addExtension(new ManagerExtension(engine, agentSettings, loopScheduler));
+        StartupProfiler.mark("engine-setup");
 
         return engine;
     }
 
+    /**
+     * 后台注册用户配置的服务器（不阻塞启动）
+     *
+     * <p>只有系统级 LSP 做到了首次使用时才初始化；MCP 服务器仍在此处连接（后台，但不是按需），
+     * API / 用户 LSP 服务器同样在此注册。</p>
+     */
     private void addServers(HarnessEngine engine) {
         for (Map.Entry<String, McpServerDo> entry : agentSettings.getMcpServers().entrySet()) {
             engine.addMcpServer(entry.getKey(), entry.getValue());
@@ -210,7 +236,20 @@ public class Configurator {
             engine.addLspServer(entry.getKey(), entry.getValue());
         }
 
-        //系统级 LSP 服务器（参考 OpenCode / Claude Code 内置列表，仅注册常见语言）
+        //系统级 LSP 服务器仅在启用 LSP 时注册（设置界面在 serve/web 启动时注册）
+        if (agentSettings.getGeneral().isLspEnabled()) {
+            addSystemLspServers(engine);
+        }
+    }
+
+    /**
+     * 注册系统级 LSP 服务器（参考 OpenCode / Claude Code 内置列表，仅注册常见语言；只注册一次）
+     */
+    private void addSystemLspServers(HarnessEngine engine) {
+        if (systemLspServersAdded.compareAndSet(false, true) == false) {
+            return;
+        }
+
         addSystemLspServer(engine, agentSettings, "java", Arrays.asList("jdtls"), Arrays.asList(".java"));
         addSystemLspServer(engine, agentSettings, "typescript", Arrays.asList("typescript-language-server", "--stdio"), Arrays.asList(".ts", ".tsx", ".js", ".jsx", ".mjs", ".cjs", ".mts", ".cts"));
         addSystemLspServer(engine, agentSettings, "go", Arrays.asList("gopls"), Arrays.asList(".go"));
@@ -242,6 +281,7 @@ public class Configurator {
 
         CliShell cliShell = new CliShell(agentRuntime, agentSettings, loopScheduler);
         String flag = Solon.cfg().argx().flagAt(0);
+        StartupProfiler.mark("terminal");
 
         if (AgentFlags.FLAG_VERSION.equals(flag)) {
             System.out.println(Solon.cfg().appTitle() + " " + AgentFlags.getVersion());
@@ -249,7 +289,10 @@ public class Configurator {
             return;
         }
 
-        checkUpdate();
+        //run / daemon / acp 的 stdout 为程序输出，不打印更新提示
+        if (!AgentFlags.FLAG_RUN.equals(flag) && !AgentFlags.FLAG_DAEMON.equals(flag) && !AgentFlags.FLAG_ACP.equals(flag)) {
+            checkUpdate();
+        }
 
         //flag
         if (Solon.cfg().argx().flags().size() > 0) {
@@ -257,6 +300,7 @@ public class Configurator {
                 // Print / Headless 模式（对齐 claude -p）
                 PrintModeOptions printOpts = PrintModeOptions.parse(Solon.cfg().argx());
                 PrintMode printMode = new PrintMode(agentRuntime, agentSettings, printOpts);
+                StartupProfiler.report("ready");
                 int exitCode = printMode.execute();
                 Solon.stop();
                 if (exitCode != 0) {
@@ -266,14 +310,30 @@ public class Configurator {
                 return;
             }
 
+            if (AgentFlags.FLAG_DAEMON.equals(flag)) { // soloncode daemon
+                // 常驻进程：保持引擎预热，供 soloncode run 的轻量客户端转发执行
+                try {
+                    new PrintDaemon(agentRuntime, agentSettings, AgentFlags.getUserDir()).start();
+                    StartupProfiler.report("ready");
+                } catch (Exception e) {
+                    System.err.println("Error: " + e.getMessage());
+                    Solon.stop();
+                }
+                return;
+            }
+
             if (AgentFlags.FLAG_SERVE.equals(flag)) { // java -jar soloncode.jar server // soloncode server
+                RunUtil.async(() -> addSystemLspServers(agentRuntime));
                 runDesktopServe(agentRuntime, agentSettings, cliShell, sessionManager);
                 runWebServe(agentRuntime, agentSettings, null, sessionManager);
+                StartupProfiler.report("ready");
                 return;
             }
 
             if (AgentFlags.FLAG_WEB.equals(flag)) { // java -jar soloncode.jar web // soloncode web
+                RunUtil.async(() -> addSystemLspServers(agentRuntime));
                 runWebServe(agentRuntime, agentSettings, cliShell, sessionManager);
+                StartupProfiler.report("ready");
                 openBrowser();
                 return;
             }
@@ -329,10 +389,13 @@ public class Configurator {
         FileWatchService fileWatchService = new FileWatchService();
         // 默认工作区 → 前端广播
         fileWatchService.addRoot("workspace", workspacePath)
-                .addHandler(changes -> webGate.broadcastRaw(FileWatchService.buildFrontendJson(changes)));
+                .addHandler(changes -> webGate.broadcastRaw(FileWatchService.buildFrontendJson(changes)))
+                // 非 git 工作区的测试影响分析依赖监听到的变更
+                .addHandler(changes -> TestImpactAnalyzer.of(workspacePath)
+                        .recordChanges(changes.stream().map(c -> c.path).collect(Collectors.toList())));
 
         //web
-        BeanWrap webController = Solon.context().wrapAndPut(WebController.class, new WebController(agentRuntime, webGate, loopScheduler, sessionManager));
+        BeanWrap webController = Solon.context().wrapAndPut(WebController.class, new WebController(agentRuntime, webGate, loopScheduler, sessionManager, fileWatchService));
         Solon.app().router().add(webController);
 
         addWebBean(new WebSettingsController(agentRuntime, settings, fileWatchService, webGate));
@@ -377,6 +440,9 @@ public class Configurator {
 
         fileWatchService.start();
 
+        // 并行恢复有循环任务的会话（此时 Web/桌面端任务执行器均已注册）
+        RunUtil.async(loopScheduler::restoreRegistered);
+
         if (cliShell != null) {
             String url = "http://localhost:" + Solon.cfg().serverPort() + "/";
             cliShell.printWelcome("Web interface: " + url);
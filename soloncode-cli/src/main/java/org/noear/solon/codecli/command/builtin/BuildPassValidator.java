@@ -3,8 +3,6 @@ package org.noear.solon.codecli.command.builtin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -14,10 +12,12 @@ import java.nio.file.Paths;
  *
  * <p>支持的项目类型：
  * <ul>
- *   <li>Maven (pom.xml → {@code mvn compile -q -o})</li>
- *   <li>Gradle (build.gradle / build.gradle.kts → {@code gradle compileJava -q})</li>
+ *   <li>Maven (pom.xml → {@code mvn compile -q -o}，装有 mvnd 时优先用常驻守护进程)</li>
+ *   <li>Gradle (build.gradle / build.gradle.kts → {@code gradle compileJava -q --daemon}，优先 gradlew)</li>
  * </ul>
  *
+ * <p>通过 {@link BuildValidationService} 执行：工作区未变化时复用上次结论，超时强制结束构建。</p>
+ *
  * <p>无构建工具或构建工具不可用时不阻塞完成（返回 passed）。</p>
  *
  * <p>匹配含 build/compile/implement/refactor/fix/create/add/write 等关键字的目标。</p>
@@ -28,6 +28,9 @@ import java.nio.file.Paths;
 public class BuildPassValidator implements GoalValidator {
     private static final Logger log = LoggerFactory.getLogger(BuildPassValidator.class);
 
+    /** 编译截止时间 */
+    private static final long BUILD_TIMEOUT_MS = 10 * 60_000L;
+
     private final String workspace;
 
     public BuildPassValidator(String workspace) {
@@ -45,12 +48,13 @@ public class BuildPassValidator implements GoalValidator {
         try {
             // 检测 Maven 项目
             if (Files.exists(workspacePath.resolve("pom.xml"))) {
-                return runCommand("mvn compile -q -o", workspacePath);
+                String mvn = BuildValidationService.isOnPath("mvnd") ? "mvnd" : "mvn";
+                return runCommand(mvn + " compile -q -o", workspacePath);
             }
             // 检测 Gradle 项目
             if (Files.exists(workspacePath.resolve("build.gradle")) ||
                     Files.exists(workspacePath.resolve("build.gradle.kts"))) {
-                return runCommand("gradle compileJava -q", workspacePath);
+                return runCommand(gradleCommand(workspacePath) + " compileJava -q --daemon", workspacePath);
             }
 
             // 无已知构建工具时跳过，不阻塞完成
@@ -62,39 +66,43 @@ public class BuildPassValidator implements GoalValidator {
         }
     }
 
+    /**
+     * 优先使用项目自带的 gradlew（版本与项目一致，守护进程可复用）
+     */
+    static String gradleCommand(Path workDir) {
+        if (BuildValidationService.isWindows()) {
+            return Files.exists(workDir.resolve("gradlew.bat")) ? "gradlew.bat" : "gradle";
+        }
+        return Files.exists(workDir.resolve("gradlew")) ? "sh gradlew" : "gradle";
+    }
+
     private ValidationResult runCommand(String command, Path workDir) {
         try {
-            log.info("BuildPassValidator 运行: {} (工作目录: {})", command, workDir);
+            BuildValidationService.Verdict verdict = BuildValidationService.getInstance()
+                    .run(workDir, command, BUILD_TIMEOUT_MS);
 
-            ProcessBuilder pb = new ProcessBuilder();
-            if (System.getProperty("os.name").toLowerCase().contains("win")) {
-                pb.command("cmd.exe", "/c", command);
-            } else {
-                pb.command("sh", "-c", command);
+            if (verdict.timedOut) {
+                // 超时无法证明编译通过，不能据此判定目标达成（也不缓存）
+                log.warn("BuildPassValidator: 编译超时 ({}s)", BUILD_TIMEOUT_MS / 1000);
+                return ValidationResult.failed("编译超时 (" + BUILD_TIMEOUT_MS / 1000 + "s 内未完成): '" + command + "'");
             }
-            pb.directory(workDir.toFile());
-            pb.redirectErrorStream(true);
-
-            Process process = pb.start();
-            // Java 8 兼容：手动读取 InputStream
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            byte[] buffer = new byte[8192];
-            int len;
-            while ((len = process.getInputStream().read(buffer)) != -1) {
-                baos.write(buffer, 0, len);
+            if (verdict.cancelled) {
+                // 被中断不能证明编译通过（如目标被取消）；链式验证中因其他验证器失败而取消时，
+                // 该结果会被 ChainValidator 丢弃，结论以失败的验证器为准
+                log.info("BuildPassValidator: 编译被中断");
+                return ValidationResult.failed("编译被中断: '" + command + "'");
             }
-            String output = new String(baos.toByteArray(), StandardCharsets.UTF_8);
-            int exitCode = process.waitFor();
 
-            if (exitCode == 0) {
-                log.info("BuildPassValidator: 编译通过 (exit code=0)");
+            if (verdict.isPassed()) {
+                log.info("BuildPassValidator: 编译通过 (exit code=0{})", verdict.cached ? ", cached" : "");
                 return ValidationResult.passed();
             } else {
+                String output = verdict.output;
                 String tail = output.length() > 500
                         ? output.substring(output.length() - 500)
                         : output;
-                log.warn("BuildPassValidator: 编译失败 (exit code={})", exitCode);
-                return ValidationResult.failed("编译失败 (exit=" + exitCode + "): " + tail.trim());
+                log.warn("BuildPassValidator: 编译失败 (exit code={})", verdict.exitCode);
+                return ValidationResult.failed("编译失败 (exit=" + verdict.exitCode + "): " + tail.trim());
             }
         } catch (Exception e) {
             log.warn("BuildPassValidator 命令执行异常: {}", e.getMessage());
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.noear.solon.codecli.util.Digests;
+import org.noear.solon.codecli.util.ProcessRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 构建/测试验证服务 — 供 {@link BuildPassValidator}、{@link TestsPassValidator} 共用。
+ *
+ * <ul>
+ *   <li>指纹缓存：对工作区源码与构建文件（路径 + 大小 + 修改时间）计算指纹，未变化时直接复用上次结论</li>
+ *   <li>截止时间：输出流式读取（只保留尾部），超时强制结束进程；调用线程被中断时同样结束进程</li>
+ *   <li>同一工作区的构建命令串行执行（共享 target/build 输出目录），不同命令的缓存命中不受影响</li>
+ *   <li>常驻构建守护进程：提供 {@link #isOnPath(String)} 供验证器优先选用 mvnd / gradle daemon</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class BuildValidationService {
+    private static final Logger log = LoggerFactory.getLogger(BuildValidationService.class);
+
+    /** 输出尾部保留长度（用于失败详情） */
+    private static final int TAIL_BYTES = 4096;
+
+    /** 不参与指纹的目录（构建输出、依赖、版本库等） */
+    private static final Set<String> EXCLUDED_DIRS = new HashSet<>(Arrays.asList(
+            "target", "build", "out", "dist", "node_modules", "bin", "obj", "__pycache__"));
+
+    private static final BuildValidationService instance = new BuildValidationService();
+
+    public static BuildValidationService getInstance() {
+        return instance;
+    }
+
+    /** 工作区 + 命令 → 上次结论 */
+    private final Map<String, Verdict> verdicts = new ConcurrentHashMap<>();
+    /** 工作区 → 构建锁 */
+    private final Map<String, ReentrantLock> workspaceLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 验证结论
+     */
+    public static class Verdict {
+        final String fingerprint;
+        /** 进程退出码；超时或取消为 -1 */
+        public final int exitCode;
+        public final boolean timedOut;
+        /** 调用线程被中断，进程已结束 */
+        public final boolean cancelled;
+        /** 输出尾部 */
+        public final String output;
+        public final long durationMs;
+        /** 是否为复用的缓存结论 */
+        public final boolean cached;
+
+        Verdict(String fingerprint, int exitCode, boolean timedOut, boolean cancelled,
+                String output, long durationMs, boolean cached) {
+            this.fingerprint = fingerprint;
+            this.exitCode = exitCode;
+            this.timedOut = timedOut;
+            this.cancelled = cancelled;
+            this.output = output;
+            this.durationMs = durationMs;
+            this.cached = cached;
+        }
+
+        public boolean isPassed() {
+            return exitCode == 0 && !timedOut && !cancelled;
+        }
+
+        Verdict asCached() {
+            return new Verdict(fingerprint, exitCode, timedOut, cancelled, output, durationMs, true);
+        }
+    }
+
+    /**
+     * 运行构建/测试命令（工作区未变化时复用上次结论）
+     *
+     * @param workDir   工作目录
+     * @param command   shell 命令
+     * @param timeoutMs 截止时间（从启动起算）
+     */
+    public Verdict run(Path workDir, String command, long timeoutMs) throws IOException {
+        Path dir = workDir.toAbsolutePath().normalize();
+        String key = dir + "\n" + command;
+
+        ReentrantLock lock = workspaceLocks.computeIfAbsent(dir.toString(), k -> new ReentrantLock());
+        lock.lock();
+        try {
+            // 加锁后再算指纹：等待期间其它命令可能刚完成同一次构建
+            String fingerprint = fingerprint(dir);
+            Verdict last = verdicts.get(key);
+            if (last != null && last.fingerprint.equals(fingerprint)) {
+                log.info("BuildValidationService: 工作区未变化，复用上次结论 ({}, passed={})", command, last.isPassed());
+                return last.asCached();
+            }
+
+            Verdict verdict = execute(dir, command, timeoutMs, fingerprint);
+            // 超时或取消不代表结论，不缓存
+            if (!verdict.timedOut && !verdict.cancelled) {
+                verdicts.put(key, verdict);
+            }
+            return verdict;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Verdict execute(Path dir, String command, long timeoutMs, String fingerprint) throws IOException {
+        log.info("BuildValidationService 运行: {} (工作目录: {})", command, dir);
+
+        ProcessBuilder pb = new ProcessBuilder();
+        if (isWindows()) {
+            pb.command("cmd.exe", "/c", command);
+        } else {
+            pb.command("sh", "-c", shellCommand(command));
+        }
+        pb.directory(dir.toFile());
+        pb.redirectErrorStream(true);
+
+        long start = System.currentTimeMillis();
+        TailBuffer tail = new TailBuffer(TAIL_BYTES);
+        ProcessRunner.Result result = ProcessRunner.stream(pb, timeoutMs, tail);
+        long duration = System.currentTimeMillis() - start;
+
+        log.info("BuildValidationService 完成: {} (exit={}, timedOut={}, {}ms)",
+                command, result.exitCode, result.timedOut, duration);
+        return new Verdict(fingerprint, result.exitCode, result.timedOut, result.cancelled,
+                tail.toString(), duration, false);
+    }
+
+    // ==================== 指纹 ====================
+
+    /**
+     * 工作区指纹：源码与构建文件的 相对路径 + 大小 + 修改时间
+     *
+     * <p>跳过隐藏目录（.git、.idea、.gradle 等）与构建输出目录，只读取文件属性不读内容。</p>
+     */
+    String fingerprint(Path root) throws IOException {
+        List<String> entries = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(root)) {
+                    String name = dir.getFileName().toString();
+                    if (name.startsWith(".") || EXCLUDED_DIRS.contains(name)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    entries.add(root.relativize(file).toString().replace(File.separatorChar, '/')
+                            + "|" + attrs.size() + "|" + attrs.lastModifiedTime().toMillis());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(entries);
+        MessageDigest digest = Digests.sha256();
+        for (String entry : entries) {
+            digest.update(entry.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return Digests.hex(digest.digest());
+    }
+
+    // ==================== 工具 ====================
+
+    /**
+     * 可执行文件是否在 PATH 中（用于优先选用 mvnd 等常驻守护进程）
+     */
+    public static boolean isOnPath(String executable) {
+        String path = System.getenv("PATH");
+        if (path == null) {
+            return false;
+        }
+
+        String[] suffixes = isWindows() ? new String[]{".cmd", ".bat", ".exe"} : new String[]{""};
+        for (String dir : path.split(File.pathSeparator)) {
+            for (String suffix : suffixes) {
+                File file = new File(dir, executable + suffix);
+                if (file.isFile() && file.canExecute()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 简单命令用 exec 替换 sh 进程：超时强杀时直接作用于 mvn/gradle 本身，
+     * 否则只杀掉 sh，构建进程会继续占用 target/ 而工作区锁已被释放。
+     * 含控制符的复合命令无法 exec（Java 8 也不能按进程树结束），其子进程可能残留
+     */
+    static String shellCommand(String command) {
+        for (int i = 0; i < command.length(); i++) {
+            if (";&|\n()`".indexOf(command.charAt(i)) >= 0) {
+                return command;
+            }
+        }
+        return "exec " + command;
+    }
+
+    static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase().contains("win");
+    }
+
+    /**
+     * 只保留输出尾部的缓冲
+     */
+    static class TailBuffer implements ProcessRunner.OutputConsumer {
+        private final byte[] ring;
+        private int pos;
+        private boolean wrapped;
+
+        TailBuffer(int size) {
+            this.ring = new byte[size];
+        }
+
+        @Override
+        public synchronized void accept(byte[] buf, int off, int len) {
+            if (len >= ring.length) {
+                System.arraycopy(buf, off + len - ring.length, ring, 0, ring.length);
+                pos = 0;
+                wrapped = true;
+                return;
+            }
+
+            int first = Math.min(len, ring.length - pos);
+            System.arraycopy(buf, off, ring, pos, first);
+            System.arraycopy(buf, off + first, ring, 0, len - first);
+            if (pos + len >= ring.length) {
+                wrapped = true;
+            }
+            pos = (pos + len) % ring.length;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (!wrapped) {
+                return new String(ring, 0, pos, StandardCharsets.UTF_8);
+            }
+            byte[] out = new byte[ring.length];
+            System.arraycopy(ring, pos, out, 0, ring.length - pos);
+            System.arraycopy(ring, 0, out, ring.length - pos, pos);
+            return new String(out, StandardCharsets.UTF_8);
+        }
+    }
+}
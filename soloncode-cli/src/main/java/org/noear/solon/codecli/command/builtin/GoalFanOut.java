@@ -0,0 +1,728 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.noear.solon.ai.agent.AgentSession;
+import org.noear.solon.ai.agent.react.ReActChunk;
+import org.noear.solon.ai.agent.react.ReActTrace;
+import org.noear.solon.ai.agent.react.task.ObservationChunk;
+import org.noear.solon.ai.agent.react.task.ThoughtChunk;
+import org.noear.solon.ai.agent.trace.Metrics;
+import org.noear.solon.ai.chat.prompt.Prompt;
+import org.noear.solon.ai.harness.HarnessEngine;
+import org.noear.solon.ai.talents.cli.TerminalTalent;
+import org.noear.solon.codecli.config.AgentFlags;
+import org.noear.solon.codecli.config.models.ModelRouter;
+import org.noear.solon.codecli.util.BudgetExceededException;
+import org.noear.solon.codecli.util.ProcessRunner;
+import org.noear.solon.codecli.util.TokenAccounting;
+import org.noear.solon.core.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Goal 并行拆分（fan-out）— 把可分解的目标拆成相互独立的子目标，在各自的子会话中并行推进。
+ *
+ * <ul>
+ *   <li>每个子目标是一个独立的 Goal 任务，运行在子会话（{@link #SESSION_PREFIX}）中，
+ *       goal_get / goal_update 在子会话内照常可用</li>
+ *   <li>子目标在有界线程池中并行，逐轮执行直至完成、阻塞、预算耗尽或达到轮次上限</li>
+ *   <li>预算：父目标剩余预算均分给各子目标，子目标的消耗实时累计到父目标</li>
+ *   <li>隔离：可选为每个子目标创建 git worktree（位于用户缓存目录，基于工作区当前内容的快照，
+ *       包含未提交的改动），结束后以补丁合并回工作区；超时仍未结束的子目标不合并</li>
+ *   <li>超时：父目标时间预算用尽时取消子目标，子目标在下一个流事件或下一轮前停止，
+ *       此后不再向父目标汇总消耗</li>
+ *   <li>冲突检测：多个子目标改动同一文件、或补丁无法合并时记为冲突，父目标完成前需复核</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class GoalFanOut {
+    private static final Logger LOG = LoggerFactory.getLogger(GoalFanOut.class);
+
+    /** 子会话 id 前缀（不会被各端的任务执行器认领） */
+    public static final String SESSION_PREFIX = "fanout-";
+
+    /** 单次拆分的子目标数上限 */
+    public static final int MAX_SUB_GOALS = 16;
+
+    private static final long GIT_TIMEOUT_MS = 60_000;
+    private static final int PATCH_MAX_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * 子目标单轮执行器（默认实现见 {@link AgentRoundRunner}）
+     */
+    @FunctionalInterface
+    public interface RoundRunner {
+        LoopExecutionResult run(SubGoal sub, String prompt) throws Exception;
+    }
+
+    private final LoopPromptBuilder promptBuilder;
+    private final int parallelism;
+    private final int maxRounds;
+    /** worktree 所在目录（工作区之外） */
+    private final Path worktreeDir;
+
+    /** 子会话 → 子目标任务 */
+    private final Map<String, LoopTask> children = new ConcurrentHashMap<>();
+    /** 父任务 → 最近一次拆分报告 */
+    private final Map<String, Report> reports = new ConcurrentHashMap<>();
+
+    public GoalFanOut(LoopPromptBuilder promptBuilder, int parallelism, int maxRounds) {
+        this(promptBuilder, parallelism, maxRounds,
+                Paths.get(AgentFlags.getUserHome(), AgentFlags.getHarnessCache(), "worktrees"));
+    }
+
+    GoalFanOut(LoopPromptBuilder promptBuilder, int parallelism, int maxRounds, Path worktreeDir) {
+        this.promptBuilder = promptBuilder;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxRounds = Math.max(1, maxRounds);
+        this.worktreeDir = worktreeDir;
+    }
+
+    public static boolean isChildSession(String sessionId) {
+        return sessionId != null && sessionId.startsWith(SESSION_PREFIX);
+    }
+
+    /**
+     * 子会话中的子目标任务（拆分执行期间有效）
+     */
+    public LoopTask getChildTask(String sessionId) {
+        return sessionId == null ? null : children.get(sessionId);
+    }
+
+    /**
+     * 父任务最近一次拆分报告
+     */
+    public Report getReport(String parentTaskId) {
+        return parentTaskId == null ? null : reports.get(parentTaskId);
+    }
+
+    public void clear(String parentTaskId) {
+        reports.remove(parentTaskId);
+    }
+
+    // ==================== 执行 ====================
+
+    /**
+     * 拆分执行（阻塞直到所有子目标结束或父目标时间预算用尽）
+     *
+     * @param parent     父目标任务
+     * @param objectives 子目标（相互独立）
+     * @param workspace  工作区
+     * @param isolate    是否为每个子目标创建 git worktree
+     * @param runner     子目标单轮执行器
+     */
+    public Report run(LoopTask parent, List<String> objectives, Path workspace, boolean isolate, RoundRunner runner) {
+        GoalState parentState = parent.getGoalState();
+
+        long perChildTokens = 0;
+        if (parentState.getMaxTokens() > 0) {
+            long remaining = parentState.getMaxTokens() - parentState.getConsumedTokens();
+            perChildTokens = Math.max(1, remaining / objectives.size());
+        }
+
+        // worktree 基于仓库根目录创建；工作区可能是仓库的子目录
+        Path repoRoot = null;
+        String repoPrefix = "";
+        String baseRev = null;
+        if (isolate) {
+            ProcessRunner.Result top = git(workspace, "rev-parse", "--show-toplevel");
+            ProcessRunner.Result prefix = git(workspace, "rev-parse", "--show-prefix");
+            if (top != null && top.exitCode == 0 && prefix != null && prefix.exitCode == 0) {
+                repoRoot = Paths.get(top.stdout.trim());
+                repoPrefix = prefix.stdout.trim();
+                baseRev = snapshot(repoRoot);
+                if (baseRev == null) {
+                    repoRoot = null;
+                }
+            } else {
+                LOG.warn("Goal fan-out: workspace is not a git repository, sub-goals share the workspace");
+            }
+        }
+
+        List<SubGoal> subs = new ArrayList<>();
+        for (int i = 0; i < objectives.size(); i++) {
+            LoopTask child = new LoopTask(objectives.get(i), 0, null, LoopTask.TaskType.GOAL, true);
+            child.setMaxTokens(perChildTokens);
+            child.getGoalState().setMaxIterations(maxRounds);
+
+            SubGoal sub = new SubGoal(i + 1, SESSION_PREFIX + parent.getId() + "-" + (i + 1), child);
+            if (repoRoot != null) {
+                createWorktree(repoRoot, repoPrefix, baseRev, sub);
+            }
+            subs.add(sub);
+            children.put(sub.sessionId, child);
+        }
+
+        LOG.info("Goal '{}' fan-out: {} sub-goals (parallelism={}, isolate={}, perChildTokens={})",
+                parent.getId(), subs.size(), parallelism, isolate, perChildTokens);
+
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, subs.size()), r -> {
+            Thread t = new Thread(r, "goal-fanout");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (SubGoal sub : subs) {
+                futures.add(pool.submit(() -> runSubGoal(parent, sub, runner)));
+            }
+            awaitAll(parent, subs, futures);
+        } finally {
+            pool.shutdownNow();
+            for (SubGoal sub : subs) {
+                children.remove(sub.sessionId);
+            }
+        }
+
+        if (repoRoot != null) {
+            for (SubGoal sub : subs) {
+                if (sub.worktreeRoot == null) {
+                    continue;
+                }
+                if (sub.isRunning()) {
+                    // 代理线程不响应中断：仍在运行的子目标可能继续写入，不合并，保留 worktree 供复核
+                    sub.mergeError = "子目标超时仍在运行，改动未合并";
+                    LOG.warn("Goal fan-out: sub-goal '{}' still running, worktree kept at {}", sub.sessionId, sub.worktreeRoot);
+                } else {
+                    mergeWorktree(repoRoot, baseRev, sub);
+                }
+            }
+        }
+
+        Report report = new Report(parent.getId(), subs, detectConflicts(subs), System.currentTimeMillis() - start);
+        reports.put(parent.getId(), report);
+
+        LOG.info("Goal '{}' fan-out finished in {}ms: {} achieved, {} conflicts",
+                parent.getId(), report.durationMs, report.getAchievedCount(), report.conflicts.size());
+        return report;
+    }
+
+    private void awaitAll(LoopTask parent, List<SubGoal> subs, List<Future<?>> futures) {
+        Long maxDurationMs = parent.getMaxDurationMs();
+        long deadline = maxDurationMs != null && maxDurationMs > 0
+                ? parent.getGoalState().getStartEpochMs() + maxDurationMs
+                : Long.MAX_VALUE;
+
+        for (int i = 0; i < futures.size(); i++) {
+            Future<?> future = futures.get(i);
+            try {
+                if (deadline == Long.MAX_VALUE) {
+                    future.get();
+                } else {
+                    future.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+            } catch (TimeoutException e) {
+                // 代理线程不响应中断，以取消标记让子目标自行停止
+                subs.get(i).cancelled = true;
+                future.cancel(true);
+                subs.get(i).error = "父目标时间预算已用尽";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = 0; j < futures.size(); j++) {
+                    subs.get(j).cancelled = true;
+                    futures.get(j).cancel(true);
+                }
+                return;
+            } catch (ExecutionException e) {
+                subs.get(i).error = String.valueOf(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * 子目标逐轮执行
+     */
+    void runSubGoal(LoopTask parent, SubGoal sub, RoundRunner runner) {
+        LoopTask child = sub.task;
+        GoalState gs = child.getGoalState();
+        GoalState parentState = parent.getGoalState();
+        sub.startMs = System.currentTimeMillis();
+        sub.running = true;
+
+        try {
+            while (gs.getStatus().isActive() && !sub.cancelled && !Thread.currentThread().isInterrupted()) {
+                // 父目标被暂停/清除/耗尽时停止
+                if (!parentState.getStatus().isActive() || parentState.isBudgetExceeded()) {
+                    sub.error = "父目标已停止（" + parentState.getStatus() + "）";
+                    break;
+                }
+                if (gs.isBudgetExceeded()) {
+                    gs.markBudgetLimited();
+                    break;
+                }
+                if (gs.isIterationExceeded(child.getCurrentIteration())) {
+                    break;
+                }
+
+                String prompt = promptBuilder.buildEffectivePrompt(child);
+                LoopExecutionResult result = runner.run(sub, prompt);
+                if (result == null) {
+                    break;
+                }
+
+                long tokens = result.getTokensUsed();
+                if (tokens > 0) {
+                    gs.recordRound(tokens);
+                    if (sub.cancelled) {
+                        // 拆分已结束（父目标已按报告继续），不再汇总
+                        break;
+                    }
+                    // 预算汇总到父目标
+                    parentState.addTokens(tokens);
+                }
+                child.updateLastExecution(result.getFinalResult() != null ? result.getFinalResult() : "ok");
+                child.incrementIteration();
+            }
+        } catch (Throwable e) {
+            sub.error = e.getMessage() != null ? e.getMessage() : e.toString();
+            LOG.warn("Goal fan-out sub-goal '{}' failed: {}", sub.sessionId, sub.error);
+        } finally {
+            sub.endMs = System.currentTimeMillis();
+            sub.running = false;
+        }
+    }
+
+    // ==================== 冲突检测 ====================
+
+    /**
+     * 冲突：同一文件被多个子目标改动，或补丁无法合并回工作区
+     *
+     * @return 文件 → 涉及的子目标序号
+     */
+    static Map<String, List<Integer>> detectConflicts(List<SubGoal> subs) {
+        Map<String, List<Integer>> owners = new TreeMap<>();
+        for (SubGoal sub : subs) {
+            for (String file : sub.touchedFiles) {
+                owners.computeIfAbsent(file, k -> new ArrayList<>()).add(sub.index);
+            }
+        }
+
+        Map<String, List<Integer>> conflicts = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : owners.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                conflicts.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (SubGoal sub : subs) {
+            if (sub.mergeError != null) {
+                String key = sub.patchFile != null ? "(patch) " + sub.patchFile : "(worktree) " + sub.worktreeRoot;
+                conflicts.put(key, Collections.singletonList(sub.index));
+            }
+        }
+        return conflicts;
+    }
+
+    /**
+     * 从工具调用参数中提取被改动的文件（write / edit）
+     */
+    static String touchedFile(String toolName, Map<String, Object> args, Path baseDir) {
+        if (args == null || !(TerminalTalent.TOOL_WRITE.equals(toolName) || TerminalTalent.TOOL_EDIT.equals(toolName))) {
+            return null;
+        }
+        Object path = args.get("file_path");
+        if (path == null) {
+            path = args.get("path");
+        }
+        if (path == null || String.valueOf(path).trim().isEmpty()) {
+            return null;
+        }
+
+        Path file = Paths.get(String.valueOf(path).trim());
+        if (baseDir != null) {
+            file = file.isAbsolute() ? file : baseDir.resolve(file);
+            file = file.normalize();
+            Path base = baseDir.toAbsolutePath().normalize();
+            if (file.startsWith(base)) {
+                file = base.relativize(file);
+            }
+        }
+        return file.toString().replace(File.separatorChar, '/');
+    }
+
+    // ==================== worktree ====================
+
+    /**
+     * 工作区当前内容的快照提交（包含未提交的改动与未跟踪文件，不改动真实的暂存区）
+     *
+     * @return 提交 id；仓库没有提交或 git 不可用时返回 null
+     */
+    static String snapshot(Path repoRoot) {
+        ProcessRunner.Result head = git(repoRoot, "rev-parse", "--verify", "HEAD");
+        if (head == null || head.exitCode != 0) {
+            LOG.warn("Goal fan-out: repository has no commit, sub-goals share the workspace");
+            return null;
+        }
+
+        Path tempIndex = null;
+        try {
+            // 复制真实暂存区（保留文件状态缓存），在副本上暂存全部改动
+            tempIndex = Files.createTempFile("soloncode-fanout-", ".index");
+            ProcessRunner.Result indexPath = git(repoRoot, "rev-parse", "--git-path", "index");
+            if (indexPath != null && indexPath.exitCode == 0) {
+                Path realIndex = repoRoot.resolve(indexPath.stdout.trim());
+                if (Files.exists(realIndex)) {
+                    Files.copy(realIndex, tempIndex, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Map<String, String> env = Collections.singletonMap("GIT_INDEX_FILE", tempIndex.toString());
+
+            ProcessRunner.Result add = git(repoRoot, env, "add", "-A");
+            ProcessRunner.Result tree = add != null && add.exitCode == 0 ? git(repoRoot, env, "write-tree") : null;
+            if (tree == null || tree.exitCode != 0) {
+                LOG.warn("Goal fan-out: snapshot of working tree failed, sub-goals share the workspace");
+                return null;
+            }
+            // 快照只是内部对象，不依赖用户是否配置了提交身份
+            Map<String, String> identity = new HashMap<>();
+            identity.put("GIT_AUTHOR_NAME", "soloncode");
+            identity.put("GIT_AUTHOR_EMAIL", "soloncode@localhost");
+            identity.put("GIT_COMMITTER_NAME", "soloncode");
+            identity.put("GIT_COMMITTER_EMAIL", "soloncode@localhost");
+            ProcessRunner.Result commit = git(repoRoot, identity, "commit-tree", tree.stdout.trim(),
+                    "-p", head.stdout.trim(), "-m", "goal fan-out snapshot");
+            if (commit == null || commit.exitCode != 0) {
+                LOG.warn("Goal fan-out: snapshot commit failed, sub-goals share the workspace");
+                return null;
+            }
+            return commit.stdout.trim();
+        } catch (IOException e) {
+            LOG.warn("Goal fan-out: snapshot of working tree failed: {}", e.getMessage());
+            return null;
+        } finally {
+            if (tempIndex != null) {
+                try {
+                    Files.deleteIfExists(tempIndex);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void createWorktree(Path repoRoot, String repoPrefix, String baseRev, SubGoal sub) {
+        Path dir = worktreeDir.resolve(sub.sessionId);
+        ProcessRunner.Result result = git(repoRoot, "worktree", "add", "--detach", dir.toString(), baseRev);
+        if (result == null || result.exitCode != 0) {
+            LOG.warn("Goal fan-out: worktree for '{}' unavailable, sharing workspace ({})",
+                    sub.sessionId, result != null ? result.stderr.trim() : "git not available");
+            return;
+        }
+        sub.worktreeRoot = dir;
+        sub.workDir = repoPrefix.isEmpty() ? dir : dir.resolve(repoPrefix);
+    }
+
+    /**
+     * 把子目标在 worktree 中的改动以补丁合并回工作区；无法合并时保留 worktree 与补丁文件
+     */
+    private void mergeWorktree(Path repoRoot, String baseRev, SubGoal sub) {
+        Path wt = sub.worktreeRoot;
+        git(wt, "add", "-A");
+        // 以 git 记录为准（与共享模式一致，路径相对工作区）；相对快照比较，只含子目标自身的改动
+        ProcessRunner.Result names = git(sub.workDir, "diff", "--cached", "--name-only", "--relative", baseRev);
+        if (names != null && names.exitCode == 0) {
+            sub.touchedFiles.clear();
+            for (String line : names.stdout.split("\n")) {
+                if (!line.trim().isEmpty()) {
+                    sub.touchedFiles.add(line.trim());
+                }
+            }
+        }
+        ProcessRunner.Result staged = git(wt, "diff", "--cached", "--quiet", baseRev);
+        if (staged != null && staged.exitCode == 0) {
+            // 无改动
+            removeWorktree(repoRoot, wt);
+            return;
+        }
+
+        ProcessRunner.Result diff = git(wt, "diff", "--cached", "--binary", baseRev);
+        if (diff == null || diff.exitCode != 0 || diff.truncated) {
+            sub.mergeError = "无法生成补丁";
+            return;
+        }
+
+        try {
+            Path patch = wt.getParent().resolve(sub.sessionId + ".patch");
+            Files.write(patch, diff.stdout.getBytes(StandardCharsets.UTF_8));
+            sub.patchFile = patch.toString();
+
+            ProcessRunner.Result check = git(repoRoot, "apply", "--check", patch.toString());
+            if (check == null || check.exitCode != 0) {
+                sub.mergeError = check != null ? check.stderr.trim() : "git apply 不可用";
+                return;
+            }
+            ProcessRunner.Result apply = git(repoRoot, "apply", patch.toString());
+            if (apply == null || apply.exitCode != 0) {
+                // 保留补丁与 worktree，改动不丢失
+                sub.mergeError = apply != null ? apply.stderr.trim() : "git apply 不可用";
+                return;
+            }
+            Files.deleteIfExists(patch);
+            sub.patchFile = null;
+            removeWorktree(repoRoot, wt);
+        } catch (IOException e) {
+            sub.mergeError = e.getMessage();
+        }
+    }
+
+    private void removeWorktree(Path repoRoot, Path wt) {
+        git(repoRoot, "worktree", "remove", "--force", wt.toString());
+    }
+
+    private static ProcessRunner.Result git(Path dir, String... args) {
+        return git(dir, Collections.emptyMap(), args);
+    }
+
+    private static ProcessRunner.Result git(Path dir, Map<String, String> env, String... args) {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.add("-c");
+        command.add("core.quotePath=false");
+        command.addAll(Arrays.asList(args));
+
+        try {
+            ProcessBuilder pb = new ProcessBuilder(command).directory(dir.toFile());
+            pb.environment().putAll(env);
+            return ProcessRunner.run(pb, GIT_TIMEOUT_MS, PATCH_MAX_BYTES);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // ==================== 数据 ====================
+
+    /**
+     * 子目标
+     */
+    public static class SubGoal {
+        /** 序号（从 1 开始） */
+        public final int index;
+        public final String sessionId;
+        public final LoopTask task;
+        /** 改动过的文件（相对工作目录） */
+        public final Set<String> touchedFiles = ConcurrentHashMap.newKeySet();
+
+        /** 独立工作目录（worktree 中对应工作区的目录）；null 表示共享工作区 */
+        volatile Path workDir;
+        volatile Path worktreeRoot;
+        volatile String error;
+        volatile String mergeError;
+        volatile String patchFile;
+        volatile long startMs;
+        volatile long endMs;
+        /** 子目标线程仍在执行（超时被取消后代理线程不一定立即停止） */
+        volatile boolean running;
+        /** 已被取消（父目标时间预算用尽或拆分被中断），执行器应尽快停止 */
+        volatile boolean cancelled;
+
+        SubGoal(int index, String sessionId, LoopTask task) {
+            this.index = index;
+            this.sessionId = sessionId;
+            this.task = task;
+        }
+
+        public Path getWorkDir() {
+            return workDir;
+        }
+
+        boolean isRunning() {
+            return running;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public Map<String, Object> toMap() {
+            GoalState gs = task.getGoalState();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("index", index);
+            map.put("objective", gs.getCondition());
+            map.put("status", gs.getStatus().name().toLowerCase());
+            map.put("rounds", task.getCurrentIteration());
+            map.put("consumedTokens", gs.getConsumedTokens());
+            map.put("durationMs", endMs > startMs ? endMs - startMs : 0);
+            map.put("summary", LoopPromptBuilder.truncateForPrompt(task.getLastResult(), 600));
+            map.put("touchedFiles", new TreeSet<>(touchedFiles));
+            if (error != null) {
+                map.put("error", error);
+            }
+            if (mergeError != null) {
+                map.put("mergeError", mergeError);
+                map.put("patchFile", patchFile);
+                map.put("worktree", worktreeRoot != null ? worktreeRoot.toString() : null);
+            }
+            return map;
+        }
+    }
+
+    /**
+     * 拆分报告（合并后的子目标结果 + 冲突）
+     */
+    public static class Report {
+        public final String parentTaskId;
+        public final List<SubGoal> subGoals;
+        /** 冲突文件 → 涉及的子目标序号 */
+        public final Map<String, List<Integer>> conflicts;
+        public final long durationMs;
+        /** 冲突已提示父目标复核（完成前只拦截一次） */
+        private volatile boolean conflictsReviewed;
+
+        Report(String parentTaskId, List<SubGoal> subGoals, Map<String, List<Integer>> conflicts, long durationMs) {
+            this.parentTaskId = parentTaskId;
+            this.subGoals = subGoals;
+            this.conflicts = conflicts;
+            this.durationMs = durationMs;
+        }
+
+        public int getAchievedCount() {
+            int count = 0;
+            for (SubGoal sub : subGoals) {
+                if (sub.task.getGoalState().getStatus() == GoalState.Status.ACHIEVED) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 是否有未复核的冲突（调用后视为已复核）
+         */
+        public synchronized boolean takeUnreviewedConflicts() {
+            if (conflicts.isEmpty() || conflictsReviewed) {
+                return false;
+            }
+            conflictsReviewed = true;
+            return true;
+        }
+
+        public long getConsumedTokens() {
+            long total = 0;
+            for (SubGoal sub : subGoals) {
+                total += sub.task.getGoalState().getConsumedTokens();
+            }
+            return total;
+        }
+    }
+
+    // ==================== 默认执行器 ====================
+
+    /**
+     * 基于主代理的子会话执行器：沿用父会话的模型选择，工作目录为 worktree 或父会话目录
+     */
+    public static class AgentRoundRunner implements RoundRunner {
+        private final HarnessEngine engine;
+        private final String parentSessionId;
+
+        public AgentRoundRunner(HarnessEngine engine, String parentSessionId) {
+            this.engine = engine;
+            this.parentSessionId = parentSessionId;
+        }
+
+        @Override
+        public LoopExecutionResult run(SubGoal sub, String prompt) {
+            AgentSession parentSession = engine.getSession(parentSessionId);
+            AgentSession session = engine.getSession(sub.sessionId);
+
+            // 模型组：每个子目标按自身会话路由（并行子目标可分散到不同成员）
+            String model = ModelRouter.getInstance().route(
+                    parentSession.getContext().getAs(HarnessEngine.CTX_MODEL_SELECTED), sub.sessionId, engine::hasModel);
+            String parentCwd = String.valueOf(parentSession.attrs().getOrDefault(HarnessEngine.ATTR_CWD, engine.getWorkspace()));
+            String cwd = sub.workDir != null ? sub.workDir.toString() : parentCwd;
+            Path baseDir = Paths.get(cwd);
+
+            GoalTokenMeter meter = GoalTokenMeter.forRound(sub.task.getGoalState());
+            if (meter != null) {
+                session.attrs().put(GoalTokenMeter.ATTR, meter);
+            }
+            session.attrs().put("_loop_last_has_tool_calls", false);
+
+            AtomicReference<String> finalAnswer = new AtomicReference<>("");
+            AtomicReference<Metrics> metricsRef = new AtomicReference<>();
+            try {
+                engine.getMainAgent().prompt(Prompt.of(prompt))
+                        .session(session)
+                        .options(o -> {
+                            o.chatModel(engine.getModelOrDefInstance(model));
+                            o.toolContextPut(HarnessEngine.ATTR_CWD, cwd);
+                        })
+                        .stream()
+                        .doOnNext(chunk -> {
+                            if (sub.isCancelled()) {
+                                // 终止流，不再继续工具调用
+                                throw new BudgetExceededException("父目标时间预算已用尽，子目标已取消");
+                            }
+                            if (chunk instanceof ReActChunk) {
+                                ReActChunk react = (ReActChunk) chunk;
+                                if (Assert.isNotEmpty(react.getContent())) {
+                                    finalAnswer.set(react.getContent());
+                                }
+                                if (react.getTrace() != null && react.getTrace().getMetrics() != null) {
+                                    metricsRef.set(react.getTrace().getMetrics());
+                                }
+                            } else if (chunk instanceof ObservationChunk) {
+                                ObservationChunk observation = (ObservationChunk) chunk;
+                                if (observation.getError() == null
+                                        && Assert.isNotEmpty(observation.getToolName())
+                                        && !GoalTalent.isGoalTool(observation.getToolName())) {
+                                    session.attrs().put("_loop_last_has_tool_calls", true);
+                                    String file = touchedFile(observation.getToolName(), observation.getArgs(), baseDir);
+                                    if (file != null) {
+                                        sub.touchedFiles.add(file);
+                                    }
+                                }
+                            } else if (chunk instanceof ThoughtChunk) {
+                                ReActTrace trace = ((ThoughtChunk) chunk).getTrace();
+                                if (trace != null && trace.getMetrics() != null) {
+                                    metricsRef.set(trace.getMetrics());
+                                    GoalTokenMeter.check(session, trace.getMetrics().getTotalTokens(), 0);
+                                }
+                            }
+                        })
+                        .blockLast();
+            } catch (BudgetExceededException e) {
+                LOG.info("Goal fan-out sub-goal '{}' stopped: {}", sub.sessionId, e.getMessage());
+            } finally {
+                session.attrs().remove(GoalTokenMeter.ATTR);
+            }
+
+            Metrics metrics = metricsRef.get();
+            long tokens = metrics != null ? metrics.getTotalTokens() : 0;
+            if (meter != null) {
+                tokens = Math.max(tokens, meter.getRoundTokens());
+            }
+            boolean hasToolCalls = Boolean.TRUE.equals(session.attrs().get("_loop_last_has_tool_calls"));
+            LoopExecutionResult result = LoopExecutionResult.fromExecution(hasToolCalls,
+                    tokens > 0 ? tokens : Math.max(1, TokenAccounting.getInstance().count(model, finalAnswer.get())), finalAnswer.get());
+            return metrics != null
+                    ? result.withTokenSplit(metrics.getPromptTokens(), metrics.getCompletionTokens())
+                    : result;
+        }
+    }
+}
@@ -16,6 +16,10 @@
 package org.noear.solon.codecli.command.builtin;
 
 import org.noear.snack4.ONode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -48,6 +52,10 @@ public class GoalState {
     private volatile long maxTokens;
     private volatile int maxIterations;
     private long startEpochMs;
+    /** 每轮实际消耗的 token（含预算收尾轮，最多保留最近 {@link #MAX_ROUND_HISTORY} 轮） */
+    private final List<Long> roundTokens = new ArrayList<>();
+
+    private static final int MAX_ROUND_HISTORY = 100;
 
     // ===== 静态配置（由 LoopScheduler 在启动时通过 configure() 设置） =====
     private static volatile int budgetWarningPercent = 70;
@@ -107,10 +115,22 @@ public class GoalState {
         }
     }
 
-    public void addTokens(long tokens) {
+    public synchronized void addTokens(long tokens) {
         this.consumedTokens += tokens;
     }
 
+    /**
+     * 记录一轮的实际消耗（累计到 consumedTokens，并保留逐轮明细用于报告与预测）
+     */
+    public synchronized void recordRound(long tokens) {
+        if (tokens <= 0) return;
+        addTokens(tokens);
+        roundTokens.add(tokens);
+        if (roundTokens.size() > MAX_ROUND_HISTORY) {
+            roundTokens.remove(0);
+        }
+    }
+
     public boolean isBudgetExceeded() {
         return maxTokens > 0 && consumedTokens >= maxTokens;
     }
@@ -125,6 +145,20 @@ public class GoalState {
         return (double) consumedTokens / maxTokens >= threshold;
     }
 
+    /** 临界线对应的 token 数（无预算时为 0） */
+    public long getCriticalTokens() {
+        if (maxTokens <= 0) return 0;
+        return maxTokens * budgetCriticalPercent / 100;
+    }
+
+    /**
+     * 按已记录的单轮峰值预测：再执行一轮是否会超出预算
+     */
+    public boolean isNextRoundOverBudget() {
+        if (maxTokens <= 0) return false;
+        return consumedTokens + getPeakRoundTokens() >= maxTokens;
+    }
+
     public boolean isBudgetWarning() {
         if (maxTokens <= 0) return false;
         if (isBudgetCritical()) return false;
@@ -155,6 +189,15 @@ public class GoalState {
     public int getMaxIterations() { return maxIterations; }
     public void setMaxIterations(int maxIterations) { this.maxIterations = Math.max(0, maxIterations); }
     public long getStartEpochMs() { return startEpochMs; }
+    public synchronized List<Long> getRoundTokens() { return Collections.unmodifiableList(new ArrayList<>(roundTokens)); }
+    public synchronized long getLastRoundTokens() { return roundTokens.isEmpty() ? 0 : roundTokens.get(roundTokens.size() - 1); }
+    public synchronized long getPeakRoundTokens() {
+        long peak = 0;
+        for (Long t : roundTokens) {
+            peak = Math.max(peak, t);
+        }
+        return peak;
+    }
 
     // ===== 序列化 =====
 
@@ -167,6 +210,10 @@ public class GoalState {
         node.set("maxTokens", maxTokens);
         node.set("maxIterations", maxIterations);
         node.set("startEpochMs", startEpochMs);
+        ONode roundsNode = node.getOrNew("roundTokens").asArray();
+        for (Long t : getRoundTokens()) {
+            roundsNode.add(t);
+        }
         return node;
     }
 
@@ -180,6 +227,11 @@ public class GoalState {
         gs.maxIterations = node.getOrNull("maxIterations") != null
                 ? node.get("maxIterations").getInt() : 0;
         gs.startEpochMs = node.get("startEpochMs").getLong();
+        if (node.getOrNull("roundTokens") != null) {
+            for (ONode t : node.get("roundTokens").getArray()) {
+                gs.roundTokens.add(t.getLong());
+            }
+        }
         return gs;
     }
 }
@@ -26,13 +26,18 @@ import org.noear.solon.annotation.Param;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Goal 工具 — 模型侧 Goal 生命周期控制
  *
- * <p>提供两个工具（Goal 的创建由 /loop goal: 命令驱动，模型侧只读+更新）：
+ * <p>提供三个工具（Goal 的创建由 /loop goal: 命令驱动，模型侧只读+更新+拆分）：
  * <ul>
  *   <li>{@code goal_get} — 查询当前 goal 状态</li>
  *   <li>{@code goal_update} — 标记 complete 或 blocked（模型驱动）</li>
+ *   <li>{@code goal_fanout} — 把可分解的目标拆成独立子目标并行执行（见 {@link GoalFanOut}）</li>
  * </ul>
  *
  * <p>动态控制：{@link #isSupported(Prompt)} 仅在存在活跃 goal 时返回 true，
@@ -93,6 +98,10 @@ public class GoalTalent extends AbsTalent {
             goalNode.set("maxTokens", gs.getMaxTokens());
         }
         goalNode.set("budgetExceeded", gs.isBudgetExceeded());
+        if (gs.getLastRoundTokens() > 0) {
+            goalNode.set("lastRoundTokens", gs.getLastRoundTokens());
+            goalNode.set("peakRoundTokens", gs.getPeakRoundTokens());
+        }
 
         // ★ 暴露时间预算信息，让 AI 感知 maxDurationMs 限
         Long maxDurationMs = task.getMaxDurationMs();
@@ -168,6 +177,14 @@ public class GoalTalent extends AbsTalent {
                                 + "请先完成或用 todowrite 更新清单状态后再调用 goal_update(complete)。");
             }
 
+            // 并行拆分后存在冲突（多个子目标改动同一文件 / 补丁未合并）：完成前要求复核一次
+            GoalFanOut.Report fanOutReport = scheduler.getFanOutReport(task.getId());
+            if (fanOutReport != null && fanOutReport.takeUnreviewedConflicts()) {
+                return errJson("FANOUT_CONFLICT",
+                        "目标尚未完成：并行子目标存在冲突 " + fanOutReport.conflicts.keySet()
+                                + "。请检查这些文件的最终内容（必要时合并补丁并重新验证），确认无误后再调用 goal_update(complete)。");
+            }
+
             if (scheduler.getLoopConfig().isValidatorEnabledOrDefault()) {
                 GoalValidator validator = ValidatorFactory.forCondition(gs.getCondition());
                 GoalValidator.ValidationResult vr = validator.validate(gs.getCondition(), __sessionId);
@@ -229,6 +246,69 @@ public class GoalTalent extends AbsTalent {
                 "未知状态 '" + status + "'. 仅支持 'complete' 或 'blocked'.");
     }
 
+    /**
+     * 并行拆分：子目标在各自子会话中并行推进，预算汇总到当前目标
+     */
+    @ToolMapping(name = "goal_fanout",
+            description = "把当前目标拆分为相互独立的子目标并行执行（如逐个修复多个模块）。" +
+                    "阻塞直到所有子目标结束，返回各子目标的状态、摘要、改动文件与冲突。" +
+                    "子目标之间不能有依赖；汇总结果并验证后再调用 goal_update(complete)。")
+    public String goal_fanout(
+            @Param(name = "subgoals", description = "子目标列表，每行一个（2~16 个），每个子目标应可独立完成与验证") String subgoals,
+            @Param(name = "isolate", description = "是否为每个子目标创建独立的 git worktree（默认 false，共享工作区）", required = false) Boolean isolate,
+            String __sessionId,
+            String __cwd) {
+
+        if (__sessionId == null) {
+            return errJson("NO_SESSION", "无活跃会话");
+        }
+        if (GoalFanOut.isChildSession(__sessionId)) {
+            return errJson("NESTED_FANOUT", "子目标内不能再拆分");
+        }
+
+        LoopTask task = scheduler.findActiveGoalInSession(__sessionId);
+        if (task == null || !task.getGoalState().getStatus().isActive()) {
+            return errJson("NO_GOAL", "未找到活跃目标");
+        }
+
+        List<String> objectives = new ArrayList<>();
+        if (subgoals != null) {
+            for (String line : subgoals.split("\n")) {
+                String objective = line.trim().replaceFirst("^([-*]|\\d+[.)])\\s+", "");
+                if (!objective.isEmpty()) {
+                    objectives.add(objective);
+                }
+            }
+        }
+        if (objectives.size() < 2 || objectives.size() > GoalFanOut.MAX_SUB_GOALS) {
+            return errJson("INVALID_PARAMETER",
+                    "subgoals 需要 2~" + GoalFanOut.MAX_SUB_GOALS + " 个子目标（每行一个），当前 " + objectives.size() + " 个");
+        }
+        if (task.getGoalState().isBudgetExceeded()) {
+            return errJson("BUDGET_EXCEEDED", "目标 Token 预算已耗尽，无法拆分");
+        }
+
+        GoalFanOut.Report report = scheduler.fanOutGoal(__sessionId, objectives, Boolean.TRUE.equals(isolate), __cwd);
+
+        ONode root = new ONode(Options.of(Feature.Write_PrettyFormat));
+        root.set("taskId", task.getId());
+        root.set("durationMs", report.durationMs);
+        root.set("achieved", report.getAchievedCount());
+        root.set("total", report.subGoals.size());
+        root.set("subGoalTokens", report.getConsumedTokens());
+        root.set("consumedTokens", task.getGoalState().getConsumedTokens());
+        ONode subs = root.getOrNew("subGoals").asArray();
+        for (GoalFanOut.SubGoal sub : report.subGoals) {
+            subs.add(ONode.ofBean(sub.toMap()));
+        }
+        ONode conflicts = root.getOrNew("conflicts");
+        for (Map.Entry<String, List<Integer>> entry : report.conflicts.entrySet()) {
+            conflicts.set(entry.getKey(), entry.getValue());
+        }
+
+        return root.toJson();
+    }
+
     // ===== 辅助方法 =====
 
     /**
@@ -245,6 +325,12 @@ public class GoalTalent extends AbsTalent {
         } else {
             sb.append("Token usage: ").append(gs.getConsumedTokens()).append(" tokens. ");
         }
+        List<Long> rounds = gs.getRoundTokens();
+        if (!rounds.isEmpty()) {
+            sb.append("Rounds: ").append(rounds.size())
+              .append(" (avg ").append(gs.getConsumedTokens() / rounds.size())
+              .append(", peak ").append(gs.getPeakRoundTokens()).append("). ");
+        }
         long elapsedSec = (System.currentTimeMillis() - gs.getStartEpochMs()) / 1000;
         if (elapsedSec >= 60) {
             sb.append("Duration: ").append(elapsedSec / 60).append("m ").append(elapsedSec % 60).append("s.");
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.noear.solon.ai.agent.AgentSession;
+import org.noear.solon.codecli.util.BudgetExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Goal 轮内 token 计量 — 在流式执行过程中实时检查预算，而非只在轮与轮之间检查。
+ *
+ * <p>调度器在每轮 Goal 执行前把计量器放入会话属性 {@link #ATTR}；各端（Web/桌面/CLI）在收到
+ * 流式事件时调用 {@link #check(AgentSession, long, long)} 上报本轮已消耗与即将发送的上下文大小：</p>
+ *
+ * <ul>
+ *   <li>越过临界线（budgetCriticalPercent）：记录标记，本轮正常结束后由调度器按单轮峰值判断是否提前收尾</li>
+ *   <li>达到硬上限（含即将发送的上下文）：抛出 {@link BudgetExceededException} 终止流，下一次模型调用不再发出</li>
+ * </ul>
+ *
+ * <p>预算收尾轮使用 {@link #forWrapUp(GoalState)}，在预算之外保留少量配额用于总结。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class GoalTokenMeter {
+    private static final Logger LOG = LoggerFactory.getLogger(GoalTokenMeter.class);
+
+    /** 会话属性名 */
+    public static final String ATTR = "_loop_token_meter";
+
+    /** 收尾轮额外配额（占预算的百分比，且不少于 {@link #WRAP_UP_MIN_ALLOWANCE}） */
+    private static final int WRAP_UP_ALLOWANCE_PERCENT = 10;
+    private static final long WRAP_UP_MIN_ALLOWANCE = 8_000;
+
+    private final String goalId;
+    /** 本轮开始前已消耗 */
+    private final long baseTokens;
+    /** 临界线（0 表示不检查） */
+    private final long criticalTokens;
+    /** 硬上限 */
+    private final long limitTokens;
+
+    private volatile long roundTokens;
+    private volatile boolean critical;
+    private volatile boolean cancelled;
+
+    GoalTokenMeter(String goalId, long baseTokens, long criticalTokens, long limitTokens) {
+        this.goalId = goalId;
+        this.baseTokens = baseTokens;
+        this.criticalTokens = criticalTokens;
+        this.limitTokens = limitTokens;
+    }
+
+    /**
+     * 常规轮计量器；无 token 预算时返回 null
+     */
+    public static GoalTokenMeter forRound(GoalState gs) {
+        if (gs.getMaxTokens() <= 0) {
+            return null;
+        }
+        return new GoalTokenMeter(gs.getId(), gs.getConsumedTokens(), gs.getCriticalTokens(), gs.getMaxTokens());
+    }
+
+    /**
+     * 收尾轮计量器：预算之外保留总结配额，不再检查临界线；无 token 预算时返回 null
+     */
+    public static GoalTokenMeter forWrapUp(GoalState gs) {
+        if (gs.getMaxTokens() <= 0) {
+            return null;
+        }
+        long allowance = Math.max(WRAP_UP_MIN_ALLOWANCE, gs.getMaxTokens() * WRAP_UP_ALLOWANCE_PERCENT / 100);
+        long limit = Math.max(gs.getMaxTokens(), gs.getConsumedTokens()) + allowance;
+        return new GoalTokenMeter(gs.getId(), gs.getConsumedTokens(), 0, limit);
+    }
+
+    /**
+     * 各端上报本轮用量；达到硬上限时抛出异常以终止流（会话无计量器时忽略）
+     *
+     * @param session       会话
+     * @param roundTokens   本轮已消耗（流式累计值）
+     * @param pendingTokens 即将发送的上下文大小（未知时为 0）
+     */
+    public static void check(AgentSession session, long roundTokens, long pendingTokens) {
+        Object meter = session.attrs().get(ATTR);
+        if (meter instanceof GoalTokenMeter && ((GoalTokenMeter) meter).update(roundTokens, pendingTokens)) {
+            throw new BudgetExceededException("目标 Token 预算已耗尽，本轮已停止（已消耗 "
+                    + ((GoalTokenMeter) meter).getTotalTokens() + " / " + ((GoalTokenMeter) meter).limitTokens + "）");
+        }
+    }
+
+    /**
+     * 更新用量
+     *
+     * @return true 表示已达到硬上限，应终止本轮
+     */
+    synchronized boolean update(long roundTokens, long pendingTokens) {
+        if (cancelled) {
+            return true;
+        }
+        if (roundTokens > this.roundTokens) {
+            this.roundTokens = roundTokens;
+        }
+
+        long total = baseTokens + this.roundTokens;
+        if (!critical && criticalTokens > 0 && total >= criticalTokens) {
+            critical = true;
+            LOG.info("Goal '{}' crossed critical budget mid-round ({} >= {})", goalId, total, criticalTokens);
+        }
+
+        if (total + Math.max(0, pendingTokens) >= limitTokens) {
+            cancelled = true;
+            LOG.info("Goal '{}' hit token limit mid-round ({} + {} pending >= {}), cancelling stream",
+                    goalId, total, pendingTokens, limitTokens);
+        }
+        return cancelled;
+    }
+
+    /** 本轮已消耗（实时值） */
+    public long getRoundTokens() {
+        return roundTokens;
+    }
+
+    /** 目标累计消耗（含本轮实时值） */
+    public long getTotalTokens() {
+        return baseTokens + roundTokens;
+    }
+
+    /** 本轮是否越过临界线 */
+    public boolean isCritical() {
+        return critical;
+    }
+
+    /** 本轮是否因硬上限被终止 */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -16,6 +16,7 @@
 package org.noear.solon.codecli.command.builtin;
 
 import lombok.Getter;
+import org.noear.solon.codecli.util.TokenAccounting;
 
 /**
  * Loop 任务单轮执行结果。
@@ -34,6 +35,8 @@ public class LoopExecutionResult {
     private final boolean completed;
     private final boolean hasToolCalls;   // R6: 真实工具调用标记
     private final long tokensUsed;        // G2: 本轮回合 token 消耗
+    private long promptTokens;            // 本轮输入 token（各端上报 metrics 时可用）
+    private long completionTokens;        // 本轮输出 token
 
     private final String finalResult;
     private final String errorMessage;
@@ -55,7 +58,7 @@ public class LoopExecutionResult {
     public static LoopExecutionResult fromText(String text) {
         boolean hasToolCalls = text != null && text.length() > 20
                 && !text.startsWith("error:") && !text.equals("ok");
-        long tokens = text != null ? Math.max(1, text.length() / 4) : 0;
+        long tokens = text != null ? Math.max(1, TokenAccounting.getInstance().count(text)) : 0;
         return new LoopExecutionResult(
                 true,
                 text != null,
@@ -82,6 +85,15 @@ public class LoopExecutionResult {
                 null);
     }
 
+    /**
+     * 附加输入/输出 token 构成
+     */
+    LoopExecutionResult withTokenSplit(long promptTokens, long completionTokens) {
+        this.promptTokens = promptTokens;
+        this.completionTokens = completionTokens;
+        return this;
+    }
+
     public static LoopExecutionResult submittedOnly() {
         return new LoopExecutionResult(true, false, false, 0, null, null);
     }
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 循环任务执行引擎：全局有界工作池 + 会话内串行 + 跨会话优先级排队。
+ *
+ * <p>调度器（IJobManager 定时、手动触发、Goal 续行、异常重试）只负责把触发提交到这里：
+ * <ul>
+ *   <li>同时执行的任务数不超过上限，避免大量任务同时打满模型服务</li>
+ *   <li>同一会话同一时刻只执行一个任务；会话繁忙（用户正在对话）时触发保留在队列中，而不是丢弃</li>
+ *   <li>同一任务在队列中只保留一个触发（合并），并取较高的优先级</li>
+ *   <li>出队按 优先级 + 等待时长老化 选择，低优先级任务不会被长期饿死</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class LoopExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(LoopExecutor.class);
+
+    /** 定时调度的触发 */
+    public static final int PRIORITY_SCHEDULED = 0;
+    /** Goal 续行与异常重试 */
+    public static final int PRIORITY_CONTINUATION = 1;
+    /** 用户手动触发 */
+    public static final int PRIORITY_MANUAL = 2;
+
+    /** 有排队任务时，重新检查繁忙会话的间隔 */
+    private static final long RECHECK_INTERVAL_MS = 1_000;
+
+    private final int maxConcurrent;
+    private final long agingMs;
+    private final Predicate<String> busyChecker;
+
+    private final ExecutorService workers;
+    private final ScheduledExecutorService ticker;
+
+    /** 排队中的触发：taskKey → Job（每个任务最多一个） */
+    private final Map<String, Job> pending = new LinkedHashMap<>();
+    /** 正在执行任务的会话 */
+    private final Set<String> runningSessions = new HashSet<>();
+
+    // 指标
+    private long submitted;
+    private long coalesced;
+    private long completed;
+    private long failed;
+    private long totalLagMs;
+    private long maxLagMs;
+    private long totalRunMs;
+    private long maxRunMs;
+
+    /**
+     * @param maxConcurrent 全局并发上限
+     * @param agingMs       排队每等待该时长，优先级 +1
+     * @param busyChecker   会话繁忙检测（繁忙时不出队）
+     */
+    public LoopExecutor(int maxConcurrent, long agingMs, Predicate<String> busyChecker) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.agingMs = Math.max(1, agingMs);
+        this.busyChecker = busyChecker;
+
+        this.workers = Executors.newFixedThreadPool(this.maxConcurrent, r -> {
+            Thread t = new Thread(r, "loop-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "loop-dispatcher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.ticker.scheduleWithFixedDelay(this::dispatch, RECHECK_INTERVAL_MS, RECHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 提交一次触发
+     *
+     * @param sessionId 会话
+     * @param taskId    任务（同一任务的排队触发会合并）
+     * @param priority  优先级（越大越先执行）
+     * @param action    执行体
+     */
+    public void submit(String sessionId, String taskId, int priority, Runnable action) {
+        String key = sessionId + "/" + taskId;
+        synchronized (this) {
+            submitted++;
+            Job existing = pending.get(key);
+            if (existing != null) {
+                // 已在排队：合并触发，保留较早的入队时间与较高的优先级
+                existing.priority = Math.max(existing.priority, priority);
+                coalesced++;
+            } else {
+                pending.put(key, new Job(key, sessionId, priority, action));
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * 移除任务的排队触发（任务被删除或停止时）
+     */
+    public synchronized void cancel(String sessionId, String taskId) {
+        pending.remove(sessionId + "/" + taskId);
+    }
+
+    /**
+     * 执行指标快照
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        long now = System.currentTimeMillis();
+        long oldestWait = 0;
+        for (Job job : pending.values()) {
+            oldestWait = Math.max(oldestWait, now - job.enqueuedAt);
+        }
+
+        long finished = completed + failed;
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("maxConcurrent", maxConcurrent);
+        metrics.put("running", runningSessions.size());
+        metrics.put("queueDepth", pending.size());
+        metrics.put("oldestWaitMs", oldestWait);
+        metrics.put("submitted", submitted);
+        metrics.put("coalesced", coalesced);
+        metrics.put("completed", completed);
+        metrics.put("failed", failed);
+        metrics.put("avgLagMs", finished > 0 ? totalLagMs / finished : 0);
+        metrics.put("maxLagMs", maxLagMs);
+        metrics.put("avgRunMs", finished > 0 ? totalRunMs / finished : 0);
+        metrics.put("maxRunMs", maxRunMs);
+        return metrics;
+    }
+
+    /**
+     * 出队：在并发上限内，选择可执行会话中有效优先级最高的触发
+     */
+    void dispatch() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                if (runningSessions.size() >= maxConcurrent || pending.isEmpty()) {
+                    return;
+                }
+                job = pickNext(System.currentTimeMillis());
+                if (job == null) {
+                    return;
+                }
+                pending.remove(job.key);
+                runningSessions.add(job.sessionId);
+            }
+
+            Job started = job;
+            try {
+                workers.execute(() -> run(started));
+            } catch (Throwable e) {
+                LOG.warn("Loop worker rejected task '{}': {}", started.key, e.getMessage());
+                release(started.sessionId);
+                return;
+            }
+        }
+    }
+
+    private Job pickNext(long now) {
+        Job best = null;
+        long bestScore = Long.MIN_VALUE;
+        Set<String> busySessions = new HashSet<>();
+
+        for (Job job : pending.values()) {
+            if (runningSessions.contains(job.sessionId) || busySessions.contains(job.sessionId)) {
+                continue;
+            }
+            if (busyChecker != null && busyChecker.test(job.sessionId)) {
+                busySessions.add(job.sessionId);
+                continue;
+            }
+
+            long score = effectivePriority(job, now);
+            // 同分时先入队者优先（pending 按入队顺序迭代）
+            if (score > bestScore) {
+                best = job;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    long effectivePriority(Job job, long now) {
+        return job.priority + (now - job.enqueuedAt) / agingMs;
+    }
+
+    private void run(Job job) {
+        long start = System.currentTimeMillis();
+        boolean ok = false;
+        try {
+            job.action.run();
+            ok = true;
+        } catch (Throwable e) {
+            LOG.error("Loop task '{}' failed in worker: {}", job.key, e.getMessage());
+        } finally {
+            long end = System.currentTimeMillis();
+            synchronized (this) {
+                long lag = start - job.enqueuedAt;
+                long runMs = end - start;
+                if (ok) {
+                    completed++;
+                } else {
+                    failed++;
+                }
+                totalLagMs += lag;
+                maxLagMs = Math.max(maxLagMs, lag);
+                totalRunMs += runMs;
+                maxRunMs = Math.max(maxRunMs, runMs);
+            }
+            release(job.sessionId);
+        }
+    }
+
+    private void release(String sessionId) {
+        synchronized (this) {
+            runningSessions.remove(sessionId);
+        }
+        dispatch();
+    }
+
+    static class Job {
+        final String key;
+        final String sessionId;
+        final Runnable action;
+        final long enqueuedAt = System.currentTimeMillis();
+        int priority;
+
+        Job(String key, String sessionId, int priority, Runnable action) {
+            this.key = key;
+            this.sessionId = sessionId;
+            this.priority = priority;
+            this.action = action;
+        }
+    }
+}
@@ -27,6 +27,8 @@ package org.noear.solon.codecli.command.builtin;
  *   <li>剩余 &lt; 15% → 极简单段落</li>
  * </ul>
  *
+ * <p>引导词作为稳定前缀在前，每轮变化的状态（预算、轮次、上一轮摘要等）放在末尾，以提高前缀缓存命中率。
+ *
  * @author noear
  * @since 3.9.3
  */
@@ -43,6 +45,10 @@ public class LoopPromptBuilder {
     /**
      * 构建完整的 effective prompt（goal 引导词注入）
      *
+     * <p>结构为「稳定前缀 + 本轮状态」：长引导词只取决于目标条件与引导模式，各轮逐字节一致，
+     * 便于模型服务端的前缀缓存命中；迭代次数、预算、上一轮摘要、停滞与错误提示等变化内容
+     * 统一放在末尾的小块中（见 {@link #buildStablePrefix(LoopTask)}、{@link #buildRoundState(LoopTask)}）。
+     *
      * <p>根据预算剩余自动切换精简模式：
      * <ul>
      *   <li>预算 &gt; 30%：完整 7 章节</li>
@@ -51,6 +57,19 @@ public class LoopPromptBuilder {
      * </ul>
      */
     public String buildEffectivePrompt(LoopTask task) {
+        if (!task.isGoalMode()) {
+            return task.getPrompt();
+        }
+
+        return buildStablePrefix(task) + buildRoundState(task);
+    }
+
+    /**
+     * 构建稳定前缀：原始提示词 + 当前模式的引导词
+     *
+     * <p>只取决于提示词、目标条件与引导模式；同一模式下各轮逐字节一致，仅在预算跨越 30% / 15% 时变化。
+     */
+    public String buildStablePrefix(LoopTask task) {
         String prompt = task.getPrompt();
 
         if (!task.isGoalMode()) {
@@ -58,114 +77,76 @@ public class LoopPromptBuilder {
         }
 
         GoalState gs = task.getGoalState();
-        int iter = task.getCurrentIteration();
-        boolean isFirstIter = iter == 0;
-
-        String budgetInfo = buildBudgetInfo(gs) + buildIterationInfo(task, gs);
-
-        // 预算感知精简模式
-        double budgetRatio = budgetRatio(gs);
-
-        if (budgetRatio < 0.15) {
-            return buildMinimalPrompt(prompt, gs, budgetInfo);
-        } else if (budgetRatio < 0.30) {
-            return buildCompactPrompt(prompt, gs, task, budgetInfo, iter, isFirstIter);
+        switch (modeOf(gs)) {
+            case MINIMAL:
+                return prompt + buildMinimalGuidance(gs);
+            case COMPACT:
+                return prompt + buildCompactGuidance(gs);
+            default:
+                return prompt + buildFullGuidance(gs);
         }
+    }
 
-        // 完整模式（7 章节）
-        StringBuilder sb = new StringBuilder();
-        sb.append("\n\n");
-        sb.append("--- 目标延续 (Goal Continuation) ---\n");
-        sb.append("你正在朝向以下目标工作: ").append(gs.getCondition()).append("\n");
-        sb.append("你的目标是完成此任务。这是持续性的工作 — 每一轮执行都是同一个目标的延续。\n");
-        sb.append("\n");
-
-        // Chapter 3: Work from evidence
-        sb.append("--- 证据驱动 (Evidence-Based) ---\n");
-        sb.append("不要依赖记忆或假设来判断当前状态。在采取行动前，先检查实际的文件内容、\n");
-        sb.append("测试结果、构建输出等客观证据。你的判断必须基于最新的事实，而非上轮的记忆。\n");
-        sb.append("\n");
+    /**
+     * 构建本轮状态块（追加在稳定前缀之后）：停滞与错误提示、上一轮摘要、预算与轮次信息
+     *
+     * @return 状态块；无任何状态时为空串
+     */
+    public String buildRoundState(LoopTask task) {
+        if (!task.isGoalMode()) {
+            return "";
+        }
 
-        // Chapter 5: Fidelity
-        sb.append("--- 忠于目标 (Goal Fidelity) ---\n");
-        sb.append("不要缩小目标范围或降低完成标准。目标中的每一项都必须完成。\n");
-        sb.append("不要留占位符、TODO 或 stub。如果某个部分很难，要投入精力解决，而非跳过。\n");
-        sb.append("\n");
+        GoalState gs = task.getGoalState();
+        Mode mode = modeOf(gs);
+        int iter = task.getCurrentIteration();
+        boolean isFirstIter = iter == 0;
 
-        // Chapter 6: Completion audit
-        sb.append("--- 审计完成 (Audit Check) ---\n");
-        sb.append("在继续之前，请完成以下步骤：\n");
-        sb.append("1. 回顾：目标是什么？检查已有的进展。\n");
-        sb.append("2. 核查：针对目标中的每一项，通过运行测试、检查文件等客观手段验证其是否已完成。\n");
-        sb.append("   不要仅凭推理 — 必须有权威证据（测试通过、构建成功、文件存在且内容正确）。\n");
-        sb.append("   对创建、修改、运行类目标，至少完成一次实际工具操作；goal_get/goal_update 不算执行证据。\n");
-        sb.append("3. 如果你已完成所有项，说明你是如何实现每一项的，\n");
-        sb.append("   然后调用 goal_update(complete) 标记完成。\n");
-        sb.append("\n");
+        StringBuilder sb = new StringBuilder();
 
-        // Chapter 7: Blocked audit
-        sb.append("--- 阻塞审计 (Blocked Audit) ---\n");
-        sb.append("如果你遇到阻碍（同一困境尝试了 3 次），调用 goal_update(blocked) 声明阻塞。\n");
-        sb.append("不要因为工作困难、进展慢或不确定就声明阻塞 — 仅当同一问题反复尝试仍无法解决时才使用。\n");
-        sb.append("resume 后阻塞计数重置为 0。\n");
-        sb.append("\n");
+        if (mode == Mode.FULL) {
+            // 停滞质疑（运行时兜底，仅触发时注入）
+            if (task.getStagnationCount() >= stagnationThreshold) {
+                sb.append("--- 进展质疑 (Stagnation Check) ---\n");
+                sb.append("系统检测到最近 ").append(task.getStagnationCount())
+                        .append(" 轮执行未产生实质性进展。\n");
+                sb.append("请认真评估：你是否在同一问题上反复尝试但无法推进？\n");
+                sb.append("如果是，请调用 goal_update(blocked) 声明阻塞。\n");
+                sb.append("如果不是，请在下一步采取明显不同的策略。\n");
+                sb.append("\n");
+            }
 
-        // 停滞质疑（运行时兜底，仅触发时注入）
-        if (task.getStagnationCount() >= stagnationThreshold) {
-            sb.append("--- 进展质疑 (Stagnation Check) ---\n");
-            sb.append("系统检测到最近 ").append(task.getStagnationCount())
-                    .append(" 轮执行未产生实质性进展。\n");
-            sb.append("请认真评估：你是否在同一问题上反复尝试但无法推进？\n");
-            sb.append("如果是，请调用 goal_update(blocked) 声明阻塞。\n");
-            sb.append("如果不是，请在下一步采取明显不同的策略。\n");
-            sb.append("\n");
-        }
+            // ★ 错误上下文注入 — 当有连续错误时，告知 Agent 错误类型和不可重试提示
+            appendErrorWarning(sb, task);
 
-        // ★ 错误上下文注入 — 当有连续错误时，告知 Agent 错误类型和不可重试提示
-        if (task.getConsecutiveSameTypeErrors() > 0 && task.getLastErrorType() != null) {
-            sb.append("--- 错误警告 (Error Warning) ---\n");
-            sb.append("最近连续 ").append(task.getConsecutiveSameTypeErrors())
-                    .append(" 次执行遇到相同类型的错误：\n");
-            sb.append("- 错误类型: ").append(task.getLastErrorType()).append("\n");
-            if (task.getLastErrorSummary() != null) {
-                sb.append("- 错误摘要: ").append(task.getLastErrorSummary()).append("\n");
+            // Chapter 2: Budget
+            if (gs.isBudgetCritical()) {
+                sb.append("[紧急] 你的 Token 预算即将耗尽。请专注于高效完成目标。\n");
             }
+        }
 
-            // 根据错误类型给出具体建议
-            String errorType = task.getLastErrorType();
-            if ("SSL".equals(errorType)) {
-                sb.append("- 这是 SSL/TLS 证书验证错误，属于运行环境问题，无法通过重试或更换 URL 解决。\n");
-                sb.append("- 请使用 websearch 或 codesearch 工具替代 webfetch 来获取信息。\n");
-            } else if ("HTTP_4XX".equals(errorType)) {
-                sb.append("- 这是 HTTP 4xx 客户端错误（如 404/403/401），通常表示资源不存在或无权限。\n");
-                sb.append("- 重试相同请求不会成功，请更换目标 URL 或使用其他工具。\n");
-            } else if ("NETWORK".equals(errorType)) {
-                sb.append("- 这是网络连接错误，可能是临时性的。\n");
-                sb.append("- 可以稍后重试，但如果连续多次失败请换用其他策略。\n");
-            } else if ("TOOL_EXECUTION".equals(errorType)) {
-                sb.append("- 工具调用执行失败。请分析错误原因，考虑换用其他工具或调整参数。\n");
-            } else {
-                sb.append("- 请分析错误原因，如果同一问题已尝试 3 次以上，请调用 goal_update(blocked)。\n");
+        // Chapter 4: Progress visibility — 上一轮摘要（极简模式不注入）
+        if (!isFirstIter && task.getLastResult() != null) {
+            if (mode == Mode.FULL) {
+                String lastSummary = truncateForPrompt(task.getLastResult(), 300);
+                sb.append("--- 上一轮执行摘要（第 ").append(iter).append(" 轮）---\n");
+                sb.append(lastSummary).append("\n");
+                sb.append("请基于以上进展继续推进，避免重复已尝试过的方案。\n");
+            } else if (mode == Mode.COMPACT) {
+                String lastSummary = truncateForPrompt(task.getLastResult(), 200);
+                sb.append("上一轮（第 ").append(iter).append("轮）: ").append(lastSummary).append("\n");
             }
-            sb.append("\n");
         }
 
-        // Chapter 2: Budget
-        if (gs.isBudgetCritical()) {
-            sb.append("[紧急] 你的 Token 预算即将耗尽。请专注于高效完成目标。\n");
+        String budgetInfo = buildBudgetInfo(gs) + buildIterationInfo(task, gs);
+        if (!budgetInfo.isEmpty()) {
+            sb.append(budgetInfo.trim()).append("\n");
         }
 
-        // Chapter 4: Progress visibility — 上一轮摘要
-        if (!isFirstIter && task.getLastResult() != null) {
-            String lastSummary = truncateForPrompt(task.getLastResult(), 300);
-            sb.append("\n--- 上一轮执行摘要（第 ").append(iter).append(" 轮）---\n");
-            sb.append(lastSummary).append("\n");
-            sb.append("请基于以上进展继续推进，避免重复已尝试过的方案。\n");
+        if (sb.length() == 0) {
+            return "";
         }
-
-        sb.append(budgetInfo);
-
-        return prompt + sb.toString();
+        return "--- 当前状态 (Round State) ---\n" + sb;
     }
 
     /**
@@ -200,11 +181,54 @@ public class LoopPromptBuilder {
 
     // ==================== 内部构建方法 ====================
 
+    /**
+     * 完整模式（预算 ≥ 30%）：7 章节
+     */
+    private String buildFullGuidance(GoalState gs) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n\n");
+        sb.append("--- 目标延续 (Goal Continuation) ---\n");
+        sb.append("你正在朝向以下目标工作: ").append(gs.getCondition()).append("\n");
+        sb.append("你的目标是完成此任务。这是持续性的工作 — 每一轮执行都是同一个目标的延续。\n");
+        sb.append("如果目标由多个相互独立的部分组成（如分别修复多个模块），可调用 goal_fanout 拆分为子目标并行推进。\n");
+        sb.append("\n");
+
+        // Chapter 3: Work from evidence
+        sb.append("--- 证据驱动 (Evidence-Based) ---\n");
+        sb.append("不要依赖记忆或假设来判断当前状态。在采取行动前，先检查实际的文件内容、\n");
+        sb.append("测试结果、构建输出等客观证据。你的判断必须基于最新的事实，而非上轮的记忆。\n");
+        sb.append("\n");
+
+        // Chapter 5: Fidelity
+        sb.append("--- 忠于目标 (Goal Fidelity) ---\n");
+        sb.append("不要缩小目标范围或降低完成标准。目标中的每一项都必须完成。\n");
+        sb.append("不要留占位符、TODO 或 stub。如果某个部分很难，要投入精力解决，而非跳过。\n");
+        sb.append("\n");
+
+        // Chapter 6: Completion audit
+        sb.append("--- 审计完成 (Audit Check) ---\n");
+        sb.append("在继续之前，请完成以下步骤：\n");
+        sb.append("1. 回顾：目标是什么？检查已有的进展。\n");
+        sb.append("2. 核查：针对目标中的每一项，通过运行测试、检查文件等客观手段验证其是否已完成。\n");
+        sb.append("   不要仅凭推理 — 必须有权威证据（测试通过、构建成功、文件存在且内容正确）。\n");
+        sb.append("   对创建、修改、运行类目标，至少完成一次实际工具操作；goal_get/goal_update 不算执行证据。\n");
+        sb.append("3. 如果你已完成所有项，说明你是如何实现每一项的，\n");
+        sb.append("   然后调用 goal_update(complete) 标记完成。\n");
+        sb.append("\n");
+
+        // Chapter 7: Blocked audit
+        sb.append("--- 阻塞审计 (Blocked Audit) ---\n");
+        sb.append("如果你遇到阻碍（同一困境尝试了 3 次），调用 goal_update(blocked) 声明阻塞。\n");
+        sb.append("不要因为工作困难、进展慢或不确定就声明阻塞 — 仅当同一问题反复尝试仍无法解决时才使用。\n");
+        sb.append("resume 后阻塞计数重置为 0。\n");
+        sb.append("\n");
+        return sb.toString();
+    }
+
     /**
      * 精简模式（预算 15%-30%）：3 章节
      */
-    private String buildCompactPrompt(String prompt, GoalState gs, LoopTask task,
-                                      String budgetInfo, int iter, boolean isFirstIter) {
+    private String buildCompactGuidance(GoalState gs) {
         StringBuilder sb = new StringBuilder();
         sb.append("\n\n");
         sb.append("--- 目标延续 (Goal Continuation) ---\n");
@@ -216,31 +240,75 @@ public class LoopPromptBuilder {
         sb.append("逐条验证目标完成情况。必须有客观证据（测试通过/文件存在）。不要凭推理判定完成。\n");
         sb.append("创建、修改、运行类目标必须有实际工具操作，goal_get/goal_update 不算执行证据。\n");
         sb.append("\n");
-
-        if (!isFirstIter && task.getLastResult() != null) {
-            String lastSummary = truncateForPrompt(task.getLastResult(), 200);
-            sb.append("上一轮（第 ").append(iter).append("轮）: ").append(lastSummary).append("\n");
-        }
-
-        sb.append(budgetInfo);
-        return prompt + sb.toString();
+        return sb.toString();
     }
 
     /**
      * 极简模式（预算 < 15%）：单段落
      */
-    private String buildMinimalPrompt(String prompt, GoalState gs,
-                                      String budgetInfo) {
+    private String buildMinimalGuidance(GoalState gs) {
         StringBuilder sb = new StringBuilder();
         sb.append("\n\n");
-        sb.append("目标: ").append(gs.getCondition()).append(" | ");
-        sb.append(budgetInfo.trim()).append("\n");
+        sb.append("目标: ").append(gs.getCondition()).append("\n");
         sb.append("持续工作直至完成。执行型目标必须先产生实际工具证据，goal_get/goal_update 不算。完成后调用 goal_update(complete)；连续 3 轮无进展则调用 goal_update(blocked)。\n");
-        return prompt + sb.toString();
+        sb.append("\n");
+        return sb.toString();
+    }
+
+    private void appendErrorWarning(StringBuilder sb, LoopTask task) {
+        if (task.getConsecutiveSameTypeErrors() <= 0 || task.getLastErrorType() == null) {
+            return;
+        }
+
+        sb.append("--- 错误警告 (Error Warning) ---\n");
+        sb.append("最近连续 ").append(task.getConsecutiveSameTypeErrors())
+                .append(" 次执行遇到相同类型的错误：\n");
+        sb.append("- 错误类型: ").append(task.getLastErrorType()).append("\n");
+        if (task.getLastErrorSummary() != null) {
+            sb.append("- 错误摘要: ").append(task.getLastErrorSummary()).append("\n");
+        }
+
+        // 根据错误类型给出具体建议
+        String errorType = task.getLastErrorType();
+        if ("SSL".equals(errorType)) {
+            sb.append("- 这是 SSL/TLS 证书验证错误，属于运行环境问题，无法通过重试或更换 URL 解决。\n");
+            sb.append("- 请使用 websearch 或 codesearch 工具替代 webfetch 来获取信息。\n");
+        } else if ("HTTP_4XX".equals(errorType)) {
+            sb.append("- 这是 HTTP 4xx 客户端错误（如 404/403/401），通常表示资源不存在或无权限。\n");
+            sb.append("- 重试相同请求不会成功，请更换目标 URL 或使用其他工具。\n");
+        } else if ("NETWORK".equals(errorType)) {
+            sb.append("- 这是网络连接错误，可能是临时性的。\n");
+            sb.append("- 可以稍后重试，但如果连续多次失败请换用其他策略。\n");
+        } else if ("TOOL_EXECUTION".equals(errorType)) {
+            sb.append("- 工具调用执行失败。请分析错误原因，考虑换用其他工具或调整参数。\n");
+        } else {
+            sb.append("- 请分析错误原因，如果同一问题已尝试 3 次以上，请调用 goal_update(blocked)。\n");
+        }
+        sb.append("\n");
+    }
+
+    /**
+     * 引导模式
+     */
+    enum Mode {
+        FULL, COMPACT, MINIMAL
     }
 
     // ==================== 静态辅助方法 ====================
 
+    /**
+     * 按预算剩余比率选择引导模式
+     */
+    static Mode modeOf(GoalState gs) {
+        double budgetRatio = budgetRatio(gs);
+        if (budgetRatio < 0.15) {
+            return Mode.MINIMAL;
+        } else if (budgetRatio < 0.30) {
+            return Mode.COMPACT;
+        }
+        return Mode.FULL;
+    }
+
     /**
      * 计算预算剩余比率
      */
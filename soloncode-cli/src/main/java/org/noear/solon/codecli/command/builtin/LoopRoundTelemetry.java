@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.noear.solon.codecli.util.TokenCost;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Goal 逐轮遥测 — 记录每轮的 token 构成、估算费用与提示词前缀稳定性。
+ *
+ * <p>agent 指标不提供服务端的缓存读取/写入量，这里不统计缓存命中。{@code prefixStable}
+ * 只表示本轮稳定前缀（{@link LoopPromptBuilder#buildStablePrefix(LoopTask)}）与上一轮逐字节一致，
+ * 用于发现前缀被意外改写（如预算模式切换、压缩）；实际是否命中缓存仍由模型服务端决定。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class LoopRoundTelemetry {
+    private static final Logger LOG = LoggerFactory.getLogger(LoopRoundTelemetry.class);
+
+    /** 每个任务保留的最近轮次数 */
+    private static final int MAX_ROUNDS_PER_TASK = 50;
+
+    private final Map<String, Deque<Round>> rounds = new ConcurrentHashMap<>();
+    private final Map<String, String> lastPrefixDigest = new ConcurrentHashMap<>();
+
+    /**
+     * 单轮记录
+     */
+    public static class Round {
+        public final int iteration;
+        public final long promptTokens;
+        public final long completionTokens;
+        public final long totalTokens;
+        public final double estimatedCostUsd;
+        /** 稳定前缀长度（字符） */
+        public final int prefixChars;
+        /** 本轮状态块长度（字符） */
+        public final int stateChars;
+        /** 稳定前缀与上一轮逐字节一致（不代表服务端缓存命中） */
+        public final boolean prefixStable;
+        public final long timestamp;
+
+        Round(int iteration, long promptTokens, long completionTokens, long totalTokens,
+              int prefixChars, int stateChars, boolean prefixStable, TokenCost.Rate rate) {
+            this.iteration = iteration;
+            this.promptTokens = promptTokens;
+            this.completionTokens = completionTokens;
+            this.totalTokens = totalTokens;
+            this.estimatedCostUsd = rate.estimateUsd(promptTokens, completionTokens);
+            this.prefixChars = prefixChars;
+            this.stateChars = stateChars;
+            this.prefixStable = prefixStable;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("iteration", iteration);
+            map.put("promptTokens", promptTokens);
+            map.put("completionTokens", completionTokens);
+            map.put("totalTokens", totalTokens);
+            map.put("estimatedCostUsd", estimatedCostUsd);
+            map.put("prefixChars", prefixChars);
+            map.put("stateChars", stateChars);
+            map.put("prefixStable", prefixStable);
+            map.put("timestamp", timestamp);
+            return map;
+        }
+    }
+
+    /**
+     * 记录一轮（按默认单价估算费用）
+     */
+    public Round record(String taskId, int iteration, String stablePrefix, String roundState,
+                        long promptTokens, long completionTokens, long totalTokens) {
+        return record(taskId, iteration, stablePrefix, roundState, promptTokens, completionTokens, totalTokens,
+                TokenCost.Rate.DEFAULT);
+    }
+
+    /**
+     * 记录一轮
+     *
+     * @param taskId           任务 id
+     * @param iteration        轮次
+     * @param stablePrefix     本轮稳定前缀
+     * @param roundState       本轮状态块
+     * @param promptTokens     输入 token（未知时为 0）
+     * @param completionTokens 输出 token（未知时为 0）
+     * @param totalTokens      总 token
+     * @param rate             本轮所用模型的单价
+     */
+    public Round record(String taskId, int iteration, String stablePrefix, String roundState,
+                        long promptTokens, long completionTokens, long totalTokens, TokenCost.Rate rate) {
+        String digest = stablePrefix.length() + ":" + stablePrefix.hashCode();
+        boolean stable = digest.equals(lastPrefixDigest.put(taskId, digest));
+
+        Round round = new Round(iteration, promptTokens, completionTokens, totalTokens,
+                stablePrefix.length(), roundState.length(), stable, rate);
+
+        Deque<Round> deque = rounds.computeIfAbsent(taskId, k -> new ArrayDeque<>());
+        synchronized (deque) {
+            deque.addLast(round);
+            while (deque.size() > MAX_ROUNDS_PER_TASK) {
+                deque.removeFirst();
+            }
+        }
+
+        LOG.info("Goal '{}' round {} tokens: prompt={}, completion={}, total={}, cost≈${}, prefix={} chars (stable={}), state={} chars",
+                taskId, iteration, promptTokens, completionTokens, totalTokens,
+                String.format("%.4f", round.estimatedCostUsd), round.prefixChars, stable, round.stateChars);
+        return round;
+    }
+
+    /**
+     * 任务最近轮次记录（旧 → 新）
+     */
+    public List<Map<String, Object>> getRounds(String taskId) {
+        Deque<Round> deque = rounds.get(taskId);
+        if (deque == null) {
+            return Collections.emptyList();
+        }
+
+        List<Map<String, Object>> list = new ArrayList<>();
+        synchronized (deque) {
+            for (Round round : deque) {
+                list.add(round.toMap());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 汇总指标（所有任务的最近轮次）
+     */
+    public Map<String, Object> getSummary() {
+        int count = 0;
+        int stable = 0;
+        long promptTokens = 0;
+        long completionTokens = 0;
+        double cost = 0;
+
+        for (Deque<Round> deque : rounds.values()) {
+            synchronized (deque) {
+                for (Round round : deque) {
+                    count++;
+                    if (round.prefixStable) {
+                        stable++;
+                    }
+                    promptTokens += round.promptTokens;
+                    completionTokens += round.completionTokens;
+                    cost += round.estimatedCostUsd;
+                }
+            }
+        }
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("rounds", count);
+        map.put("prefixStableRounds", stable);
+        map.put("prefixStableRate", count > 0 ? (double) stable / count : 0.0);
+        map.put("promptTokens", promptTokens);
+        map.put("completionTokens", completionTokens);
+        map.put("estimatedCostUsd", cost);
+        return map;
+    }
+
+    /**
+     * 清除任务记录（任务删除或目标清除时）
+     */
+    public void clear(String taskId) {
+        rounds.remove(taskId);
+        lastPrefixDigest.remove(taskId);
+    }
+}
@@ -15,14 +15,16 @@
  */
 package org.noear.solon.codecli.command.builtin;
 
-import org.noear.snack4.Feature;
 import org.noear.snack4.ONode;
-import org.noear.snack4.Options;
 import org.noear.solon.ai.agent.AgentSession;
+import org.noear.solon.ai.agent.trace.Metrics;
 import org.noear.solon.ai.harness.HarnessEngine;
 import org.noear.solon.ai.talents.cli.TodoTalent;
+import org.noear.solon.codecli.config.AgentFlags;
 import org.noear.solon.codecli.config.AgentSettings;
 import org.noear.solon.codecli.config.entity.LoopGroupDo;
+import org.noear.solon.codecli.util.TokenAccounting;
+import org.noear.solon.codecli.util.TokenCost;
 import org.noear.solon.core.util.RunUtil;
 import org.noear.solon.scheduling.ScheduledAnno;
 import org.noear.solon.scheduling.scheduled.manager.IJobManager;
@@ -30,8 +32,6 @@ import org.noear.solon.scheduling.simple.JobManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
@@ -43,8 +43,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
  *
  * <p>职责：
  * <ol>
- *   <li>管理任务元数据的 JSON 持久化（load / save）</li>
- *   <li>通过 IJobManager 动态注册/移除调度</li>
+ *   <li>管理任务元数据的持久化（快照 + 追加日志，见 {@link LoopTaskJournal}）</li>
+ *   <li>通过 IJobManager 动态注册/移除调度，触发统一提交到 {@link LoopExecutor}（全局限流、会话内串行、繁忙时排队）</li>
  *   <li>支持进程重启后恢复未过期任务</li>
  * </ol>
  *
@@ -54,7 +54,6 @@ import java.util.concurrent.CopyOnWriteArrayList;
 public class LoopScheduler {
     private static final Logger LOG = LoggerFactory.getLogger(LoopScheduler.class);
     private static final int MAX_TASKS_PER_SESSION = 50;
-    private static final String TASKS_FILE = "loop-tasks.json";
 
     private static volatile boolean interruptHandlerInstalled = false;
 
@@ -62,7 +61,12 @@ public class LoopScheduler {
     private final HarnessEngine engine;
     private final IJobManager jobManager;
     private final ConcurrentHashMap<String, List<LoopTask>> sessionTasks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LoopTaskJournal> journals = new ConcurrentHashMap<>();
     private final LoopPromptBuilder promptBuilder;
+    private final LoopExecutor executor;
+    private final LoopRoundTelemetry telemetry = new LoopRoundTelemetry();
+    private final GoalFanOut fanOut;
+    private final LoopSessionRegistry registry;
 
     private volatile List<TaskHandler> taskHandlers = new ArrayList<>();
     private volatile List<BusyChecker> busyCheckers = new ArrayList<>();
@@ -102,6 +106,12 @@ public class LoopScheduler {
                 loop.getBudgetCriticalPercentOrDefault()
         );
         this.promptBuilder = new LoopPromptBuilder(loop.getStagnationThresholdOrDefault());
+        this.fanOut = new GoalFanOut(promptBuilder, loop.getFanOutParallelismOrDefault(),
+                loop.getFanOutMaxRoundsOrDefault());
+        this.executor = new LoopExecutor(loop.getMaxConcurrentTasksOrDefault(),
+                loop.getPriorityAgingMsOrDefault(), this::isSessionBusy);
+        this.registry = new LoopSessionRegistry(
+                Paths.get(engine.getWorkspace(), AgentFlags.getHarnessLoops(), "sessions.json"));
     }
 
     public LoopGroupDo getLoopConfig() {
@@ -118,6 +128,22 @@ public class LoopScheduler {
         }
     }
 
+    /**
+     * 执行引擎指标（队列深度、排队延迟、执行耗时等）
+     */
+    public Map<String, Object> getExecutorMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>(executor.getMetrics());
+        metrics.put("goalRounds", telemetry.getSummary());
+        return metrics;
+    }
+
+    /**
+     * Goal 最近轮次遥测（token 构成、估算费用、提示词前缀稳定性）
+     */
+    public List<Map<String, Object>> getRoundTelemetry(String taskId) {
+        return telemetry.getRounds(taskId);
+    }
+
     public void addGoalListener(GoalListener listener) {
         if (listener != null) {
             this.goalListeners.add(listener);
@@ -125,7 +151,7 @@ public class LoopScheduler {
     }
 
     private void notifyGoalChanged(String sessionId, LoopTask task, boolean removed) {
-        if (task == null || !task.isGoalMode()) {
+        if (task == null || !task.isGoalMode() || GoalFanOut.isChildSession(sessionId)) {
             return;
         }
         for (GoalListener listener : goalListeners) {
@@ -145,6 +171,12 @@ public class LoopScheduler {
             return null;
         }
 
+        // 拆分执行中的子目标会话
+        LoopTask child = fanOut.getChildTask(sessionId);
+        if (child != null) {
+            return child;
+        }
+
         List<LoopTask> taskList = sessionTasks.get(sessionId);
         if (taskList == null) {
             return null;
@@ -227,6 +259,9 @@ public class LoopScheduler {
         LOG.info("Removing loop task '{}' from session '{}'", task.getId(), sessionId);
 
         task.cancel();
+        executor.cancel(sessionId, task.getId());
+        telemetry.clear(task.getId());
+        fanOut.clear(task.getId());
         String jobName = task.getJobName();
         if (jobManager.jobExists(jobName)) {
             jobManager.jobRemove(jobName);
@@ -319,6 +354,8 @@ public class LoopScheduler {
         }
 
         disableGoalScheduling(sessionId, task);
+        telemetry.clear(taskId);
+        fanOut.clear(taskId);
         LOG.info("Goal cleared for task '{}'", taskId);
     }
 
@@ -384,13 +421,18 @@ public class LoopScheduler {
 
         for (LoopTask t : tasks) {
             if (t.getId().equals(taskId)) {
-                RunUtil.parallel(() -> onTrigger(sessionId, t));
+                submit(sessionId, t, LoopExecutor.PRIORITY_MANUAL);
                 return;
             }
         }
     }
 
     public LoopTask getTaskById(String sessionId, String taskId) {
+        LoopTask child = fanOut.getChildTask(sessionId);
+        if (child != null && child.getId().equals(taskId)) {
+            return child;
+        }
+
         List<LoopTask> tasks = sessionTasks.get(sessionId);
         if (tasks == null) return null;
         for (LoopTask t : tasks) {
@@ -399,6 +441,34 @@ public class LoopScheduler {
         return null;
     }
 
+    // ==================== Goal 并行拆分 ====================
+
+    /**
+     * 把会话中的活跃目标拆分为相互独立的子目标并行执行（阻塞直到子目标全部结束）
+     *
+     * @param sessionId  父会话
+     * @param objectives 子目标
+     * @param isolate    是否为每个子目标创建 git worktree
+     * @param cwd        父会话工作目录（为空时使用引擎工作区）
+     */
+    public GoalFanOut.Report fanOutGoal(String sessionId, List<String> objectives, boolean isolate, String cwd) {
+        LoopTask task = findActiveGoalInSession(sessionId);
+        if (task == null || !task.getGoalState().getStatus().isActive()) {
+            throw new IllegalStateException("No active goal in session");
+        }
+
+        Path workspace = Paths.get(cwd != null && !cwd.isEmpty() ? cwd : engine.getWorkspace());
+        return fanOut.run(task, objectives, workspace, isolate,
+                new GoalFanOut.AgentRoundRunner(engine, sessionId));
+    }
+
+    /**
+     * 目标最近一次拆分报告
+     */
+    public GoalFanOut.Report getFanOutReport(String taskId) {
+        return fanOut.getReport(taskId);
+    }
+
     // ==================== 任务列表 ====================
 
     public List<LoopTask> listActive(String sessionId) {
@@ -448,6 +518,7 @@ public class LoopScheduler {
         if (tasks != null) {
             tasks.forEach(t -> {
                 t.cancel();
+                executor.cancel(sessionId, t.getId());
                 String jobName = t.getJobName();
                 if (jobManager.jobExists(jobName)) {
                     jobManager.jobRemove(jobName);
@@ -459,13 +530,29 @@ public class LoopScheduler {
 
     // ==================== 会话恢复 ====================
 
-    public synchronized void restore(String sessionId) {
+    public void restore(String sessionId) {
+        if (sessionTasks.containsKey(sessionId)) {
+            return;
+        }
+
+        // 按会话加锁：不同会话可并行恢复
+        synchronized (journalOf(sessionId)) {
+            restoreLocked(sessionId);
+        }
+    }
+
+    private void restoreLocked(String sessionId) {
         if (sessionTasks.containsKey(sessionId)) {
             return;
         }
 
         List<LoopTask> tasks = loadFromFile(sessionId);
-        if (tasks == null || tasks.isEmpty()) return;
+        if (tasks == null) {
+            if (!journalOf(sessionId).exists()) {
+                registry.remove(sessionId);
+            }
+            return;
+        }
 
         List<LoopTask> alive = new ArrayList<>();
         for (LoopTask t : tasks) {
@@ -504,23 +591,62 @@ public class LoopScheduler {
     }
 
     /**
-     * 恢复会话目录中持久化的全部循环任务。
+     * 恢复登记表中全部有循环任务的会话（已恢复的会话直接跳过）。
      */
     public void restoreAll() {
+        for (String sessionId : registeredSessions()) {
+            restore(sessionId);
+        }
+    }
+
+    /**
+     * 启动时并行恢复登记表中的会话，使 Goal 无需等待界面打开即可继续执行。
+     * <p>应在任务执行器（TaskHandler）注册完成之后调用。</p>
+     */
+    public void restoreRegistered() {
+        List<String> sessionIds = registeredSessions();
+        if (sessionIds.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        sessionIds.parallelStream().forEach(sessionId -> {
+            try {
+                restore(sessionId);
+            } catch (Throwable e) {
+                LOG.error("Failed to restore loop tasks[{}]: {}", sessionId, e.getMessage());
+            }
+        });
+        LOG.info("Restored loop sessions: {} in {}ms", sessionIds.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 登记的会话；登记表尚不存在时（旧版本升级）扫描会话目录重建一次
+     */
+    private List<String> registeredSessions() {
+        if (!registry.exists()) {
+            registry.reset(scanSessionsWithTasks());
+        }
+        return registry.list();
+    }
+
+    private List<String> scanSessionsWithTasks() {
+        List<String> sessionIds = new ArrayList<>();
         Path sessionsPath = Paths.get(engine.getWorkspace(), engine.getHarnessSessions());
         if (!Files.isDirectory(sessionsPath)) {
-            return;
+            return sessionIds;
         }
 
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(sessionsPath)) {
             for (Path sessionPath : stream) {
-                if (Files.isDirectory(sessionPath) && Files.exists(sessionPath.resolve(TASKS_FILE))) {
-                    restore(sessionPath.getFileName().toString());
+                if (Files.isDirectory(sessionPath) && new LoopTaskJournal(sessionPath).exists()) {
+                    sessionIds.add(sessionPath.getFileName().toString());
                 }
             }
         } catch (Exception e) {
-            LOG.error("Failed to restore all loop tasks: {}", e.getMessage());
+            LOG.error("Failed to scan loop task sessions: {}", e.getMessage());
         }
+        return sessionIds;
     }
 
     // ==================== IJobManager 注册 ====================
@@ -552,17 +678,33 @@ public class LoopScheduler {
             if (!task.isEnabled()) {
                 return;
             }
-            onTrigger(sessionId, task);
+            submit(sessionId, task, LoopExecutor.PRIORITY_SCHEDULED);
         });
     }
 
+    /**
+     * 提交到执行引擎（全局限流、会话内串行、繁忙时排队）
+     */
+    private void submit(String sessionId, LoopTask task, int priority) {
+        executor.submit(sessionId, task.getId(), priority, () -> onTrigger(sessionId, task));
+    }
+
+    private boolean isSessionBusy(String sessionId) {
+        for (BusyChecker checker : busyCheckers) {
+            if (checker.isBusy(sessionId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // ==================== 定时触发回调 ====================
 
     /**
      * 定时触发 — 执行任务
      *
      * <p>Goal 模式下，执行完成后若 goal 仍活跃则事件驱动续行（submit 下一轮）。
-     * 续行无深度限制、无冷却期 — 靠 tryStart() CAS 防重叠 + BusyChecker 防冲突。
+     * 续行无深度限制 — 由 LoopExecutor 会话内串行 + tryStart() CAS 防重叠，繁忙时排队。
      */
 
     /**
@@ -625,12 +767,11 @@ public class LoopScheduler {
             return false;
         }
 
-        // 会话繁忙时跳过
-        for (BusyChecker checker : busyCheckers) {
-            if (checker.isBusy(sessionId)) {
-                LOG.info("Loop task '{}' skipped: session '{}' is busy", task.getId(), sessionId);
-                return false;
-            }
+        // 会话繁忙时重新排队（执行引擎在会话空闲后再出队）
+        if (isSessionBusy(sessionId)) {
+            LOG.info("Loop task '{}' deferred: session '{}' is busy", task.getId(), sessionId);
+            submit(sessionId, task, LoopExecutor.PRIORITY_CONTINUATION);
+            return false;
         }
 
         // Goal 模式预算检查
@@ -655,9 +796,9 @@ public class LoopScheduler {
                 }
             }
 
-            // Token 预算
-            if (gs.isBudgetExceeded()) {
-                LOG.info("Loop task '{}' goal budget exceeded at iteration {}, executing wrap-up turn",
+            // Token 预算（已耗尽，或处于临界区且按单轮峰值已容不下下一轮）
+            if (gs.isBudgetExceeded() || (gs.isBudgetCritical() && gs.isNextRoundOverBudget())) {
+                LOG.info("Loop task '{}' goal budget exhausted at iteration {}, executing wrap-up turn",
                         task.getId(), task.getCurrentIteration());
                 executeBudgetLimitWrapUp(sessionId, task, gs);
 
@@ -693,10 +834,13 @@ public class LoopScheduler {
      * <p>返回 GoalRoundOutcome 枚举，供调用方决定是否续行。
      */
     private GoalRoundOutcome executeGoalRound(String sessionId, LoopTask task) {
-        // 构建 prompt（注入 goal 引导词）
-        String effectivePrompt = promptBuilder.buildEffectivePrompt(task);
+        // 构建 prompt（注入 goal 引导词）：稳定前缀 + 本轮状态，便于前缀缓存复用
+        String stablePrefix = promptBuilder.buildStablePrefix(task);
+        String roundState = promptBuilder.buildRoundState(task);
+        String effectivePrompt = stablePrefix + roundState;
 
-        LoopExecutionResult executionResult = executeSingle(sessionId, effectivePrompt, null);
+        GoalTokenMeter meter = task.isGoalMode() ? GoalTokenMeter.forRound(task.getGoalState()) : null;
+        LoopExecutionResult executionResult = executeSingle(sessionId, effectivePrompt, null, meter);
 
         String finalResult = executionResult != null ? executionResult.getFinalResult() : null;
         task.updateLastExecution(finalResult != null ? finalResult : "ok");
@@ -713,9 +857,12 @@ public class LoopScheduler {
         if (task.isGoalMode()) {
             GoalState gs = task.getGoalState();
 
-            // 累计 token
+            // 累计 token（逐轮记录）
             if (executionResult != null && executionResult.getTokensUsed() > 0) {
-                gs.addTokens(executionResult.getTokensUsed());
+                gs.recordRound(executionResult.getTokensUsed());
+                telemetry.record(task.getId(), iteration, stablePrefix, roundState,
+                        executionResult.getPromptTokens(), executionResult.getCompletionTokens(),
+                        executionResult.getTokensUsed(), rateOf(sessionId));
             }
 
             // 无进展检测（运行时兜底）
@@ -748,10 +895,12 @@ public class LoopScheduler {
                 return GoalRoundOutcome.ACHIEVED;
             }
 
-            // 预算检查
-            if (gs.isBudgetExceeded()) {
-                LOG.info("Loop task '{}' budget exceeded at iteration {}, executing wrap-up turn",
-                        task.getId(), iteration);
+            // 预算检查：已耗尽 / 轮内达到硬上限被终止 / 轮内越过临界线且按单轮峰值容不下下一轮
+            boolean cancelledByMeter = meter != null && meter.isCancelled();
+            boolean wrapUpEarly = meter != null && meter.isCritical() && gs.isNextRoundOverBudget();
+            if (gs.isBudgetExceeded() || cancelledByMeter || wrapUpEarly) {
+                LOG.info("Loop task '{}' budget exhausted at iteration {} (cancelled={}, early={}), executing wrap-up turn",
+                        task.getId(), iteration, cancelledByMeter, wrapUpEarly);
                 executeBudgetLimitWrapUp(sessionId, task, gs);
 
                 // wrap-up 回合若 LLM 认为目标已达成，则标记 ACHIEVED 而非 BUDGET_EXCEEDED
@@ -784,7 +933,7 @@ public class LoopScheduler {
     }
 
     /**
-     * 事件驱动续行：goal 仍活跃且非繁忙时，submit 下一轮 onTrigger
+     * 事件驱动续行：goal 仍活跃时，向执行引擎提交下一轮 onTrigger（会话繁忙时排队）
      */
     private void scheduleContinuation(String sessionId, LoopTask task) {
         if (!task.isGoalMode()) {
@@ -802,19 +951,9 @@ public class LoopScheduler {
             return;
         }
 
-        boolean busy = false;
-        for (BusyChecker checker : busyCheckers) {
-            if (checker.isBusy(sessionId)) {
-                busy = true;
-                break;
-            }
-        }
-
-        if (!busy) {
-            LOG.debug("Loop task '{}' continuing (event-driven)", task.getId());
-            // 最小 1s 冷却间隙，防止紧循环空转
-            RunUtil.delay(() -> onTrigger(sessionId, task), 1_000L);
-        }
+        LOG.debug("Loop task '{}' continuing (event-driven)", task.getId());
+        // 最小 1s 冷却间隙，防止紧循环空转；会话繁忙时由执行引擎排队等待
+        RunUtil.delay(() -> submit(sessionId, task, LoopExecutor.PRIORITY_CONTINUATION), 1_000L);
     }
 
     /**
@@ -878,7 +1017,7 @@ public class LoopScheduler {
                             task.getId(), delay, errors, errorType, sameTypeCount);
                     RunUtil.delay(() -> {
                         if (!task.isCancelled()) {
-                            onTrigger(sessionId, task);
+                            submit(sessionId, task, LoopExecutor.PRIORITY_CONTINUATION);
                         }
                     }, delay * 1_000L);
                 }
@@ -899,7 +1038,10 @@ public class LoopScheduler {
     private void executeBudgetLimitWrapUp(String sessionId, LoopTask task, GoalState gs) {
         try {
             String wrapUpPrompt = promptBuilder.buildBudgetLimitPrompt(task, gs);
-            executeSingle(sessionId, wrapUpPrompt, null);
+            LoopExecutionResult result = executeSingle(sessionId, wrapUpPrompt, null, GoalTokenMeter.forWrapUp(gs));
+            if (result != null && result.getTokensUsed() > 0) {
+                gs.recordRound(result.getTokensUsed());
+            }
 
             // 预算耗尽后仍给 LLM 一次总结机会：LLM 可能调用 goal_update(complete)
             // 通过 GoalState 状态检测完成
@@ -947,19 +1089,59 @@ public class LoopScheduler {
 
     // ==================== 执行 ====================
 
-    private LoopExecutionResult executeSingle(String sessionId, String effectivePrompt, String agentName) {
+    /**
+     * 执行一轮
+     *
+     * @param meter 轮内 token 计量器（放入会话属性供各端流式上报；可为 null）
+     */
+    private LoopExecutionResult executeSingle(String sessionId, String effectivePrompt, String agentName, GoalTokenMeter meter) {
+        AgentSession session = null;
+        try {
+            session = engine.getSession(sessionId);
+            // 清除上一轮遗留的用量，避免本轮未上报时被重复计入
+            session.attrs().remove("_loop_last_total_tokens");
+            session.attrs().remove("_loop_last_metrics");
+            if (meter != null) {
+                session.attrs().put(GoalTokenMeter.ATTR, meter);
+            }
+        } catch (Exception e) {
+            // 会话不可用时按无计量执行
+        }
+
+        try {
+            return executeSingle(sessionId, effectivePrompt, agentName, session, meter);
+        } finally {
+            if (session != null && meter != null) {
+                session.attrs().remove(GoalTokenMeter.ATTR);
+            }
+        }
+    }
+
+    private LoopExecutionResult executeSingle(String sessionId, String effectivePrompt, String agentName,
+                                              AgentSession session, GoalTokenMeter meter) {
         for (TaskHandler taskExecutor : taskHandlers) {
             String result = taskExecutor.handle(sessionId, effectivePrompt, agentName);
             if (result != null) {
-                // 优先使用 LLM 返回的真实 token 消耗（Web 端通过 session attrs 传递）
+                // 优先使用 LLM 返回的真实 token 消耗（各端通过 session attrs 传递）
                 long tokensUsed = 0;
+                long promptTokens = 0;
+                long completionTokens = 0;
                 Boolean hasToolCalls = null;
                 try {
-                    AgentSession session = engine.getSession(sessionId);
-                    Object val = session.attrs().get("_loop_last_total_tokens");
+                    Object val = session.attrs().remove("_loop_last_total_tokens");
                     if (val instanceof Number) {
                         tokensUsed = ((Number) val).longValue();
                     }
+                    // 流被计量器终止时，以实时计量值兜底
+                    if (meter != null) {
+                        tokensUsed = Math.max(tokensUsed, meter.getRoundTokens());
+                    }
+                    // 输入/输出构成（用于逐轮遥测与费用估算）
+                    Object metrics = session.attrs().remove("_loop_last_metrics");
+                    if (metrics instanceof Metrics) {
+                        promptTokens = ((Metrics) metrics).getPromptTokens();
+                        completionTokens = ((Metrics) metrics).getCompletionTokens();
+                    }
                     Object toolEvidence = session.attrs().remove("_loop_last_has_tool_calls");
                     if (toolEvidence instanceof Boolean) {
                         hasToolCalls = (Boolean) toolEvidence;
@@ -971,12 +1153,13 @@ public class LoopScheduler {
                 if (tokensUsed > 0 || hasToolCalls != null) {
                     long effectiveTokens = tokensUsed > 0
                             ? tokensUsed
-                            : Math.max(1, result.length() / 4);
+                            : Math.max(1, TokenAccounting.getInstance().count(result));
                     return LoopExecutionResult.fromExecution(
                             hasToolCalls != null
                                     ? hasToolCalls
                                     : result.length() > 20 && !result.startsWith("error:"),
-                            effectiveTokens, result);
+                            effectiveTokens, result)
+                            .withTokenSplit(promptTokens, completionTokens);
                 }
                 return LoopExecutionResult.fromText(result);
             }
@@ -984,6 +1167,18 @@ public class LoopScheduler {
         return LoopExecutionResult.submittedOnly();
     }
 
+    /**
+     * 会话当前模型的单价（无法确定模型时为默认单价）
+     */
+    private TokenCost.Rate rateOf(String sessionId) {
+        try {
+            String modelSelected = engine.getSession(sessionId).getContext().getAs(HarnessEngine.CTX_MODEL_SELECTED);
+            return TokenCost.rateOf(engine.getModelOrDef(modelSelected).getModel());
+        } catch (Throwable e) {
+            return TokenCost.Rate.DEFAULT;
+        }
+    }
+
     static boolean requiresActionEvidence(String objective) {
         if (objective == null || objective.trim().isEmpty()) {
             return false;
@@ -1097,45 +1292,42 @@ public class LoopScheduler {
         }
     }
 
-    // ==================== JSON 持久化 ====================
+    // ==================== 持久化（快照 + 追加日志） ====================
 
-    private Path getTasksFilePath(String sessionId) {
-        return Paths.get(engine.getWorkspace(), engine.getHarnessSessions(), sessionId, TASKS_FILE);
+    private Path getSessionDir(String sessionId) {
+        return Paths.get(engine.getWorkspace(), engine.getHarnessSessions(), sessionId);
     }
 
-    private void saveToFile(String sessionId, List<LoopTask> tasks) {
-        try {
-            Path filePath = getTasksFilePath(sessionId);
-            Files.createDirectories(filePath.getParent());
+    private LoopTaskJournal journalOf(String sessionId) {
+        return journals.computeIfAbsent(sessionId, k -> new LoopTaskJournal(getSessionDir(k)));
+    }
 
-            ONode root = new ONode(Options.of(Feature.Write_PrettyFormat));
-            for (LoopTask t : tasks) {
-                root.add(t.toONode());
-            }
-            String json = root.toJson();
+    private void saveToFile(String sessionId, List<LoopTask> tasks) {
+        if (tasks == null) {
+            return;
+        }
 
-            Path tempFile = filePath.resolveSibling(filePath.getFileName() + ".tmp");
-            try (Writer w = new OutputStreamWriter(Files.newOutputStream(tempFile,
-                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING),
-                    StandardCharsets.UTF_8)) {
-                w.write(json);
-            }
-            Files.move(tempFile, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            journalOf(sessionId).save(tasks);
         } catch (Exception e) {
             LOG.error("Failed to save loop tasks: {}", e.getMessage());
         }
+
+        // 维护会话登记表（仅成员变化时写盘）
+        if (tasks.isEmpty()) {
+            registry.remove(sessionId);
+        } else {
+            registry.add(sessionId);
+        }
     }
 
     private List<LoopTask> loadFromFile(String sessionId) {
         try {
-            Path filePath = getTasksFilePath(sessionId);
-            if (!Files.exists(filePath)) return null;
-
-            String json = new String(Files.readAllBytes(filePath), StandardCharsets.UTF_8);
-            ONode root = ONode.ofJson(json);
+            LoopTaskJournal journal = journalOf(sessionId);
+            if (!journal.exists()) return null;
 
             List<LoopTask> tasks = new ArrayList<>();
-            for (ONode node : root.getArray()) {
+            for (ONode node : journal.load()) {
                 tasks.add(LoopTask.fromONode(node));
             }
 
@@ -1148,10 +1340,8 @@ public class LoopScheduler {
     }
 
     private void deleteFile(String sessionId) {
-        try {
-            Path filePath = getTasksFilePath(sessionId);
-            Files.deleteIfExists(filePath);
-        } catch (Exception ignored) {
-        }
+        // 保留 journal 对象：restore 以它作为会话锁，移除后并发恢复会拿到另一把锁
+        journalOf(sessionId).delete();
+        registry.remove(sessionId);
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.noear.snack4.ONode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 存在循环任务的会话登记表（{@code sessions.json}，会话 ID 数组）。
+ *
+ * <p>启动时只需恢复登记表中的会话，无需扫描全部会话目录；会话列表等接口也不再承担恢复工作。
+ * 登记表由调度器在任务持久化时维护（有任务则登记，无任务则注销），只在成员变化时写盘。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+class LoopSessionRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(LoopSessionRegistry.class);
+
+    private final Path file;
+    private Set<String> sessions;
+
+    LoopSessionRegistry(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * 登记表文件是否存在（不存在时需由调用方扫描会话目录重建）
+     */
+    boolean exists() {
+        return Files.exists(file);
+    }
+
+    synchronized List<String> list() {
+        return new ArrayList<>(load());
+    }
+
+    synchronized void add(String sessionId) {
+        if (load().add(sessionId)) {
+            save();
+        }
+    }
+
+    synchronized void remove(String sessionId) {
+        if (load().remove(sessionId)) {
+            save();
+        }
+    }
+
+    /**
+     * 用扫描结果重建登记表
+     */
+    synchronized void reset(Iterable<String> sessionIds) {
+        sessions = new LinkedHashSet<>();
+        for (String sessionId : sessionIds) {
+            sessions.add(sessionId);
+        }
+        save();
+    }
+
+    private Set<String> load() {
+        if (sessions == null) {
+            sessions = new LinkedHashSet<>();
+            try {
+                if (Files.exists(file)) {
+                    String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+                    for (ONode node : ONode.ofJson(json).getArray()) {
+                        sessions.add(node.getString());
+                    }
+                }
+            } catch (Exception e) {
+                LOG.warn("Failed to load loop session registry: {}", e.getMessage());
+            }
+        }
+        return sessions;
+    }
+
+    private void save() {
+        try {
+            Files.createDirectories(file.getParent());
+
+            ONode root = new ONode().asArray();
+            for (String sessionId : sessions) {
+                root.add(sessionId);
+            }
+
+            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tempFile, root.toJson().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            LOG.error("Failed to save loop session registry: {}", e.getMessage());
+        }
+    }
+}
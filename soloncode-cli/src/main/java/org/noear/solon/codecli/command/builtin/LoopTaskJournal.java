@@ -0,0 +1,374 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.noear.snack4.Feature;
+import org.noear.snack4.ONode;
+import org.noear.snack4.Options;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * 单个会话的循环任务持久化：快照 + 追加式日志（journal）。
+ *
+ * <p>文件布局（会话目录下）：
+ * <ul>
+ *   <li>{@code loop-tasks.json}：快照，全部任务的 JSON 数组（兼容旧格式）</li>
+ *   <li>{@code loop-tasks.journal}：快照之后的任务事件，每行一条 {@code <crc32> <json>}</li>
+ * </ul>
+ *
+ * <p>事件类型：
+ * <ul>
+ *   <li>{@code put}：新增任务（完整任务）</li>
+ *   <li>{@code patch}：任务字段增量（只含变化的顶层字段，值为绝对值，可重复回放）</li>
+ *   <li>{@code del}：移除任务</li>
+ * </ul>
+ *
+ * <p>每次保存与上次持久化的状态比较，只追加变化部分 —— Goal 每轮通常只是一条很小的 patch。
+ * 日志超出阈值时压缩：写新快照（临时文件 + 原子替换）后删除日志；两步之间崩溃时，
+ * 日志回放到新快照上结果不变。恢复时遇到校验失败或不完整的行（写入中途崩溃）即停止回放并截断该行。
+ *
+ * @author noear 2026/10/18 created
+ */
+class LoopTaskJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(LoopTaskJournal.class);
+
+    static final String SNAPSHOT_FILE = "loop-tasks.json";
+    static final String JOURNAL_FILE = "loop-tasks.journal";
+
+    /** 日志条数超过该值时压缩为快照 */
+    private static final int COMPACT_ENTRIES = 256;
+    /** 日志大小超过该值时压缩为快照 */
+    private static final long COMPACT_BYTES = 1024 * 1024;
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+
+    /** 已持久化状态：taskId → (顶层字段 → 紧凑 JSON)，用于计算增量 */
+    private Map<String, Map<String, String>> persisted = new LinkedHashMap<>();
+    private int journalEntries;
+    private long journalBytes;
+    /** persisted 是否与磁盘一致（load/delete/compact 之后）；否则无法计算增量 */
+    private boolean loaded;
+
+    LoopTaskJournal(Path sessionDir) {
+        this.snapshotFile = sessionDir.resolve(SNAPSHOT_FILE);
+        this.journalFile = sessionDir.resolve(JOURNAL_FILE);
+    }
+
+    /**
+     * 是否存在持久化数据
+     */
+    boolean exists() {
+        return Files.exists(snapshotFile) || Files.exists(journalFile);
+    }
+
+    /**
+     * 加载快照并回放日志
+     *
+     * @return 任务节点列表（按首次出现顺序）；无数据时为空列表
+     */
+    synchronized List<ONode> load() throws IOException {
+        Map<String, ONode> state = new LinkedHashMap<>();
+
+        if (Files.exists(snapshotFile)) {
+            String json = new String(Files.readAllBytes(snapshotFile), StandardCharsets.UTF_8);
+            for (ONode node : ONode.ofJson(json).getArray()) {
+                state.put(node.get("id").getString(), node);
+            }
+        }
+
+        journalEntries = 0;
+        journalBytes = 0;
+        if (Files.exists(journalFile)) {
+            byte[] data = Files.readAllBytes(journalFile);
+            int validEnd = replay(data, state);
+            if (validEnd < data.length) {
+                LOG.warn("Loop task journal has a torn or corrupt tail, truncated {} bytes: {}",
+                        data.length - validEnd, journalFile);
+                try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                    channel.truncate(validEnd);
+                }
+            }
+            journalBytes = validEnd;
+        }
+
+        persisted = new LinkedHashMap<>();
+        for (Map.Entry<String, ONode> entry : state.entrySet()) {
+            persisted.put(entry.getKey(), fieldsOf(entry.getValue()));
+        }
+        loaded = true;
+
+        return new ArrayList<>(state.values());
+    }
+
+    /**
+     * 保存任务列表：只追加相对上次持久化状态的变化
+     */
+    synchronized void save(List<LoopTask> tasks) throws IOException {
+        if (!loaded && !exists()) {
+            // 磁盘上没有数据：与空的 persisted 一致
+            loaded = true;
+        }
+
+        Map<String, Map<String, String>> next = new LinkedHashMap<>();
+        List<ONode> nodes = new ArrayList<>();
+        List<ONode> events = new ArrayList<>();
+
+        synchronized (tasks) {
+            for (LoopTask task : tasks) {
+                ONode node = task.toONode();
+                String id = task.getId();
+                Map<String, String> fields = fieldsOf(node);
+                nodes.add(node);
+                next.put(id, fields);
+
+                Map<String, String> prev = persisted.get(id);
+                if (prev == null) {
+                    events.add(event("put", id).set("task", node));
+                } else {
+                    ONode patch = diff(id, prev, fields, node);
+                    if (patch != null) {
+                        events.add(patch);
+                    }
+                }
+            }
+        }
+
+        for (String id : persisted.keySet()) {
+            if (!next.containsKey(id)) {
+                events.add(event("del", id));
+            }
+        }
+
+        if (events.isEmpty() && loaded) {
+            return;
+        }
+
+        Files.createDirectories(journalFile.getParent());
+        // 磁盘上有未加载的旧数据时增量无从计算（会漏掉 del、阈值也不准）：直接整体覆盖
+        if (!loaded || journalEntries + events.size() > COMPACT_ENTRIES || journalBytes > COMPACT_BYTES) {
+            compact(nodes);
+        } else {
+            append(events);
+        }
+        persisted = next;
+    }
+
+    /**
+     * 删除快照与日志
+     */
+    synchronized void delete() {
+        try {
+            Files.deleteIfExists(journalFile);
+            Files.deleteIfExists(snapshotFile);
+        } catch (IOException ignored) {
+        }
+        persisted = new LinkedHashMap<>();
+        journalEntries = 0;
+        journalBytes = 0;
+        loaded = true;
+    }
+
+    // ==================== 写入 ====================
+
+    private void append(List<ONode> events) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        for (ONode event : events) {
+            buf.write(encodeLine(event.toJson()));
+        }
+
+        // 一次写入全部事件：中途崩溃最多留下一个不完整的尾行，恢复时截断
+        try (OutputStream out = Files.newOutputStream(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            buf.writeTo(out);
+        }
+        journalEntries += events.size();
+        journalBytes += buf.size();
+    }
+
+    private void compact(List<ONode> nodes) throws IOException {
+        ONode root = new ONode(Options.of(Feature.Write_PrettyFormat)).asArray();
+        for (ONode node : nodes) {
+            root.add(node);
+        }
+
+        Path tempFile = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        Files.write(tempFile, root.toJson().getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        // 快照已包含全部状态，日志可丢弃（若此处崩溃，残留日志回放结果与快照一致）
+        Files.deleteIfExists(journalFile);
+        journalEntries = 0;
+        journalBytes = 0;
+        loaded = true;
+    }
+
+    // ==================== 回放 ====================
+
+    /**
+     * 回放日志到状态中
+     *
+     * @return 最后一条有效记录之后的字节偏移
+     */
+    int replay(byte[] data, Map<String, ONode> state) {
+        int start = 0;
+        while (start < data.length) {
+            int end = start;
+            while (end < data.length && data[end] != '\n') {
+                end++;
+            }
+            if (end == data.length) {
+                // 无换行结尾：写入中途崩溃
+                break;
+            }
+
+            String json = decodeLine(new String(data, start, end - start, StandardCharsets.UTF_8));
+            if (json == null) {
+                break;
+            }
+
+            try {
+                apply(ONode.ofJson(json), state);
+            } catch (Exception e) {
+                LOG.warn("Skip unreadable loop task journal entry: {}", e.getMessage());
+            }
+            journalEntries++;
+            start = end + 1;
+        }
+        return start;
+    }
+
+    private static void apply(ONode event, Map<String, ONode> state) {
+        String op = event.get("op").getString();
+        String id = event.get("id").getString();
+
+        if ("put".equals(op)) {
+            state.put(id, event.get("task"));
+        } else if ("del".equals(op)) {
+            state.remove(id);
+        } else if ("patch".equals(op)) {
+            ONode current = state.get(id);
+            if (current == null) {
+                return;
+            }
+
+            Set<String> unset = new HashSet<>();
+            if (event.getOrNull("unset") != null) {
+                for (ONode key : event.get("unset").getArray()) {
+                    unset.add(key.getString());
+                }
+            }
+
+            ONode merged = new ONode();
+            for (Map.Entry<String, ONode> entry : current.getObject().entrySet()) {
+                if (!unset.contains(entry.getKey())) {
+                    merged.set(entry.getKey(), entry.getValue());
+                }
+            }
+            if (event.getOrNull("set") != null) {
+                for (Map.Entry<String, ONode> entry : event.get("set").getObject().entrySet()) {
+                    merged.set(entry.getKey(), entry.getValue());
+                }
+            }
+            state.put(id, merged);
+        }
+    }
+
+    // ==================== 编码 ====================
+
+    private static ONode event(String op, String id) {
+        ONode event = new ONode();
+        event.set("op", op);
+        event.set("id", id);
+        return event;
+    }
+
+    /**
+     * 计算字段增量；无变化时返回 null
+     */
+    private static ONode diff(String id, Map<String, String> prev, Map<String, String> fields, ONode node) {
+        ONode set = new ONode();
+        boolean changed = false;
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+            if (!entry.getValue().equals(prev.get(entry.getKey()))) {
+                set.set(entry.getKey(), node.get(entry.getKey()));
+                changed = true;
+            }
+        }
+
+        ONode unset = new ONode().asArray();
+        for (String key : prev.keySet()) {
+            if (!fields.containsKey(key)) {
+                unset.add(key);
+                changed = true;
+            }
+        }
+
+        if (!changed) {
+            return null;
+        }
+
+        ONode patch = event("patch", id).set("set", set);
+        if (unset.getArray().size() > 0) {
+            patch.set("unset", unset);
+        }
+        return patch;
+    }
+
+    private static Map<String, String> fieldsOf(ONode node) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (Map.Entry<String, ONode> entry : node.getObject().entrySet()) {
+            fields.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return fields;
+    }
+
+    static byte[] encodeLine(String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        String line = String.format("%08x", crc.getValue()) + " " + json + "\n";
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 校验并解出一行中的 JSON；校验失败返回 null
+     */
+    static String decodeLine(String line) {
+        if (line.length() < 10 || line.charAt(8) != ' ') {
+            return null;
+        }
+
+        String json = line.substring(9);
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue()).equals(line.substring(0, 8)) ? json : null;
+    }
+}
@@ -19,6 +19,7 @@ import org.noear.solon.ai.chat.ChatConfig;
 import org.noear.solon.ai.harness.HarnessEngine;
 import org.noear.solon.ai.harness.command.Command;
 import org.noear.solon.ai.harness.command.CommandContext;
+import org.noear.solon.codecli.config.models.ModelRouter;
 
 /**
  * /model 命令（多子命令）
@@ -62,8 +63,11 @@ public class ModelCommand implements Command {
         String flag = ctx.argAt(0);
 
         if ("ls".equals(flag) || flag == null || flag.isEmpty()) {
+            ModelRouter router = ModelRouter.getInstance();
             String currentModel = ctx.getSession().getContext().getAs(HarnessEngine.CTX_MODEL_SELECTED);
-            currentModel = ctx.getEngine().getModelOrDef(currentModel).getNameOrModel();
+            if (router.isGroup(currentModel) == false) {
+                currentModel = ctx.getEngine().getModelOrDef(currentModel).getNameOrModel();
+            }
 
             ctx.println(ctx.color(BOLD + "Models:" + RESET));
             for (ChatConfig m : ctx.getEngine().getModels()) {
@@ -73,6 +77,15 @@ public class ModelCommand implements Command {
                 String label = model.equals(desc) ? model : model + DIM + " - " + desc + RESET;
                 ctx.println(ctx.color("  " + label + suffix));
             }
+
+            if (router.getGroupNames().size() > 0) {
+                ctx.println(ctx.color(BOLD + "Model groups:" + RESET));
+                for (String group : router.getGroupNames()) {
+                    String suffix = group.equals(currentModel) ? " " + GREEN + "(active)" + RESET : "";
+                    String members = String.join(", ", router.getGroup(group).getMembers());
+                    ctx.println(ctx.color("  " + group + DIM + " - " + members + RESET + suffix));
+                }
+            }
             ctx.println(ctx.color(DIM + "\nUsage: /model <name>" + RESET));
         } else if ("help".equals(flag)) {
             ctx.println(ctx.color(BOLD + "/model" + RESET + " - Model management"));
@@ -80,7 +93,7 @@ public class ModelCommand implements Command {
             ctx.println(ctx.color(DIM + "  /model ls" + RESET + "       List all available models"));
             ctx.println(ctx.color(DIM + "  /model <name>" + RESET + "   Switch to the specified model"));
         } else {
-            if (ctx.getEngine().getModelOrNil(flag) == null) {
+            if (ctx.getEngine().getModelOrNil(flag) == null && ModelRouter.getInstance().isGroup(flag) == false) {
                 ctx.println(ctx.color(RED + "Model not found: " + RESET + BOLD + flag + RESET));
                 ctx.println(ctx.color(DIM + "Use '/model' to see available models." + RESET));
             } else {
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.noear.snack4.ONode;
+import org.noear.solon.codecli.config.AgentFlags;
+import org.noear.solon.codecli.util.ProcessRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 测试影响分析 — 将变更文件映射到受影响的测试类（JVM 项目：Java / Kotlin）。
+ *
+ * <p>变更来源：优先 git（相对 HEAD 的修改 + 未跟踪文件），不可用时使用文件监听记录的变更
+ * （见 {@link #recordChanges(Collection)}，上次全量测试通过后累计；git 工作区不记录）。</p>
+ *
+ * <p>映射规则（任一命中即选中）：
+ * <ul>
+ *   <li>变更的测试源码本身</li>
+ *   <li>命名：{@code FooTest}、{@code FooTests}、{@code TestFoo}、{@code FooIT} 对应 {@code Foo}</li>
+ *   <li>导入：测试类 import 了变更类（或其所在包的 *）</li>
+ *   <li>同包：测试类与变更类同包，且源码中引用了变更类的简单名</li>
+ * </ul>
+ *
+ * <p>测试类的依赖（包、导入、引用的类型名）记录在 {@code test-impact.json}，按文件修改时间增量更新。
+ * 构建文件、资源等无法映射的变更返回 null，由调用方直接运行全量测试。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class TestImpactAnalyzer {
+    private static final Logger log = LoggerFactory.getLogger(TestImpactAnalyzer.class);
+
+    /** 选中测试数超过该值时直接跑全量（命令行过长，且收益有限） */
+    static final int MAX_SELECTED = 200;
+
+    private static final Set<String> EXCLUDED_DIRS = new HashSet<>(Arrays.asList(
+            "target", "build", "out", "dist", "node_modules", "bin", "obj", "__pycache__"));
+
+    /** 不影响测试结果的变更（文档） */
+    private static final Set<String> IGNORED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "md", "markdown", "adoc"));
+
+    private static final Pattern PACKAGE_PATTERN = Pattern.compile("^\\s*package\\s+([\\w.]+)", Pattern.MULTILINE);
+    private static final Pattern IMPORT_PATTERN = Pattern.compile("^\\s*import\\s+(?:static\\s+)?([\\w.]*\\w(?:\\.\\*)?)", Pattern.MULTILINE);
+    private static final Pattern TYPE_NAME_PATTERN = Pattern.compile("\\b[A-Z][A-Za-z0-9_]*\\b");
+
+    private static final Map<String, TestImpactAnalyzer> instances = new ConcurrentHashMap<>();
+
+    /**
+     * 获取工作区对应的分析器（依赖记录位于工作区缓存目录）
+     */
+    public static TestImpactAnalyzer of(Path workspace) {
+        Path root = workspace.toAbsolutePath().normalize();
+        return instances.computeIfAbsent(root.toString(),
+                k -> new TestImpactAnalyzer(root, root.resolve(AgentFlags.getHarnessCache()).resolve("test-impact.json")));
+    }
+
+    private final Path root;
+    private final Path indexFile;
+
+    /** 测试源码相对路径 → 依赖记录 */
+    private Map<String, TestEntry> index;
+    /** 文件监听记录的变更（git 不可用时使用） */
+    private final Set<String> watchedChanges = ConcurrentHashMap.newKeySet();
+    /** 最近一次选择测试时使用的监听变更（测试通过后从累计中移除） */
+    private List<String> selectedWatchedChanges = Collections.emptyList();
+    private volatile boolean watching;
+    /** 工作区是否在 git 仓库中（null 表示尚未检测） */
+    private volatile Boolean gitWorkspace;
+
+    TestImpactAnalyzer(Path root, Path indexFile) {
+        this.root = root;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * 记录文件监听到的变更（相对工作区路径）
+     */
+    public void recordChanges(Collection<String> paths) {
+        if (isGitWorkspace()) {
+            // git 工作区以 git 为准，不需要累计
+            return;
+        }
+        watching = true;
+        watchedChanges.addAll(paths);
+    }
+
+    /**
+     * 全量测试通过后调用：移除最近一次选择测试时已覆盖的监听变更（之后新记录的变更保留）。
+     * 只运行受影响测试不能清除：影响分析只看直接关系，间接依赖的测试可能未被选中
+     */
+    synchronized void markFullSuitePassed() {
+        watchedChanges.removeAll(selectedWatchedChanges);
+        selectedWatchedChanges = Collections.emptyList();
+    }
+
+    /**
+     * 选出受影响的测试类（全限定名）
+     *
+     * @return 测试类集合；null 表示无法判断（变更来源不可用或存在无法映射的变更），应运行全量
+     */
+    synchronized Set<String> selectTests() {
+        List<String> changed = changedFiles();
+        if (changed == null) {
+            return null;
+        }
+        return selectTests(changed);
+    }
+
+    /**
+     * 选出受影响的测试类（全限定名）
+     *
+     * @param changedFiles 变更文件（相对工作区路径）
+     * @return 测试类集合；null 表示存在无法映射的变更
+     */
+    synchronized Set<String> selectTests(Collection<String> changedFiles) {
+        Map<String, TestEntry> tests = refreshIndex();
+        Set<String> selected = new TreeSet<>();
+
+        for (String raw : changedFiles) {
+            String path = raw.replace('\\', '/');
+            if (isIgnored(path)) {
+                continue;
+            }
+
+            TestEntry changedTest = tests.get(path);
+            if (changedTest != null) {
+                selected.add(changedTest.className);
+                continue;
+            }
+            if (isTestSource(path)) {
+                // 已删除的测试源码
+                continue;
+            }
+
+            String className = mainClassName(path);
+            if (className == null) {
+                log.info("TestImpactAnalyzer: 无法映射的变更 {}，需运行全量测试", path);
+                return null;
+            }
+
+            int dot = className.lastIndexOf('.');
+            String pkg = dot > 0 ? className.substring(0, dot) : "";
+            String simpleName = className.substring(dot + 1);
+
+            for (TestEntry test : tests.values()) {
+                if (test.isAffectedBy(className, pkg, simpleName)) {
+                    selected.add(test.className);
+                }
+            }
+        }
+
+        return selected;
+    }
+
+    // ==================== 变更来源 ====================
+
+    private List<String> changedFiles() {
+        List<String> fromGit = gitChangedFiles();
+        if (fromGit != null) {
+            gitWorkspace = true;
+            watchedChanges.clear();
+            return fromGit;
+        }
+        if (watching) {
+            selectedWatchedChanges = new ArrayList<>(watchedChanges);
+            return new ArrayList<>(selectedWatchedChanges);
+        }
+        return null;
+    }
+
+    private boolean isGitWorkspace() {
+        Boolean git = gitWorkspace;
+        if (git == null) {
+            List<String> out = git("rev-parse", "--is-inside-work-tree");
+            git = out != null && out.contains("true");
+            gitWorkspace = git;
+        }
+        return git;
+    }
+
+    /**
+     * 相对 HEAD 的变更 + 未跟踪文件（路径相对工作区）；非 git 仓库或无提交时返回 null
+     */
+    private List<String> gitChangedFiles() {
+        List<String> diff = git("diff", "--name-only", "--relative", "HEAD");
+        if (diff == null) {
+            return null;
+        }
+        List<String> untracked = git("ls-files", "--others", "--exclude-standard");
+        if (untracked == null) {
+            return null;
+        }
+        diff.addAll(untracked);
+        return diff;
+    }
+
+    private List<String> git(String... args) {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.add("-c");
+        command.add("core.quotePath=false");
+        command.addAll(Arrays.asList(args));
+
+        try {
+            ProcessBuilder pb = new ProcessBuilder(command).directory(root.toFile());
+            ProcessRunner.Result result = ProcessRunner.run(pb, 30_000, 4 * 1024 * 1024);
+            if (result.exitCode != 0 || result.timedOut || result.truncated) {
+                return null;
+            }
+
+            List<String> lines = new ArrayList<>();
+            for (String line : result.stdout.split("\n")) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line.trim());
+                }
+            }
+            return lines;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // ==================== 映射 ====================
+
+    private static boolean isIgnored(String path) {
+        for (String seg : path.split("/")) {
+            if (seg.startsWith(".")) {
+                return true;
+            }
+        }
+        int dot = path.lastIndexOf('.');
+        return dot > 0 && IGNORED_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase());
+    }
+
+    static boolean isTestSource(String path) {
+        return (path.endsWith(".java") || path.endsWith(".kt"))
+                && (path.startsWith("src/test/") || path.contains("/src/test/"));
+    }
+
+    /**
+     * 主源码路径 → 全限定类名（如 {@code mod/src/main/java/a/b/Foo.java → a.b.Foo}）；非主源码返回 null
+     */
+    static String mainClassName(String path) {
+        if (!path.endsWith(".java") && !path.endsWith(".kt")) {
+            return null;
+        }
+
+        String[] markers = {"src/main/java/", "src/main/kotlin/"};
+        for (String marker : markers) {
+            int idx = path.startsWith(marker) ? 0 : path.indexOf("/" + marker);
+            if (idx < 0) {
+                continue;
+            }
+            String rel = path.substring(idx == 0 ? marker.length() : idx + 1 + marker.length());
+            rel = rel.substring(0, rel.lastIndexOf('.'));
+            return rel.replace('/', '.');
+        }
+        return null;
+    }
+
+    // ==================== 依赖记录 ====================
+
+    private Map<String, TestEntry> refreshIndex() {
+        if (index == null) {
+            index = loadIndex();
+        }
+
+        Map<String, TestEntry> fresh = new HashMap<>();
+        boolean[] changed = {false};
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(root)) {
+                        String name = dir.getFileName().toString();
+                        if (name.startsWith(".") || EXCLUDED_DIRS.contains(name)) {
+                            return FileVisitResult.SKIP_SUBTREE;
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String rel = root.relativize(file).toString().replace(File.separatorChar, '/');
+                    if (!isTestSource(rel)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    long mtime = attrs.lastModifiedTime().toMillis();
+                    TestEntry entry = index.get(rel);
+                    if (entry == null || entry.mtime != mtime) {
+                        entry = parse(file, rel, mtime);
+                        changed[0] = true;
+                    }
+                    if (entry != null) {
+                        fresh.put(rel, entry);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("TestImpactAnalyzer: 扫描测试源码失败: {}", e.getMessage());
+        }
+
+        if (changed[0] || fresh.size() != index.size()) {
+            index = fresh;
+            saveIndex();
+        }
+        return index;
+    }
+
+    private static TestEntry parse(Path file, String rel, long mtime) {
+        try {
+            String source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+
+            String fileName = file.getFileName().toString();
+            String simpleName = fileName.substring(0, fileName.lastIndexOf('.'));
+            Matcher pm = PACKAGE_PATTERN.matcher(source);
+            String pkg = pm.find() ? pm.group(1) : "";
+
+            TestEntry entry = new TestEntry();
+            entry.mtime = mtime;
+            entry.pkg = pkg;
+            entry.className = pkg.isEmpty() ? simpleName : pkg + "." + simpleName;
+
+            Matcher im = IMPORT_PATTERN.matcher(source);
+            while (im.find()) {
+                entry.imports.add(im.group(1));
+            }
+            Matcher tm = TYPE_NAME_PATTERN.matcher(source);
+            while (tm.find()) {
+                entry.refs.add(tm.group());
+            }
+            return entry;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private Map<String, TestEntry> loadIndex() {
+        Map<String, TestEntry> map = new HashMap<>();
+        try {
+            if (Files.exists(indexFile)) {
+                String json = new String(Files.readAllBytes(indexFile), StandardCharsets.UTF_8);
+                for (Map.Entry<String, ONode> kv : ONode.ofJson(json).getObject().entrySet()) {
+                    map.put(kv.getKey(), TestEntry.fromONode(kv.getValue()));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("TestImpactAnalyzer: 读取依赖记录失败，将重建: {}", e.getMessage());
+        }
+        return map;
+    }
+
+    private void saveIndex() {
+        try {
+            Files.createDirectories(indexFile.getParent());
+
+            ONode node = new ONode();
+            for (Map.Entry<String, TestEntry> kv : index.entrySet()) {
+                node.set(kv.getKey(), kv.getValue().toONode());
+            }
+
+            Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            Files.write(tempFile, node.toJson().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            log.warn("TestImpactAnalyzer: 保存依赖记录失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 测试类依赖记录
+     */
+    static class TestEntry {
+        long mtime;
+        String className;
+        String pkg;
+        final Set<String> imports = new HashSet<>();
+        /** 源码中出现的类型名（大写开头的标识符） */
+        final Set<String> refs = new HashSet<>();
+
+        boolean isAffectedBy(String changedClass, String changedPkg, String changedSimpleName) {
+            String testSimpleName = className.substring(className.lastIndexOf('.') + 1);
+            if (testSimpleName.equals(changedSimpleName + "Test")
+                    || testSimpleName.equals(changedSimpleName + "Tests")
+                    || testSimpleName.equals("Test" + changedSimpleName)
+                    || testSimpleName.equals(changedSimpleName + "IT")) {
+                return true;
+            }
+
+            if (imports.contains(changedClass) || imports.contains(changedPkg + ".*")) {
+                return true;
+            }
+
+            return pkg.equals(changedPkg) && refs.contains(changedSimpleName);
+        }
+
+        ONode toONode() {
+            ONode node = new ONode();
+            node.set("mtime", mtime);
+            node.set("className", className);
+            node.set("pkg", pkg);
+            ONode importsNode = node.getOrNew("imports").asArray();
+            for (String s : imports) {
+                importsNode.add(s);
+            }
+            ONode refsNode = node.getOrNew("refs").asArray();
+            for (String s : refs) {
+                refsNode.add(s);
+            }
+            return node;
+        }
+
+        static TestEntry fromONode(ONode node) {
+            TestEntry entry = new TestEntry();
+            entry.mtime = node.get("mtime").getLong();
+            entry.className = node.get("className").getString();
+            entry.pkg = node.get("pkg").getString();
+            for (ONode n : node.get("imports").getArray()) {
+                entry.imports.add(n.getString());
+            }
+            for (ONode n : node.get("refs").getArray()) {
+                entry.refs.add(n.getString());
+            }
+            return entry;
+        }
+    }
+}
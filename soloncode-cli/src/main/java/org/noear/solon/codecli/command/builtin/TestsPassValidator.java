@@ -3,10 +3,10 @@ package org.noear.solon.codecli.command.builtin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Set;
 
 /**
  * 测试通过验证器 — 自动检测项目类型并运行测试套件。
@@ -19,6 +19,12 @@ import java.nio.file.Paths;
  *   <li>Python (setup.py / pyproject.toml → {@code python -m pytest})</li>
  * </ul>
  *
+ * <p>通过 {@link BuildValidationService} 执行：工作区未变化时复用上次结论，超时强制结束测试进程。</p>
+ *
+ * <p>Maven / Gradle 项目先运行受变更影响的测试（见 {@link TestImpactAnalyzer}），失败即返回；
+ * 通过后再运行全量测试作为最终确认（影响分析只看直接关系，间接依赖的测试可能未被选中）。
+ * 无法判断影响范围时直接运行全量。</p>
+ *
  * <p>仅在目标条件包含 test/pass/check/ensure/verify 等关键字时自动触发。</p>
  *
  * @author noear
@@ -27,6 +33,9 @@ import java.nio.file.Paths;
 public class TestsPassValidator implements GoalValidator {
     private static final Logger log = LoggerFactory.getLogger(TestsPassValidator.class);
 
+    /** 测试截止时间 */
+    private static final long TEST_TIMEOUT_MS = 30 * 60_000L;
+
     private final String workspace;
 
     public TestsPassValidator(String workspace) {
@@ -44,12 +53,29 @@ public class TestsPassValidator implements GoalValidator {
         try {
             // 检测 Maven 项目
             if (Files.exists(workspacePath.resolve("pom.xml"))) {
-                return runCommand("mvn test", workspacePath);
+                String mvn = BuildValidationService.isOnPath("mvnd") ? "mvnd" : "mvn";
+                Set<String> impacted = selectImpactedTests(workspacePath);
+                if (impacted != null) {
+                    ValidationResult vr = runCommand(mavenSelectedCommand(mvn, impacted), workspacePath);
+                    if (!vr.isPassed()) {
+                        return vr;
+                    }
+                }
+                return runFullSuite(mvn + " test", workspacePath);
             }
             // 检测 Gradle 项目
             if (Files.exists(workspacePath.resolve("build.gradle")) ||
                     Files.exists(workspacePath.resolve("build.gradle.kts"))) {
-                return runCommand("gradle test", workspacePath);
+                String gradle = BuildPassValidator.gradleCommand(workspacePath);
+                Set<String> impacted = selectImpactedTests(workspacePath);
+                if (impacted != null) {
+                    ValidationResult vr = runCommand(gradleSelectedCommand(gradle, impacted), workspacePath);
+                    // 多项目构建中，未包含选中测试的子项目会报 "No tests found"，此时以全量结果为准
+                    if (!vr.isPassed() && !vr.detail().contains("No tests found")) {
+                        return vr;
+                    }
+                }
+                return runFullSuite(gradle + " test --daemon", workspacePath);
             }
             // 检测 Node 项目
             if (Files.exists(workspacePath.resolve("package.json"))) {
@@ -68,39 +94,70 @@ public class TestsPassValidator implements GoalValidator {
         }
     }
 
+    /**
+     * 受变更影响的测试；返回 null 表示跳过增量阶段（无法判断、无受影响测试或数量过多）
+     */
+    private Set<String> selectImpactedTests(Path workDir) {
+        Set<String> impacted = TestImpactAnalyzer.of(workDir).selectTests();
+        if (impacted == null || impacted.isEmpty() || impacted.size() > TestImpactAnalyzer.MAX_SELECTED) {
+            return null;
+        }
+        log.info("TestsPassValidator: 先运行受影响的 {} 个测试类", impacted.size());
+        return impacted;
+    }
+
+    private ValidationResult runFullSuite(String command, Path workDir) {
+        ValidationResult vr = runCommand(command, workDir);
+        if (vr.isPassed()) {
+            TestImpactAnalyzer.of(workDir).markFullSuitePassed();
+        }
+        return vr;
+    }
+
+    static String mavenSelectedCommand(String mvn, Set<String> tests) {
+        StringBuilder buf = new StringBuilder();
+        for (String test : tests) {
+            if (buf.length() > 0) {
+                buf.append(',');
+            }
+            buf.append(test.substring(test.lastIndexOf('.') + 1));
+        }
+        // 多模块项目中，未包含选中测试的模块不应失败
+        return mvn + " test -Dtest=" + buf
+                + " -Dsurefire.failIfNoSpecifiedTests=false -DfailIfNoTests=false";
+    }
+
+    static String gradleSelectedCommand(String gradle, Set<String> tests) {
+        StringBuilder buf = new StringBuilder(gradle).append(" test --daemon");
+        for (String test : tests) {
+            buf.append(" --tests ").append(test);
+        }
+        return buf.toString();
+    }
+
     private ValidationResult runCommand(String command, Path workDir) {
         try {
-            log.info("TestsPassValidator 运行: {} (工作目录: {})", command, workDir);
+            BuildValidationService.Verdict verdict = BuildValidationService.getInstance()
+                    .run(workDir, command, TEST_TIMEOUT_MS);
 
-            ProcessBuilder pb = new ProcessBuilder();
-            if (System.getProperty("os.name").toLowerCase().contains("win")) {
-                pb.command("cmd.exe", "/c", command);
-            } else {
-                pb.command("sh", "-c", command);
+            if (verdict.timedOut) {
+                log.warn("TestsPassValidator: 测试超时 ({}s)", TEST_TIMEOUT_MS / 1000);
+                return ValidationResult.failed("测试超时 (" + TEST_TIMEOUT_MS / 1000 + "s 内未完成): '" + command + "'");
             }
-            pb.directory(workDir.toFile());
-            pb.redirectErrorStream(true);
-
-            Process process = pb.start();
-            // Java 8 兼容：手动读取 InputStream
-            java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-            byte[] buffer = new byte[8192];
-            int len;
-            while ((len = process.getInputStream().read(buffer)) != -1) {
-                baos.write(buffer, 0, len);
+            if (verdict.cancelled) {
+                return ValidationResult.failed("测试被中断: '" + command + "'");
             }
-            String output = new String(baos.toByteArray(), StandardCharsets.UTF_8);
-            int exitCode = process.waitFor();
 
-            if (exitCode == 0) {
-                log.info("TestsPassValidator: 测试通过 (exit code=0)");
+            if (verdict.isPassed()) {
+                log.info("TestsPassValidator: 测试通过 (exit code=0{})", verdict.cached ? ", cached" : "");
                 return ValidationResult.passed();
             } else {
+                String output = verdict.output;
                 String tail = output.length() > 500
                         ? output.substring(output.length() - 500)
                         : output;
-                log.warn("TestsPassValidator: 测试失败 (exit code={})", exitCode);
-                return ValidationResult.failed("测试未通过 (exit=" + exitCode + "): " + tail.trim());
+                log.warn("TestsPassValidator: 测试失败 (exit code={})", verdict.exitCode);
+                return ValidationResult.failed("测试未通过 (exit=" + verdict.exitCode + "): " + tail.trim());
             }
         } catch (Exception e) {
             log.warn("TestsPassValidator 命令执行异常: {}", e.getMessage());
@@ -2,6 +2,10 @@ package org.noear.solon.codecli.command.builtin;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * 验证器工厂 — 根据目标条件匹配合适的验证器。
@@ -108,8 +112,17 @@ public class ValidatorFactory {
 
     /**
      * 链式验证器 — 所有子验证器都通过才算通过。
+     *
+     * <p>子验证器并行执行（同一工作区的构建命令由 {@link BuildValidationService} 串行），
+     * 失败时按注册顺序返回第一个失败结果。</p>
      */
     private static class ChainValidator implements GoalValidator {
+        private static final ExecutorService POOL = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "goal-validator");
+            t.setDaemon(true);
+            return t;
+        });
+
         private final List<GoalValidator> validators;
 
         ChainValidator(List<GoalValidator> validators) {
@@ -118,13 +131,35 @@ public class ValidatorFactory {
 
         @Override
         public ValidationResult validate(String condition, String sessionId) {
+            if (validators.size() == 1) {
+                return validators.get(0).validate(condition, sessionId);
+            }
+
+            List<Future<ValidationResult>> futures = new ArrayList<>();
             for (GoalValidator v : validators) {
-                ValidationResult vr = v.validate(condition, sessionId);
-                if (!vr.isPassed()) {
-                    return vr;
+                futures.add(POOL.submit(() -> v.validate(condition, sessionId)));
+            }
+
+            try {
+                for (Future<ValidationResult> future : futures) {
+                    ValidationResult vr = future.get();
+                    if (!vr.isPassed()) {
+                        return vr;
+                    }
+                }
+                return ValidationResult.passed();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ValidationResult.failed("验证被中断");
+            } catch (ExecutionException e) {
+                return ValidationResult.failed("验证异常: " + e.getCause().getMessage());
+            } finally {
+                // 已有结论（失败或中断）时取消其余验证，使其结束外部进程；
+                // 被取消验证器返回的“被中断”失败不再读取，不会覆盖已有结论
+                for (Future<ValidationResult> future : futures) {
+                    future.cancel(true);
                 }
             }
-            return ValidationResult.passed();
         }
     }
 }
@@ -3,18 +3,22 @@ package org.noear.solon.codecli.config;
 import org.noear.snack4.ONode;
 import org.noear.solon.core.util.DateUtil;
 import org.noear.solon.core.util.IoUtil;
+import org.noear.solon.core.util.RunUtil;
 import org.noear.solon.codecli.config.ProxyConfig;
 import org.noear.solon.net.http.HttpUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Date;
+import java.util.Properties;
 
 /**
  *
@@ -36,6 +40,7 @@ public class AgentFlags {
     public final static String FLAG_SERVE = "serve";
     public final static String FLAG_ACP = "acp";
     public final static String FLAG_WEB = "web";
+    public final static String FLAG_DAEMON = "daemon";
 
     public final static String SCOPE_USER = "user"; //作用域：用户（用局）
     public final static String SCOPE_LOCAL = "workspace"; //作用域：本地
@@ -44,40 +49,121 @@ public class AgentFlags {
         return "v2026.8.7";
     }
 
-    private static String lastVersion;
+    /** 更新检测结果缓存文件（用户目录 .soloncode/cache/ 下） */
+    private static final String NAME_UPDATE_CACHE = "update-check.properties";
+    /** 更新检测结果的有效期：过期后在后台重新检测 */
+    private static final long UPDATE_CHECK_TTL_MS = 24 * 60 * 60 * 1000L;
 
+    private static volatile String lastVersion;
+
+    /**
+     * 最新版本（只读取磁盘缓存，不发起网络请求；从未检测过时为 null）
+     */
     public static String getLastVersion() {
         if (lastVersion == null) {
-            try {
-                HttpUtils http = HttpUtils.http("https://solon.noear.org/soloncode/info.json")
-                        .timeout(2);
-                ProxyConfig.applyIfNeeded(http);
-                String json = http.get();
+            lastVersion = loadUpdateCache().getProperty("cli_version");
+        }
+
+        return lastVersion;
+    }
+
+    /**
+     * 是否有新版本（依据上次检测的缓存结果，不阻塞启动；缓存过期时在后台刷新，下次启动生效）
+     */
+    public static boolean checkUpdate() {
+        Properties cache = loadUpdateCache();
+
+        long checkedAt = parseLong(cache.getProperty("checked_at"));
+        long now = System.currentTimeMillis();
+        if (now - checkedAt > UPDATE_CHECK_TTL_MS || checkedAt > now) {
+            RunUtil.async(AgentFlags::refreshLastVersion);
+        }
+
+        lastVersion = cache.getProperty("cli_version");
+        return isNewerVersion(lastVersion, getVersion());
+    }
+
+    /**
+     * 联网检测最新版本并写入缓存（失败时也记录检测时间，避免离线时每次启动都重试）
+     */
+    public static void refreshLastVersion() {
+        Properties cache = loadUpdateCache();
+
+        try {
+            HttpUtils http = HttpUtils.http("https://solon.noear.org/soloncode/info.json")
+                    .timeout(2);
+            ProxyConfig.applyIfNeeded(http);
+            String json = http.get();
+
+            String version = ONode.ofJson(json).get("cli_version").getValueAs();
+            if (version != null) {
+                cache.setProperty("cli_version", version);
+                lastVersion = version;
+            }
+        } catch (Throwable e) {
+            LOG.warn("Update detection failed: {}", e.getMessage());
+        }
+
+        cache.setProperty("checked_at", String.valueOf(System.currentTimeMillis()));
+        saveUpdateCache(cache);
+    }
+
+    /**
+     * 版本 last 是否比 curr 新（版本号形如 v2026.8.7）
+     */
+    public static boolean isNewerVersion(String last, String curr) {
+        if (last == null || last.length() < 2 || curr == null || curr.length() < 2) {
+            return false;
+        }
+
+        Date lastDate = DateUtil.parseTry(last.substring(1));
+        Date currDate = DateUtil.parseTry(curr.substring(1));
 
-                lastVersion = ONode.ofJson(json).get("cli_version").getValueAs();
+        return lastDate != null && currDate != null && lastDate.getTime() > currDate.getTime();
+    }
+
+    private static Path getUpdateCacheFile() {
+        return Paths.get(getUserHome(), getHarnessCache(), NAME_UPDATE_CACHE);
+    }
+
+    private static Properties loadUpdateCache() {
+        Properties props = new Properties();
+        Path file = getUpdateCacheFile();
+
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
             } catch (Throwable e) {
-                LOG.warn("Update detection failed: {}", e.getMessage());
+                LOG.debug("Update cache load failure: {}", e.getMessage());
             }
         }
 
-        return lastVersion;
+        return props;
     }
 
+    private static void saveUpdateCache(Properties props) {
+        Path file = getUpdateCacheFile();
 
-    public static boolean checkUpdate() {
-        String tmp = getLastVersion();
-        if (tmp != null) {
-            Date lastDate = DateUtil.parseTry(tmp.substring(1));
-            Date currDate = DateUtil.parseTry(getVersion().substring(1));
-
-            if (lastDate != null && currDate != null) {
-                if (lastDate.getTime() > currDate.getTime()) {
-                    return true;
-                }
+        try {
+            Files.createDirectories(file.getParent());
+
+            // 先写临时文件再替换，多个进程同时刷新时不会读到半个文件
+            Path tmp = file.resolveSibling(NAME_UPDATE_CACHE + "." + System.nanoTime() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "soloncode update check");
             }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Throwable e) {
+            LOG.debug("Update cache save failure: {}", e.getMessage());
         }
+    }
 
-        return false;
+    private static long parseLong(String str) {
+        try {
+            return str == null ? 0L : Long.parseLong(str.trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
     }
 
     //------------------
@@ -229,5 +315,19 @@ public class AgentFlags {
         return getHarnessHome() + "skins/";
     }
 
+    /**
+     * 马具附件存放区（按 sha256 内容寻址）
+     */
+    public static final String getHarnessBlobs() {
+        return getHarnessHome() + "blobs/";
+    }
+
+    /**
+     * 马具辅助任务结果缓存区（提交摘要等小型 LLM 任务）
+     */
+    public static final String getHarnessCache() {
+        return getHarnessHome() + "cache/";
+    }
+
 
 }
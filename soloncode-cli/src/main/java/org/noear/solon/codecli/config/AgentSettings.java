@@ -43,6 +43,8 @@ public class AgentSettings implements Serializable {
     private String defaultModel;
     //models
     private Map<String, ModelDo> models = new LinkedHashMap<>();
+    //模型组（按健康度在成员间路由）
+    private Map<String, ModelGroupDo> modelGroups = new LinkedHashMap<>();
     //挂载
     private Map<String, MountDo> mountPools = new LinkedHashMap<>();
 
@@ -247,6 +249,7 @@ public class AgentSettings implements Serializable {
         this.defaultModel = other.defaultModel;
         
         replaceMap(this.models, other.models);
+        replaceMap(this.modelGroups, other.modelGroups);
         replaceMap(this.mountPools, other.mountPools);
         replaceMap(this.mcpServers, other.mcpServers);
         replaceMap(this.apiServers, other.apiServers);
@@ -334,6 +337,7 @@ public class AgentSettings implements Serializable {
         node.set("loop", ONode.ofBean(s.loop));
         node.set("defaultModel", s.defaultModel);
         node.set("models", ONode.ofBean(s.models));
+        node.set("modelGroups", ONode.ofBean(s.modelGroups));
         node.set("mountPools", ONode.ofBean(s.mountPools));
         node.set("mcpServers", ONode.ofBean(s.mcpServers));
         node.set("apiServers", ONode.ofBean(s.apiServers));
@@ -410,6 +414,18 @@ public class AgentSettings implements Serializable {
             }
         });
 
+        if (modelGroups.size() > 0) {
+            oNode.getOrNew("modelGroups").asObject().then(map -> {
+                for (Map.Entry<String, ModelGroupDo> entry : modelGroups.entrySet()) {
+                    if (isLocalAsGlobal == false && AgentFlags.SCOPE_LOCAL.equals(entry.getValue().getScope())) {
+                        continue;
+                    }
+
+                    map.getOrNew(entry.getKey()).fill(entry.getValue());
+                }
+            });
+        }
+
         oNode.getOrNew("mcpServers").asObject().then(map -> {
             for (Map.Entry<String, McpServerDo> entry : mcpServers.entrySet()) {
                 if (isLocalAsGlobal == false && AgentFlags.SCOPE_LOCAL.equals(entry.getValue().getScope())) {
@@ -496,6 +512,18 @@ public class AgentSettings implements Serializable {
             }
         });
 
+        if (modelGroups.size() > 0) {
+            oNode.getOrNew("modelGroups").asObject().then(map -> {
+                for (Map.Entry<String, ModelGroupDo> entry : modelGroups.entrySet()) {
+                    if (AgentFlags.SCOPE_LOCAL.equals(entry.getValue().getScope()) == false) {
+                        continue;
+                    }
+
+                    map.getOrNew(entry.getKey()).fill(entry.getValue());
+                }
+            });
+        }
+
         oNode.getOrNew("mcpServers").asObject().then(map -> {
             for (Map.Entry<String, McpServerDo> entry : mcpServers.entrySet()) {
                 if (AgentFlags.SCOPE_LOCAL.equals(entry.getValue().getScope()) == false) {
@@ -33,6 +33,17 @@ public class LoopGroupDo implements Serializable {
     // 连续异常阈值（TurnError → blocked，默认 3）
     private Integer maxConsecutiveErrors;
 
+    // ===== 执行调度 =====
+    // 全局同时执行的循环任务数上限（跨会话，默认 4）
+    private Integer maxConcurrentTasks;
+    // 排队优先级老化间隔（秒，每等待该时长优先级 +1，默认 30）
+    private Integer priorityAgingSeconds;
+
+    // ===== 并行拆分 =====
+    // 子目标并行数上限（默认 4）
+    private Integer fanOutParallelism;
+    // 每个子目标的轮次上限（默认 5）
+    private Integer fanOutMaxRounds;
 
     // ===== 验证器 =====
     // 启用验证器（默认 true）
@@ -64,6 +75,22 @@ public class LoopGroupDo implements Serializable {
         return maxConsecutiveErrors != null ? maxConsecutiveErrors : 3;
     }
 
+    public int getMaxConcurrentTasksOrDefault() {
+        return maxConcurrentTasks != null && maxConcurrentTasks > 0 ? maxConcurrentTasks : 4;
+    }
+
+    public long getPriorityAgingMsOrDefault() {
+        return priorityAgingSeconds != null && priorityAgingSeconds > 0 ? priorityAgingSeconds * 1000L : 30_000L;
+    }
+
+    public int getFanOutParallelismOrDefault() {
+        return fanOutParallelism != null && fanOutParallelism > 0 ? fanOutParallelism : 4;
+    }
+
+    public int getFanOutMaxRoundsOrDefault() {
+        return fanOutMaxRounds != null && fanOutMaxRounds > 0 ? fanOutMaxRounds : 5;
+    }
+
     public boolean isValidatorEnabledOrDefault() {
         return validatorEnabled != null ? validatorEnabled : true;
     }
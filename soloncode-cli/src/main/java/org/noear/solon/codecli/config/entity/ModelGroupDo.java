@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.config.entity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.noear.solon.codecli.config.AgentFlags;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 模型组配置数据对象（按健康度在成员模型间路由）
+ *
+ * <p>选择模型组名时，由 ModelRouter 从成员中挑选当前最健康的模型；成员按顺序表示偏好。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+@Getter
+@Setter
+public class ModelGroupDo implements Serializable {
+    /**
+     * 成员模型名（按偏好排序）
+     */
+    private List<String> members = new ArrayList<>();
+
+    /**
+     * 连续失败多少次后切换到其它成员
+     */
+    private int failoverErrors = 2;
+
+    /**
+     * 辅助任务（提交摘要等短调用）是否发送对冲请求
+     */
+    private boolean hedge = false;
+
+    /**
+     * 对冲截止时间取辅助调用整体耗时的百分位（如 90 表示 p90）
+     */
+    private int hedgePercentile = 90;
+
+    /**
+     * 作用域：global（全局）/ local（工作区）
+     */
+    private String scope = AgentFlags.SCOPE_USER;
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.config.models;
+
+import org.noear.solon.core.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 供应商模型目录（各供应商 /models 列表的并发拉取与缓存）。
+ *
+ * <ul>
+ *   <li>多个供应商并发拉取，每个供应商有独立的截止时间，慢的供应商不拖累其它供应商</li>
+ *   <li>结果按供应商缓存（有效期内直接返回）；过期后先返回旧数据，同时在后台重新拉取（stale-while-revalidate）</li>
+ *   <li>拉取失败或返回空列表时保留旧数据；同一供应商同时只有一个拉取在进行</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class ModelCatalogService {
+    private static final Logger LOG = LoggerFactory.getLogger(ModelCatalogService.class);
+
+    private static volatile ModelCatalogService instance;
+
+    public static ModelCatalogService getInstance() {
+        if (instance == null) {
+            synchronized (ModelCatalogService.class) {
+                if (instance == null) {
+                    instance = new ModelCatalogService(ModelsAdapterManager.getInstance()::getAdapter,
+                            CACHE_TTL_MS, FETCH_DEADLINE_MS, FETCH_THREADS);
+                }
+            }
+        }
+
+        return instance;
+    }
+
+    //-------
+
+    /** 缓存有效期：过期后先返回旧数据并在后台重新拉取 */
+    static final long CACHE_TTL_MS = 10 * 60 * 1000L;
+    /** 单个供应商的拉取截止时间（从开始拉取时计时，不含排队；适配器自身的 HTTP 超时为 15s） */
+    static final long FETCH_DEADLINE_MS = 20_000L;
+    static final int FETCH_THREADS = 4;
+
+    private final Function<String, ModelsAdapter> adapterResolver;
+    private final long ttlMs;
+    private final long deadlineMs;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+
+    private final Map<String, Snapshot> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Snapshot>> inflight = new ConcurrentHashMap<>();
+
+    ModelCatalogService(Function<String, ModelsAdapter> adapterResolver, long ttlMs, long deadlineMs, int threads) {
+        this.adapterResolver = adapterResolver;
+        this.ttlMs = ttlMs;
+        this.deadlineMs = deadlineMs;
+
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "model-catalog");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "model-catalog-deadline");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 获取单个供应商的模型列表
+     *
+     * <p>有效缓存直接返回；过期缓存直接返回（标记 stale）并在后台刷新，刷新完成后回调 onFresh；
+     * 没有缓存（或强制刷新）时同步拉取，最多等待截止时间。</p>
+     *
+     * @param source    供应商
+     * @param userAgent 请求 User-Agent
+     * @param force     是否忽略缓存强制拉取
+     * @param onFresh   后台刷新完成的回调（可为 null）
+     */
+    public Snapshot get(Source source, String userAgent, boolean force, BiConsumer<Source, Snapshot> onFresh) {
+        Snapshot cached = cache.get(source.key());
+
+        if (cached != null && force == false) {
+            if (isFresh(cached, System.currentTimeMillis())) {
+                return cached;
+            }
+
+            refresh(source, userAgent).thenAccept(fresh -> {
+                if (onFresh != null && fresh.isUpdated()) {
+                    onFresh.accept(source, fresh);
+                }
+            });
+            return cached.asStale();
+        }
+
+        try {
+            return refresh(source, userAgent).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(source, "interrupted");
+        } catch (ExecutionException e) {
+            return failed(source, String.valueOf(e.getCause()));
+        }
+    }
+
+    /**
+     * 并发获取多个供应商的模型列表，每个供应商的结果到达时即回调（不等待最慢的供应商）
+     *
+     * <p>有效缓存立即回调；其余供应商并发拉取，各自受截止时间约束。</p>
+     *
+     * @param sources   供应商列表
+     * @param userAgent 请求 User-Agent
+     * @param force     是否忽略缓存强制拉取
+     * @param listener  单个供应商结果回调（在拉取线程中调用）
+     * @return 全部供应商完成（或超过截止时间）时完成
+     */
+    public CompletableFuture<Void> fetchAll(Collection<Source> sources, String userAgent, boolean force,
+                                            BiConsumer<Source, Snapshot> listener) {
+        List<CompletableFuture<?>> all = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        for (Source source : sources) {
+            Snapshot cached = cache.get(source.key());
+            if (cached != null && force == false && isFresh(cached, now)) {
+                notify(listener, source, cached);
+                continue;
+            }
+
+            all.add(refresh(source, userAgent).thenAccept(snapshot -> notify(listener, source, snapshot)));
+        }
+
+        return CompletableFuture.allOf(all.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * 获取缓存（不触发拉取；过期的标记为 stale）
+     */
+    public Snapshot getCached(Source source) {
+        Snapshot cached = cache.get(source.key());
+        if (cached == null) {
+            return null;
+        }
+
+        return isFresh(cached, System.currentTimeMillis()) ? cached : cached.asStale();
+    }
+
+    /**
+     * 清除缓存（供应商地址或密钥变更时）
+     */
+    public void invalidate(Source source) {
+        cache.remove(source.key());
+    }
+
+    /**
+     * 拉取供应商模型列表（同一供应商合并为一个拉取；超过截止时间按失败处理，迟到的结果仍写入缓存）
+     *
+     * <p>截止时间在工作线程开始拉取时才计时：供应商多于工作线程时，排队中的供应商不因前面的慢供应商而超时。</p>
+     */
+    CompletableFuture<Snapshot> refresh(Source source, String userAgent) {
+        String key = source.key();
+
+        CompletableFuture<Snapshot> result = new CompletableFuture<>();
+        CompletableFuture<Snapshot> existing = inflight.putIfAbsent(key, result);
+        if (existing != null) {
+            return existing;
+        }
+
+        long startAt = System.currentTimeMillis();
+
+        CompletableFuture
+                .supplyAsync(() -> {
+                    scheduleDeadline(source, key, result);
+                    return fetch(source, userAgent);
+                }, workers)
+                .whenComplete((models, err) -> {
+                    Snapshot snapshot;
+                    if (err == null && models != null && models.isEmpty() == false) {
+                        snapshot = new Snapshot(source.getName(), models, System.currentTimeMillis(), false, null, true);
+                        cache.put(key, snapshot);
+                    } else {
+                        snapshot = failed(source, err != null ? String.valueOf(err) : "no models returned");
+                    }
+
+                    LOG.debug("[ModelCatalog] {} fetched in {}ms: {}", source, System.currentTimeMillis() - startAt,
+                            snapshot.getError() != null ? snapshot.getError() : snapshot.getModels().size() + " models");
+
+                    inflight.remove(key, result);
+                    result.complete(snapshot);
+                });
+
+        return result;
+    }
+
+    private void scheduleDeadline(Source source, String key, CompletableFuture<Snapshot> result) {
+        ScheduledFuture<?> deadline = timer.schedule(() -> {
+            if (result.complete(failed(source, "timeout after " + deadlineMs + "ms"))) {
+                inflight.remove(key, result);
+                LOG.warn("[ModelCatalog] {} did not respond within {}ms", source, deadlineMs);
+            }
+        }, deadlineMs, TimeUnit.MILLISECONDS);
+        result.whenComplete((s, e) -> deadline.cancel(false));
+    }
+
+    private List<ModelInfo> fetch(Source source, String userAgent) {
+        ModelsAdapter adapter = adapterResolver.apply(source.getStandard());
+        String baseUrl = adapter.deriveBaseUrl(source.getApiUrl());
+
+        Map<String, String> headers = new HashMap<>();
+        if (Assert.isNotEmpty(source.getApiKey())) {
+            headers.put("Authorization", "Bearer " + source.getApiKey());
+        }
+
+        List<ModelInfo> models = new ArrayList<>(adapter.fetchModels(userAgent, baseUrl, headers, source.getApiKey()));
+        models.sort(Comparator.comparing(ModelInfo::getId, Comparator.nullsLast(String::compareTo)));
+        return Collections.unmodifiableList(models);
+    }
+
+    /**
+     * 失败结果：有旧数据时返回旧数据（stale），否则返回空列表
+     */
+    private Snapshot failed(Source source, String error) {
+        Snapshot cached = cache.get(source.key());
+        if (cached != null) {
+            return new Snapshot(source.getName(), cached.getModels(), cached.getFetchedAt(), true, error, false);
+        }
+
+        return new Snapshot(source.getName(), Collections.emptyList(), 0L, true, error, false);
+    }
+
+    private boolean isFresh(Snapshot snapshot, long now) {
+        return now - snapshot.getFetchedAt() < ttlMs;
+    }
+
+    private static void notify(BiConsumer<Source, Snapshot> listener, Source source, Snapshot snapshot) {
+        try {
+            listener.accept(source, snapshot);
+        } catch (Throwable e) {
+            LOG.warn("[ModelCatalog] Listener failed for {}: {}", source, e.getMessage());
+        }
+    }
+
+    /**
+     * 供应商（拉取模型列表所需的连接信息）
+     */
+    public static class Source {
+        private final String name;
+        private final String standard;
+        private final String apiUrl;
+        private final String apiKey;
+
+        public Source(String name, String standard, String apiUrl, String apiKey) {
+            this.name = name;
+            this.standard = standard;
+            this.apiUrl = apiUrl;
+            this.apiKey = apiKey;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getStandard() {
+            return standard;
+        }
+
+        public String getApiUrl() {
+            return apiUrl;
+        }
+
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        /** 缓存键：规范 + 地址 + 密钥摘要（不含名称，同一地址的供应商共享缓存） */
+        String key() {
+            String std = ModelApiUrl.normalizeStandard(standard);
+            String url = apiUrl == null ? "" : ModelApiUrl.trimTrailingSlash(apiUrl.trim());
+            String keyHash = apiKey == null ? "" : Integer.toHexString(apiKey.hashCode());
+            return std + "|" + url + "|" + keyHash;
+        }
+
+        @Override
+        public String toString() {
+            return name != null ? name : String.valueOf(apiUrl);
+        }
+    }
+
+    /**
+     * 某个供应商的模型列表快照
+     */
+    public static class Snapshot {
+        private final String provider;
+        private final List<ModelInfo> models;
+        private final long fetchedAt;
+        private final boolean stale;
+        private final String error;
+        private final boolean updated;
+
+        Snapshot(String provider, List<ModelInfo> models, long fetchedAt, boolean stale, String error, boolean updated) {
+            this.provider = provider;
+            this.models = models;
+            this.fetchedAt = fetchedAt;
+            this.stale = stale;
+            this.error = error;
+            this.updated = updated;
+        }
+
+        Snapshot asStale() {
+            return new Snapshot(provider, models, fetchedAt, true, null, false);
+        }
+
+        /** 供应商名称（可能为 null） */
+        public String getProvider() {
+            return provider;
+        }
+
+        /** 模型列表（按 id 排序，只读） */
+        public List<ModelInfo> getModels() {
+            return models;
+        }
+
+        /** 拉取时间（从未成功时为 0） */
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+
+        /** 是否为过期数据（已过有效期或本次拉取失败） */
+        public boolean isStale() {
+            return stale;
+        }
+
+        /** 本次拉取失败的原因（成功时为 null） */
+        public String getError() {
+            return error;
+        }
+
+        /** 是否为本次新拉取到的数据 */
+        public boolean isUpdated() {
+            return updated;
+        }
+    }
+}
@@ -0,0 +1,529 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.config.models;
+
+import org.noear.solon.codecli.config.entity.ModelGroupDo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 模型路由（按延迟与错误率在模型组成员间选择）
+ *
+ * <ul>
+ *   <li>按模型在滑动窗口内记录首 token 耗时（TTFT）、输出速度（tokens/s）与成败</li>
+ *   <li>选择模型组名时，路由到当前最健康的成员；同一会话固定在一个成员上（利于提示缓存），
+ *       该成员连续失败达到阈值后，下一轮切换到其它成员（冷却后再放行试探）</li>
+ *   <li>辅助任务可开启对冲：主成员超过其 TTFT 百分位仍未返回时，向次优成员并发一份，先返回者胜出</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class ModelRouter {
+    private static final Logger LOG = LoggerFactory.getLogger(ModelRouter.class);
+
+    private static ModelRouter instance;
+
+    public static ModelRouter getInstance() {
+        if (instance == null) {
+            instance = new ModelRouter(System::currentTimeMillis);
+        }
+
+        return instance;
+    }
+
+    //-------
+
+    /** 滑动窗口：最多样本数 */
+    static final int WINDOW_SIZE = 50;
+    /** 滑动窗口：样本有效时长 */
+    static final long WINDOW_MS = 15 * 60 * 1000L;
+    /** 成员熔断后的冷却时间（之后放行一次试探） */
+    static final long COOLDOWN_MS = 60 * 1000L;
+    /** 非首选成员的预计耗时需快过首选成员这个倍数才会被选中（避免抖动） */
+    static final double SWITCH_RATIO = 1.5;
+    /** 估算预计耗时所用的参考输出长度 */
+    static final int REFERENCE_OUTPUT_TOKENS = 500;
+    /** 计算对冲截止时间所需的最少样本数 */
+    static final int MIN_HEDGE_SAMPLES = 5;
+    private static final double CHARS_PER_TOKEN = 4.0;
+    private static final int MAX_PINNED_SESSIONS = 1000;
+
+    private final LongSupplier clock;
+    private final Map<String, Health> healthMap = new ConcurrentHashMap<>();
+    /** 模型组 + 会话 → 固定的成员（超过上限时淘汰最久未使用的会话，其余会话保持提示词缓存亲和） */
+    private final Map<String, String> pinned = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_PINNED_SESSIONS;
+                }
+            });
+    private final ExecutorService hedgePool;
+
+    private volatile Supplier<Map<String, ModelGroupDo>> groupsSupplier = Collections::emptyMap;
+    private volatile Supplier<String> defaultModelSupplier = () -> null;
+
+    ModelRouter(LongSupplier clock) {
+        this.clock = clock;
+        this.hedgePool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "model-hedge");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 设置模型组来源（通常为 settings.modelGroups，重载配置后即时生效）
+     */
+    public void setGroups(Supplier<Map<String, ModelGroupDo>> groupsSupplier) {
+        this.groupsSupplier = groupsSupplier == null ? Collections::emptyMap : groupsSupplier;
+    }
+
+    /**
+     * 设置默认模型来源（默认模型为模型组名时，未选择模型的会话也按组路由）
+     */
+    public void setDefaultModel(Supplier<String> defaultModelSupplier) {
+        this.defaultModelSupplier = defaultModelSupplier == null ? () -> null : defaultModelSupplier;
+    }
+
+    public ModelGroupDo getGroup(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        Map<String, ModelGroupDo> groups = groupsSupplier.get();
+        return groups == null ? null : groups.get(name);
+    }
+
+    public boolean isGroup(String name) {
+        return getGroup(name) != null;
+    }
+
+    public Set<String> getGroupNames() {
+        Map<String, ModelGroupDo> groups = groupsSupplier.get();
+        return groups == null ? Collections.emptySet() : groups.keySet();
+    }
+
+    /**
+     * 路由模型名：模型组名返回选中的成员；其它名称原样返回
+     *
+     * @param name      模型名或模型组名（为 null 时取默认模型）
+     * @param sessionId 会话 id（为 null 时不固定成员）
+     * @param available 成员是否可用（如 engine::hasModel）
+     */
+    public String route(String name, String sessionId, Predicate<String> available) {
+        String groupName = name == null ? defaultModelSupplier.get() : name;
+        ModelGroupDo group = getGroup(groupName);
+        if (group == null) {
+            return name;
+        }
+
+        List<String> ranked = rank(group, available);
+        if (ranked.isEmpty()) {
+            return name;
+        }
+
+        if (sessionId == null) {
+            return ranked.get(0);
+        }
+
+        String key = groupName + "#" + sessionId;
+        String current = pinned.get(key);
+        if (current != null && ranked.contains(current)
+                && health(current).isAvailable(clock.getAsLong(), group.getFailoverErrors())) {
+            return current;
+        }
+
+        String selected = ranked.get(0);
+        if (current != null && current.equals(selected) == false) {
+            LOG.warn("[ModelRouter] {} failover: {} -> {} (session {})", groupName, current, selected, sessionId);
+        }
+
+        pinned.put(key, selected);
+        return selected;
+    }
+
+    /**
+     * 成员排序：最健康的在前，其余健康成员按配置顺序；全部熔断时按配置顺序兜底
+     */
+    List<String> rank(ModelGroupDo group, Predicate<String> available) {
+        long now = clock.getAsLong();
+
+        List<String> candidates = new ArrayList<>();
+        for (String member : group.getMembers()) {
+            if (member != null && candidates.contains(member) == false && (available == null || available.test(member))) {
+                candidates.add(member);
+            }
+        }
+
+        List<String> healthy = new ArrayList<>();
+        for (String member : candidates) {
+            if (health(member).isAvailable(now, group.getFailoverErrors())) {
+                healthy.add(member);
+            }
+        }
+
+        if (healthy.isEmpty()) {
+            return candidates;
+        }
+
+        // 首选成员尚无数据时先用它（按配置偏好）；有数据时，其它成员需明显更快才替换
+        String best = healthy.get(0);
+        double bestScore = health(best).score(now);
+        for (String member : healthy) {
+            double score = health(member).score(now);
+            if (Double.isNaN(score) == false && Double.isNaN(bestScore) == false && score * SWITCH_RATIO < bestScore) {
+                best = member;
+                bestScore = score;
+            }
+        }
+
+        healthy.remove(best);
+        healthy.add(0, best);
+        return healthy;
+    }
+
+    /**
+     * 为一次运行创建观测探针（按模型记录 TTFT、输出速度与成败）
+     */
+    public Probe probe(String model) {
+        return new Probe(health(model), clock);
+    }
+
+    /**
+     * 执行辅助任务（短调用）；模型组开启对冲且样本充足时，主成员超过辅助调用耗时百分位仍未返回则向次优成员对冲
+     *
+     * <p>辅助任务为非流式调用，整体耗时远大于流式 TTFT，因此截止时间取自辅助调用自身的耗时样本。</p>
+     *
+     * @param name      模型名或模型组名
+     * @param sessionId 会话 id（可为 null）
+     * @param available 成员是否可用
+     * @param task      按成员名执行任务
+     */
+    public <T> T hedge(String name, String sessionId, Predicate<String> available, Function<String, T> task) throws Exception {
+        String primary = route(name, sessionId, available);
+        ModelGroupDo group = getGroup(name == null ? defaultModelSupplier.get() : name);
+        if (group == null || group.isHedge() == false) {
+            return timed(primary, task);
+        }
+
+        String secondary = null;
+        for (String member : rank(group, available)) {
+            if (member.equals(primary) == false) {
+                secondary = member;
+                break;
+            }
+        }
+
+        long deadlineMs = health(primary).durationPercentile(group.getHedgePercentile(), clock.getAsLong());
+        if (secondary == null || deadlineMs < 0) {
+            return timed(primary, task);
+        }
+
+        CompletionService<T> completion = new ExecutorCompletionService<>(hedgePool);
+        List<Future<T>> futures = new ArrayList<>();
+        futures.add(completion.submit(() -> timed(primary, task)));
+
+        try {
+            Future<T> done = completion.poll(deadlineMs, TimeUnit.MILLISECONDS);
+            Exception firstError = null;
+            if (done != null) {
+                try {
+                    return done.get();
+                } catch (ExecutionException e) {
+                    firstError = unwrap(e);
+                }
+            }
+
+            final String backup = secondary;
+            LOG.debug("[ModelRouter] {} hedging {} -> {} after {}ms", name, primary, backup, deadlineMs);
+            futures.add(completion.submit(() -> timed(backup, task)));
+
+            int pending = done == null ? 2 : 1;
+            while (pending-- > 0) {
+                try {
+                    return completion.take().get();
+                } catch (ExecutionException e) {
+                    if (firstError == null) {
+                        firstError = unwrap(e);
+                    }
+                }
+            }
+
+            throw firstError;
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 执行辅助任务并记录成败与整体耗时（非流式调用的整体耗时不是 TTFT，不计入 TTFT 与速度统计）
+     */
+    private <T> T timed(String model, Function<String, T> task) {
+        Health health = health(model);
+        long startAt = clock.getAsLong();
+        try {
+            T result = task.apply(model);
+            long endAt = clock.getAsLong();
+            health.completed(endAt, Math.max(0, endAt - startAt));
+            return result;
+        } catch (RuntimeException e) {
+            if (Thread.currentThread().isInterrupted() == false) {
+                health.failure(clock.getAsLong());
+            }
+            throw e;
+        }
+    }
+
+    private static Exception unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof Exception ? (Exception) cause : e;
+    }
+
+    Health health(String model) {
+        return healthMap.computeIfAbsent(model == null ? "" : model, k -> new Health());
+    }
+
+    /**
+     * 一次运行的观测探针（由各入口按流式事件调用）
+     *
+     * <p>callStart：即将发出模型请求；output：收到模型输出；callEnd：本次模型调用结束（进入工具调用或完成）。</p>
+     */
+    public static class Probe {
+        private final Health health;
+        private final LongSupplier clock;
+
+        private boolean inCall;
+        private long callStartAt;
+        private long firstOutputAt;
+        private long outputChars;
+
+        Probe(Health health, LongSupplier clock) {
+            this.health = health;
+            this.clock = clock;
+        }
+
+        public synchronized void callStart() {
+            inCall = true;
+            callStartAt = clock.getAsLong();
+            firstOutputAt = 0;
+            outputChars = 0;
+        }
+
+        public synchronized void output(int chars) {
+            if (inCall == false) {
+                return;
+            }
+
+            if (firstOutputAt == 0) {
+                firstOutputAt = clock.getAsLong();
+            }
+            outputChars += Math.max(0, chars);
+        }
+
+        public synchronized void callEnd() {
+            if (inCall == false) {
+                return;
+            }
+            inCall = false;
+
+            long endAt = clock.getAsLong();
+            long ttft = (firstOutputAt > 0 ? firstOutputAt : endAt) - callStartAt;
+            double tokensPerSec = 0;
+            if (firstOutputAt > 0 && endAt > firstOutputAt && outputChars > 0) {
+                tokensPerSec = (outputChars / CHARS_PER_TOKEN) / ((endAt - firstOutputAt) / 1000.0);
+            }
+            health.success(endAt, Math.max(0, ttft), tokensPerSec);
+        }
+
+        /**
+         * 运行失败（模型请求出错；用户中断、预算终止等不应计入）
+         */
+        public synchronized void failed() {
+            inCall = false;
+            health.failure(clock.getAsLong());
+        }
+    }
+
+    /**
+     * 单个模型的健康度（滑动窗口）
+     */
+    static class Health {
+        private final Deque<Sample> samples = new ArrayDeque<>();
+        private int consecutiveErrors;
+        private long lastErrorAt;
+
+        synchronized void success(long now, long ttftMs, double tokensPerSec) {
+            add(new Sample(now, true, ttftMs, tokensPerSec, Sample.NO_DURATION));
+            consecutiveErrors = 0;
+        }
+
+        /**
+         * 非流式调用成功：无 TTFT 观测，记录整体耗时（用于辅助调用对冲），不参与评分
+         */
+        synchronized void completed(long now, long durationMs) {
+            add(new Sample(now, true, Sample.NO_TTFT, 0, durationMs));
+            consecutiveErrors = 0;
+        }
+
+        synchronized void failure(long now) {
+            add(new Sample(now, false, 0, 0, Sample.NO_DURATION));
+            consecutiveErrors++;
+            lastErrorAt = now;
+        }
+
+        private void add(Sample sample) {
+            samples.addLast(sample);
+            while (samples.size() > WINDOW_SIZE) {
+                samples.removeFirst();
+            }
+        }
+
+        private void prune(long now) {
+            while (samples.isEmpty() == false && now - samples.peekFirst().at > WINDOW_MS) {
+                samples.removeFirst();
+            }
+        }
+
+        /**
+         * 是否可用：连续失败未达阈值，或已过冷却时间（放行试探）
+         */
+        synchronized boolean isAvailable(long now, int failoverErrors) {
+            return consecutiveErrors < Math.max(1, failoverErrors) || now - lastErrorAt >= COOLDOWN_MS;
+        }
+
+        synchronized double errorRate(long now) {
+            prune(now);
+            if (samples.isEmpty()) {
+                return 0;
+            }
+
+            int errors = 0;
+            for (Sample s : samples) {
+                if (s.ok == false) {
+                    errors++;
+                }
+            }
+            return errors / (double) samples.size();
+        }
+
+        /**
+         * 成功调用的 TTFT 百分位；样本不足时为 -1
+         */
+        synchronized long ttftPercentile(int percentile, long now) {
+            prune(now);
+            List<Long> values = new ArrayList<>();
+            for (Sample s : samples) {
+                if (s.ok && s.ttftMs != Sample.NO_TTFT) {
+                    values.add(s.ttftMs);
+                }
+            }
+
+            if (values.size() < MIN_HEDGE_SAMPLES) {
+                return -1;
+            }
+            return percentile(values, percentile);
+        }
+
+        /**
+         * 成功的非流式调用整体耗时百分位；样本不足时为 -1
+         */
+        synchronized long durationPercentile(int percentile, long now) {
+            prune(now);
+            List<Long> values = new ArrayList<>();
+            for (Sample s : samples) {
+                if (s.ok && s.durationMs != Sample.NO_DURATION) {
+                    values.add(s.durationMs);
+                }
+            }
+
+            if (values.size() < MIN_HEDGE_SAMPLES) {
+                return -1;
+            }
+            return percentile(values, percentile);
+        }
+
+        /**
+         * 预计耗时（参考输出长度下的 TTFT + 生成时间，按错误率加权）；没有 TTFT 样本时为 NaN
+         */
+        synchronized double score(long now) {
+            prune(now);
+            List<Long> ttfts = new ArrayList<>();
+            List<Long> speeds = new ArrayList<>();
+            int errors = 0;
+            for (Sample s : samples) {
+                if (s.ok == false) {
+                    errors++;
+                } else if (s.ttftMs != Sample.NO_TTFT) {
+                    ttfts.add(s.ttftMs);
+                    if (s.tokensPerSec > 0) {
+                        speeds.add(Math.round(s.tokensPerSec * 1000));
+                    }
+                }
+            }
+
+            if (ttfts.isEmpty()) {
+                return Double.NaN;
+            }
+
+            double expectedMs = percentile(ttfts, 50);
+            if (speeds.isEmpty() == false) {
+                double tokensPerSec = percentile(speeds, 50) / 1000.0;
+                expectedMs += REFERENCE_OUTPUT_TOKENS / tokensPerSec * 1000;
+            }
+
+            double errorRate = errors / (double) samples.size();
+            return expectedMs * (1 + 4 * errorRate);
+        }
+
+        private static long percentile(List<Long> values, int percentile) {
+            Collections.sort(values);
+            int p = Math.max(0, Math.min(100, percentile));
+            int idx = (int) Math.ceil(p / 100.0 * values.size()) - 1;
+            return values.get(Math.max(0, Math.min(values.size() - 1, idx)));
+        }
+    }
+
+    private static class Sample {
+        /** 无 TTFT 观测 */
+        static final long NO_TTFT = -1;
+        /** 无整体耗时观测（流式调用或失败） */
+        static final long NO_DURATION = -1;
+
+        final long at;
+        final boolean ok;
+        final long ttftMs;
+        final double tokensPerSec;
+        final long durationMs;
+
+        Sample(long at, boolean ok, long ttftMs, double tokensPerSec, long durationMs) {
+            this.at = at;
+            this.ok = ok;
+            this.ttftMs = ttftMs;
+            this.tokensPerSec = tokensPerSec;
+            this.durationMs = durationMs;
+        }
+    }
+}
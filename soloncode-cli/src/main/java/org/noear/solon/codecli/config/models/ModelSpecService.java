@@ -1,100 +1,400 @@
 package org.noear.solon.codecli.config.models;
 
 import org.noear.snack4.ONode;
+import org.noear.solon.codecli.config.AgentFlags;
 import org.noear.solon.codecli.config.ProxyConfig;
+import org.noear.solon.core.util.IoUtil;
+import org.noear.solon.core.util.RunUtil;
+import org.noear.solon.net.http.HttpResponse;
 import org.noear.solon.net.http.HttpUtils;
-
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 /**
  * 从 models.json 读取模型规格信息，作为备用数据源。
+ *
+ * <p>查询只读本地数据，不等待网络：优先读取磁盘缓存（{@code ~/.soloncode/cache/models.json}），
+ * 没有缓存时使用随包附带的快照；缓存超过有效期时在后台按 ETag / Last-Modified 重新验证，
+ * 有更新才下载并替换。规格按 id、名称与别名（去掉提供商前缀、日期后缀等）建立归一化索引，查找为 O(1)。</p>
  */
 public class ModelSpecService {
+    private static final Logger LOG = LoggerFactory.getLogger(ModelSpecService.class);
+
     private static ModelSpecService instance;
 
     public static ModelSpecService getInstance() {
         if (instance == null) {
-            instance = new ModelSpecService();
+            instance = new ModelSpecService(Paths.get(AgentFlags.getUserHome(), AgentFlags.getHarnessCache()));
         }
 
         return instance;
     }
 
-    private ModelSpecService() {
-
+    ModelSpecService(Path cacheDir) {
+        this.cacheFile = cacheDir.resolve(CACHE_FILE);
+        this.cacheMetaFile = cacheDir.resolve(CACHE_META_FILE);
     }
 
     //-------
 
     private static final String MODELS_SPEC_URL = "https://models.dev/models.json";
-
-    private final Map<String, ModelSpec> specs = new ConcurrentHashMap<>();
+    /** 随包附带的快照（无缓存、离线时使用） */
+    static final String SNAPSHOT_RESOURCE = "soloncode/models-snapshot.json";
+    static final String CACHE_FILE = "models.json";
+    static final String CACHE_META_FILE = "models.meta.properties";
+    /** 缓存有效期：过期后在后台重新验证 */
+    static final long CACHE_TTL_MS = 24 * 60 * 60 * 1000L;
+
+    private static final Pattern DATE_SUFFIX = Pattern.compile("[-@](\\d{8}|\\d{4}-\\d{2}-\\d{2})$");
+    private static final Pattern DOTTED_VERSION = Pattern.compile("(\\d)\\.(\\d)");
+
+    private final Path cacheFile;
+    private final Path cacheMetaFile;
+    private final AtomicBoolean revalidating = new AtomicBoolean();
+
+    /** 归一化 id / 名称 / 别名 → 规格 */
+    private volatile Map<String, ModelSpec> index = Collections.emptyMap();
     private volatile boolean loaded;
+    private volatile long revalidatedAt;
 
     public Long getContextLength(String modelId) {
-        if (modelId == null || modelId.isEmpty()) {
-            return null;
+        ModelSpec spec = findSpec(modelId);
+        if (spec != null && spec.getContext() > 0) {
+            return spec.getContext();
         }
 
-        ensureLoaded();
+        return null;
+    }
 
-        ModelSpec spec = specs.get(modelId);
-        if (spec != null && spec.getContext() > 0) {
-            return spec.getContext();
+    /**
+     * 查找模型规格（按 id、名称、别名；忽略大小写）。只读本地数据，不等待网络
+     */
+    public ModelSpec findSpec(String modelId) {
+        if (modelId == null || modelId.trim().isEmpty()) {
+            return null;
         }
 
-        for (ModelSpec item : specs.values()) {
-            if (item.getName() != null && item.getName().equalsIgnoreCase(modelId) && item.getContext() > 0) {
-                return item.getContext();
+        ensureLoaded();
+
+        Map<String, ModelSpec> current = index;
+        for (String key : aliasesOf(modelId)) {
+            ModelSpec spec = current.get(key);
+            if (spec != null) {
+                return spec;
             }
         }
 
         return null;
     }
 
+    /**
+     * 获取模型的图片输入限制（长边、像素预算、字节预算）。
+     *
+     * <p>models.dev 不提供分辨率上限，因此按模型家族（模型名或规格 id）取官方建议值。</p>
+     */
+    public ImageLimits getImageLimits(String modelId) {
+        String key = modelId == null ? "" : modelId.toLowerCase(Locale.ROOT);
+
+        ModelSpec spec = findSpec(modelId);
+        if (spec != null && spec.getId() != null) {
+            key = key + " " + spec.getId().toLowerCase(Locale.ROOT);
+        }
+
+        if (key.contains("claude")) {
+            // Anthropic: 长边超过 1568 或约 1.15MP 时服务端会自行缩放（token ≈ 宽×高/750）
+            return ImageLimits.CLAUDE;
+        } else if (key.contains("gemini")) {
+            return ImageLimits.GEMINI;
+        } else if (key.contains("gpt") || key.startsWith("o1") || key.startsWith("o3") || key.startsWith("o4")) {
+            // OpenAI high detail: 先缩入 2048×2048，再将短边缩到 768
+            return ImageLimits.OPENAI;
+        } else {
+            return ImageLimits.DEFAULT;
+        }
+    }
+
+    /**
+     * 加载本地数据（磁盘缓存，否则随包快照），并按需在后台重新验证
+     */
     private void ensureLoaded() {
-        if (loaded) {
+        if (loaded == false) {
+            synchronized (this) {
+                if (loaded == false) {
+                    String json = readCache();
+                    if (json == null) {
+                        json = readSnapshot();
+                    }
+
+                    try {
+                        if (json != null) {
+                            index = buildIndex(parseSpecs(json));
+                        }
+                    } catch (Throwable e) {
+                        LOG.warn("Model spec load failure: {}", e.getMessage());
+                    } finally {
+                        loaded = true;
+                    }
+                }
+            }
+        }
+
+        if (System.currentTimeMillis() - revalidatedAt > CACHE_TTL_MS && revalidating.compareAndSet(false, true)) {
+            RunUtil.async(() -> {
+                try {
+                    revalidate();
+                } finally {
+                    revalidatedAt = System.currentTimeMillis();
+                    revalidating.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * 缓存过期时按 ETag / Last-Modified 条件请求；有更新时写入缓存并替换索引
+     */
+    private void revalidate() {
+        Properties meta = readCacheMeta();
+        long fetchedAt = parseLong(meta.getProperty("fetched_at"));
+        long now = System.currentTimeMillis();
+        if (Files.isRegularFile(cacheFile) && now - fetchedAt < CACHE_TTL_MS && fetchedAt <= now) {
             return;
         }
 
-        synchronized (this) {
-            if (loaded) {
-                return;
+        try {
+            HttpUtils http = HttpUtils.http(MODELS_SPEC_URL).timeout(5, 5, 30);
+            ProxyConfig.applyIfNeeded(http);
+
+            if (Files.isRegularFile(cacheFile)) {
+                if (meta.getProperty("etag") != null) {
+                    http.header("If-None-Match", meta.getProperty("etag"));
+                }
+                if (meta.getProperty("last_modified") != null) {
+                    http.header("If-Modified-Since", meta.getProperty("last_modified"));
+                }
             }
 
-            try {
-                HttpUtils http = HttpUtils.http(MODELS_SPEC_URL).timeout(5);
-                ProxyConfig.applyIfNeeded(http);
-                String json = http.get();
-                if (json != null && json.isEmpty() == false) {
-                    ONode root = ONode.ofJson(json);
-                    for (Map.Entry<String, ONode> entry : root.getObject().entrySet()) {
-                        ONode node = entry.getValue();
-
-                        ModelSpec spec = new ModelSpec();
-                        spec.setId(node.get("id").getString(entry.getKey()));
-                        spec.setName(node.get("name").getString());
-
-                        ONode limit = node.get("limit");
-                        if (limit != null) {
-                            spec.setContext(limit.get("context").getLong());
-                            spec.setInput(limit.get("input").getLong());
-                            spec.setOutput(limit.get("output").getLong());
-                        }
+            try (HttpResponse resp = http.exec("GET")) {
+                int code = resp.code();
+                if (code == 304) {
+                    meta.setProperty("fetched_at", String.valueOf(now));
+                    writeCacheMeta(meta);
+                    return;
+                }
 
-                        specs.put(entry.getKey(), spec);
-                        if (spec.getId() != null && spec.getId().isEmpty() == false) {
-                            specs.putIfAbsent(spec.getId(), spec);
-                        }
-                    }
+                if (code != 200) {
+                    LOG.debug("Model spec revalidation returned {}", code);
+                    return;
+                }
+
+                String json = resp.bodyAsString();
+                Map<String, ModelSpec> specs = parseSpecs(json);
+                if (specs.isEmpty()) {
+                    return;
+                }
+
+                writeAtomically(cacheFile, json.getBytes(StandardCharsets.UTF_8));
+
+                Properties newMeta = new Properties();
+                putIfNotNull(newMeta, "etag", resp.header("ETag"));
+                putIfNotNull(newMeta, "last_modified", resp.header("Last-Modified"));
+                newMeta.setProperty("fetched_at", String.valueOf(now));
+                writeCacheMeta(newMeta);
+
+                index = buildIndex(specs);
+            }
+        } catch (Throwable e) {
+            // 网络不可用时继续使用本地数据
+            LOG.debug("Model spec revalidation failure: {}", e.getMessage());
+        }
+    }
+
+    // ========== 解析与索引 ==========
+
+    /**
+     * 解析 models.json（key → 规格）
+     */
+    static Map<String, ModelSpec> parseSpecs(String json) {
+        Map<String, ModelSpec> specs = new LinkedHashMap<>();
+        if (json == null || json.isEmpty()) {
+            return specs;
+        }
+
+        ONode root = ONode.ofJson(json);
+        if (root.isObject() == false) {
+            return specs;
+        }
+
+        for (Map.Entry<String, ONode> entry : root.getObject().entrySet()) {
+            ONode node = entry.getValue();
+
+            ModelSpec spec = new ModelSpec();
+            spec.setId(node.get("id").getString(entry.getKey()));
+            spec.setName(node.get("name").getString());
+
+            ONode limit = node.get("limit");
+            if (limit != null) {
+                spec.setContext(limit.get("context").getLong());
+                spec.setInput(limit.get("input").getLong());
+                spec.setOutput(limit.get("output").getLong());
+            }
+
+            // 价格：美元 / 1M token
+            ONode cost = node.getOrNull("cost");
+            if (cost != null) {
+                if (cost.getOrNull("input") != null) {
+                    spec.setCostInput(cost.get("input").getDouble());
+                }
+                if (cost.getOrNull("output") != null) {
+                    spec.setCostOutput(cost.get("output").getDouble());
+                }
+            }
+
+            specs.put(entry.getKey(), spec);
+        }
+
+        return specs;
+    }
+
+    /**
+     * 建立归一化索引：key / id 优先，其次名称，最后别名（先到先得）
+     */
+    static Map<String, ModelSpec> buildIndex(Map<String, ModelSpec> specs) {
+        Map<String, ModelSpec> index = new HashMap<>(specs.size() * 4);
+
+        for (Map.Entry<String, ModelSpec> entry : specs.entrySet()) {
+            index.put(normalize(entry.getKey()), entry.getValue());
+        }
+        for (ModelSpec spec : specs.values()) {
+            if (spec.getId() != null && spec.getId().isEmpty() == false) {
+                index.putIfAbsent(normalize(spec.getId()), spec);
+            }
+        }
+        for (ModelSpec spec : specs.values()) {
+            if (spec.getName() != null && spec.getName().isEmpty() == false) {
+                index.putIfAbsent(normalize(spec.getName()), spec);
+            }
+        }
+        for (Map.Entry<String, ModelSpec> entry : specs.entrySet()) {
+            for (String alias : aliasesOf(entry.getKey())) {
+                index.putIfAbsent(alias, entry.getValue());
+            }
+            if (entry.getValue().getId() != null) {
+                for (String alias : aliasesOf(entry.getValue().getId())) {
+                    index.putIfAbsent(alias, entry.getValue());
                 }
-            } catch (Throwable ignored) {
-                // Ignore remote spec loading failures and keep local fallbacks working.
-            } finally {
-                loaded = true;
             }
         }
+
+        return index;
+    }
+
+    static String normalize(String modelId) {
+        return modelId.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 模型 id 的归一化别名（首个为自身）：去掉提供商前缀（anthropic/xxx）、日期后缀（-20250929、-2025-04-14）、
+     * -latest 后缀，版本号中的点与横线互通（4.5 / 4-5）
+     */
+    static List<String> aliasesOf(String modelId) {
+        Set<String> aliases = new LinkedHashSet<>();
+        String id = normalize(modelId);
+        aliases.add(id);
+
+        int slash = id.lastIndexOf('/');
+        if (slash >= 0 && slash < id.length() - 1) {
+            id = id.substring(slash + 1);
+            aliases.add(id);
+        }
+
+        String base = DATE_SUFFIX.matcher(id).replaceFirst("");
+        if (base.endsWith("-latest")) {
+            base = base.substring(0, base.length() - "-latest".length());
+        }
+        aliases.add(base);
+        aliases.add(DOTTED_VERSION.matcher(base).replaceAll("$1-$2"));
+
+        return new ArrayList<>(aliases);
+    }
+
+    // ========== 磁盘缓存 ==========
+
+    private String readCache() {
+        if (Files.isRegularFile(cacheFile) == false) {
+            return null;
+        }
+
+        try {
+            return new String(Files.readAllBytes(cacheFile), StandardCharsets.UTF_8);
+        } catch (Throwable e) {
+            LOG.debug("Model spec cache read failure: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static String readSnapshot() {
+        try (InputStream in = ModelSpecService.class.getClassLoader().getResourceAsStream(SNAPSHOT_RESOURCE)) {
+            return in == null ? null : IoUtil.transferToString(in, "utf-8");
+        } catch (Throwable e) {
+            LOG.debug("Model spec snapshot read failure: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private Properties readCacheMeta() {
+        Properties meta = new Properties();
+        if (Files.isRegularFile(cacheMetaFile)) {
+            try (InputStream in = Files.newInputStream(cacheMetaFile)) {
+                meta.load(in);
+            } catch (Throwable e) {
+                LOG.debug("Model spec cache meta read failure: {}", e.getMessage());
+            }
+        }
+        return meta;
+    }
+
+    private void writeCacheMeta(Properties meta) throws Exception {
+        Files.createDirectories(cacheMetaFile.getParent());
+
+        Path tmp = cacheMetaFile.resolveSibling(CACHE_META_FILE + "." + System.nanoTime() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            meta.store(out, "models.dev revalidation");
+        }
+        Files.move(tmp, cacheMetaFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeAtomically(Path file, byte[] bytes) throws Exception {
+        Files.createDirectories(file.getParent());
+
+        Path tmp = file.resolveSibling(file.getFileName() + "." + System.nanoTime() + ".tmp");
+        Files.write(tmp, bytes);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void putIfNotNull(Properties props, String key, String value) {
+        if (value != null && value.isEmpty() == false) {
+            props.setProperty(key, value);
+        }
+    }
+
+    private static long parseLong(String str) {
+        try {
+            return str == null ? 0L : Long.parseLong(str.trim());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
     }
 
     public static class ModelSpec {
@@ -103,6 +403,10 @@ public class ModelSpecService {
         private long context;
         private long input;
         private long output;
+        /** 输入单价（美元 / 1M token；0 表示未知） */
+        private double costInput;
+        /** 输出单价（美元 / 1M token；0 表示未知） */
+        private double costOutput;
 
         public String getId() {
             return id;
@@ -143,5 +447,63 @@ public class ModelSpecService {
         public void setOutput(long output) {
             this.output = output;
         }
+
+        public double getCostInput() {
+            return costInput;
+        }
+
+        public void setCostInput(double costInput) {
+            this.costInput = costInput;
+        }
+
+        public double getCostOutput() {
+            return costOutput;
+        }
+
+        public void setCostOutput(double costOutput) {
+            this.costOutput = costOutput;
+        }
+    }
+
+    /**
+     * 图片输入限制
+     */
+    public static class ImageLimits {
+        public static final ImageLimits CLAUDE = new ImageLimits(1568, 1_150_000, 1_000_000);
+        public static final ImageLimits OPENAI = new ImageLimits(2048, 768 * 2048, 1_500_000);
+        public static final ImageLimits GEMINI = new ImageLimits(3072, 3072 * 3072, 2_000_000);
+        public static final ImageLimits DEFAULT = new ImageLimits(1568, 1_200_000, 1_000_000);
+
+        /** 长边上限（像素） */
+        private final int maxEdge;
+        /** 总像素上限（图片 token 数与像素数成正比） */
+        private final long maxPixels;
+        /** 编码后字节预算 */
+        private final long maxBytes;
+
+        public ImageLimits(int maxEdge, long maxPixels, long maxBytes) {
+            this.maxEdge = maxEdge;
+            this.maxPixels = maxPixels;
+            this.maxBytes = maxBytes;
+        }
+
+        public int getMaxEdge() {
+            return maxEdge;
+        }
+
+        public long getMaxPixels() {
+            return maxPixels;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        /**
+         * 缓存键（同一原图在不同限制下的处理结果分开缓存）
+         */
+        public String key() {
+            return maxEdge + "x" + maxPixels + "x" + maxBytes;
+        }
     }
 }
\ No newline at end of file
@@ -39,6 +39,7 @@ import static java.nio.file.StandardWatchEventKinds.*;
  *   <li>{@link #addRoot(String, Path)} 在 {@link #start()} 前后均可调用，自动判断是否需要立即注册目录树</li>
  *   <li>{@link #removeRoot(String)} 动态移除监听根，取消所有关联的 WatchKey</li>
  *   <li>自动排除 .git、node_modules、target 等无关目录</li>
+ *   <li>仓库元数据（.git/index、HEAD、refs/heads）单独监听，经 {@link #addGitListener} 通知</li>
  *   <li>新增目录时自动注册监听，覆盖子树</li>
  *   <li>使用守护线程，随主进程退出</li>
  * </ul>
@@ -73,6 +74,16 @@ public class FileWatchService {
     /** 待推送的变更（按 wsId+path 去重合并，线程安全） */
     private final ConcurrentHashMap<String, ChangeEntry> changedPaths = new ConcurrentHashMap<>();
 
+    /** 全局监听器（接收所有根的变更批次，先于各根处理器执行，用于缓存失效等） */
+    private final List<Consumer<List<ChangeEntry>>> listeners = new CopyOnWriteArrayList<>();
+
+    /** 仓库元数据监听器（根下 .git/index、HEAD、分支引用变化时收到根 id） */
+    private final List<Consumer<String>> gitListeners = new CopyOnWriteArrayList<>();
+
+    /** .git 目录下影响 git status 的文件（index.lock 等临时文件不关心） */
+    private static final Set<String> GIT_META_FILES = new HashSet<>(Arrays.asList(
+            "index", "HEAD", "packed-refs"));
+
     /**
      * 监听根节点 —— 包含工作区标识、真实路径、独立的处理器列表及关联的 WatchKey 列表
      */
@@ -82,12 +93,47 @@ public class FileWatchService {
         final List<Consumer<List<ChangeEntry>>> handlers = new ArrayList<>();
         /** 该根注册的所有 WatchKey，用于 removeRoot 时批量取消 */
         final List<WatchKey> watchKeys = Collections.synchronizedList(new ArrayList<>());
+        /** 目录树是否已注册完成（完成前的变更可能漏报） */
+        volatile boolean registered = false;
+        /** 事件溢出计数（每次 OVERFLOW 自增，表示期间的变更可能丢失） */
+        volatile long epoch = 0L;
+        /** 根目录下的 .git 元数据（index、HEAD、refs/heads）是否已注册监听 */
+        volatile boolean gitWatched = false;
 
         WatchRoot(String id, Path path) {
             this.id = id;
             this.path = path.toAbsolutePath().normalize();
         }
 
+        public String getId() {
+            return id;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * 是否已完整注册目录树（之后的变更才能保证被捕获）
+         */
+        public boolean isRegistered() {
+            return registered;
+        }
+
+        /**
+         * 事件溢出代次；依赖变更事件做缓存的调用方，代次变化时应整体失效
+         */
+        public long getEpoch() {
+            return epoch;
+        }
+
+        /**
+         * 是否监听了仓库元数据（根本身是 git 仓库且 .git 为目录时才会监听）
+         */
+        public boolean isGitWatched() {
+            return gitWatched;
+        }
+
         /**
          * 添加一个处理器，监听此根下的文件变更
          *
@@ -163,6 +209,8 @@ public class FileWatchService {
             try {
                 if (Files.exists(root.path)) {
                     registerTree(root.path, root);
+                    registerGitMeta(root);
+                    root.registered = true;
                     LOG.info("[FileWatchService] dynamically registered root: {} -> {}", id, root.path);
                 } else {
                     LOG.warn("[FileWatchService] root path not exists, skip: {} -> {}", id, root.path);
@@ -175,6 +223,59 @@ public class FileWatchService {
         return root;
     }
 
+    /**
+     * 获取监听根（不存在时返回 null）
+     *
+     * @param id 工作区标识
+     */
+    public WatchRoot getRoot(String id) {
+        return watchRoots.get(id);
+    }
+
+    /**
+     * 添加全局监听器，接收所有根的变更批次
+     *
+     * <p>全局监听器先于各根的处理器执行。用于需要在前端收到 {@code filer_change}
+     * 之前完成缓存失效的场景（如文件树目录缓存）。</p>
+     *
+     * @param listener 接收一批变更条目（可能跨多个根）
+     */
+    public void addListener(Consumer<List<ChangeEntry>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 添加仓库元数据监听器
+     *
+     * <p>工作树的变更走 {@link #addListener}；.git 目录整体被排除在文件树之外，
+     * 只有 index、HEAD、packed-refs 与 refs/heads 的变化会通知到这里（暂存、提交、切分支等）。</p>
+     *
+     * @param listener 接收元数据发生变化的根 id
+     */
+    public void addGitListener(Consumer<String> listener) {
+        gitListeners.add(listener);
+    }
+
+    /**
+     * 按真实路径查找监听根（路径须与根完全一致，不存在时返回 null）
+     */
+    public WatchRoot getRootByPath(Path path) {
+        Path normalized = path.toAbsolutePath().normalize();
+        for (WatchRoot root : watchRoots.values()) {
+            if (root.path.equals(normalized)) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 判断目录名是否被监听排除（排除目录下的变更不会被捕获）
+     */
+    public static boolean isExcludedName(String name) {
+        return name.startsWith(".") || EXCLUDED_DIRS.contains(name);
+    }
+
     /**
      * 移除一个监听根目录，取消其所有 WatchKey
      *
@@ -223,6 +324,8 @@ public class FileWatchService {
                     try {
                         if (Files.exists(root.path)) {
                             registerTree(root.path, root);
+                            registerGitMeta(root);
+                            root.registered = true;
                             LOG.info("[FileWatchService] registered root: {} -> {}", root.id, root.path);
                         } else {
                             LOG.warn("[FileWatchService] root path not exists, skip: {} -> {}", root.id, root.path);
@@ -288,6 +391,56 @@ public class FileWatchService {
         });
     }
 
+    /**
+     * 注册根目录下 .git 元数据的监听（.git 本身及 refs/heads 子树，不含 objects 等大目录）
+     *
+     * <p>.git 为文件（worktree、子模块）或不存在时不监听，{@link WatchRoot#isGitWatched()} 保持 false。</p>
+     */
+    private void registerGitMeta(WatchRoot root) {
+        Path gitDir = root.path.resolve(".git");
+        if (!Files.isDirectory(gitDir, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+
+        try {
+            root.watchKeys.add(gitDir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY));
+            Path heads = gitDir.resolve("refs").resolve("heads");
+            if (Files.isDirectory(heads)) {
+                registerGitRefs(heads, root);
+            }
+            root.gitWatched = true;
+        } catch (Exception e) {
+            LOG.warn("[FileWatchService] failed to watch git metadata for root '{}': {}", root.id, e.getMessage());
+        }
+    }
+
+    private void registerGitRefs(Path dir, WatchRoot root) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                root.watchKeys.add(d.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 判断事件是否是 .git 元数据变化（需已注册 .git 监听）
+     */
+    private boolean isGitMetaChange(Path fullPath, WatchRoot root) {
+        if (!root.gitWatched) return false;
+
+        Path gitDir = root.path.resolve(".git");
+        if (!fullPath.startsWith(gitDir)) return false;
+
+        if (fullPath.getParent().equals(gitDir)) {
+            return GIT_META_FILES.contains(fullPath.getFileName().toString());
+        }
+        // 分支引用（git 先写 xxx.lock 再重命名，重命名会产生目标文件的 create 事件）
+        return fullPath.startsWith(gitDir.resolve("refs").resolve("heads"))
+                && !fullPath.getFileName().toString().endsWith(".lock");
+    }
+
     /**
      * 查找给定路径所属的 WatchRoot
      */
@@ -317,9 +470,28 @@ public class FileWatchService {
                     continue;
                 }
 
+                boolean gitChanged = false;
                 for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        // 事件队列溢出：期间变更已丢失，通知依赖方整体失效
+                        root.epoch++;
+                        continue;
+                    }
+
                     Path fullPath = dir.resolve((Path) event.context());
 
+                    if (isGitMetaChange(fullPath, root)) {
+                        gitChanged = true;
+                        // 新建的分支目录（如 refs/heads/feature/）也要监听
+                        if (event.kind() == ENTRY_CREATE && Files.isDirectory(fullPath)) {
+                            try {
+                                registerGitRefs(fullPath, root);
+                            } catch (Exception ignored) {
+                            }
+                        }
+                        continue;
+                    }
+
                     if (shouldIgnore(fullPath, root.path)) continue;
 
                     // 相对于根的路径
@@ -340,6 +512,9 @@ public class FileWatchService {
                 }
 
                 key.reset();
+                if (gitChanged) {
+                    notifyGitChanged(root.id);
+                }
                 flushChanges();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -380,6 +555,15 @@ public class FileWatchService {
         Map<String, List<ChangeEntry>> grouped = batch.stream()
                 .collect(Collectors.groupingBy(e -> e.wsId));
 
+        // 全局监听器优先（缓存先失效，再通知前端重新拉取）
+        for (Consumer<List<ChangeEntry>> listener : listeners) {
+            try {
+                listener.accept(batch);
+            } catch (Exception e) {
+                LOG.warn("[FileWatchService] listener error: {}", e.getMessage());
+            }
+        }
+
         // 逐根分发
         for (WatchRoot root : watchRoots.values()) {
             List<ChangeEntry> rootChanges = grouped.get(root.id);
@@ -399,6 +583,16 @@ public class FileWatchService {
         }
     }
 
+    private void notifyGitChanged(String wsId) {
+        for (Consumer<String> listener : gitListeners) {
+            try {
+                listener.accept(wsId);
+            } catch (Exception e) {
+                LOG.warn("[FileWatchService] git listener error: {}", e.getMessage());
+            }
+        }
+    }
+
     /**
      * 工具方法：将 {@link ChangeEntry} 列表构建为前端 {@code filer_change} 事件 JSON
      *
@@ -481,7 +675,7 @@ public class FileWatchService {
         }
     }
 
-    static ChangeEntry mergeChange(ChangeEntry oldEntry, ChangeEntry newEntry) {
+    public static ChangeEntry mergeChange(ChangeEntry oldEntry, ChangeEntry newEntry) {
         if (oldEntry == null) return newEntry;
         if (newEntry == null) return oldEntry;
 
@@ -27,6 +27,7 @@ import org.noear.solon.ai.agent.AgentSession;
 import org.noear.solon.ai.agent.react.ReActAgent;
 import org.noear.solon.ai.agent.react.ReActChunk;
 import org.noear.solon.ai.agent.react.ReActTrace;
+import org.noear.solon.ai.agent.react.intercept.ContextSizeEvent;
 import org.noear.solon.ai.agent.react.intercept.HITL;
 import org.noear.solon.ai.agent.react.intercept.HITLDecision;
 import org.noear.solon.ai.agent.react.intercept.HITLTask;
@@ -42,9 +43,14 @@ import org.noear.solon.ai.talents.memory.MemoryTalent;
 import org.noear.solon.ai.util.CmdUtil;
 import org.noear.solon.codecli.command.CliCommandContext;
 import org.noear.solon.codecli.command.builtin.GoalTalent;
+import org.noear.solon.codecli.command.builtin.GoalTokenMeter;
 import org.noear.solon.codecli.config.AgentFlags;
 import org.noear.solon.codecli.command.builtin.LoopScheduler;
 import org.noear.solon.codecli.config.AgentSettings;
+import org.noear.solon.codecli.config.models.ModelRouter;
+import org.noear.solon.codecli.util.BudgetExceededException;
+import org.noear.solon.codecli.util.StartupProfiler;
+import org.noear.solon.codecli.util.TokenAccounting;
 import org.noear.solon.core.util.Assert;
 import org.noear.solon.core.util.DateUtil;
 import org.noear.solon.lang.Preview;
@@ -167,6 +173,7 @@ public class CliShell implements Runnable {
     @Override
     public void run() {
         AgentSession session = prepare(SESSION_ID_CLI);
+        StartupProfiler.mark("session");
 
 
         if (loopScheduler != null) {
@@ -200,6 +207,8 @@ public class CliShell implements Runnable {
             });
         }
 
+        StartupProfiler.report("prompt");
+
         // 2. 主循环
         while (true) {
             try {
@@ -320,8 +329,13 @@ public class CliShell implements Runnable {
             }
         }
 
+        // 模型组：路由到当前最健康的成员
+        modelSelected = ModelRouter.getInstance().route(modelSelected, session.getSessionId(), engine::hasModel);
+
         ChatModel chatModel = engine.getModelOrDefInstance(modelSelected);
         ReActAgent agent = engine.getAgentOrMain(agentName);
+        ModelRouter.Probe modelProbe = ModelRouter.getInstance().probe(chatModel.getConfig().getNameOrModel());
+        TokenAccounting.Tally tokenTally = TokenAccounting.getInstance().tally(chatModel.getConfig().getNameOrModel());
 
         while (true) {
             // 简化状态提示：只在非首次且任务未完成时打印等待符
@@ -344,17 +358,30 @@ public class CliShell implements Runnable {
                     .stream()
                     .subscribeOn(Schedulers.boundedElastic())
                     .doOnNext(chunk -> {
-                        if (chunk instanceof ReasonChunk) {
+                        if (chunk instanceof ContextSizeEvent) {
+                            // 模型调用开始（用于模型路由的 TTFT 观测、上下文估算校准）
+                            modelProbe.callStart();
+                            tokenTally.estimate(session, ((ContextSizeEvent) chunk).getTokenCount());
+                        } else if (chunk instanceof ReasonChunk) {
                             // ReasonChunk （思考）为增量块（工具调用时为全量，不需要打印）
-                            onReasonChunk((ReasonChunk) chunk, isFirstReasonDeltaChunk, isFirstConversation);
+                            ReasonChunk reason = (ReasonChunk) chunk;
+                            if (!reason.isToolCalls() && reason.hasContent()) {
+                                modelProbe.output(reason.getContent().length());
+                            }
+                            onReasonChunk(reason, isFirstReasonDeltaChunk, isFirstConversation);
                         } else if (chunk instanceof ThoughtChunk) {
                             //ThoughtChunk （想法）为完成块
+                            modelProbe.callEnd();
                             onThoughtChunk(session, (ThoughtChunk) chunk);
                         } else if (chunk instanceof ObservationChunk) {
                             //ObservationChunk 为全量，一次工具调用产生一个 ObservationChunk
                             onObservationChunk((ObservationChunk) chunk, isFirstReasonDeltaChunk);
                         } else if (chunk instanceof ReActChunk) {
                             // ReActChunk 为全量，ReAct 完成任务时的最后答复
+                            modelProbe.callEnd();
+                            if (((ReActChunk) chunk).getMetrics() != null) {
+                                tokenTally.finish(((ReActChunk) chunk).getMetrics().getPromptTokens());
+                            }
                             String answer = onFinalChunk(session, (ReActChunk) chunk);
                             if (Assert.isNotEmpty(answer)) {
                                 finalAnswer.set(answer);
@@ -362,6 +389,13 @@ public class CliShell implements Runnable {
                         }
                     })
                     .doOnError(e -> {
+                        if (e instanceof BudgetExceededException) {
+                            terminal.writer().println("\n" + YELLOW + e.getMessage() + RESET);
+                            terminal.flush();
+                            return;
+                        }
+
+                        modelProbe.failed();
                         LOG.error("Task fail: {}", e.getMessage(), e);
 
                         terminal.writer().println("\n" + RED + "── Error ────────────────" + RESET);
@@ -544,6 +578,7 @@ public class CliShell implements Runnable {
         // ★ 捕获真实 token 消耗，供 LoopScheduler 预算控制使用
         if (totalTokens != null) {
             session.attrs().put("_loop_last_total_tokens", totalTokens);
+            session.attrs().put("_loop_last_metrics", trace.getMetrics());
         }
 
         if (thought.hasMeta(TaskTalent.TOOL_MULTITASK)) {
@@ -560,6 +595,11 @@ public class CliShell implements Runnable {
                 terminal.flush();
             }
         }
+
+        // Goal 轮内计量：达到预算硬上限时抛出异常终止本轮
+        if (totalTokens != null) {
+            GoalTokenMeter.check(session, totalTokens, 0);
+        }
     }
 
     private String onFinalChunk(AgentSession session, ReActChunk react) {
@@ -574,6 +614,7 @@ public class CliShell implements Runnable {
         // ★ 捕获真实 token 消耗，供 LoopScheduler 预算控制使用
         if (totalTokens != null) {
             session.attrs().put("_loop_last_total_tokens", totalTokens);
+            session.attrs().put("_loop_last_metrics", trace.getMetrics());
         }
 
         // 返回 ReAct 完成时的权威全量答复，由调用方用于 loop goal 判定。
@@ -70,8 +70,23 @@ final class DesktopAttachmentSupport {
         return bytes;
     }
 
-    static String save(Path workspace, String fileName, byte[] bytes) throws IOException {
+    /** Copies a stored blob to {@code .uploads/<name>} and records the reference. */
+    static String save(Path workspace, String fileName, DesktopBlobStore blobStore, String hash) throws IOException {
         String safeName = validateFileName(fileName);
+        blobStore.link(hash, resolveUploadTarget(workspace, safeName));
+        return ".uploads/" + safeName;
+    }
+
+    /** Stores the attachment (legacy inline payload or uploaded blob) and returns its sha256. */
+    static String store(WsMessage.WsAttachment attachment, DesktopBlobStore blobStore) throws IOException {
+        if (attachment.getHash() != null) {
+            blobStore.size(attachment.getHash());
+            return attachment.getHash();
+        }
+        return blobStore.put(decode(attachment));
+    }
+
+    private static Path resolveUploadTarget(Path workspace, String safeName) throws IOException {
         Path workspaceRoot = workspace.toAbsolutePath().normalize();
         Files.createDirectories(workspaceRoot);
         Path realWorkspace = workspaceRoot.toRealPath();
@@ -92,8 +107,7 @@ final class DesktopAttachmentSupport {
         if (Files.exists(destination) && Files.isSymbolicLink(destination)) {
             throw new IllegalArgumentException("附件目标不能是符号链接");
         }
-        Files.write(destination, bytes);
-        return ".uploads/" + safeName;
+        return destination;
     }
 
     static boolean isMultimodalImage(WsMessage.WsAttachment attachment) {
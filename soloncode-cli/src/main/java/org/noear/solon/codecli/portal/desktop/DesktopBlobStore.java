@@ -0,0 +1,370 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.desktop;
+
+import org.noear.snack4.ONode;
+import org.noear.solon.codecli.util.Digests;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * 桌面端附件内容寻址存储
+ *
+ * <p>blob 以 sha256 为键，按分片续传（offset 须等于已接收字节数）。工作区 {@code .uploads/} 下的附件
+ * 是 blob 的独立副本（不共享 inode，就地编辑附件不会波及其他工作区与存储本身），每个附件计为一个引用；
+ * 最后一个引用释放时删除 blob。</p>
+ *
+ * <pre>
+ * blobs/
+ *   sha256/ab/abcdef...         完整 blob
+ *   partial/abcdef...-1024.part 未完成上传（文件名携带声明大小）
+ *   index.json                  {"blobs": {hash: {mtime}}, "refs": {ownerPath: hash}}
+ * </pre>
+ */
+final class DesktopBlobStore {
+    private static final Logger LOG = LoggerFactory.getLogger(DesktopBlobStore.class);
+    private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    /** 超过该时长未续传的分片、以及无引用的 blob 会被清理 */
+    private static final long PARTIAL_TTL_MS = 24L * 60 * 60 * 1000;
+    /** 同时存在的未完成上传上限（防止 begin 无限制地占用磁盘） */
+    static final int MAX_PARTIALS = 32;
+    private static final int LOCK_STRIPES = 64;
+
+    private final Path root;
+    /** 按 hash 分段的上传锁（数量固定，无需回收） */
+    private final Object[] uploadLocks = new Object[LOCK_STRIPES];
+    private final Object partialsLock = new Object();
+
+    /** hash -> 入库时的 mtime（blob 在存储外被改动时视为失效） */
+    private final Map<String, Long> blobs = new HashMap<>();
+    /** 引用方（工作区内的附件绝对路径）-> hash */
+    private final Map<String, String> refs = new HashMap<>();
+    private boolean loaded;
+
+    DesktopBlobStore(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        for (int i = 0; i < uploadLocks.length; i++) {
+            uploadLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * 开始或续传一个上传。
+     *
+     * @return 已接收的字节数；等于 size 表示 blob 已存在（秒传）
+     * @throws IllegalStateException 未完成的上传已达上限
+     */
+    long begin(String hash, long size) throws IOException {
+        requireHash(hash);
+        requireSize(size);
+
+        synchronized (lockOf(hash)) {
+            if (contains(hash, size)) {
+                return size;
+            }
+            Path part = partialPath(hash, size);
+            if (Files.exists(part)) {
+                return Files.size(part);
+            }
+            synchronized (partialsLock) {
+                cleanupStalePartials();
+                if (countPartials() >= MAX_PARTIALS) {
+                    throw new IllegalStateException("未完成的上传过多，请稍后重试");
+                }
+                Files.createDirectories(part.getParent());
+                Files.createFile(part);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * 写入一个分片（流式写盘，不在堆中缓冲整个文件）。收满 size 字节后校验 sha256 并入库。
+     *
+     * @return 写入后已接收的字节数
+     * @throws IllegalStateException offset 与已接收字节数不一致（客户端应按返回的进度续传）
+     */
+    long append(String hash, long size, long offset, InputStream body) throws IOException {
+        requireHash(hash);
+        requireSize(size);
+
+        synchronized (lockOf(hash)) {
+            if (contains(hash, size)) {
+                return size;
+            }
+            Path part = partialPath(hash, size);
+            if (!Files.exists(part)) {
+                throw new IllegalStateException("上传未开始或已过期");
+            }
+            long received = Files.size(part);
+            if (offset != received) {
+                throw new IllegalStateException("分片偏移不匹配，已接收 " + received + " 字节");
+            }
+
+            try (OutputStream out = Files.newOutputStream(part, StandardOpenOption.APPEND)) {
+                byte[] buf = new byte[64 * 1024];
+                int n;
+                while ((n = body.read(buf)) > 0) {
+                    if (received + n > size) {
+                        throw new IllegalArgumentException("分片超出声明的附件大小");
+                    }
+                    out.write(buf, 0, n);
+                    received += n;
+                }
+            } catch (IllegalArgumentException e) {
+                Files.deleteIfExists(part);
+                throw e;
+            }
+
+            if (received == size) {
+                commit(hash, part);
+            }
+            return received;
+        }
+    }
+
+    /**
+     * 直接存入完整内容（兼容旧的 base64 附件），返回 sha256。
+     */
+    String put(byte[] bytes) throws IOException {
+        String hash = Digests.sha256Hex(bytes);
+        synchronized (lockOf(hash)) {
+            if (!contains(hash, bytes.length)) {
+                Path part = partialPath(hash, bytes.length);
+                Files.createDirectories(part.getParent());
+                Files.write(part, bytes);
+                commit(hash, part);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * 已入库 blob 的大小
+     *
+     * @throws IllegalArgumentException blob 不存在（未上传完成或已被回收）
+     */
+    long size(String hash) throws IOException {
+        requireHash(hash);
+        if (!isValid(hash)) {
+            throw new IllegalArgumentException("附件不存在或已过期，请重新上传");
+        }
+        return Files.size(blobPath(hash));
+    }
+
+    byte[] read(String hash) throws IOException {
+        size(hash);
+        return Files.readAllBytes(blobPath(hash));
+    }
+
+    /**
+     * 将 blob 复制到工作区目标位置，并登记引用。目标原先引用的 blob 会被释放。
+     *
+     * <p>不使用硬链接：附件可能被就地编辑，共享 inode 会把改动带进其他工作区与存储本身。</p>
+     */
+    void link(String hash, Path destination) throws IOException {
+        Path blob = blobPath(hash);
+        size(hash);
+
+        synchronized (this) {
+            String owner = destination.toAbsolutePath().normalize().toString();
+            // 先删除：旧版本留下的硬链接与 blob 是同一文件，直接覆盖复制会被跳过
+            Files.deleteIfExists(destination);
+            Files.copy(blob, destination);
+
+            String previous = refs.put(owner, hash);
+            if (previous != null && !previous.equals(hash)) {
+                releaseIfUnused(previous);
+            }
+            save();
+        }
+    }
+
+    // ==================== 内部方法 ====================
+
+    private Object lockOf(String hash) {
+        return uploadLocks[(hash.hashCode() & 0x7fffffff) % uploadLocks.length];
+    }
+
+    private boolean contains(String hash, long size) throws IOException {
+        return isValid(hash) && Files.size(blobPath(hash)) == size;
+    }
+
+    private synchronized boolean isValid(String hash) throws IOException {
+        load();
+        Long mtime = blobs.get(hash);
+        if (mtime == null) {
+            return false;
+        }
+        Path blob = blobPath(hash);
+        // blob 在存储外被改写（手工编辑、旧版本留下的硬链接）：mtime 变化即作废，需重新上传
+        if (Files.isRegularFile(blob) && Files.getLastModifiedTime(blob).toMillis() == mtime) {
+            return true;
+        }
+        blobs.remove(hash);
+        Files.deleteIfExists(blob);
+        save();
+        return false;
+    }
+
+    private void commit(String hash, Path part) throws IOException {
+        if (!hash.equals(Digests.sha256Hex(part))) {
+            Files.deleteIfExists(part);
+            throw new IllegalArgumentException("附件校验失败（sha256 不匹配）");
+        }
+
+        Path blob = blobPath(hash);
+        Files.createDirectories(blob.getParent());
+        try {
+            Files.move(part, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, blob, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        synchronized (this) {
+            load();
+            blobs.put(hash, Files.getLastModifiedTime(blob).toMillis());
+            save();
+        }
+    }
+
+    private void releaseIfUnused(String hash) throws IOException {
+        if (refs.containsValue(hash)) {
+            return;
+        }
+        blobs.remove(hash);
+        Files.deleteIfExists(blobPath(hash));
+    }
+
+    private void cleanupStalePartials() {
+        Path dir = root.resolve("partial");
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        long expireBefore = System.currentTimeMillis() - PARTIAL_TTL_MS;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.part")) {
+            for (Path part : stream) {
+                if (Files.getLastModifiedTime(part).toMillis() < expireBefore) {
+                    Files.deleteIfExists(part);
+                }
+            }
+        } catch (IOException e) {
+            LOG.debug("[Desktop] Failed to clean partial uploads: {}", e.getMessage());
+        }
+    }
+
+    private int countPartials() throws IOException {
+        Path dir = root.resolve("partial");
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.part")) {
+            for (Path ignored : stream) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 首次使用时加载索引：释放附件已被删除的引用，回收过期且无引用的 blob
+     */
+    private void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        Path index = root.resolve("index.json");
+        if (Files.exists(index)) {
+            try {
+                ONode node = ONode.ofJson(new String(Files.readAllBytes(index), StandardCharsets.UTF_8));
+                for (Map.Entry<String, ONode> entry : node.get("blobs").getObject().entrySet()) {
+                    blobs.put(entry.getKey(), entry.getValue().get("mtime").getLong());
+                }
+                for (Map.Entry<String, ONode> entry : node.get("refs").getObject().entrySet()) {
+                    refs.put(entry.getKey(), entry.getValue().getString());
+                }
+            } catch (Exception e) {
+                LOG.warn("[Desktop] Failed to load blob index, starting empty: {}", e.getMessage());
+            }
+        }
+
+        boolean changed = refs.keySet().removeIf(owner -> !Files.exists(Paths.get(owner)));
+        long expireBefore = System.currentTimeMillis() - PARTIAL_TTL_MS;
+        for (Map.Entry<String, Long> entry : new ArrayList<>(blobs.entrySet())) {
+            // 已上传但从未被消息引用（或引用均已删除）的 blob，过期后回收
+            if (entry.getValue() < expireBefore && !refs.containsValue(entry.getKey())) {
+                releaseIfUnused(entry.getKey());
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    private void save() throws IOException {
+        ONode blobsNode = new ONode().asObject();
+        for (Map.Entry<String, Long> entry : blobs.entrySet()) {
+            blobsNode.set(entry.getKey(), new ONode().set("mtime", entry.getValue()));
+        }
+        ONode refsNode = new ONode().asObject();
+        for (Map.Entry<String, String> entry : refs.entrySet()) {
+            refsNode.set(entry.getKey(), entry.getValue());
+        }
+
+        Files.createDirectories(root);
+        Path index = root.resolve("index.json");
+        Path temp = root.resolve("index.json.tmp");
+        Files.write(temp, new ONode().set("blobs", blobsNode).set("refs", refsNode).toJson()
+                .getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(temp, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path blobPath(String hash) {
+        return root.resolve("sha256").resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path partialPath(String hash, long size) {
+        return root.resolve("partial").resolve(hash + "-" + size + ".part");
+    }
+
+    private static void requireHash(String hash) {
+        if (hash == null || !HASH_PATTERN.matcher(hash).matches()) {
+            throw new IllegalArgumentException("附件哈希无效");
+        }
+    }
+
+    private static void requireSize(long size) {
+        if (size < 0 || size > DesktopAttachmentSupport.MAX_ATTACHMENT_BYTES) {
+            throw new IllegalArgumentException("附件不能超过 20 MB");
+        }
+    }
+}
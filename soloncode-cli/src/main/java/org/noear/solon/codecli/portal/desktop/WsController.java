@@ -10,8 +10,7 @@ import org.noear.solon.codecli.config.AgentFlags;
 import org.noear.solon.codecli.config.AgentSettings;
 import org.noear.solon.codecli.config.models.ModelApiUrl;
 import org.noear.solon.codecli.config.models.ModelInfo;
-import org.noear.solon.codecli.config.models.ModelsAdapter;
-import org.noear.solon.codecli.config.models.ModelsAdapterManager;
+import org.noear.solon.codecli.config.models.ModelCatalogService;
 import org.noear.solon.codecli.command.builtin.GoalState;
 import org.noear.solon.codecli.command.builtin.LoopScheduler;
 import org.noear.solon.codecli.command.builtin.LoopTask;
@@ -46,7 +45,7 @@ public class WsController {
 
     private final HarnessEngine engine;
     private final AgentSettings settings;
-    private final ModelsAdapterManager modelsAdapterManager;
+    private final ModelCatalogService modelCatalogService;
     private final WsGate wsGate;
     private final LoopScheduler loopScheduler;
     private final SessionManager sessionManager;
@@ -58,7 +57,7 @@ public class WsController {
         this.wsGate = wsGate;
         this.loopScheduler = loopScheduler;
         this.sessionManager = sessionManager;
-        this.modelsAdapterManager = ModelsAdapterManager.getInstance();
+        this.modelCatalogService = ModelCatalogService.getInstance();
 
         if (loopScheduler != null) {
             loopScheduler.addBusyChecker(sessionId -> isDesktopSessionId(sessionId) && wsGate.isSessionBusy(sessionId));
@@ -163,9 +162,11 @@ public class WsController {
             return Result.failure(400, "Invalid apiUrl");
         }
 
-        ModelsAdapter modelsAdapter = modelsAdapterManager.getAdapter(provider);
-        String baseUrl = modelsAdapter.deriveBaseUrl(apiUrl);
-        List<ModelInfo> models = modelsAdapter.fetchModels(settings.getGeneral().getUserAgent(), baseUrl, null, apiKey);
+        // 走模型目录缓存：有效期内不重复拉取，过期时先用旧数据并在后台刷新
+        ModelCatalogService.Snapshot snapshot = modelCatalogService.get(
+                new ModelCatalogService.Source(null, provider, apiUrl, apiKey),
+                settings.getGeneral().getUserAgent(), false, null);
+        List<ModelInfo> models = new ArrayList<>(snapshot.getModels());
 
         if (models.isEmpty() && Assert.isNotEmpty(model)) {
             ChatModel chatModel = ChatModel.of(apiUrl)
@@ -440,6 +441,57 @@ public class WsController {
         }
     }
 
+    /**
+     * 开始或续传附件上传：按 sha256 + 大小登记，返回已接收字节数。
+     * 内容已存在时直接返回完成（同一截图重复发送不再传输）。
+     */
+    @Post
+    @Mapping("/desktop/uploads/begin")
+    public Result<Map> uploadBegin(Context ctx) throws Exception {
+        ONode root = ONode.ofJson(ctx.body());
+        String hash = root.get("hash").getString();
+        long size = root.get("size").getLong();
+        try {
+            long offset = wsGate.getBlobStore().begin(hash, size);
+            return Result.succeed(buildUploadState(hash, size, offset));
+        } catch (IllegalArgumentException e) {
+            return Result.failure(400, e.getMessage());
+        } catch (IllegalStateException e) {
+            // 未完成的上传过多
+            return Result.failure(429, e.getMessage());
+        }
+    }
+
+    /**
+     * 上传一个附件分片：请求体为原始字节，offset 必须等于已接收字节数。
+     * 收满后服务端校验 sha256 入库，之后消息以 {@code attachments[].hash} 引用。
+     */
+    @Post
+    @Mapping("/desktop/uploads/chunk")
+    public Result<Map> uploadChunk(Context ctx,
+                                   @Param("hash") String hash,
+                                   @Param("size") long size,
+                                   @Param("offset") long offset) throws Exception {
+        try (java.io.InputStream body = ctx.bodyAsStream()) {
+            long received = wsGate.getBlobStore().append(hash, size, offset, body);
+            return Result.succeed(buildUploadState(hash, size, received));
+        } catch (IllegalArgumentException e) {
+            return Result.failure(400, e.getMessage());
+        } catch (IllegalStateException e) {
+            // 偏移不一致：客户端重新 begin 获取进度后续传
+            return Result.failure(409, e.getMessage());
+        }
+    }
+
+    private Map<String, Object> buildUploadState(String hash, long size, long offset) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("hash", hash);
+        data.put("size", size);
+        data.put("offset", offset);
+        data.put("complete", offset == size);
+        return data;
+    }
+
     /** 当前桌面会话的 Goal 列表。 */
     @Get
     @Mapping("/desktop/chat/goals/list")
@@ -39,16 +39,21 @@ import org.noear.solon.ai.harness.agent.TaskTalent;
 import org.noear.solon.ai.harness.command.Command;
 import org.noear.solon.ai.talents.memory.MemoryTalent;
 import org.noear.solon.ai.util.CmdUtil;
+import org.noear.solon.ai.agent.react.intercept.ContextSizeEvent;
 import org.noear.solon.ai.agent.react.intercept.HITL;
 import org.noear.solon.ai.agent.react.intercept.HITLInterceptor;
 import org.noear.solon.ai.agent.react.intercept.HITLTask;
 import org.noear.solon.codecli.command.WebCommandContext;
 import org.noear.solon.codecli.command.builtin.GoalState;
 import org.noear.solon.codecli.command.builtin.GoalTalent;
+import org.noear.solon.codecli.command.builtin.GoalTokenMeter;
 import org.noear.solon.codecli.command.builtin.LoopScheduler;
 import org.noear.solon.codecli.command.builtin.LoopTask;
 import org.noear.solon.codecli.config.AgentFlags;
 import org.noear.solon.codecli.config.AgentSettings;
+import org.noear.solon.codecli.config.models.ModelRouter;
+import org.noear.solon.codecli.util.BudgetExceededException;
+import org.noear.solon.codecli.util.ImagePreprocessor;
 import org.noear.solon.codecli.util.ReasoningEffortSupport;
 import org.noear.solon.core.util.Assert;
 import org.noear.solon.net.websocket.WebSocket;
@@ -63,7 +68,6 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Base64;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -95,6 +99,10 @@ public class WsGate extends SimpleWebSocketListener {
     private final AgentSettings agentSettings;
     private final LoopScheduler loopScheduler;
     private final DesktopStreamHub streamHub = new DesktopStreamHub();
+    private final DesktopBlobStore blobStore = new DesktopBlobStore(
+            Paths.get(AgentFlags.getUserHome(), AgentFlags.getHarnessBlobs()));
+    private final ImagePreprocessor imagePreprocessor = new ImagePreprocessor(
+            Paths.get(AgentFlags.getUserHome(), AgentFlags.getHarnessBlobs(), "variants"));
     private final Set<String> completedGoalStreams = ConcurrentHashMap.newKeySet();
 
     public WsGate(HarnessEngine engine, AgentSettings agentSettings, LoopScheduler loopScheduler) {
@@ -106,6 +114,10 @@ public class WsGate extends SimpleWebSocketListener {
         }
     }
 
+    DesktopBlobStore getBlobStore() {
+        return blobStore;
+    }
+
     boolean isSessionBusy(String sessionId) {
         if (Assert.isEmpty(sessionId)) {
             return false;
@@ -260,19 +272,19 @@ public class WsGate extends SimpleWebSocketListener {
             throw new IllegalArgumentException("附件数量不能超过 10 个");
         }
 
-        int totalAttachmentBytes = 0;
+        long totalAttachmentBytes = 0;
         List<String> names = new ArrayList<>();
         for (WsMessage.WsAttachment attachment : attachments) {
             if (attachment == null || (!("image".equals(attachment.getType()))
                     && !("file".equals(attachment.getType())))) {
                 throw new IllegalArgumentException("附件类型无效");
             }
-            byte[] bytes = DesktopAttachmentSupport.decode(attachment);
-            totalAttachmentBytes += bytes.length;
+            String hash = DesktopAttachmentSupport.store(attachment, blobStore);
+            totalAttachmentBytes += blobStore.size(hash);
             if (totalAttachmentBytes > DesktopAttachmentSupport.MAX_TOTAL_ATTACHMENT_BYTES) {
                 throw new IllegalArgumentException("附件总大小不能超过 50 MB");
             }
-            names.add(DesktopAttachmentSupport.save(Paths.get(cwd), attachment.getName(), bytes));
+            names.add(DesktopAttachmentSupport.save(Paths.get(cwd), attachment.getName(), blobStore, hash));
         }
 
         StringBuilder input = new StringBuilder();
@@ -340,7 +352,8 @@ public class WsGate extends SimpleWebSocketListener {
             selectedAgent = configuredAgent == null ? null : String.valueOf(configuredAgent);
         }
         String selectedModel = session.getContext().getAs(HarnessEngine.CTX_MODEL_SELECTED);
-        ChatModel chatModel = engine.getModelOrDefInstance(selectedModel);
+        ChatModel chatModel = engine.getModelOrDefInstance(
+                ModelRouter.getInstance().route(selectedModel, sessionId, engine::hasModel));
         ReActAgent agent = engine.getAgentOrMain(selectedAgent);
         String sessionCwd = String.valueOf(session.attrs().getOrDefault(HarnessEngine.ATTR_CWD, "."));
         String reasoningEffort = ReasoningEffortSupport.getSessionEffort(session);
@@ -373,6 +386,7 @@ public class WsGate extends SimpleWebSocketListener {
                         ReActTrace trace = react.getTrace();
                         if (trace != null && trace.getMetrics() != null) {
                             session.attrs().put("_loop_last_total_tokens", trace.getMetrics().getTotalTokens());
+                            session.attrs().put("_loop_last_metrics", trace.getMetrics());
                         }
                         return;
                     }
@@ -394,8 +408,17 @@ public class WsGate extends SimpleWebSocketListener {
                         ReActTrace trace = ((ThoughtChunk) chunk).getTrace();
                         if (trace != null && trace.getMetrics() != null) {
                             session.attrs().put("_loop_last_total_tokens", trace.getMetrics().getTotalTokens());
+                            session.attrs().put("_loop_last_metrics", trace.getMetrics());
                         }
                         message = onThoughtChunk((ThoughtChunk) chunk, sessionId);
+                        if (Assert.isNotEmpty(message)) {
+                            streamHub.emit(sessionId, message);
+                            message = null;
+                        }
+                        // Goal 轮内计量：达到预算硬上限时抛出异常终止本轮
+                        if (trace != null && trace.getMetrics() != null) {
+                            GoalTokenMeter.check(session, trace.getMetrics().getTotalTokens(), 0);
+                        }
                     }
                     if (Assert.isNotEmpty(message)) {
                         streamHub.emit(sessionId, message);
@@ -421,6 +444,10 @@ public class WsGate extends SimpleWebSocketListener {
             throw new IllegalStateException("Goal round interrupted", error);
         }
 
+        if (failure.get() instanceof BudgetExceededException) {
+            // 预算硬上限终止本轮：不按异常处理，由调度器执行收尾
+            return Assert.isEmpty(finalAnswer.get()) ? failure.get().getMessage() : finalAnswer.get();
+        }
         if (failure.get() != null) {
             String message = failure.get().getMessage();
             throw new IllegalStateException(Assert.isEmpty(message)
@@ -619,7 +646,8 @@ public class WsGate extends SimpleWebSocketListener {
 
             // 根据前端指定的 model 选择对应 ChatModel
             String modelName = req.getModel();
-            ChatModel chatModel = engine.getModelOrDefInstance(modelName);
+            ChatModel chatModel = engine.getModelOrDefInstance(
+                    ModelRouter.getInstance().route(modelName, session.getSessionId(), engine::hasModel));
             
             session.getContext().put(HarnessEngine.CTX_MODEL_SELECTED, modelName);
             if (req.getReasoningEffort() != null) {
@@ -679,20 +707,22 @@ public class WsGate extends SimpleWebSocketListener {
                 if (attachments.size() > DesktopAttachmentSupport.MAX_ATTACHMENTS) {
                     throw new IllegalArgumentException("附件数量不能超过 10 个");
                 }
-                int totalAttachmentBytes = 0;
+                long totalAttachmentBytes = 0;
                 for (WsMessage.WsAttachment att : attachments) {
                     if (att == null || (!("image".equals(att.getType())) && !("file".equals(att.getType())))) {
                         throw new IllegalArgumentException("附件类型无效");
                     }
-                    byte[] bytes = DesktopAttachmentSupport.decode(att);
-                    totalAttachmentBytes += bytes.length;
+                    // 内联 base64 与分片上传的 blob 统一入内容寻址库（同内容只存一份）
+                    String hash = DesktopAttachmentSupport.store(att, blobStore);
+                    totalAttachmentBytes += blobStore.size(hash);
                     if (totalAttachmentBytes > DesktopAttachmentSupport.MAX_TOTAL_ATTACHMENT_BYTES) {
                         throw new IllegalArgumentException("附件总大小不能超过 50 MB");
                     }
-                    String savedName = DesktopAttachmentSupport.save(Paths.get(cwd), att.getName(), bytes);
+                    String savedName = DesktopAttachmentSupport.save(Paths.get(cwd), att.getName(), blobStore, hash);
                     if (DesktopAttachmentSupport.isMultimodalImage(att)) {
-                        imageBlocks.add(ImageBlock.ofBase64(
-                                Base64.getEncoder().encodeToString(bytes), att.getMimeType()));
+                        // 发给模型的是按模型限制缩放后的副本，.uploads 下保留原图供展示
+                        imageBlocks.add(imagePreprocessor.toImageBlock(
+                                blobStore.read(hash), att.getMimeType(), chatModel.getConfig().getModel()));
                     } else {
                         fileNames.add(savedName);
                     }
@@ -983,7 +1013,8 @@ public class WsGate extends SimpleWebSocketListener {
 
             // 审批后恢复流执行
             String modelName = (String) session.getContext().get(HarnessEngine.CTX_MODEL_SELECTED);
-            ChatModel chatModel = engine.getModelOrDefInstance(modelName);
+            ChatModel chatModel = engine.getModelOrDefInstance(
+                    ModelRouter.getInstance().route(modelName, session.getSessionId(), engine::hasModel));
             String selectedAgentName = (String) session.attrs().get(SESSION_ATTR_SELECTED_AGENT);
             ReActAgent selectedAgent = engine.getAgentOrMain(selectedAgentName);
             String cwd = session.attrs().getOrDefault(HarnessEngine.ATTR_CWD, ".").toString();
@@ -1279,6 +1310,7 @@ public class WsGate extends SimpleWebSocketListener {
         Prompt prompt = Prompt.of(input).attrPut("start_time", System.currentTimeMillis());
         applyReasoningEffort(prompt, reasoningEffort);
         AtomicBoolean terminalSent = new AtomicBoolean(false);
+        ModelRouter.Probe modelProbe = ModelRouter.getInstance().probe(chatModel.getConfig().getNameOrModel());
         streamHub.begin(finalSessionId, socket);
         Disposable disposable = agent.prompt(prompt)
                 .session(session)
@@ -1294,17 +1326,26 @@ public class WsGate extends SimpleWebSocketListener {
                 .doFinally(signal -> session.attrs().remove("disposable"))
                 .doOnNext(chunk -> {
                     if (chunk instanceof ReActChunk) {
+                        modelProbe.callEnd();
                         onReActChunk((ReActChunk) chunk, session, finalSessionId, terminalSent);
                         return;
                     }
+                    if (chunk instanceof ContextSizeEvent) {
+                        modelProbe.callStart();
+                    }
                     String msg = null;
                     if (chunk instanceof ReasonChunk) {
-                        msg = onReasonChunk((ReasonChunk) chunk, finalSessionId);
+                        ReasonChunk reason = (ReasonChunk) chunk;
+                        if (!reason.isToolCalls() && reason.hasContent()) {
+                            modelProbe.output(reason.getContent().length());
+                        }
+                        msg = onReasonChunk(reason, finalSessionId);
                     } else if (chunk instanceof ActionChunk) {
                         msg = onActionStartChunk((ActionChunk) chunk, finalSessionId);
                     } else if (chunk instanceof ObservationChunk) {
                         msg = onObservationChunk((ObservationChunk) chunk, finalSessionId);
                     } else if (chunk instanceof ThoughtChunk) {
+                        modelProbe.callEnd();
                         msg = onThoughtChunk((ThoughtChunk) chunk, finalSessionId);
                     }
                     if (Assert.isNotEmpty(msg)) {
@@ -1313,7 +1354,10 @@ public class WsGate extends SimpleWebSocketListener {
                 })
                 .doOnComplete(() -> sendDoneIfNeeded(terminalSent, finalSessionId,
                         chatModel.getConfig().getNameOrModel(), 0, 0))
-                .doOnError(err -> sendErrorIfNeeded(terminalSent, finalSessionId, err))
+                .doOnError(err -> {
+                    modelProbe.failed();
+                    sendErrorIfNeeded(terminalSent, finalSessionId, err);
+                })
                 .subscribe();
 
         Disposable old = (Disposable) session.attrs().put("disposable", disposable);
@@ -38,5 +38,6 @@ public class WsMessage {
         String data;     // attachment payload
         String mimeType; // e.g. "image/png"
         String encoding; // "base64" | "text" (legacy)
+        String hash;     // sha256 of a blob uploaded via /desktop/uploads/* (replaces data)
     }
 }
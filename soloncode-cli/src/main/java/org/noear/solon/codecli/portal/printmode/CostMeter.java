@@ -0,0 +1,175 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.printmode;
+
+import org.noear.solon.codecli.util.BudgetExceededException;
+import org.noear.solon.codecli.util.TokenCost;
+
+/**
+ * Print 模式实时费用计量 — 在流式执行过程中按模型单价累计费用，达到 {@code --max-budget-usd} 时终止流，
+ * 而非在运行结束后才发现超支。
+ *
+ * <ul>
+ *   <li>每次模型调用前（上下文大小事件）与工具调用后，按 trace 的累计 token 更新费用</li>
+ *   <li>即将发送的上下文按输入单价计入预估：发出后会超预算的调用不再发出</li>
+ *   <li>多个运行（批量模式）共享同一个 {@link Budget}，整批费用受同一上限约束</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class CostMeter {
+    /** stream-json cost 事件的最小间隔 */
+    static final long COST_EVENT_INTERVAL_MS = 1_000;
+
+    private final String modelId;
+    private final Budget budget;
+
+    private final TokenCost.Rate rate;
+    private long promptTokens;
+    private long completionTokens;
+    private double costUsd;
+    private long lastEventAt;
+    private double lastEventCostUsd = -1;
+
+    /**
+     * @param modelId 模型 id（单价在构造时解析一次，整个运行内不变）
+     */
+    public CostMeter(String modelId, Budget budget) {
+        this(modelId, TokenCost.rateOf(modelId), budget);
+    }
+
+    CostMeter(String modelId, TokenCost.Rate rate, Budget budget) {
+        this.modelId = modelId;
+        this.rate = rate;
+        this.budget = budget;
+    }
+
+    /**
+     * 按累计用量更新费用（用量只增不减）
+     *
+     * @param promptTokens     本次运行累计输入 token
+     * @param completionTokens 本次运行累计输出 token
+     * @return 本次运行当前费用
+     */
+    public synchronized double record(long promptTokens, long completionTokens) {
+        this.promptTokens = Math.max(this.promptTokens, promptTokens);
+        this.completionTokens = Math.max(this.completionTokens, completionTokens);
+
+        double cost = rate.estimateUsd(this.promptTokens, this.completionTokens);
+        budget.add(cost - costUsd);
+        costUsd = cost;
+        return cost;
+    }
+
+    /**
+     * 更新费用并检查预算；超出时抛出 {@link BudgetExceededException}
+     *
+     * @param pendingTokens 即将发送的上下文大小（未知时为 0）
+     */
+    public void check(long promptTokens, long completionTokens, long pendingTokens) {
+        record(promptTokens, completionTokens);
+
+        double pendingUsd = (Math.max(0, pendingTokens) / 1000.0) * rate.getInputPer1K();
+        if (budget.wouldExceed(pendingUsd)) {
+            throw new BudgetExceededException("Budget exceeded: estimated $"
+                    + PrintMode.roundCost(budget.getSpentUsd() + pendingUsd)
+                    + " >= limit $" + budget.getLimitUsd());
+        }
+    }
+
+    /**
+     * 是否应发出 cost 事件（费用有变化且距上次超过最小间隔）
+     */
+    public synchronized boolean shouldEmit(long now) {
+        if (costUsd == lastEventCostUsd || now - lastEventAt < COST_EVENT_INTERVAL_MS) {
+            return false;
+        }
+        lastEventAt = now;
+        lastEventCostUsd = costUsd;
+        return true;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    public synchronized long getPromptTokens() {
+        return promptTokens;
+    }
+
+    public synchronized long getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public synchronized double getCostUsd() {
+        return costUsd;
+    }
+
+    /** 当前单价是否为默认单价（模型价格未知） */
+    public boolean isFallbackRate() {
+        return rate.isFallback();
+    }
+
+    public Budget getBudget() {
+        return budget;
+    }
+
+    /**
+     * 费用预算（可被多个运行共享）
+     */
+    public static class Budget {
+        /** 上限（美元）；null 表示不限，仅累计 */
+        private final Double limitUsd;
+        private double spentUsd;
+
+        public Budget(Double limitUsd) {
+            this.limitUsd = limitUsd;
+        }
+
+        synchronized void add(double deltaUsd) {
+            spentUsd += deltaUsd;
+        }
+
+        /**
+         * 再花费 extraUsd 后是否达到上限
+         */
+        public synchronized boolean wouldExceed(double extraUsd) {
+            return limitUsd != null && spentUsd + extraUsd >= limitUsd;
+        }
+
+        /**
+         * 是否已用尽（达到上限，不再发起新的模型调用或运行）
+         */
+        public boolean isExhausted() {
+            return wouldExceed(0);
+        }
+
+        /**
+         * 是否已超出上限（与运行结束后的判定一致：严格大于）
+         */
+        public synchronized boolean isExceeded() {
+            return limitUsd != null && spentUsd > limitUsd;
+        }
+
+        public Double getLimitUsd() {
+            return limitUsd;
+        }
+
+        public synchronized double getSpentUsd() {
+            return spentUsd;
+        }
+    }
+}
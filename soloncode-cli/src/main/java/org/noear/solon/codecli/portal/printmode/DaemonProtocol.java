@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.printmode;
+
+import org.noear.solon.codecli.config.AgentFlags;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+
+/**
+ * 常驻进程（{@link PrintDaemon}）与轻量客户端（{@link PrintClient}）之间的回环 socket 协议
+ *
+ * <pre>
+ * 客户端 → 常驻进程：int 协议版本, str 令牌, str cwd, str PATH, int argc, str[] argv
+ * 常驻进程 → 客户端：ACCEPT | FALLBACK str 原因（客户端回退为本地执行）
+ * 客户端 → 常驻进程：bytes stdin（无输入时长度为 0）
+ * 常驻进程 → 客户端：(OUT bytes | ERR bytes)* EXIT int 退出码
+ * </pre>
+ *
+ * <p>str / bytes 均为 int 长度 + 内容（字符串为 UTF-8）。端点（端口 + 令牌）写在工作区
+ * {@code .soloncode/cache/daemon.properties}，仅监听 127.0.0.1，并以令牌校验同机其它用户的连接。</p>
+ *
+ * <p>客户端的环境变量不转发：工具（如 bash）以常驻进程的环境执行。PATH 不一致时常驻进程回复 FALLBACK；
+ * 其它变量（如 CI 注入的令牌）在启动常驻进程时即已确定，依赖客户端环境的调用应使用 {@code --no-daemon}。</p>
+ *
+ * <p>请求开始执行后客户端不再发送数据，常驻进程读到连接关闭（客户端被 Ctrl-C 或 CI 任务被终止）即取消执行。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+final class DaemonProtocol {
+    /** 协议版本 */
+    static final int VERSION = 2;
+
+    static final byte ACCEPT = 0;
+    static final byte OUT = 1;
+    static final byte ERR = 2;
+    static final byte EXIT = 3;
+    static final byte FALLBACK = 4;
+
+    /** 端点文件名 */
+    static final String ENDPOINT_FILE = "daemon.properties";
+
+    /** 单个字符串上限（参数中可能带 json-schema） */
+    static final int MAX_STRING_BYTES = 1024 * 1024;
+    /** 参数个数上限 */
+    static final int MAX_ARGS = 256;
+    /** stdin 上限：比 Print 模式的 10MB 限制多 1 字节，超限由 PrintMode 报错 */
+    static final int MAX_STDIN_BYTES = 10 * 1024 * 1024 + 1;
+
+    private DaemonProtocol() {
+    }
+
+    /**
+     * 工作区的端点文件
+     */
+    static Path endpointFile(String workspace) {
+        return Paths.get(workspace, AgentFlags.getHarnessCache(), ENDPOINT_FILE);
+    }
+
+    /**
+     * 是否为 {@code soloncode daemon stop}
+     */
+    static boolean isStopRequest(String[] args) {
+        return args.length == 2 && AgentFlags.FLAG_DAEMON.equals(args[0]) && "stop".equals(args[1]);
+    }
+
+    // ========== 编解码 ==========
+
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        writeBytes(out, str == null ? new byte[0] : str.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in, MAX_STRING_BYTES), StandardCharsets.UTF_8);
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static byte[] readBytes(DataInputStream in, int maxBytes) throws IOException {
+        int len = in.readInt();
+        if (len < 0 || len > maxBytes) {
+            throw new IOException("Frame too large: " + len);
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * 将写入转为 OUT/ERR 帧的输出流（同一连接上的多个流共享 target 锁）
+     */
+    static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream target;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream target, byte type) {
+            this.target = target;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            synchronized (target) {
+                target.writeByte(type);
+                target.writeInt(len);
+                target.write(buf, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (target) {
+                target.flush();
+            }
+        }
+    }
+
+    // ========== 端点 ==========
+
+    /**
+     * 常驻进程端点
+     */
+    static class Endpoint {
+        final int port;
+        final String token;
+        final String pid;
+        final String version;
+
+        Endpoint(int port, String token, String pid, String version) {
+            this.port = port;
+            this.token = token;
+            this.pid = pid;
+            this.version = version;
+        }
+
+        /**
+         * 读取端点文件；不存在或内容无效时返回 null
+         */
+        static Endpoint load(Path file) {
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+
+            Properties props = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                props.load(in);
+                return new Endpoint(Integer.parseInt(props.getProperty("port")),
+                        props.getProperty("token"),
+                        props.getProperty("pid"),
+                        props.getProperty("version"));
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        /**
+         * 写入端点文件（先写临时文件再替换；支持时仅所有者可读写，令牌不外泄）
+         */
+        void save(Path file) throws IOException {
+            Files.createDirectories(file.getParent());
+
+            Properties props = new Properties();
+            props.setProperty("port", String.valueOf(port));
+            props.setProperty("token", token);
+            props.setProperty("pid", pid);
+            props.setProperty("version", version);
+
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "soloncode daemon");
+            }
+            try {
+                Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException ignored) {
+                // 非 POSIX 文件系统（Windows）
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * 打开到常驻进程的连接
+         */
+        Socket connect(int timeoutMs) throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), timeoutMs);
+                socket.setTcpNoDelay(true);
+                return socket;
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        /**
+         * 常驻进程是否仍在监听
+         */
+        boolean isReachable(int timeoutMs) {
+            try (Socket ignored = connect(timeoutMs)) {
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.printmode;
+
+import org.noear.snack4.ONode;
+import org.noear.solon.ai.agent.AgentSession;
+import org.noear.solon.ai.harness.HarnessEngine;
+import org.noear.solon.core.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Print 模式批量执行器（{@code soloncode run --batch prompts.jsonl}）
+ *
+ * <p>在同一个已预热的 JVM / {@link HarnessEngine} 中并发执行多个提示词，省去每条提示词各自启动进程的开销。
+ * 每个条目使用独立会话，互不共享上下文。</p>
+ *
+ * <p>输入文件每行一个 JSON 对象（空行与 {@code #} 开头的行忽略）：
+ * <pre>
+ *   {"id":"t1","prompt":"总结 README","model":"sonnet","max_turns":5}
+ *   {"prompt":"列出所有公开接口","json_schema":{"type":"array","items":{"type":"string"}}}
+ * </pre>
+ * </p>
+ *
+ * <p>输出为 JSONL：每个条目完成时立即输出一行 {@code batch_item} 记录（含退出码与费用），
+ * 全部结束后输出一行 {@code batch_summary} 汇总。{@code --output-format stream-json --verbose} 下各条目的流事件
+ * 带有 {@code batch_index}（及 {@code batch_id}）字段标记所属条目。命令行上的工具、权限、bare、add-dir 等选项对所有条目生效；
+ * {@code --max-budget-usd} 作为整批费用上限：各条目运行中实时计量，达到上限时终止运行中的条目并不再启动新条目。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class PrintBatch {
+    private static final Logger LOG = LoggerFactory.getLogger(PrintBatch.class);
+
+    /** 会话 ID 前缀 */
+    static final String SESSION_PREFIX = "batch-";
+
+    private final PrintMode printMode;
+    private final HarnessEngine engine;
+    private final PrintModeOptions options;
+    private final PrintStream out;
+    private final PrintStream err;
+
+    private final Object outputLock = new Object();
+    /** 整批共享的费用预算（各条目运行中实时计量） */
+    private final CostMeter.Budget budget;
+
+    PrintBatch(PrintMode printMode, HarnessEngine engine, PrintModeOptions options, PrintStream out, PrintStream err) {
+        this.printMode = printMode;
+        this.engine = engine;
+        this.options = options;
+        this.out = out;
+        this.err = err;
+        this.budget = new CostMeter.Budget(options.getMaxBudgetUsd());
+    }
+
+    /**
+     * 执行批量任务，返回退出码
+     *
+     * @return 0=全部成功；{@link PrintMode#EXIT_BUDGET_EXCEEDED}=超出整批预算；{@link PrintMode#EXIT_ERROR}=存在失败条目
+     */
+    public int execute() {
+        List<BatchItem> items;
+        try {
+            items = readItems(Paths.get(options.getBatch()));
+        } catch (IOException e) {
+            err.println("Error: Failed to read batch file '" + options.getBatch() + "': " + e.getMessage());
+            return PrintMode.EXIT_ERROR;
+        }
+
+        if (items.isEmpty()) {
+            err.println("Error: Batch file contains no prompts.");
+            return PrintMode.EXIT_NO_PROMPT;
+        }
+
+        // 引擎级选项（工具、权限、bare、add-dir）只应用一次，对所有条目生效
+        printMode.applyOptions();
+
+        int parallelism = Math.min(options.getBatchParallelism(), items.size());
+        LOG.info("Batch mode: {} items, parallelism={}", items.size(), parallelism);
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "print-batch-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        long start = System.currentTimeMillis();
+        try {
+            for (BatchItem item : items) {
+                executor.submit(() -> runItem(item));
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        boolean budgetExceeded = budget.isExhausted();
+        for (BatchItem item : items) {
+            budgetExceeded |= item.exitCode == PrintMode.EXIT_BUDGET_EXCEEDED;
+        }
+        if (budgetExceeded) {
+            LOG.warn("Batch budget exceeded: estimated ${} (limit ${})",
+                    PrintMode.roundCost(budget.getSpentUsd()), budget.getLimitUsd());
+        }
+
+        emit(buildSummary(items, budget.getSpentUsd(), budget.getLimitUsd(), System.currentTimeMillis() - start));
+        return exitCodeOf(items, budgetExceeded);
+    }
+
+    /**
+     * 执行单个条目并输出记录
+     */
+    private void runItem(BatchItem item) {
+        long start = System.currentTimeMillis();
+        try {
+            if (item.error != null) {
+                item.exitCode = PrintMode.EXIT_NO_PROMPT;
+            } else if (budget.isExhausted()) {
+                item.error = "Skipped: batch budget exceeded";
+                item.exitCode = PrintMode.EXIT_BUDGET_EXCEEDED;
+            } else {
+                AgentSession session = engine.getSession(SESSION_PREFIX + UUID.randomUUID().toString().substring(0, 8));
+                String prompt = PrintMode.withJsonSchema(item.prompt, item.jsonSchema);
+
+                // 并发条目的 verbose 流事件交错输出，以条目序号与 id 标记归属
+                PrintMode.PrintResult result = new PrintMode.PrintResult();
+                result.batchIndex = item.index;
+                result.batchId = item.id;
+                result = printMode.runAgent(session, prompt, item.model, item.maxTurns, budget, result);
+                item.result = result;
+                item.costUsd = result.estimatedCostUsd;
+
+                if (result.budgetStopped) {
+                    item.error = result.error.getMessage();
+                    item.exitCode = PrintMode.EXIT_BUDGET_EXCEEDED;
+                } else if (result.error != null) {
+                    item.error = result.error.getMessage();
+                    item.exitCode = PrintMode.EXIT_ERROR;
+                } else if (result.maxTurnsExceeded) {
+                    item.exitCode = PrintMode.EXIT_MAX_TURNS;
+                } else {
+                    item.exitCode = PrintMode.EXIT_SUCCESS;
+                }
+            }
+        } catch (Throwable e) {
+            LOG.error("Batch item #{} failed: {}", item.index, e.getMessage(), e);
+            item.error = e.getMessage();
+            item.exitCode = PrintMode.EXIT_ERROR;
+        }
+
+        item.durationMs = System.currentTimeMillis() - start;
+        emit(buildItemRecord(item));
+    }
+
+    private void emit(ONode record) {
+        synchronized (outputLock) {
+            out.println(record.toJson());
+            out.flush();
+        }
+    }
+
+    // ========== 输入解析 ==========
+
+    static List<BatchItem> readItems(Path file) throws IOException {
+        return parseItems(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解析 JSONL 行；无法解析或缺少 prompt 的行保留为带错误的条目（输出时报告，不中断整批）
+     */
+    static List<BatchItem> parseItems(List<String> lines) {
+        List<BatchItem> items = new ArrayList<>();
+        int lineNo = 0;
+        for (String line : lines) {
+            lineNo++;
+            String text = line.trim();
+            if (text.isEmpty() || text.startsWith("#")) {
+                continue;
+            }
+
+            BatchItem item = new BatchItem(items.size(), lineNo);
+            items.add(item);
+
+            ONode node;
+            try {
+                node = ONode.ofJson(text);
+            } catch (Exception e) {
+                item.error = "Invalid JSON at line " + lineNo + ": " + e.getMessage();
+                continue;
+            }
+            if (node == null || !node.isObject()) {
+                item.error = "Line " + lineNo + " is not a JSON object";
+                continue;
+            }
+
+            if (node.getOrNull("id") != null) {
+                item.id = node.get("id").getString();
+            }
+            if (node.getOrNull("prompt") != null) {
+                item.prompt = node.get("prompt").getString();
+            }
+            if (node.getOrNull("model") != null) {
+                item.model = node.get("model").getString();
+            }
+            if (node.getOrNull("max_turns") != null) {
+                item.maxTurns = node.get("max_turns").getInt();
+            }
+            ONode schema = node.getOrNull("json_schema");
+            if (schema != null) {
+                item.jsonSchema = schema.isObject() ? schema.toJson() : schema.getString();
+            }
+
+            if (Assert.isEmpty(item.prompt)) {
+                item.error = "Missing prompt at line " + lineNo;
+            }
+        }
+        return items;
+    }
+
+    // ========== 输出构建 ==========
+
+    static ONode buildItemRecord(BatchItem item) {
+        ONode node = new ONode();
+        node.set("type", "batch_item");
+        node.set("index", item.index);
+        node.set("line", item.line);
+        if (item.id != null) {
+            node.set("id", item.id);
+        }
+        node.set("exit_code", item.exitCode);
+        node.set("is_error", item.exitCode != PrintMode.EXIT_SUCCESS);
+
+        PrintMode.PrintResult result = item.result;
+        if (result != null) {
+            node.set("session_id", result.sessionId != null ? result.sessionId : "");
+            node.set("result", result.answer != null ? result.answer : "");
+
+            if (result.metrics != null) {
+                ONode metrics = node.getOrNew("metrics");
+                metrics.set("total_tokens", result.metrics.getTotalTokens());
+                metrics.set("prompt_tokens", result.metrics.getPromptTokens());
+                metrics.set("completion_tokens", result.metrics.getCompletionTokens());
+            }
+
+            if (Assert.isNotEmpty(item.jsonSchema) && Assert.isNotEmpty(result.answer)) {
+                ONode structured = PrintMode.tryParseJson(result.answer);
+                if (structured != null) {
+                    node.set("structured_output", structured);
+                }
+            }
+        }
+
+        if (item.error != null) {
+            node.set("error", item.error);
+        }
+        node.set("total_cost_usd", PrintMode.roundCost(item.costUsd));
+        node.set("duration_ms", item.durationMs);
+        return node;
+    }
+
+    static ONode buildSummary(List<BatchItem> items, double totalCostUsd, Double budgetLimitUsd, long durationMs) {
+        int succeeded = 0;
+        int skipped = 0;
+        for (BatchItem item : items) {
+            if (item.exitCode == PrintMode.EXIT_SUCCESS) {
+                succeeded++;
+            } else if (item.exitCode == PrintMode.EXIT_BUDGET_EXCEEDED && item.result == null) {
+                skipped++;
+            }
+        }
+
+        ONode node = new ONode();
+        node.set("type", "batch_summary");
+        node.set("total", items.size());
+        node.set("succeeded", succeeded);
+        node.set("failed", items.size() - succeeded - skipped);
+        node.set("skipped", skipped);
+        node.set("total_cost_usd", PrintMode.roundCost(totalCostUsd));
+        if (budgetLimitUsd != null) {
+            node.set("budget_limit_usd", budgetLimitUsd);
+            node.set("budget_exceeded", totalCostUsd > budgetLimitUsd);
+        }
+        node.set("duration_ms", durationMs);
+        return node;
+    }
+
+    static int exitCodeOf(List<BatchItem> items, boolean budgetExceeded) {
+        if (budgetExceeded) {
+            return PrintMode.EXIT_BUDGET_EXCEEDED;
+        }
+        for (BatchItem item : items) {
+            if (item.exitCode != PrintMode.EXIT_SUCCESS) {
+                return PrintMode.EXIT_ERROR;
+            }
+        }
+        return PrintMode.EXIT_SUCCESS;
+    }
+
+    /**
+     * 批量条目
+     */
+    static class BatchItem {
+        /** 条目序号（从 0 开始，按文件顺序） */
+        final int index;
+        /** 文件行号（从 1 开始） */
+        final int line;
+        String id;
+        String prompt;
+        String model;
+        Integer maxTurns;
+        String jsonSchema;
+
+        volatile int exitCode = -1;
+        volatile String error;
+        volatile PrintMode.PrintResult result;
+        volatile double costUsd;
+        volatile long durationMs;
+
+        BatchItem(int index, int line) {
+            this.index = index;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.printmode;
+
+import org.noear.solon.codecli.config.AgentFlags;
+import org.noear.solon.codecli.util.StartupProfiler;
+
+import java.io.*;
+import java.net.Socket;
+
+/**
+ * Print 模式轻量客户端：在容器启动之前（{@code App.main}）把 {@code soloncode run} 转发给当前工作区的
+ * {@link PrintDaemon}，并把输出原样写回 stdout/stderr。
+ *
+ * <p>只依赖 JDK 与协议类，不加载容器与引擎。没有常驻进程、版本不一致、连接失败或常驻进程要求回退时返回 {@link #NOT_HANDLED}，由调用方照常启动本地执行；
+ * 传入 {@code --no-daemon} 或 {@code --profile-startup} 时始终本地执行。stdin 只在常驻进程接受请求后读取，回退时不会被消耗。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class PrintClient {
+    /** 未交由常驻进程处理 */
+    public static final int NOT_HANDLED = -1;
+
+    private static final int CONNECT_TIMEOUT_MS = 300;
+
+    /**
+     * 尝试交由常驻进程执行
+     *
+     * @return 退出码；{@link #NOT_HANDLED} 表示需本地执行
+     */
+    public static int tryRun(String[] args) {
+        if (args == null || args.length == 0) {
+            return NOT_HANDLED;
+        }
+
+        if (DaemonProtocol.isStopRequest(args)) {
+            return stopDaemon(args);
+        }
+
+        if (!AgentFlags.FLAG_RUN.equals(args[0]) || hasFlag(args, "no-daemon")
+                || hasFlag(args, StartupProfiler.FLAG)) {
+            return NOT_HANDLED;
+        }
+
+        DaemonProtocol.Endpoint endpoint = loadEndpoint();
+        if (endpoint == null) {
+            return NOT_HANDLED;
+        }
+
+        boolean accepted = false;
+        try (Socket socket = endpoint.connect(CONNECT_TIMEOUT_MS)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            if (!handshake(endpoint, args, in, out)) {
+                return NOT_HANDLED;
+            }
+            accepted = true;
+
+            DaemonProtocol.writeBytes(out, readStdin());
+            out.flush();
+
+            return pump(in);
+        } catch (IOException e) {
+            if (!accepted) {
+                return NOT_HANDLED;
+            }
+            // 请求已在常驻进程中开始执行，不能再本地重跑（避免重复执行工具调用）
+            System.out.flush();
+            System.err.println("Error: Lost connection to soloncode daemon: " + e.getMessage());
+            return PrintMode.EXIT_ERROR;
+        }
+    }
+
+    /**
+     * {@code soloncode daemon stop}
+     */
+    private static int stopDaemon(String[] args) {
+        DaemonProtocol.Endpoint endpoint = loadEndpoint();
+        if (endpoint == null) {
+            System.err.println("No soloncode daemon is running for " + AgentFlags.getUserDir());
+            return PrintMode.EXIT_ERROR;
+        }
+
+        try (Socket socket = endpoint.connect(CONNECT_TIMEOUT_MS)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            if (!handshake(endpoint, args, in, out)) {
+                System.err.println("soloncode daemon refused the stop request");
+                return PrintMode.EXIT_ERROR;
+            }
+            int exitCode = pump(in);
+            System.out.println("soloncode daemon stopped (pid " + endpoint.pid + ")");
+            return exitCode;
+        } catch (IOException e) {
+            System.err.println("Failed to stop soloncode daemon: " + e.getMessage());
+            return PrintMode.EXIT_ERROR;
+        }
+    }
+
+    private static DaemonProtocol.Endpoint loadEndpoint() {
+        DaemonProtocol.Endpoint endpoint = DaemonProtocol.Endpoint.load(
+                DaemonProtocol.endpointFile(AgentFlags.getUserDir()));
+        if (endpoint == null || !AgentFlags.getVersion().equals(endpoint.version)) {
+            return null;
+        }
+        return endpoint;
+    }
+
+    /**
+     * 发送请求头并等待常驻进程答复
+     *
+     * @return true 表示已接受
+     */
+    private static boolean handshake(DaemonProtocol.Endpoint endpoint, String[] args,
+                                     DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeInt(DaemonProtocol.VERSION);
+        DaemonProtocol.writeString(out, endpoint.token);
+        DaemonProtocol.writeString(out, AgentFlags.getUserDir());
+        DaemonProtocol.writeString(out, System.getenv("PATH"));
+        out.writeInt(args.length);
+        for (String arg : args) {
+            DaemonProtocol.writeString(out, arg);
+        }
+        out.flush();
+
+        byte reply = in.readByte();
+        if (reply == DaemonProtocol.FALLBACK) {
+            DaemonProtocol.readString(in);
+            return false;
+        }
+        return reply == DaemonProtocol.ACCEPT;
+    }
+
+    /**
+     * 把输出帧写回本地 stdout/stderr，直到 EXIT 帧
+     */
+    static int pump(DataInputStream in) throws IOException {
+        while (true) {
+            byte type = in.readByte();
+            switch (type) {
+                case DaemonProtocol.OUT:
+                    System.out.write(DaemonProtocol.readBytes(in, Integer.MAX_VALUE));
+                    System.out.flush();
+                    break;
+                case DaemonProtocol.ERR:
+                    System.err.write(DaemonProtocol.readBytes(in, Integer.MAX_VALUE));
+                    System.err.flush();
+                    break;
+                case DaemonProtocol.EXIT:
+                    System.out.flush();
+                    System.err.flush();
+                    return in.readInt();
+                default:
+                    throw new IOException("Unknown frame type: " + type);
+            }
+        }
+    }
+
+    /**
+     * 读取管道输入（与 PrintMode 相同：仅在已有可读数据时读取，交互终端不阻塞）
+     */
+    private static byte[] readStdin() throws IOException {
+        if (System.in.available() <= 0) {
+            return new byte[0];
+        }
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int len;
+        while ((len = System.in.read(chunk)) != -1) {
+            buf.write(chunk, 0, len);
+            if (buf.size() >= DaemonProtocol.MAX_STDIN_BYTES) {
+                break;
+            }
+        }
+
+        byte[] bytes = buf.toByteArray();
+        if (bytes.length > DaemonProtocol.MAX_STDIN_BYTES) {
+            byte[] capped = new byte[DaemonProtocol.MAX_STDIN_BYTES];
+            System.arraycopy(bytes, 0, capped, 0, capped.length);
+            return capped;
+        }
+        return bytes;
+    }
+
+    /**
+     * 命令行中是否带有指定开关（兼容 --name / -name 写法）
+     */
+    static boolean hasFlag(String[] args, String name) {
+        for (String arg : args) {
+            int i = 0;
+            while (i < arg.length() && arg.charAt(i) == '-') {
+                i++;
+            }
+            if (i > 0 && name.equals(arg.substring(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.printmode;
+
+import org.noear.solon.Solon;
+import org.noear.solon.ai.harness.HarnessEngine;
+import org.noear.solon.codecli.config.AgentFlags;
+import org.noear.solon.codecli.config.AgentSettings;
+import org.noear.solon.core.util.MultiMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Print 模式常驻进程（{@code soloncode daemon}）
+ *
+ * <p>保持容器、配置、MCP/LSP 注册与 {@link HarnessEngine} 预热，在回环 socket 上接收 {@link PrintClient}
+ * 转发的 {@code soloncode run} 请求（argv、stdin、cwd），输出按原样（text/json/stream-json）回传，
+ * 重复的无头调用不再承担每次数秒的启动开销。</p>
+ *
+ * <ul>
+ *   <li>每个请求独立的 {@link PrintMode}，会话与输出互不干扰，可并发</li>
+ *   <li>引擎被所有请求共享：带引擎级选项（bare、add-dir、工具规则、非默认权限模式）、来自其它工作区
+ *   或 PATH 与常驻进程不同的请求，回复 FALLBACK，由客户端回退为本地执行</li>
+ *   <li>客户端环境变量不转发，工具以常驻进程的环境执行（见 {@link DaemonProtocol}）</li>
+ *   <li>客户端断开（Ctrl-C、CI 任务被终止）时取消执行，不再继续工具调用与消耗 token</li>
+ *   <li>{@code soloncode daemon stop} 停止常驻进程</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class PrintDaemon {
+    private static final Logger LOG = LoggerFactory.getLogger(PrintDaemon.class);
+
+    /** 连接建立后读取请求头的超时 */
+    private static final int HANDSHAKE_TIMEOUT_MS = 10_000;
+
+    private final HarnessEngine engine;
+    private final AgentSettings agentSettings;
+    private final String workspace;
+    private final Path endpointFile;
+    private final String token = UUID.randomUUID().toString();
+
+    private final AtomicInteger workerIndex = new AtomicInteger();
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "print-daemon-" + workerIndex.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ServerSocket server;
+    private volatile boolean running;
+
+    public PrintDaemon(HarnessEngine engine, AgentSettings agentSettings, String workspace) {
+        this.engine = engine;
+        this.agentSettings = agentSettings;
+        this.workspace = workspace;
+        this.endpointFile = DaemonProtocol.endpointFile(workspace);
+    }
+
+    /**
+     * 开始监听并写入端点文件（监听线程为非守护线程，保持进程常驻）
+     */
+    public void start() throws IOException {
+        DaemonProtocol.Endpoint existing = DaemonProtocol.Endpoint.load(endpointFile);
+        if (existing != null && existing.isReachable(300)) {
+            throw new IllegalStateException("A daemon is already running for this workspace (pid " + existing.pid + ")");
+        }
+
+        // 无人值守：不等待人工批准
+        engine.setHitlEnabled(false);
+
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        new DaemonProtocol.Endpoint(server.getLocalPort(), token, currentPid(), AgentFlags.getVersion())
+                .save(endpointFile);
+        running = true;
+
+        Thread acceptor = new Thread(this::acceptLoop, "print-daemon");
+        acceptor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
+
+        LOG.info("Print daemon listening on 127.0.0.1:{} (workspace: {})", server.getLocalPort(), workspace);
+    }
+
+    /**
+     * 停止监听并移除端点文件（仅当端点文件仍属于本进程）
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+
+        DaemonProtocol.Endpoint current = DaemonProtocol.Endpoint.load(endpointFile);
+        if (current != null && token.equals(current.token)) {
+            try {
+                Files.deleteIfExists(endpointFile);
+            } catch (IOException e) {
+                LOG.warn("Failed to remove daemon endpoint file: {}", e.getMessage());
+            }
+        }
+
+        workers.shutdownNow();
+        LOG.info("Print daemon stopped");
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                workers.submit(() -> handle(socket));
+            } catch (IOException e) {
+                if (running) {
+                    LOG.warn("Print daemon accept failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 处理一个客户端连接
+     */
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            s.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+            int protocol = in.readInt();
+            String clientToken = DaemonProtocol.readString(in);
+            if (protocol != DaemonProtocol.VERSION || !token.equals(clientToken)) {
+                fallback(out, "protocol or token mismatch");
+                return;
+            }
+
+            String cwd = DaemonProtocol.readString(in);
+            String path = DaemonProtocol.readString(in);
+            int argc = in.readInt();
+            if (argc < 1 || argc > DaemonProtocol.MAX_ARGS) {
+                fallback(out, "invalid arguments");
+                return;
+            }
+            String[] args = new String[argc];
+            for (int i = 0; i < argc; i++) {
+                args[i] = DaemonProtocol.readString(in);
+            }
+
+            if (DaemonProtocol.isStopRequest(args)) {
+                out.writeByte(DaemonProtocol.ACCEPT);
+                out.writeByte(DaemonProtocol.EXIT);
+                out.writeInt(PrintMode.EXIT_SUCCESS);
+                out.flush();
+                new Thread(() -> {
+                    stop();
+                    Solon.stop();
+                }, "print-daemon-stop").start();
+                return;
+            }
+
+            PrintModeOptions options = PrintModeOptions.parse(MultiMap.from(args));
+            String reason = checkRequest(args, options, cwd, path);
+            if (reason != null) {
+                LOG.debug("Print daemon fallback: {}", reason);
+                fallback(out, reason);
+                return;
+            }
+
+            out.writeByte(DaemonProtocol.ACCEPT);
+            out.flush();
+
+            byte[] stdin = DaemonProtocol.readBytes(in, DaemonProtocol.MAX_STDIN_BYTES);
+            // 请求已开始执行，后续不再有读超时
+            s.setSoTimeout(0);
+
+            int exitCode = execute(options, cwd, stdin, in, out);
+            synchronized (out) {
+                out.writeByte(DaemonProtocol.EXIT);
+                out.writeInt(exitCode);
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOG.debug("Print daemon client disconnected: {}", e.getMessage());
+        } catch (Throwable e) {
+            LOG.warn("Print daemon request failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private int execute(PrintModeOptions options, String cwd, byte[] stdin, DataInputStream in,
+                        DataOutputStream out) throws IOException {
+        PrintStream stdout = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.OUT), true, "UTF-8");
+        PrintStream stderr = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.ERR), true, "UTF-8");
+        PrintMode mode = new PrintMode(engine, agentSettings, options, new ByteArrayInputStream(stdin), stdout, stderr)
+                .sharedEngine(cwd);
+
+        // 帧写入失败会被 PrintStream 吞掉，以读端是否关闭判断客户端断开
+        workers.submit(() -> watchDisconnect(in, mode));
+
+        int exitCode;
+        try {
+            exitCode = mode.execute();
+        } catch (Throwable e) {
+            LOG.error("Print daemon execution error: {}", e.getMessage(), e);
+            stderr.println("Error: " + e.getMessage());
+            exitCode = PrintMode.EXIT_ERROR;
+        }
+
+        stdout.flush();
+        stderr.flush();
+        return exitCode;
+    }
+
+    /**
+     * 请求开始执行后客户端不再发送数据：读到连接关闭即取消执行（执行结束后 socket 关闭，读取随之结束）
+     */
+    private static void watchDisconnect(DataInputStream in, PrintMode mode) {
+        try {
+            while (in.read() >= 0) {
+                // 忽略多余数据
+            }
+        } catch (IOException ignored) {
+        }
+        if (mode.cancel()) {
+            LOG.info("Print daemon client disconnected, run cancelled");
+        }
+    }
+
+    /**
+     * 检查请求能否在共享引擎上执行；不能时返回原因（客户端回退为本地执行）
+     */
+    String checkRequest(String[] args, PrintModeOptions options, String cwd, String path) {
+        if (!AgentFlags.FLAG_RUN.equals(args[0])) {
+            return "not a run command";
+        }
+        if (!isSameDir(cwd, workspace)) {
+            return "different workspace";
+        }
+        if (!Objects.equals(emptyToNull(path), emptyToNull(System.getenv("PATH")))) {
+            // 工具以常驻进程的环境执行，PATH 不同会选用不同的可执行文件
+            return "different PATH";
+        }
+        if (options.hasEngineOptions()) {
+            return "engine-wide options";
+        }
+        return null;
+    }
+
+    private static String emptyToNull(String str) {
+        return str == null || str.isEmpty() ? null : str;
+    }
+
+    private static boolean isSameDir(String a, String b) {
+        try {
+            return Paths.get(a).toRealPath().equals(Paths.get(b).toRealPath());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void fallback(DataOutputStream out, String reason) throws IOException {
+        out.writeByte(DaemonProtocol.FALLBACK);
+        DaemonProtocol.writeString(out, reason);
+        out.flush();
+    }
+
+    private static String currentPid() {
+        // Java 8 没有 ProcessHandle，RuntimeMXBean 名称形如 "pid@host"
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int at = name.indexOf('@');
+        return at > 0 ? name.substring(0, at) : name;
+    }
+}
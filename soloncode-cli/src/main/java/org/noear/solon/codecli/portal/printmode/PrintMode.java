@@ -20,6 +20,7 @@ import org.noear.solon.ai.agent.AgentSession;
 import org.noear.solon.ai.agent.react.ReActAgent;
 import org.noear.solon.ai.agent.react.ReActChunk;
 import org.noear.solon.ai.agent.react.ReActTrace;
+import org.noear.solon.ai.agent.react.intercept.ContextSizeEvent;
 import org.noear.solon.ai.agent.react.task.*;
 import org.noear.solon.ai.agent.trace.Metrics;
 import org.noear.solon.ai.chat.ChatModel;
@@ -31,6 +32,10 @@ import org.noear.solon.ai.talents.mount.MountDir;
 import org.noear.solon.ai.talents.mount.MountType;
 import org.noear.solon.codecli.config.AgentFlags;
 import org.noear.solon.codecli.config.AgentSettings;
+import org.noear.solon.codecli.config.models.ModelRouter;
+import org.noear.solon.codecli.util.BudgetExceededException;
+import org.noear.solon.codecli.util.TokenAccounting;
+import org.noear.solon.codecli.util.TokenCost;
 import org.noear.solon.core.util.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +43,7 @@ import org.slf4j.LoggerFactory;
 import reactor.core.Disposable;
 import reactor.core.scheduler.Schedulers;
 
+import java.io.InputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -45,7 +51,10 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -70,7 +79,7 @@ import java.util.concurrent.atomic.AtomicReference;
  *   <li>{@code --add-dir} — 注册额外工作目录</li>
  *   <li>{@code --fallback-model} — 主模型不可用时回退</li>
  *   <li>{@code --json-schema} — 结构化输出约束</li>
- *   <li>{@code --max-budget-usd} — 费用硬上限</li>
+ *   <li>{@code --max-budget-usd} — 费用硬上限（运行中实时计量，达到上限即终止）</li>
  *   <li>{@code Bash(rm *)} — 工具规则语法细粒度控制</li>
  *   <li>{@code plan} 权限模式 — 实际限制写入类工具</li>
  *   <li>{@code acceptEdits} 权限模式 — 自动批准文件编辑</li>
@@ -103,20 +112,61 @@ public class PrintMode {
     private static final String[] EDIT_TOOLS = {"Write", "Edit", "Read", "Glob", "Grep"};
 
     /** 默认费用估算：每 1K 输入 token $0.003 */
-    static final double COST_PER_1K_INPUT_TOKENS = 0.003;
+    static final double COST_PER_1K_INPUT_TOKENS = TokenCost.COST_PER_1K_INPUT_TOKENS;
     /** 默认费用估算：每 1K 输出 token $0.015 */
-    static final double COST_PER_1K_OUTPUT_TOKENS = 0.015;
+    static final double COST_PER_1K_OUTPUT_TOKENS = TokenCost.COST_PER_1K_OUTPUT_TOKENS;
 
     private final HarnessEngine engine;
     private final AgentSettings agentSettings;
     private final PrintModeOptions options;
+    private final InputStream in;
     private final PrintStream out;
+    final PrintStream err;
+
+    /** 会话工作目录（常驻进程代客户端执行时使用；null 表示引擎工作区） */
+    private String cwd;
+    /** 引擎为常驻进程共享：不修改引擎全局状态 */
+    private boolean sharedEngine;
+    /** 执行中的流（常驻进程的客户端断开时取消） */
+    private final Set<Disposable> runningStreams = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
 
     public PrintMode(HarnessEngine engine, AgentSettings agentSettings, PrintModeOptions options) {
+        this(engine, agentSettings, options, System.in, System.out, System.err);
+    }
+
+    public PrintMode(HarnessEngine engine, AgentSettings agentSettings, PrintModeOptions options,
+                     InputStream in, PrintStream out, PrintStream err) {
         this.engine = engine;
         this.agentSettings = agentSettings;
         this.options = options;
-        this.out = System.out;
+        this.in = in;
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * 在常驻进程的共享引擎上执行（不应用引擎级选项，会话工作目录使用客户端 cwd）
+     */
+    PrintMode sharedEngine(String cwd) {
+        this.sharedEngine = true;
+        this.cwd = cwd;
+        return this;
+    }
+
+    /**
+     * 取消执行：终止进行中的流，之后的运行（批量条目）不再开始
+     *
+     * @return true 表示有进行中的流被终止
+     */
+    boolean cancel() {
+        cancelled = true;
+        boolean active = false;
+        for (Disposable disposable : runningStreams) {
+            disposable.dispose();
+            active = true;
+        }
+        return active;
     }
 
     /**
@@ -125,10 +175,15 @@ public class PrintMode {
      * @return 退出码（0=成功, 非0=失败）
      */
     public int execute() {
+        // 批量模式：同一 JVM 内并发执行 JSONL 中的多个提示词
+        if (Assert.isNotEmpty(options.getBatch())) {
+            return new PrintBatch(this, engine, options, out, err).execute();
+        }
+
         // 1. 确定提示词
         String prompt = resolvePrompt();
         if (Assert.isEmpty(prompt)) {
-            System.err.println("Error: No prompt provided. Pass a prompt as argument or pipe via stdin.");
+            err.println("Error: No prompt provided. Pass a prompt as argument or pipe via stdin.");
             return EXIT_NO_PROMPT;
         }
 
@@ -143,18 +198,14 @@ public class PrintMode {
             emitStreamEvent(buildInitEvent(session));
         }
 
-        // 5. 执行 Agent 任务
-        PrintResult result = runAgent(session, prompt);
+        // 5. 执行 Agent 任务（运行中按模型单价实时计量费用，达到预算时终止）
+        PrintResult result = runAgent(session, prompt, options.getModel(), options.getMaxTurns(),
+                new CostMeter.Budget(options.getMaxBudgetUsd()));
 
-        // 6. 计算费用估算
-        result.estimatedCostUsd = estimateCostUsd(result.metrics);
-        result.budgetLimitUsd = options.getMaxBudgetUsd();
-        result.budgetExceeded = result.budgetLimitUsd != null && result.estimatedCostUsd > result.budgetLimitUsd;
-
-        // 7. 输出结果
+        // 6. 输出结果
         outputResult(session, result);
 
-        // 8. 返回退出码
+        // 7. 返回退出码
         if (result.budgetExceeded) {
             LOG.warn("Budget exceeded: estimated ${} > limit ${}", result.estimatedCostUsd, result.budgetLimitUsd);
             return EXIT_BUDGET_EXCEEDED;
@@ -180,7 +231,7 @@ public class PrintMode {
         } else {
             // 从 stdin 读取
             try {
-                if (System.in.available() > 0) {
+                if (in.available() > 0) {
                     byte[] bytes = readAllStdin();
                     if (bytes != null && bytes.length > 0) {
                         String stdinPrompt = new String(bytes, StandardCharsets.UTF_8).trim();
@@ -199,14 +250,19 @@ public class PrintMode {
             return null;
         }
 
-        // 追加 JSON Schema 约束
-        if (Assert.isNotEmpty(options.getJsonSchema())) {
-            prompt = prompt + "\n\n---\nYour response must be valid JSON conforming to this JSON Schema:\n"
-                    + options.getJsonSchema()
-                    + "\nReturn only the JSON value matching the schema, with no additional text or explanation.";
-        }
+        return withJsonSchema(prompt, options.getJsonSchema());
+    }
 
-        return prompt;
+    /**
+     * 追加 JSON Schema 结构化输出约束（schema 为空时原样返回）
+     */
+    static String withJsonSchema(String prompt, String jsonSchema) {
+        if (Assert.isEmpty(jsonSchema)) {
+            return prompt;
+        }
+        return prompt + "\n\n---\nYour response must be valid JSON conforming to this JSON Schema:\n"
+                + jsonSchema
+                + "\nReturn only the JSON value matching the schema, with no additional text or explanation.";
     }
 
     /** stdin 输入上限：10MB（对齐官方 v2.1.128+ 规范） */
@@ -218,10 +274,10 @@ public class PrintMode {
             byte[] buffer = new byte[4096];
             int len;
             int totalRead = 0;
-            while ((len = System.in.read(buffer)) != -1) {
+            while ((len = in.read(buffer)) != -1) {
                 totalRead += len;
                 if (totalRead > STDIN_MAX_BYTES) {
-                    System.err.println("Error: stdin input exceeds 10MB limit.");
+                    err.println("Error: stdin input exceeds 10MB limit.");
                     return null;
                 }
                 baos.write(buffer, 0, len);
@@ -235,7 +291,12 @@ public class PrintMode {
     /**
      * 应用运行时选项到引擎
      */
-    private void applyOptions() {
+    void applyOptions() {
+        // 共享引擎：引擎级选项已由常驻进程拒绝（回退为本地执行），轮次限制按调用传入
+        if (sharedEngine) {
+            return;
+        }
+
         // ---- bare 模式：跳过 skills/MCP/memory 自动发现 ----
         if (options.isBare()) {
             applyBareMode();
@@ -387,18 +448,32 @@ public class PrintMode {
 
     /**
      * 运行 Agent 任务并收集结果
+     *
+     * @param model    模型名称或别名（null 时沿用会话已选模型）
+     * @param maxTurns 最大轮次（null 时沿用引擎设置）
+     * @param budget   费用预算（批量模式下多个运行共享）
+     */
+    PrintResult runAgent(AgentSession session, String prompt, String model, Integer maxTurns, CostMeter.Budget budget) {
+        return runAgent(session, prompt, model, maxTurns, budget, new PrintResult());
+    }
+
+    /**
+     * 运行 Agent 任务并将结果收集到指定对象（批量模式预先设置条目标识，流事件据此标记所属条目）
      */
-    private PrintResult runAgent(AgentSession session, String prompt) {
-        PrintResult result = new PrintResult();
+    PrintResult runAgent(AgentSession session, String prompt, String model, Integer maxTurns, CostMeter.Budget budget,
+                         PrintResult result) {
         CountDownLatch latch = new CountDownLatch(1);
         AtomicReference<Throwable> errorRef = new AtomicReference<>();
         AtomicReference<Disposable> disposableRef = new AtomicReference<>();
 
-        String modelSelected = options.getModel();
+        String modelSelected = model;
         if (modelSelected == null) {
             modelSelected = session.getContext().getAs(HarnessEngine.CTX_MODEL_SELECTED);
         }
 
+        // ---- 模型组：路由到当前最健康的成员 ----
+        modelSelected = ModelRouter.getInstance().route(modelSelected, session.getSessionId(), engine::hasModel);
+
         // ---- fallback-model：主模型不可用时回退 ----
         if (Assert.isNotEmpty(modelSelected) && !engine.hasModel(modelSelected)) {
             if (Assert.isNotEmpty(options.getFallbackModel())) {
@@ -409,6 +484,15 @@ public class PrintMode {
 
         ChatModel chatModel = engine.getModelOrDefInstance(modelSelected);
         ReActAgent agent = engine.getMainAgent();
+        result.costMeter = new CostMeter(chatModel.getConfig().getModel(), budget);
+        result.modelProbe = ModelRouter.getInstance().probe(chatModel.getConfig().getNameOrModel());
+        result.tokenTally = TokenAccounting.getInstance().tally(chatModel.getConfig().getNameOrModel());
+
+        if (cancelled) {
+            result.error = new CancellationException("Run cancelled");
+            settleCost(result);
+            return result;
+        }
 
         try {
             disposableRef.set(
@@ -416,8 +500,11 @@ public class PrintMode {
                             .session(session)
                             .options(o -> {
                                 o.chatModel(chatModel);
-                                if (options.getMaxTurns() != null) {
-                                    o.maxTurns(options.getMaxTurns());
+                                if (maxTurns != null) {
+                                    o.maxTurns(maxTurns);
+                                }
+                                if (cwd != null) {
+                                    o.toolContextPut(HarnessEngine.ATTR_CWD, cwd);
                                 }
                             })
                             .stream()
@@ -427,17 +514,35 @@ public class PrintMode {
                             })
                             .doOnError(e -> {
                                 errorRef.set(e);
-                                LOG.error("Print mode task failed: {}", e.getMessage(), e);
+                                if (e instanceof BudgetExceededException) {
+                                    LOG.warn("Print mode task stopped: {}", e.getMessage());
+                                } else {
+                                    result.modelProbe.failed();
+                                    LOG.error("Print mode task failed: {}", e.getMessage(), e);
+                                }
                             })
                             .doFinally(signal -> {
                                 latch.countDown();
                             })
                             .subscribe()
             );
+            runningStreams.add(disposableRef.get());
+            if (cancelled) {
+                // 与 cancel() 竞争：登记前已取消
+                disposableRef.get().dispose();
+            }
 
             latch.await();
+            runningStreams.remove(disposableRef.get());
+            if (cancelled && errorRef.get() == null) {
+                errorRef.set(new CancellationException("Run cancelled"));
+            }
 
             result.error = errorRef.get();
+            if (result.error instanceof BudgetExceededException) {
+                result.budgetStopped = true;
+                result.sessionId = session.getSessionId();
+            }
 
             // 检查是否超过最大轮次
             if (result.trace != null && result.trace.isAbnormal()) {
@@ -449,49 +554,93 @@ public class PrintMode {
             LOG.error("Print mode execution error: {}", e.getMessage(), e);
         }
 
+        settleCost(result);
         return result;
     }
 
+    /**
+     * 以最终用量校准费用并判定预算
+     */
+    private void settleCost(PrintResult result) {
+        if (result.metrics != null) {
+            result.costMeter.record(result.metrics.getPromptTokens(), result.metrics.getCompletionTokens());
+        }
+        result.estimatedCostUsd = result.costMeter.getCostUsd();
+        result.budgetLimitUsd = result.costMeter.getBudget().getLimitUsd();
+        result.budgetExceeded = result.budgetStopped || result.costMeter.getBudget().isExceeded();
+    }
+
+    /**
+     * 实时费用计量：按 trace 累计用量更新费用，达到预算时抛出异常终止流；stream-json 下定期发出 cost 事件
+     *
+     * @param pendingTokens 即将发送的上下文大小（未知时为 0）
+     */
+    private void meterCost(AgentSession session, PrintResult result, long pendingTokens) {
+        ReActTrace trace = session.getContext().getAs("__main");
+        if (trace == null || trace.getMetrics() == null) {
+            return;
+        }
+
+        Metrics metrics = trace.getMetrics();
+        result.metrics = metrics;
+        try {
+            result.costMeter.check(metrics.getPromptTokens(), metrics.getCompletionTokens(), pendingTokens);
+        } finally {
+            if (options.getOutputFormat() == PrintModeOptions.OutputFormat.STREAM_JSON && options.isVerbose()
+                    && result.costMeter.shouldEmit(System.currentTimeMillis())) {
+                emitStreamEvent(result, buildCostEvent(session, result.costMeter));
+            }
+        }
+    }
+
     /**
      * 处理流式事件块
      */
     private void handleChunk(AgentSession session, Object chunk, PrintResult result) {
-        if (chunk instanceof ReasonChunk) {
+        if (chunk instanceof ContextSizeEvent) {
+            // 模型调用前：即将发送的上下文会使费用超预算时，不再发出请求
+            meterCost(session, result, result.tokenTally.estimate(session, ((ContextSizeEvent) chunk).getTokenCount()));
+            result.modelProbe.callStart();
+        } else if (chunk instanceof ReasonChunk) {
             ReasonChunk reason = (ReasonChunk) chunk;
             if (!reason.isToolCalls() && reason.hasContent()) {
+                result.modelProbe.output(reason.getContent().length());
                 if (options.getOutputFormat() == PrintModeOptions.OutputFormat.STREAM_JSON && options.isVerbose()) {
                     String text = clearThink(reason.getContent());
                     if (Assert.isNotEmpty(text)) {
-                        emitStreamEvent(buildAssistantTextEvent(text, reason.isThinking()));
+                        emitStreamEvent(result, buildAssistantTextEvent(text, reason.isThinking()));
                     }
                 }
             }
         } else if (chunk instanceof ThoughtChunk) {
             ThoughtChunk thought = (ThoughtChunk) chunk;
+            result.modelProbe.callEnd();
             if (options.getOutputFormat() == PrintModeOptions.OutputFormat.STREAM_JSON && options.isVerbose()) {
                 if (thought.isToolCalls()) {
-                    emitStreamEvent(buildToolUseEvent(thought));
+                    emitStreamEvent(result, buildToolUseEvent(thought));
                 }
             }
         } else if (chunk instanceof ObservationChunk) {
             ObservationChunk obs = (ObservationChunk) chunk;
             if (options.getOutputFormat() == PrintModeOptions.OutputFormat.STREAM_JSON && options.isVerbose()) {
-                emitStreamEvent(buildToolResultEvent(obs));
+                emitStreamEvent(result, buildToolResultEvent(obs));
             }
+            meterCost(session, result, 0);
         } else if (chunk instanceof ReActChunk) {
             ReActChunk react = (ReActChunk) chunk;
+            result.modelProbe.callEnd();
             result.trace = react.getTrace();
             result.answer = clearThink(react.getContent());
             result.metrics = react.getMetrics();
             result.sessionId = session.getSessionId();
+            if (result.metrics != null) {
+                result.tokenTally.finish(result.metrics.getPromptTokens());
+            }
 
             if (options.getOutputFormat() == PrintModeOptions.OutputFormat.STREAM_JSON) {
-                // result 事件在流中发出时需要费用数据，提前计算（execute() 步骤6 会再次赋值，幂等）
-                result.estimatedCostUsd = estimateCostUsd(result.metrics);
-                result.budgetLimitUsd = options.getMaxBudgetUsd();
-                result.budgetExceeded = result.budgetLimitUsd != null
-                        && result.estimatedCostUsd > result.budgetLimitUsd;
-                emitStreamEvent(buildResultEvent(result));
+                // result 事件在流中发出时需要费用数据，提前结算（runAgent 结束时会再次结算，幂等）
+                settleCost(result);
+                emitStreamEvent(result, buildResultEvent(result));
                 // 标记 result 事件已发出，outputResult 阶段将不再额外发 error 事件
                 result.resultEventEmitted = true;
             }
@@ -509,8 +658,13 @@ public class PrintMode {
             case STREAM_JSON:
                 // 仅当 result 事件尚未发出时才发 error 事件，
                 // 避免 result 作为终止符之后再出现额外事件（对齐 Claude Code 协议）
-                if (result.error != null && !result.resultEventEmitted) {
-                    emitStreamEvent(buildErrorEvent(result.error));
+                if (!result.resultEventEmitted) {
+                    if (result.budgetStopped) {
+                        // 预算终止：仍以 result 事件收尾，携带已产生的用量与费用
+                        emitStreamEvent(buildResultEvent(result));
+                    } else if (result.error != null) {
+                        emitStreamEvent(buildErrorEvent(result.error));
+                    }
                 }
                 break;
             case TEXT:
@@ -525,7 +679,7 @@ public class PrintMode {
      */
     private void outputText(PrintResult result) {
         if (result.error != null) {
-            System.err.println("Error: " + result.error.getMessage());
+            err.println("Error: " + result.error.getMessage());
             return;
         }
         if (Assert.isNotEmpty(result.answer)) {
@@ -567,6 +721,9 @@ public class PrintMode {
             root.set("budget_limit_usd", result.budgetLimitUsd);
             root.set("budget_exceeded", result.budgetExceeded);
         }
+        if (result.budgetStopped) {
+            root.set("budget_stopped", true);
+        }
 
         // JSON Schema 结构化输出
         if (Assert.isNotEmpty(options.getJsonSchema()) && Assert.isNotEmpty(result.answer)) {
@@ -590,6 +747,23 @@ public class PrintMode {
         out.flush();
     }
 
+    /**
+     * 发出运行中的流事件（批量并发时标记所属条目，以便区分交错输出）
+     */
+    private void emitStreamEvent(PrintResult result, ONode event) {
+        emitStreamEvent(tagBatchItem(event, result));
+    }
+
+    static ONode tagBatchItem(ONode event, PrintResult result) {
+        if (result.batchIndex != null) {
+            event.set("batch_index", result.batchIndex);
+            if (result.batchId != null) {
+                event.set("batch_id", result.batchId);
+            }
+        }
+        return event;
+    }
+
     /**
      * init 事件：对齐 Claude Code 格式
      * <pre>
@@ -753,6 +927,9 @@ public class PrintMode {
             node.set("budget_limit_usd", result.budgetLimitUsd);
             node.set("budget_exceeded", result.budgetExceeded);
         }
+        if (result.budgetStopped) {
+            node.set("budget_stopped", true);
+        }
         if (Assert.isNotEmpty(options.getJsonSchema()) && Assert.isNotEmpty(result.answer)) {
             ONode structured = tryParseJson(result.answer);
             if (structured != null) {
@@ -765,6 +942,27 @@ public class PrintMode {
         return node;
     }
 
+    /**
+     * cost 事件：运行中的实时费用（至少间隔 {@link CostMeter#COST_EVENT_INTERVAL_MS}）
+     * <pre>
+     * {"type":"cost","session_id":"...","model":"...","prompt_tokens":1200,"completion_tokens":300,"total_cost_usd":0.0081,"budget_limit_usd":1.0}
+     * </pre>
+     */
+    private ONode buildCostEvent(AgentSession session, CostMeter meter) {
+        ONode node = new ONode();
+        node.set("type", "cost");
+        node.set("session_id", session.getSessionId());
+        node.set("model", meter.getModelId() != null ? meter.getModelId() : "default");
+        node.set("prompt_tokens", meter.getPromptTokens());
+        node.set("completion_tokens", meter.getCompletionTokens());
+        node.set("total_cost_usd", roundCost(meter.getCostUsd()));
+        node.set("estimated_pricing", meter.isFallbackRate());
+        if (meter.getBudget().getLimitUsd() != null) {
+            node.set("budget_limit_usd", meter.getBudget().getLimitUsd());
+        }
+        return node;
+    }
+
     /**
      * error 事件：对齐 Claude Code 格式
      * <pre>
@@ -800,9 +998,7 @@ public class PrintMode {
      */
     static double estimateCostUsd(Metrics metrics) {
         if (metrics == null) return 0.0;
-        double inputCost = (metrics.getPromptTokens() / 1000.0) * COST_PER_1K_INPUT_TOKENS;
-        double outputCost = (metrics.getCompletionTokens() / 1000.0) * COST_PER_1K_OUTPUT_TOKENS;
-        return inputCost + outputCost;
+        return TokenCost.estimateUsd(metrics.getPromptTokens(), metrics.getCompletionTokens());
     }
 
     /**
@@ -824,7 +1020,7 @@ public class PrintMode {
     /**
      * 尝试将字符串解析为 JSON，失败返回 null
      */
-    private ONode tryParseJson(String text) {
+    static ONode tryParseJson(String text) {
         if (text == null || text.trim().isEmpty()) return null;
         try {
             return ONode.ofJson(text.trim());
@@ -909,7 +1105,7 @@ public class PrintMode {
     /**
      * Print 模式执行结果
      */
-    private static class PrintResult {
+    static class PrintResult {
         String answer;
         String sessionId;
         ReActTrace trace;
@@ -919,7 +1115,18 @@ public class PrintMode {
         double estimatedCostUsd;
         Double budgetLimitUsd;
         boolean budgetExceeded;
+        /** 运行中达到预算被终止 */
+        boolean budgetStopped;
+        CostMeter costMeter;
+        /** 模型路由观测（TTFT、输出速度、成败） */
+        ModelRouter.Probe modelProbe;
+        /** 上下文估算校准 */
+        TokenAccounting.Tally tokenTally;
         /** result 事件是否已在流中发出；为 true 时 outputResult 不再补发 error 事件 */
         boolean resultEventEmitted;
+        /** 批量条目序号（非批量运行时为 null） */
+        Integer batchIndex;
+        /** 批量条目 id（可选） */
+        String batchId;
     }
 }
@@ -38,6 +38,8 @@ import java.util.regex.Pattern;
  *   soloncode run "Review this PR" --allowedTools "Read,Grep,Glob,Bash(git log *)" --disallowedTools "Bash(rm *)"
  *   soloncode run "Extract functions" --output-format json --json-schema '{"type":"object","properties":{"functions":{"type":"array","items":{"type":"string"}}}}'
  *   soloncode run "Fix the bug" --max-budget-usd 5.0 --max-turns 20
+ *   soloncode run --batch prompts.jsonl --batch-parallelism 8 --max-budget-usd 20
+ *   soloncode run "总结改动" --no-daemon
  * </pre>
  *
  * @author noear
@@ -94,6 +96,9 @@ public class PrintModeOptions {
         }
     }
 
+    /** 批量任务默认并发数 */
+    public static final int DEFAULT_BATCH_PARALLELISM = 4;
+
     // ========== 字段 ==========
 
     /** 输出格式 */
@@ -147,6 +152,12 @@ public class PrintModeOptions {
     /** 费用硬上限（美元） */
     private Double maxBudgetUsd;
 
+    /** 批量任务文件（JSONL，每行一个提示词及其选项） */
+    private String batch;
+
+    /** 批量任务并发数 */
+    private int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+
     /** 提示词（来自位置参数） */
     private String prompt;
 
@@ -223,6 +234,14 @@ public class PrintModeOptions {
         return maxBudgetUsd;
     }
 
+    public String getBatch() {
+        return batch;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
     public String getPrompt() {
         return prompt;
     }
@@ -231,6 +250,20 @@ public class PrintModeOptions {
         return promptFromStdin;
     }
 
+    /**
+     * 是否包含会修改引擎全局状态的选项（bare、add-dir、工具列表与规则、非默认权限模式）。
+     * 常驻进程的引擎被多个请求共享，这类请求需回退为本地执行。
+     */
+    public boolean hasEngineOptions() {
+        return bare
+                || !addDirs.isEmpty()
+                || !allowedTools.isEmpty()
+                || !disallowedTools.isEmpty()
+                || !allowedToolRules.isEmpty()
+                || !disallowedToolRules.isEmpty()
+                || permissionMode != PermissionMode.DEFAULT;
+    }
+
     // ========== 解析逻辑 ==========
 
     /**
@@ -289,6 +322,13 @@ public class PrintModeOptions {
         parseValueArg(argx, "fallback-model", val -> opts.fallbackModel = val);
         parseValueArg(argx, "json-schema", val -> opts.jsonSchema = val);
         parseValueArg(argx, "max-budget-usd", val -> opts.maxBudgetUsd = parseDouble(val));
+        parseValueArg(argx, "batch", val -> opts.batch = val);
+        parseValueArg(argx, "batch-parallelism", val -> {
+            Integer n = parseInt(val);
+            if (n != null && n > 0) {
+                opts.batchParallelism = n;
+            }
+        });
         parseValueArg(argx, "permission-mode", val -> {
             if ("acceptEdits".equalsIgnoreCase(val)) {
                 opts.permissionMode = PermissionMode.ACCEPT_EDITS;
@@ -437,7 +477,8 @@ public class PrintModeOptions {
             "output-format", "model", "max-turns", "session-id", "resume",
             "allowedTools", "disallowedTools", "permission-mode",
             "verbose", "bare", "continue", "add-dir", "fallback-model",
-            "json-schema", "max-budget-usd"
+            "json-schema", "max-budget-usd", "batch", "batch-parallelism", "no-daemon",
+            "profile-startup"
     ));
 
     /**
@@ -27,10 +27,13 @@ import org.noear.solon.ai.talents.mount.SkillDir;
 import org.noear.solon.annotation.*;
 import org.noear.solon.codecli.config.AgentFlags;
 import org.noear.solon.codecli.command.builtin.*;
+import org.noear.solon.codecli.portal.FileWatchService;
 import org.noear.solon.codecli.portal.web.service.FileService;
 import org.noear.solon.codecli.portal.web.service.GitService;
+import org.noear.solon.codecli.portal.web.service.GitServicePool;
 import org.noear.solon.codecli.session.SessionManager;
 import org.noear.solon.codecli.session.SessionMeta;
+import org.noear.solon.codecli.util.ProcessRunner;
 import org.noear.solon.codecli.util.ReasoningEffortSupport;
 import org.noear.solon.core.handle.Context;
 import org.noear.solon.core.handle.Result;
@@ -44,6 +47,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -97,7 +101,7 @@ public class WebController {
     private final SessionManager sessionManager;
 
     /** Git 业务逻辑服务，封装工作区 Git 操作 */
-    private final GitService gitService;
+    private final GitServicePool gitServices;
 
     /** 文件业务逻辑服务，封装工作区文件浏览、搜索、读取操作 */
     private final FileService fileService;
@@ -108,15 +112,20 @@ public class WebController {
      * @param engine        AI Agent 执行引擎
      * @param webGate       WebSocket 推送网关
      * @param loopScheduler 循环任务调度器，可为 null（无循环任务场景）
+     * @param fileWatchService 文件监听服务，可为 null（文件树与 git status 不缓存、不支持增量）
      */
-    public WebController(HarnessEngine engine, WebGate webGate, LoopScheduler loopScheduler, SessionManager sessionManager) {
+    public WebController(HarnessEngine engine, WebGate webGate, LoopScheduler loopScheduler, SessionManager sessionManager,
+                         FileWatchService fileWatchService) {
         this.engine = engine;
         this.webGate = webGate;
         this.loopScheduler = loopScheduler;
         this.sessionManager = sessionManager;
 
-        this.gitService = new GitService(engine.getWorkspace(), engine);
+        this.gitServices = new GitServicePool(engine.getWorkspace(), engine, fileWatchService);
         this.fileService = new FileService(engine.getWorkspace(), engine);
+        if (fileWatchService != null) {
+            this.fileService.attachWatcher(fileWatchService);
+        }
 
         // 注入 Web 端 Loop 任务执行器：同步等待本轮 AI 响应结束，捕获文本结果用于 goal 检测。
         if (loopScheduler != null) {
@@ -238,9 +247,6 @@ public class WebController {
                     item.put("time", createdAt);
                     item.put("isPinned", meta.isPinned());
                     data.add(item);
-
-                    //恢复定时任务
-                    loopScheduler.restore(sid);
                 }
 
                 // 排序：置顶优先（按 time/createdAt 降序），非置顶在后（按 time/createdAt 降序）
@@ -886,59 +892,116 @@ public class WebController {
     // ==================== Git 集成（委派给 GitService） ====================
 
     /**
-     * Git 状态检测：返回 Git 可用性、仓库初始化状态、当前分支名及变更文件列表。
-     * <p>依次执行以下检测：
-     * <ol>
-     *   <li>git --version 检测 Git 是否安装且可用</li>
-     *   <li>git rev-parse 检测工作区是否已初始化为 Git 仓库</li>
-     *   <li>git branch --show-current 获取当前分支名</li>
-     *   <li>git status --porcelain=v1 解析变更文件（分为 changed、staged、untracked 三类）</li>
-     * </ol></p>
-     *
-     * @return 包含 gitAvailable、initialized、branch、changed、staged、untracked 的结果对象
-     * @throws Exception Git 命令执行异常
+     * 在工作区对应的 GitService 上执行操作。
+     * <p>每个工作区（默认工作区或 FILES 挂载）一个独立实例，不同工作区的请求可并行执行。</p>
      */
+    private Result<Map> withGitWorkspace(String workspaceId, GitOperation op) throws Exception {
+        return op.execute(gitServices.get(workspaceId));
+    }
+
+    @FunctionalInterface
+    private interface GitOperation {
+        Result<Map> execute(GitService git) throws Exception;
+    }
 
     /**
-     * 执行带工作区切换的 Git 操作。
-     * <p>临时切换 gitService 的工作目录到指定挂载点，执行操作后恢复默认。</p>
+     * 将 Git 命令的 stdout 以纯文本流式写给客户端。
+     * <p>首段输出到达前不提交响应头，因此命令失败且无输出时仍可返回错误状态码。</p>
+     *
+     * @param failureStatus 命令失败且无输出时的状态码
      */
-    private Result<Map> withGitWorkspace(String workspaceId, GitOperation op) throws Exception {
-        File originalDir = gitService.getDefaultWorkspaceDir();
-        if (workspaceId != null && !workspaceId.isEmpty() && !"workspace".equals(workspaceId)) {
-            File targetDir = gitService.resolveGitDir(workspaceId);
-            gitService.setWorkspaceDir(targetDir);
-        }
+    private void streamGitOutput(Context ctx, String workspace, int failureStatus, GitStreamOperation op) throws Exception {
+        boolean[] started = new boolean[1];
         try {
-            return op.execute();
-        } finally {
-            gitService.setWorkspaceDir(originalDir);
+            GitService git = gitServices.get(workspace);
+            ProcessRunner.Result result = op.execute(git, (buf, off, len) -> {
+                if (!started[0]) {
+                    started[0] = true;
+                    ctx.contentType("text/plain; charset=utf-8");
+                }
+                OutputStream out = ctx.outputStream();
+                out.write(buf, off, len);
+                out.flush();
+            });
+
+            if (!started[0]) {
+                if (result.exitCode != 0 && !result.cancelled) {
+                    ctx.status(result.timedOut ? 504 : failureStatus);
+                    ctx.output(result.stderr);
+                } else {
+                    ctx.contentType("text/plain; charset=utf-8");
+                    ctx.output("");
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            if (!started[0]) {
+                ctx.status(400);
+                ctx.output(e.getMessage());
+            }
         }
     }
 
     @FunctionalInterface
-    private interface GitOperation {
-        Result<Map> execute() throws Exception;
+    private interface GitStreamOperation {
+        ProcessRunner.Result execute(GitService git, ProcessRunner.OutputConsumer consumer) throws Exception;
     }
 
     @Get
     @Mapping("/web/chat/git/status")
     public Result<Map> gitStatus(@Param(value = "workspace", required = false) String workspace) throws Exception {
-        return withGitWorkspace(workspace, () -> gitService.status());
+        return withGitWorkspace(workspace, git -> git.status());
     }
 
     @Post
     @Mapping("/web/chat/git/init")
     public Result<Map> gitInit(@Param(value = "workspace", required = false) String workspace,
                                @Param(value = "initialCommit", required = false) Boolean initialCommit) throws Exception {
-        return withGitWorkspace(workspace, () -> gitService.init(initialCommit));
+        return withGitWorkspace(workspace, git -> git.init(initialCommit));
     }
 
     @Get
     @Mapping("/web/chat/git/diff")
     public Result<Map> gitDiff(@Param(value = "workspace", required = false) String workspace,
                                @Param(value = "path", required = false) String path) throws Exception {
-        return withGitWorkspace(workspace, () -> gitService.diff(path));
+        return withGitWorkspace(workspace, git -> git.diff(path));
+    }
+
+    /**
+     * 流式输出 Git Diff（纯文本，不截断），供大 diff 逐步渲染；客户端断开时终止 git 进程。
+     */
+    @Get
+    @Mapping("/web/chat/git/diff/raw")
+    public void gitDiffRaw(Context ctx,
+                           @Param(value = "workspace", required = false) String workspace,
+                           @Param(value = "path", required = false) String path) throws Exception {
+        streamGitOutput(ctx, workspace, 500, (git, consumer) -> git.streamDiff(path, consumer));
+    }
+
+    /**
+     * 分页 Diff 第一层：变更文件列表（含增删行数）
+     */
+    @Get
+    @Mapping("/web/chat/git/diff/files")
+    public Result<Map> gitDiffFiles(@Param(value = "workspace", required = false) String workspace,
+                                    @Param(value = "offset", required = false) Integer offset,
+                                    @Param(value = "limit", required = false) Integer limit) throws Exception {
+        int from = offset == null ? 0 : offset;
+        int size = limit == null ? 500 : limit;
+        return withGitWorkspace(workspace, git -> git.diffFiles(from, size));
+    }
+
+    /**
+     * 分页 Diff 第二层：单个文件的 diff 片段（按行分页，hasMore 时用 nextOffset 加载更多）
+     */
+    @Get
+    @Mapping("/web/chat/git/diff/file")
+    public Result<Map> gitDiffFile(@Param(value = "workspace", required = false) String workspace,
+                                   @Param(value = "path", required = false) String path,
+                                   @Param(value = "offset", required = false) Integer offset,
+                                   @Param(value = "limit", required = false) Integer limit) throws Exception {
+        int from = offset == null ? 0 : offset;
+        int size = limit == null ? 2000 : limit;
+        return withGitWorkspace(workspace, git -> git.diffFile(path, from, size));
     }
 
     @Post
@@ -946,7 +1009,7 @@ public class WebController {
     public Result<Map> gitStage(@Body String body,
                                 @Param(value = "workspace", required = false) String workspace) throws Exception {
         String path = parseJsonPath(body);
-        return withGitWorkspace(workspace, () -> gitService.stage(path));
+        return withGitWorkspace(workspace, git -> git.stage(path));
     }
 
     @Post
@@ -954,7 +1017,7 @@ public class WebController {
     public Result<Map> gitUnstage(@Body String body,
                                   @Param(value = "workspace", required = false) String workspace) throws Exception {
         String path = parseJsonPath(body);
-        return withGitWorkspace(workspace, () -> gitService.unstage(path));
+        return withGitWorkspace(workspace, git -> git.unstage(path));
     }
 
     @Post
@@ -962,7 +1025,7 @@ public class WebController {
     public Result<Map> gitDiscard(@Body String body,
                                   @Param(value = "workspace", required = false) String workspace) throws Exception {
         String path = parseJsonPath(body);
-        return withGitWorkspace(workspace, () -> gitService.discard(path));
+        return withGitWorkspace(workspace, git -> git.discard(path));
     }
 
     @Get
@@ -970,7 +1033,19 @@ public class WebController {
     public Result<Map> gitFileContent(@Param(value = "workspace", required = false) String workspace,
                                       @Param("path") String path,
                                       @Param(value = "ref", required = false) String ref) throws Exception {
-        return withGitWorkspace(workspace, () -> gitService.fileContent(path, ref));
+        return withGitWorkspace(workspace, git -> git.fileContent(path, ref));
+    }
+
+    /**
+     * 流式输出 Git 仓库中指定版本的文件原始内容；客户端断开时终止 git 进程。
+     */
+    @Get
+    @Mapping("/web/chat/git/file-content/raw")
+    public void gitFileContentRaw(Context ctx,
+                                  @Param(value = "workspace", required = false) String workspace,
+                                  @Param("path") String path,
+                                  @Param(value = "ref", required = false) String ref) throws Exception {
+        streamGitOutput(ctx, workspace, 404, (git, consumer) -> git.streamFileContent(path, ref, consumer));
     }
 
     @Post
@@ -1000,7 +1075,7 @@ public class WebController {
         }
         final String finalMsg = message;
         final List<String> finalFiles = files;
-        return withGitWorkspace(workspace, () -> gitService.commit(finalMsg, finalFiles));
+        return withGitWorkspace(workspace, git -> git.commit(finalMsg, finalFiles));
     }
 
     @Post
@@ -1033,7 +1108,7 @@ public class WebController {
             }
         }
 
-        return withGitWorkspace(workspace, () -> gitService.summary(sessionId, files));
+        return withGitWorkspace(workspace, git -> git.summary(sessionId, files));
     }
 
     /**
@@ -1103,6 +1178,15 @@ public class WebController {
         return Result.succeed(data);
     }
 
+    /**
+     * 获取循环任务执行引擎指标（并发、队列深度、排队延迟、执行耗时，以及 Goal 逐轮 token/费用/前缀复用汇总）。
+     */
+    @Get
+    @Mapping("/web/chat/loop/metrics")
+    public Result<Map<String, Object>> loopMetrics() {
+        return Result.succeed(loopScheduler.getExecutorMetrics());
+    }
+
     /**
      * 构建任务 Map（通用方法，供 list/get 复用）
      */
@@ -1388,6 +1472,19 @@ public class WebController {
         goalMap.put("iteration", task.getCurrentIteration());
         goalMap.put("consumedTokens", gs.getConsumedTokens());
         goalMap.put("maxTokens", gs.getMaxTokens());
+        goalMap.put("roundTokens", gs.getRoundTokens());
+        goalMap.put("rounds", loopScheduler.getRoundTelemetry(taskId));
+
+        GoalFanOut.Report fanOut = loopScheduler.getFanOutReport(taskId);
+        if (fanOut != null) {
+            Map<String, Object> fanOutMap = new LinkedHashMap<>();
+            fanOutMap.put("achieved", fanOut.getAchievedCount());
+            fanOutMap.put("total", fanOut.subGoals.size());
+            fanOutMap.put("durationMs", fanOut.durationMs);
+            fanOutMap.put("consumedTokens", fanOut.getConsumedTokens());
+            fanOutMap.put("conflicts", fanOut.conflicts);
+            goalMap.put("fanOut", fanOutMap);
+        }
 
         if (gs.getStartEpochMs() > 0) {
             goalMap.put("startedAt", Instant.ofEpochMilli(gs.getStartEpochMs()).toString());
@@ -1927,13 +2024,21 @@ public class WebController {
 
     /**
      * 工作区文件树浏览接口。
+     *
+     * <p>不带 since 时返回节点列表（兼容旧前端）；带 since 时返回版本化结果，
+     * 仅包含该版本之后的新增、删除、变化节点（见 {@link FileService#treeSince}）。</p>
      */
     @Get
     @Mapping("/web/chat/filer/tree")
-    public Result<List<Map>> fileTree(@Param(value = "workspace", required = false) String workspace,
-                                      @Param(value = "path", required = false) String path,
-                                      @Param(value = "depth", required = false) Integer depth) throws Exception {
-        return fileService.tree(workspace, path, depth);
+    public Result fileTree(@Param(value = "workspace", required = false) String workspace,
+                           @Param(value = "path", required = false) String path,
+                           @Param(value = "depth", required = false) Integer depth,
+                           @Param(value = "since", required = false) Long since) throws Exception {
+        if (since == null) {
+            return fileService.tree(workspace, path, depth);
+        } else {
+            return fileService.treeSince(workspace, path, depth, since);
+        }
     }
 
     /**
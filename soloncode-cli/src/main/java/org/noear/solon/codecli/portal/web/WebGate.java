@@ -33,8 +33,11 @@ import org.noear.solon.ai.harness.HarnessEngine;
 import org.noear.solon.ai.harness.command.Command;
 import org.noear.solon.ai.util.CmdUtil;
 import org.noear.solon.codecli.command.WebCommandContext;
+import org.noear.solon.codecli.config.AgentFlags;
 import org.noear.solon.codecli.config.AgentSettings;
+import org.noear.solon.codecli.config.models.ModelRouter;
 import org.noear.solon.codecli.session.SessionMeta;
+import org.noear.solon.codecli.util.ImagePreprocessor;
 import org.noear.solon.codecli.util.ReasoningEffortSupport;
 import org.noear.solon.core.handle.UploadedFile;
 import org.noear.solon.core.util.Assert;
@@ -92,6 +95,10 @@ public class WebGate extends SimpleWebSocketListener {
      */
     private final List<WebSocket> connections = new CopyOnWriteArrayList<>();
 
+    /** 图片预处理器：按目标模型限制缩放图片附件，处理结果按内容哈希缓存 */
+    private final ImagePreprocessor imagePreprocessor = new ImagePreprocessor(
+            Paths.get(AgentFlags.getUserHome(), AgentFlags.getHarnessBlobs(), "variants"));
+
 
     /**
      * 构造网关实例。
@@ -278,7 +285,7 @@ public class WebGate extends SimpleWebSocketListener {
      * <ol>
      *   <li>解析 Agent 指定前缀（如 "@agentName 消息内容"）</li>
      *   <li>处理 HITL（Human-in-the-Loop）审批/拒绝操作</li>
-     *   <li>处理文件附件上传（图片走 Base64 编码，其他走文件路径引用）</li>
+     *   <li>处理文件附件上传（图片按模型限制缩放后走 Base64 编码，其他走文件路径引用）</li>
      *   <li>判断是否为斜杠命令（/command），若是则走命令分发</li>
      *   <li>构建 Prompt 并启动 Agent 流式任务</li>
      * </ol>
@@ -381,10 +388,11 @@ public class WebGate extends SimpleWebSocketListener {
                             Files.copy(attachment.getContent(), savePath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
 
                             if (isImageAttachment(ext, attachmentTypes != null && i < attachmentTypes.length ? attachmentTypes[i] : null)) {
+                                // 发给模型的是按模型限制缩放后的副本，.uploads 下保留原图供展示
                                 byte[] bytes = Files.readAllBytes(savePath);
-                                String base64 = Base64.getEncoder().encodeToString(bytes);
                                 String mime = extensionToMime(ext);
-                                imageBlocks.add(ImageBlock.ofBase64(base64, mime));
+                                imageBlocks.add(imagePreprocessor.toImageBlock(bytes, mime,
+                                        engine.getModelOrDefInstance(selectedModel).getConfig().getModel()));
                                 imageFileNames.add(fileName);
                             } else {
                                 fileAttachments.add(fileName);
@@ -518,7 +526,9 @@ public class WebGate extends SimpleWebSocketListener {
             selectedModel = session.getContext().getAs(HarnessEngine.CTX_MODEL_SELECTED);
         }
 
-        ChatModel chatModel = engine.getModelOrDefInstance(selectedModel);
+        // 模型组：路由到当前最健康的成员（会话上下文仍记录组名，每轮重新路由）
+        ChatModel chatModel = engine.getModelOrDefInstance(
+                ModelRouter.getInstance().route(selectedModel, sessionId, engine::hasModel));
         ReActAgent agent = engine.getAgentOrMain(agentName);
 
         // 新开流前重置，避免上一轮 streamDoneSent 挡住本轮 done
@@ -573,7 +583,9 @@ public class WebGate extends SimpleWebSocketListener {
             selectedModel = session.getContext().getAs(HarnessEngine.CTX_MODEL_SELECTED);
         }
 
-        ChatModel chatModel = engine.getModelOrDefInstance(selectedModel);
+        // 模型组：路由到当前最健康的成员（会话上下文仍记录组名，每轮重新路由）
+        ChatModel chatModel = engine.getModelOrDefInstance(
+                ModelRouter.getInstance().route(selectedModel, sessionId, engine::hasModel));
         ReActAgent agent = engine.getAgentOrMain(agentName);
         CountDownLatch countDownLatch = new CountDownLatch(1);
         AtomicReference<String> finalAnswerRef = new AtomicReference<>("");
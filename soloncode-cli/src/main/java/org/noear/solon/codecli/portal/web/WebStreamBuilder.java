@@ -34,7 +34,11 @@ import org.noear.solon.ai.talents.memory.MemoryTalent;
 import org.noear.solon.codecli.channel.Channel;
 import org.noear.solon.codecli.channel.wechat.WeChatLink;
 import org.noear.solon.codecli.command.builtin.GoalTalent;
+import org.noear.solon.codecli.command.builtin.GoalTokenMeter;
+import org.noear.solon.codecli.config.models.ModelRouter;
+import org.noear.solon.codecli.util.BudgetExceededException;
 import org.noear.solon.codecli.util.ReasoningEffortSupport;
+import org.noear.solon.codecli.util.TokenAccounting;
 import org.noear.solon.core.util.Assert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -186,6 +190,13 @@ public class WebStreamBuilder {
                 null, sessionEffort, cap, false);
         ReasoningEffortSupport.applyToPrompt(prompt, effectiveEffort);
 
+        String modelName = chatModel != null && chatModel.getConfig() != null ? chatModel.getConfig().getNameOrModel() : null;
+
+        // 模型路由观测（仅统计主代理自身的模型调用）
+        ModelRouter.Probe modelProbe = ModelRouter.getInstance().probe(modelName);
+        // 上下文估算校准（运行结束后与供应商返回的输入 token 对比）
+        TokenAccounting.Tally tokenTally = TokenAccounting.getInstance().tally(modelName);
+
         return agent.prompt(prompt)
                 .session(session)
                 .options(o -> {
@@ -233,11 +244,32 @@ public class WebStreamBuilder {
                         }
                     }
 
+                    if (runId == null) {
+                        if (event instanceof ContextSizeEvent) {
+                            modelProbe.callStart();
+                        } else if (event instanceof ReasonDeltaEvent) {
+                            ReasonDeltaEvent delta = (ReasonDeltaEvent) event;
+                            if (!delta.isToolCalls() && Assert.isNotEmpty(delta.getContent())) {
+                                modelProbe.output(delta.getContent().length());
+                            }
+                        } else if (event instanceof ReasonEndEvent) {
+                            modelProbe.callEnd();
+                        }
+                    }
+
                     WebChunk webChunk = null;
                     if (event instanceof RunStartEvent) {
                         //任务运行开始
                     } else if (event instanceof ContextSizeEvent) {
-                        webChunk = onContextSizeEvent(chatModel, (ContextSizeEvent) event);
+                        ContextSizeEvent sizeEvent = (ContextSizeEvent) event;
+                        // 主代理按所用模型本地计数即将发送的消息并校准（子代理可能使用其它模型，保持框架估算）
+                        long contextTokens = runId == null
+                                ? tokenTally.estimate(session, sizeEvent.getTokenCount())
+                                : sizeEvent.getTokenCount();
+
+                        // Goal 轮内计量：即将发送的上下文会使预算超限时，在发出请求前终止本轮
+                        meterGoalTokens(session, session.getContext().getAs("__main"), contextTokens);
+                        webChunk = onContextSizeEvent(chatModel, sizeEvent, contextTokens);
                     } else if (event instanceof ReasonStartEvent) {
                         //思考开始
                     } else if (event instanceof ReasonDeltaEvent) {
@@ -263,7 +295,11 @@ public class WebStreamBuilder {
                         webChunk = onToolCallEndEvent((ToolCallEndEvent) event, taskAgentName);
                     } else if (event instanceof RunEndEvent) {
                         //运行结束
-                        webChunk = onRunEndEvent(session, (RunEndEvent) event);
+                        RunEndEvent endEvent = (RunEndEvent) event;
+                        if (endEvent.getTrace() != null && endEvent.getTrace().getMetrics() != null) {
+                            tokenTally.finish(endEvent.getTrace().getMetrics().getPromptTokens());
+                        }
+                        webChunk = onRunEndEvent(session, endEvent);
                     }
 
                     if (webChunk == null || webChunk == WebChunk.EMPTY) {
@@ -288,11 +324,18 @@ public class WebStreamBuilder {
                 })
                 .filter(WebChunk::isNotEmpty)
                 .onErrorResume(e -> {
-                    LOG.error("Task fail: {}", e.getMessage(), e);
-
                     List<WebChunk> chunkList = new ArrayList<>();
 
                     WebChunk errorChunk = WebChunk.ofError(e);
+                    if (e instanceof BudgetExceededException) {
+                        // Goal 预算硬上限：本轮被计量器终止，提示后正常收尾
+                        LOG.info("Goal round stopped: {}", e.getMessage());
+                        chunkList.add(errorChunk);
+                    } else {
+                        modelProbe.failed();
+                        LOG.error("Task fail: {}", e.getMessage(), e);
+                    }
+
                     ReActTrace trace = session.getContext().getAs("__main");
                     if (trace != null) {
                         this.onRunEndEvent(session, trace, true, errorChunk.getText());
@@ -319,10 +362,19 @@ public class WebStreamBuilder {
 
 
     public WebChunk onContextSizeEvent(ChatModel chatModel, ContextSizeEvent chunk) {
+        return onContextSizeEvent(chatModel, chunk, chunk.getTokenCount());
+    }
+
+    /**
+     * 上下文用量
+     *
+     * @param contextTokens 校准后的上下文 token 数（原始估算值放在 args.estimatedTokens）
+     */
+    public WebChunk onContextSizeEvent(ChatModel chatModel, ContextSizeEvent chunk, long contextTokens) {
         WebChunk wc = new WebChunk();
         wc.setType("context_size");
         wc.setSessionId(chunk.getSession().getSessionId());
-        wc.setTotalTokens((long) chunk.getTokenCount());
+        wc.setTotalTokens(contextTokens);
         wc.setText(String.valueOf(chunk.getMessageCount()));
 
         long contextLength = chatModel.getConfig().getContextLength();
@@ -332,6 +384,9 @@ public class WebStreamBuilder {
 
         Map<String, Object> args = new HashMap<>();
         args.put("contextLength", contextLength);
+        if (contextTokens != chunk.getTokenCount()) {
+            args.put("estimatedTokens", chunk.getTokenCount());
+        }
 
         if (chunk.isCompressed()) {
             args.put("compressed", true);
@@ -687,11 +742,21 @@ public class WebStreamBuilder {
         // ★ 捕获真实 token 消耗，供 LoopScheduler 预算控制使用
         if (totalTokens != null) {
             session.attrs().put("_loop_last_total_tokens", totalTokens);
+            session.attrs().put("_loop_last_metrics", trace.getMetrics());
         }
+        meterGoalTokens(session, trace, 0);
 
         return WebChunk.EMPTY;
     }
 
+    /**
+     * Goal 轮内 token 计量（会话无计量器时忽略；达到硬上限时抛出异常终止流）
+     */
+    private void meterGoalTokens(AgentSession session, ReActTrace trace, long pendingTokens) {
+        long roundTokens = trace != null && trace.getMetrics() != null ? trace.getMetrics().getTotalTokens() : 0;
+        GoalTokenMeter.check(session, roundTokens, pendingTokens);
+    }
+
     /**
      * 处理子代理任务结束（TaskWrapEvent 内层为 RunEndEvent）。
      *
@@ -783,6 +848,7 @@ public class WebStreamBuilder {
         // ★ 捕获真实 token 消耗，供 LoopScheduler 预算控制使用
         if (totalTokens != null) {
             session.attrs().put("_loop_last_total_tokens", totalTokens);
+            session.attrs().put("_loop_last_metrics", trace.getMetrics());
         }
 
         return WebChunk.ofTrace(model, totalTokens, elapsedSeconds, finalAnswer);
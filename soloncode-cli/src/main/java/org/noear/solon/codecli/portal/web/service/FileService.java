@@ -18,6 +18,8 @@ package org.noear.solon.codecli.portal.web.service;
 import org.noear.solon.ai.harness.HarnessEngine;
 import org.noear.solon.ai.talents.mount.MountDir;
 import org.noear.solon.ai.talents.mount.MountType;
+import org.noear.solon.codecli.portal.FileWatchService;
+import org.noear.solon.codecli.portal.FileWatchService.ChangeEntry;
 import org.noear.solon.codecli.portal.web.WebController;
 import org.noear.solon.core.handle.Result;
 
@@ -40,6 +42,7 @@ import java.util.*;
  *   <li>通过 workspace 路径构造，所有文件操作均基于此路径</li>
  *   <li>内部维护排除目录列表，自动过滤构建产物、IDE 配置等无需展示的目录</li>
  *   <li>支持多工作区：可通过 workspaceId 切换到 FILES 挂载点浏览</li>
+ *   <li>目录 listing 经 {@link FileTreeIndex} 缓存，绑定文件监听后支持按版本号返回增量差异</li>
  *   <li>供 WebController 直接调用，Controller 层仅做参数解析和结果转发</li>
  * </ul>
  *
@@ -53,6 +56,9 @@ public class FileService {
     /** AI Agent 执行引擎，用于访问挂载点 */
     private final HarnessEngine engine;
 
+    /** 目录 listing 缓存与变更版本索引 */
+    private final FileTreeIndex treeIndex = new FileTreeIndex();
+
     /**
      * 文件树浏览时排除的目录名称集合。
      * <p>包含各类构建产物、IDE 配置、版本控制等无需展示的目录，
@@ -73,6 +79,15 @@ public class FileService {
         this.engine = engine;
     }
 
+    /**
+     * 绑定文件监听服务：启用目录 listing 缓存与增量文件树。
+     *
+     * @param fileWatchService 文件监听服务
+     */
+    public void attachWatcher(FileWatchService fileWatchService) {
+        treeIndex.attach(fileWatchService);
+    }
+
     // ==================== 公开业务方法 ====================
 
     /**
@@ -201,10 +216,100 @@ public class FileService {
             return Result.failure(404, "Directory not found");
         }
 
-        List<Map> tree = buildTree(target, rootPath, depth, 1);
+        List<Map> tree = buildTree(workspaceId, target, rootPath, depth, 1);
         return Result.succeed(tree);
     }
 
+    /**
+     * 增量文件树（指定工作区）。
+     * <p>客户端携带上次拿到的版本号 since，仅返回该版本之后子树内新增、删除、变化的节点；
+     * since 无法应答（为 0、过旧、或未启用文件监听）时返回全量节点。</p>
+     *
+     * <pre>
+     * 全量：{"version": 1760000000123, "full": true, "nodes": [...]}
+     * 增量：{"version": 1760000000130, "full": false, "added": [...], "removed": ["src/a.txt"], "changed": [...]}
+     * </pre>
+     *
+     * @param workspaceId 工作区标识（"workspace" 或挂载别名如 "@solon-ai"）
+     * @param path        相对路径，基于工作区根目录；为空时从根目录开始
+     * @param depth       展开深度，默认为 1
+     * @param since       客户端已知的版本号
+     * @return 包含 version、full 以及 nodes 或 added/removed/changed 的结果
+     */
+    public Result<Map> treeSince(String workspaceId, String path, Integer depth, long since) {
+        if (depth == null || depth < 1) depth = 1;
+        if (path == null) path = "";
+        if (path.contains("..")) {
+            return Result.failure(400, "Invalid path");
+        }
+
+        if (workspaceId == null || workspaceId.isEmpty()) {
+            String[] parsed = parseWorkspaceFromPath(path);
+            workspaceId = parsed[0];
+            path = parsed[1];
+        }
+
+        Path rootPath;
+        try {
+            rootPath = resolveRoot(workspaceId);
+        } catch (IllegalArgumentException e) {
+            return Result.failure(404, e.getMessage());
+        }
+
+        Path target = rootPath.resolve(path).toAbsolutePath().normalize();
+
+        if (!target.startsWith(rootPath)) {
+            return Result.failure(403, "Access denied");
+        }
+        if (!target.toFile().exists() || !target.toFile().isDirectory()) {
+            return Result.failure(404, "Directory not found");
+        }
+
+        // 先取版本再读变更/磁盘：期间新落入的变更会在下次增量中重复出现，但不会丢失
+        long version = treeIndex.version(workspaceId, rootPath);
+        List<ChangeEntry> changes = since > 0 ? treeIndex.changesSince(workspaceId, rootPath, since, version) : null;
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("version", version);
+
+        if (changes == null) {
+            data.put("full", true);
+            data.put("nodes", buildTree(workspaceId, target, rootPath, depth, 1));
+            return Result.succeed(data);
+        }
+
+        String base = rootPath.relativize(target).toString().replace('\\', '/');
+        List<Map> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        List<Map> changed = new ArrayList<>();
+
+        for (ChangeEntry change : changes) {
+            int relDepth = relativeDepth(base, change.path);
+            if (relDepth < 1 || relDepth > depth || isExcludedPath(change.path)) continue;
+
+            if ("delete".equals(change.kind)) {
+                removed.add(change.path);
+                continue;
+            }
+
+            Path node = rootPath.resolve(change.path).normalize();
+            if (!Files.exists(node) || Files.isSymbolicLink(node)) continue;
+
+            Map<String, Object> item = buildNode(workspaceId, node.toFile(), rootPath, depth, relDepth);
+            if ("create".equals(change.kind)) {
+                added.add(item);
+            } else {
+                changed.add(item);
+            }
+        }
+
+        data.put("full", false);
+        data.put("added", added);
+        data.put("removed", removed);
+        data.put("changed", changed);
+        return Result.succeed(data);
+    }
+
     /**
      * 工作区文件搜索（默认工作区）。
      *
@@ -397,31 +502,23 @@ public class FileService {
      * @param currentDepth 当前递归深度
      * @return 当前层级的文件/目录信息列表
      */
-    private List<Map> buildTree(Path dir, Path rootPath, int maxDepth, int currentDepth) {
-        File[] files = dir.toFile().listFiles();
-        if (files == null) return Collections.emptyList();
-
-        Arrays.sort(files, (a, b) -> {
-            if (a.isDirectory() && !b.isDirectory()) return -1;
-            if (!a.isDirectory() && b.isDirectory()) return 1;
-            return a.getName().compareToIgnoreCase(b.getName());
-        });
+    private List<Map> buildTree(String workspaceId, Path dir, Path rootPath, int maxDepth, int currentDepth) {
+        // 过滤（隐藏、排除、符号链接）与排序（目录优先、名称字典序）由索引完成，结果可能来自缓存
+        List<FileTreeIndex.Entry> entries = treeIndex.list(workspaceId, rootPath, dir, EXCLUDED_DIRS);
 
         List<Map> result = new ArrayList<>();
-        for (File f : files) {
-            if (f.getName().startsWith(".") || EXCLUDED_DIRS.contains(f.getName())) continue;
-            // 跳过符号链接，防止遍历到工作区外部的文件
-            if (Files.isSymbolicLink(f.toPath())) continue;
+        for (FileTreeIndex.Entry e : entries) {
+            Path child = dir.resolve(e.name);
 
             Map<String, Object> item = new LinkedHashMap<>();
-            item.put("name", f.getName());
-            item.put("path", rootPath.relativize(f.toPath().toAbsolutePath().normalize()).toString().replace('\\', '/'));
-            item.put("type", f.isDirectory() ? "directory" : "file");
+            item.put("name", e.name);
+            item.put("path", rootPath.relativize(child.toAbsolutePath().normalize()).toString().replace('\\', '/'));
+            item.put("type", e.directory ? "directory" : "file");
 
-            if (f.isDirectory() && currentDepth < maxDepth) {
+            if (e.directory && currentDepth < maxDepth) {
                 item.put("expanded", true);
-                item.put("children", buildTree(f.toPath(), rootPath, maxDepth, currentDepth + 1));
-            } else if (f.isDirectory()) {
+                item.put("children", buildTree(workspaceId, child, rootPath, maxDepth, currentDepth + 1));
+            } else if (e.directory) {
                 item.put("expanded", false);
                 item.put("children", null);
             }
@@ -430,6 +527,56 @@ public class FileService {
         return result;
     }
 
+    /**
+     * 构建单个节点（增量树中新增/变化的节点），目录按剩余深度展开。
+     */
+    private Map<String, Object> buildNode(String workspaceId, File f, Path rootPath, int maxDepth, int currentDepth) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("name", f.getName());
+        item.put("path", rootPath.relativize(f.toPath().toAbsolutePath().normalize()).toString().replace('\\', '/'));
+        item.put("type", f.isDirectory() ? "directory" : "file");
+
+        if (f.isDirectory() && currentDepth < maxDepth) {
+            item.put("expanded", true);
+            item.put("children", buildTree(workspaceId, f.toPath(), rootPath, maxDepth, currentDepth + 1));
+        } else if (f.isDirectory()) {
+            item.put("expanded", false);
+            item.put("children", null);
+        }
+        return item;
+    }
+
+    /**
+     * 计算 path 相对 base 子树的层级（base 的直接子节点为 1），不在子树内返回 -1。
+     */
+    private static int relativeDepth(String base, String path) {
+        String rest;
+        if (base.isEmpty()) {
+            rest = path;
+        } else if (path.startsWith(base + "/")) {
+            rest = path.substring(base.length() + 1);
+        } else {
+            return -1;
+        }
+        if (rest.isEmpty()) return -1;
+
+        int depth = 1;
+        for (int i = 0; i < rest.length(); i++) {
+            if (rest.charAt(i) == '/') depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * 路径中任一段为隐藏或排除目录时，与文件树一致地不展示。
+     */
+    private static boolean isExcludedPath(String path) {
+        for (String seg : path.split("/")) {
+            if (seg.startsWith(".") || EXCLUDED_DIRS.contains(seg)) return true;
+        }
+        return false;
+    }
+
     /**
      * 递归搜索匹配关键词的文件。
      *
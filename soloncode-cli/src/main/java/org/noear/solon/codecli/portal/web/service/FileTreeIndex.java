@@ -0,0 +1,267 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.web.service;
+
+import org.noear.solon.codecli.portal.FileWatchService;
+import org.noear.solon.codecli.portal.FileWatchService.ChangeEntry;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件树索引 —— 按目录缓存 listing，并以版本号记录文件变更，支持增量树差异。
+ *
+ * <h3>设计说明</h3>
+ * <ul>
+ *   <li>每个工作区一个 {@link WorkspaceIndex}，包含目录 listing 缓存与有界变更日志</li>
+ *   <li>变更由 {@link FileWatchService} 全局监听器推入：使所属目录 listing 失效，并分配递增版本号</li>
+ *   <li>只有监听根已完整注册、且未发生事件溢出时才缓存 listing，否则每次直接读盘</li>
+ *   <li>版本号以启动时间戳为起点，旧进程遗留的客户端版本一定落在日志之外（退化为全量）</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ * @see FileService
+ */
+public class FileTreeIndex {
+    /** 每个工作区保留的变更日志条数（超出后最早的版本不可再增量应答） */
+    private static final int MAX_CHANGE_LOG = 4096;
+    /** 每个工作区最多缓存的目录 listing 数 */
+    private static final int MAX_LISTINGS = 4096;
+
+    private final Map<String, WorkspaceIndex> workspaces = new ConcurrentHashMap<>();
+
+    /** 文件监听服务（为 null 时不缓存，每次直接读盘） */
+    private volatile FileWatchService watcher;
+
+    /**
+     * 绑定文件监听服务，开始接收变更并启用 listing 缓存
+     */
+    public void attach(FileWatchService watcher) {
+        this.watcher = watcher;
+        watcher.addListener(this::apply);
+    }
+
+    /**
+     * 目录条目（已过滤隐藏、排除与符号链接）
+     */
+    public static class Entry {
+        public final String name;
+        public final boolean directory;
+
+        Entry(String name, boolean directory) {
+            this.name = name;
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * 列出目录内容：目录优先，名称字典序（忽略大小写）。
+     *
+     * @param wsId     工作区标识
+     * @param rootPath 工作区根路径
+     * @param dir      要列出的目录（必须位于 rootPath 下）
+     * @param excluded 目录名排除集合
+     */
+    public List<Entry> list(String wsId, Path rootPath, Path dir, Set<String> excluded) {
+        WorkspaceIndex ws = cacheable(wsId, rootPath);
+        String relDir = relativize(rootPath, dir);
+        if (ws == null || !isWatchedPath(relDir)) {
+            return load(dir, excluded);
+        }
+
+        List<Entry> cached = ws.listings.get(relDir);
+        if (cached != null) {
+            return cached;
+        }
+
+        long before = ws.version.get();
+        List<Entry> loaded = load(dir, excluded);
+        // 加载期间有变更落入，本次结果可能已过期，不入缓存（与 apply 同锁，检查与写入之间不会插入变更）
+        synchronized (ws) {
+            if (ws.version.get() == before) {
+                if (ws.listings.size() >= MAX_LISTINGS) {
+                    ws.listings.clear();
+                }
+                ws.listings.put(relDir, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 当前版本号（客户端后续以此作为增量起点）
+     */
+    public long version(String wsId, Path rootPath) {
+        WorkspaceIndex ws = cacheable(wsId, rootPath);
+        return ws == null ? 0L : ws.version.get();
+    }
+
+    /**
+     * 获取自 since 版本以来的净变更（同路径合并）。
+     *
+     * @return 净变更列表（按路径排序）；since 不在可应答范围内（或未启用监听）时返回 null
+     */
+    public List<ChangeEntry> changesSince(String wsId, Path rootPath, long since, long until) {
+        WorkspaceIndex ws = cacheable(wsId, rootPath);
+        if (ws == null) {
+            return null;
+        }
+
+        synchronized (ws) {
+            if (since < ws.floorVersion || since > until) {
+                return null;
+            }
+
+            Map<String, ChangeEntry> merged = new TreeMap<>();
+            for (Change c : ws.changes) {
+                if (c.version <= since || c.version > until) continue;
+
+                ChangeEntry existing = merged.get(c.entry.path);
+                ChangeEntry next = FileWatchService.mergeChange(existing, c.entry);
+                if (next == null) {
+                    merged.remove(c.entry.path);
+                } else {
+                    merged.put(c.entry.path, next);
+                }
+            }
+            return new ArrayList<>(merged.values());
+        }
+    }
+
+    /**
+     * 应用一批监听变更：失效相关目录 listing，并追加到变更日志
+     */
+    void apply(List<ChangeEntry> changes) {
+        for (ChangeEntry change : changes) {
+            WorkspaceIndex ws = workspaces.get(change.wsId);
+            if (ws == null) continue;
+
+            synchronized (ws) {
+                invalidate(ws, change);
+
+                long v = ws.version.incrementAndGet();
+                ws.changes.addLast(new Change(v, change));
+                while (ws.changes.size() > MAX_CHANGE_LOG) {
+                    ws.floorVersion = ws.changes.removeFirst().version;
+                }
+            }
+        }
+    }
+
+    // ==================== 内部方法 ====================
+
+    /**
+     * 取可缓存的工作区索引；监听未就绪（未绑定、根未注册、根被替换或事件溢出）时返回 null
+     */
+    private synchronized WorkspaceIndex cacheable(String wsId, Path rootPath) {
+        FileWatchService w = watcher;
+        if (w == null) return null;
+
+        FileWatchService.WatchRoot root = w.getRoot(wsId);
+        if (root == null || !root.isRegistered() || !root.getPath().equals(rootPath)) {
+            workspaces.remove(wsId);
+            return null;
+        }
+
+        WorkspaceIndex ws = workspaces.get(wsId);
+        if (ws == null || ws.root != root || ws.epoch != root.getEpoch()) {
+            // 首次访问或监听根已变化：重建索引，版本号继续递增（以时间戳为下限）
+            long seed = Math.max(System.currentTimeMillis(), ws == null ? 0L : ws.version.get() + 1);
+            ws = new WorkspaceIndex(root, seed);
+            workspaces.put(wsId, ws);
+        }
+        return ws;
+    }
+
+    private static void invalidate(WorkspaceIndex ws, ChangeEntry change) {
+        String path = change.path;
+        int idx = path.lastIndexOf('/');
+        ws.listings.remove(idx < 0 ? "" : path.substring(0, idx));
+
+        // 删除的可能是目录，新增/修改目录也需刷新自身 listing；子树一并失效
+        if ("delete".equals(change.kind) || "directory".equals(change.type)) {
+            ws.listings.remove(path);
+            String prefix = path + "/";
+            ws.listings.keySet().removeIf(k -> k.startsWith(prefix));
+        }
+    }
+
+    /**
+     * 监听排除目录下的 listing 无法收到变更，不能缓存
+     */
+    private static boolean isWatchedPath(String relDir) {
+        if (relDir.isEmpty()) return true;
+        for (String seg : relDir.split("/")) {
+            if (FileWatchService.isExcludedName(seg)) return false;
+        }
+        return true;
+    }
+
+    private static String relativize(Path rootPath, Path dir) {
+        return rootPath.relativize(dir.toAbsolutePath().normalize()).toString().replace('\\', '/');
+    }
+
+    private static List<Entry> load(Path dir, Set<String> excluded) {
+        File[] files = dir.toFile().listFiles();
+        if (files == null) return Collections.emptyList();
+
+        List<Entry> entries = new ArrayList<>(files.length);
+        for (File f : files) {
+            if (f.getName().startsWith(".") || excluded.contains(f.getName())) continue;
+            // 跳过符号链接，防止遍历到工作区外部的文件
+            if (Files.isSymbolicLink(f.toPath())) continue;
+            entries.add(new Entry(f.getName(), f.isDirectory()));
+        }
+
+        entries.sort((a, b) -> {
+            if (a.directory && !b.directory) return -1;
+            if (!a.directory && b.directory) return 1;
+            return a.name.compareToIgnoreCase(b.name);
+        });
+        return Collections.unmodifiableList(entries);
+    }
+
+    private static class Change {
+        final long version;
+        final ChangeEntry entry;
+
+        Change(long version, ChangeEntry entry) {
+            this.version = version;
+            this.entry = entry;
+        }
+    }
+
+    private static class WorkspaceIndex {
+        final FileWatchService.WatchRoot root;
+        final long epoch;
+        final AtomicLong version;
+        final Map<String, List<Entry>> listings = new ConcurrentHashMap<>();
+        final ArrayDeque<Change> changes = new ArrayDeque<>();
+        /** 可增量应答的最小版本（早于此版本的变更已被淘汰） */
+        long floorVersion;
+
+        WorkspaceIndex(FileWatchService.WatchRoot root, long seed) {
+            this.root = root;
+            this.epoch = root.getEpoch();
+            this.version = new AtomicLong(seed);
+            this.floorVersion = seed;
+        }
+    }
+}
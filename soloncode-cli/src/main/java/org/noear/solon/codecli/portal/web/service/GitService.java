@@ -19,20 +19,24 @@ import org.noear.solon.ai.agent.AgentSession;
 import org.noear.solon.ai.chat.ChatModel;
 import org.noear.solon.ai.harness.HarnessEngine;
 import org.noear.solon.ai.agent.react.ReActAgent;
-import org.noear.solon.ai.talents.mount.MountDir;
-import org.noear.solon.ai.talents.mount.MountType;
+import org.noear.solon.codecli.config.models.ModelRouter;
+import org.noear.solon.codecli.portal.FileWatchService;
 import org.noear.solon.codecli.portal.web.WebController;
+import org.noear.solon.codecli.util.ProcessRunner;
+import org.noear.solon.codecli.util.SideTaskCache;
 import org.noear.solon.core.handle.Result;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Git 服务 —— 封装工作区 Git 操作的核心业务逻辑。
@@ -42,9 +46,12 @@ import java.util.concurrent.TimeUnit;
  *
  * <h3>设计说明</h3>
  * <ul>
- *   <li>通过 workspace 路径构造，所有 Git 命令均在此路径下执行</li>
+ *   <li>每个实例绑定一个工作区目录且不可切换，由 {@link GitServicePool} 按目录复用，不同工作区的操作可并行</li>
+ *   <li>暂存、取消暂存、回滚、提交、初始化会修改 index，持有同一仓库的锁串行执行；只读操作不加锁</li>
  *   <li>内部封装 {@link ProcessResult} 和 {@link #runGitCommand} 统一进程调用</li>
  *   <li>供 WebController 或其他模块直接调用，无需关心 Git 命令细节</li>
+ *   <li>status 只执行一次 {@code git status --porcelain=v2 --branch -z}，结果按工作区缓存，
+ *       由 {@link FileWatchService} 的工作树变更与 .git 元数据变更失效</li>
  * </ul>
  *
  * @author noear 2026-5-30
@@ -53,56 +60,65 @@ import java.util.concurrent.TimeUnit;
 public class GitService {
     private static final Logger LOG = LoggerFactory.getLogger(GitService.class);
 
-    /** 默认工作区目录（可通过 setter 切换） */
-    private File workspaceDir;
-
-    /** 保存构造时的原始工作区目录，用于恢复 */
-    private final File defaultWorkspaceDir;
+    /** 工作区目录（所有 Git 命令均在此目录下执行） */
+    private final File workspaceDir;
 
     /** AI Agent 执行引擎，用于 gitSummary 时获取模型和 Agent */
     private final HarnessEngine engine;
 
     /**
-     * 构造函数。
-     *
-     * @param workspace 工作区根目录路径
-     * @param engine    AI Agent 执行引擎
+     * status 缓存的最长存活时间（兜底：隐藏文件与 build 等目录不在监听范围内，
+     * 如 .gitignore 的修改不会产生事件）
      */
-    public GitService(String workspace, HarnessEngine engine) {
-        this.workspaceDir = new File(workspace);
-        this.defaultWorkspaceDir = this.workspaceDir;
-        this.engine = engine;
-    }
+    private static final long STATUS_MAX_AGE_MS = 15_000;
 
-    /**
-     * 获取默认工作区目录。
-     */
-    public File getDefaultWorkspaceDir() {
-        return defaultWorkspaceDir;
-    }
+    /** 普通命令的截止时间 */
+    private static final long COMMAND_TIMEOUT_MS = 10_000;
+
+    /** 流式命令（大 diff、大文件）的截止时间 */
+    private static final long STREAM_TIMEOUT_MS = 60_000;
+
+    /** git 内置的空树对象，用于尚无提交的仓库作为 diff 基准 */
+    private static final String EMPTY_TREE = "4b825dc642cb6eb9a060e54bf8d69288fbee4904";
+
+    /** 普通命令 stdout 缓冲上限 */
+    private static final int MAX_OUTPUT_BYTES = 8 * 1024 * 1024;
+
+    /** git --version 探测结果（进程级缓存，null 表示尚未探测） */
+    private static volatile Boolean gitAvailable;
+
+    /** 已解析的 status（null 表示无缓存） */
+    private volatile CachedStatus cachedStatus;
+
+    /** 失效代次：加载期间发生失效则结果不入缓存 */
+    private final AtomicLong statusGeneration = new AtomicLong();
+
+    /** 文件监听服务（为 null 时不缓存 status） */
+    private final FileWatchService watcher;
+
+    /** 所属仓库的 index 写锁（同一仓库的多个工作区共享） */
+    private final Lock indexLock;
 
     /**
-     * 设置当前 Git 工作目录（用于临时切换工作区）。
+     * 构造函数。
+     *
+     * @param workspaceDir 工作区目录
+     * @param engine       AI Agent 执行引擎
+     * @param watcher      文件监听服务，可为 null（不缓存 status）
+     * @param indexLock    所属仓库的 index 写锁
      */
-    public void setWorkspaceDir(File dir) {
-        this.workspaceDir = dir;
+    GitService(File workspaceDir, HarnessEngine engine, FileWatchService watcher, Lock indexLock) {
+        this.workspaceDir = workspaceDir;
+        this.engine = engine;
+        this.watcher = watcher;
+        this.indexLock = indexLock;
     }
 
     /**
-     * 根据工作区标识解析 Git 工作目录。
+     * 获取工作区目录。
      */
-    public File resolveGitDir(String workspaceId) {
-        if (workspaceId == null || workspaceId.isEmpty() || "workspace".equals(workspaceId)) {
-            return defaultWorkspaceDir;
-        }
-        MountDir mount = engine.getMount(workspaceId);
-        if (mount == null) {
-            throw new IllegalArgumentException("Mount not found: " + workspaceId);
-        }
-        if (mount.getType() != MountType.FILES) {
-            throw new IllegalArgumentException("Mount is not FILES type: " + workspaceId);
-        }
-        return mount.getRealPath().toFile();
+    public File getWorkspaceDir() {
+        return workspaceDir;
     }
 
     // ==================== 内部基础设施 ====================
@@ -117,18 +133,38 @@ public class GitService {
         String stdout;
         /** 标准错误内容 */
         String stderr;
+        /** 标准输出超出缓冲上限被截断 */
+        boolean truncated;
     }
 
     /**
      * 在工作区目录下执行 Git 命令。
-     * <p>禁用 Git 终端提示（GIT_TERMINAL_PROMPT=0），设置 10 秒超时保护，
-     * 超时后强制终止进程并返回退出码 -1。</p>
+     * <p>禁用 Git 终端提示（GIT_TERMINAL_PROMPT=0），stdout/stderr 并发读取到有界缓冲，
+     * 10 秒截止时间从启动起算，超时后强制终止进程并返回退出码 -1。</p>
      *
-     * @param command 完整的命令及参数（如 "git", "status", "--porcelain=v1"）
+     * @param command 完整的命令及参数（如 "git", "status", "--porcelain=v2"）
      * @return 进程执行结果
-     * @throws Exception 进程启动或流读取异常
+     * @throws Exception 进程启动异常
      */
     private ProcessResult runGitCommand(String... command) throws Exception {
+        ProcessRunner.Result run = ProcessRunner.run(gitProcess(command), COMMAND_TIMEOUT_MS, MAX_OUTPUT_BYTES);
+
+        ProcessResult result = new ProcessResult();
+        result.exitCode = run.exitCode;
+        result.stdout = run.stdout;
+        result.stderr = run.stderr;
+        result.truncated = run.truncated;
+        return result;
+    }
+
+    /**
+     * 在工作区目录下执行 Git 命令，stdout 流式交给消费方（消费方抛出异常即中止进程）。
+     */
+    private ProcessRunner.Result streamGitCommand(ProcessRunner.OutputConsumer consumer, String... command) throws Exception {
+        return ProcessRunner.stream(gitProcess(command), STREAM_TIMEOUT_MS, consumer);
+    }
+
+    private ProcessBuilder gitProcess(String... command) {
         // 在 "git" 后注入 "-c core.quotepath=false"，防止非 ASCII 路径被 octal 转义
         List<String> cmd = new ArrayList<>();
         cmd.add(command[0]); // git
@@ -139,74 +175,7 @@ public class GitService {
         pb.directory(workspaceDir);
         pb.redirectErrorStream(false);
         pb.environment().put("GIT_TERMINAL_PROMPT", "0");
-
-        Process proc = pb.start();
-        String stdout = readStream(proc.getInputStream());
-        String stderr = readStream(proc.getErrorStream());
-
-        boolean finished = proc.waitFor(10, TimeUnit.SECONDS);
-        if (!finished) {
-            proc.destroyForcibly();
-            ProcessResult result = new ProcessResult();
-            result.exitCode = -1;
-            result.stdout = "";
-            result.stderr = "Command timed out after 10 seconds";
-            return result;
-        }
-
-        ProcessResult result = new ProcessResult();
-        result.exitCode = proc.exitValue();
-        result.stdout = stdout;
-        result.stderr = stderr;
-        return result;
-    }
-
-    /**
-     * 在指定目录下执行 Git 命令。
-     */
-    private ProcessResult runGitCommandInDir(File dir, String... command) throws Exception {
-        ProcessBuilder pb = new ProcessBuilder(command);
-        pb.directory(dir);
-        pb.redirectErrorStream(false);
-        pb.environment().put("GIT_TERMINAL_PROMPT", "0");
-
-        Process proc = pb.start();
-        String stdout = readStream(proc.getInputStream());
-        String stderr = readStream(proc.getErrorStream());
-
-        boolean finished = proc.waitFor(10, TimeUnit.SECONDS);
-        if (!finished) {
-            proc.destroyForcibly();
-            ProcessResult result = new ProcessResult();
-            result.exitCode = -1;
-            result.stdout = "";
-            result.stderr = "Command timed out after 10 seconds";
-            return result;
-        }
-
-        ProcessResult result = new ProcessResult();
-        result.exitCode = proc.exitValue();
-        result.stdout = stdout;
-        result.stderr = stderr;
-        return result;
-    }
-
-    /**
-     * 读取输入流的所有行并拼接为字符串。
-     *
-     * @param is 输入流
-     * @return 拼接后的字符串内容
-     * @throws Exception 流读取异常
-     */
-    private String readStream(java.io.InputStream is) throws Exception {
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(is, "UTF-8"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                sb.append(line).append("\n");
-            }
-        }
-        return sb.toString();
+        return pb;
     }
 
     /**
@@ -219,75 +188,197 @@ public class GitService {
         return check.exitCode == 0;
     }
 
+    /**
+     * 持有仓库 index 写锁执行操作（同一仓库的写操作串行，避免 index.lock 冲突）
+     */
+    private Result<Map> withIndexLock(IndexOperation op) throws Exception {
+        indexLock.lock();
+        try {
+            return op.execute();
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    @FunctionalInterface
+    private interface IndexOperation {
+        Result<Map> execute() throws Exception;
+    }
+
     // ==================== 公开业务方法 ====================
 
     /**
      * Git 状态检测：返回 Git 可用性、仓库初始化状态、当前分支名及变更文件列表。
      *
+     * <p>工作区被文件监听覆盖时（根已注册且 .git 元数据已监听），重复轮询直接命中内存缓存；
+     * 否则每次执行一次 git status。</p>
+     *
      * @return 包含 gitAvailable、initialized、branch、changed、staged、untracked 的结果对象
      * @throws Exception Git 命令执行异常
      */
     public Result<Map> status() throws Exception {
-        Map<String, Object> data = new LinkedHashMap<>();
-
-        // 1. 检测 git 是否可用
-        try {
-            ProcessResult checkGit = runGitCommand("git", "--version");
-            if (checkGit.exitCode != 0) {
-                data.put("gitAvailable", false);
-                data.put("initialized", false);
-                return Result.succeed(data);
-            }
-        } catch (Exception e) {
+        // 1. 检测 git 是否可用（进程内只探测一次）
+        if (!isGitAvailable()) {
+            Map<String, Object> data = new LinkedHashMap<>();
             data.put("gitAvailable", false);
             data.put("initialized", false);
             return Result.succeed(data);
         }
-        data.put("gitAvailable", true);
 
-        // 2. 检测是否是 git 仓库
-        ProcessResult checkRepo = runGitCommand("git", "rev-parse", "--is-inside-work-tree");
-        if (checkRepo.exitCode != 0) {
+        FileWatchService.WatchRoot root = watchedRoot();
+
+        if (root != null) {
+            CachedStatus cached = cachedStatus;
+            if (cached != null && cached.isValid(root)) {
+                return Result.succeed(new LinkedHashMap<>(cached.data));
+            }
+        }
+
+        long generation = statusGeneration.get();
+        Map<String, Object> data = loadStatus();
+        if (root != null && statusGeneration.get() == generation) {
+            cachedStatus = new CachedStatus(root, data);
+        }
+        return Result.succeed(new LinkedHashMap<>(data));
+    }
+
+    /**
+     * 使 status 缓存失效（监听到变更，或暂存、提交等写操作之后调用）
+     */
+    void invalidateStatus() {
+        statusGeneration.incrementAndGet();
+        cachedStatus = null;
+    }
+
+    private static boolean isGitAvailable() {
+        Boolean available = gitAvailable;
+        if (available == null) {
+            try {
+                available = ProcessRunner.run(new ProcessBuilder("git", "--version"), COMMAND_TIMEOUT_MS, 1024).exitCode == 0;
+            } catch (Exception e) {
+                available = false;
+            }
+            gitAvailable = available;
+        }
+        return available;
+    }
+
+    /**
+     * 工作区可被监听事件完整覆盖时返回其监听根，否则返回 null（不缓存）
+     */
+    private FileWatchService.WatchRoot watchedRoot() {
+        if (watcher == null) {
+            return null;
+        }
+        FileWatchService.WatchRoot root = watcher.getRootByPath(workspaceDir.toPath());
+        if (root == null || !root.isRegistered() || !root.isGitWatched()) {
+            return null;
+        }
+        return root;
+    }
+
+    /**
+     * 执行一次 {@code git status --porcelain=v2 --branch -z} 并解析
+     */
+    private Map<String, Object> loadStatus() throws Exception {
+        ProcessResult result = runGitCommand("git", "status", "--porcelain=v2", "--branch", "-z");
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("gitAvailable", true);
+        if (result.exitCode != 0) {
+            // 非 git 仓库（或无法读取）
             data.put("initialized", false);
             data.put("workspacePath", workspaceDir.getAbsolutePath());
-            return Result.succeed(data);
+            return data;
         }
-        data.put("initialized", true);
 
-        // 3. 获取分支名
-        ProcessResult branchResult = runGitCommand("git", "branch", "--show-current");
-        String branch = branchResult.stdout.trim();
-        data.put("branch", branch.isEmpty() ? "master" : branch);
+        data.put("initialized", true);
+        data.putAll(parseStatusV2(result.stdout));
+        return data;
+    }
 
-        // 4. 解析 git status --porcelain=v1
-        ProcessResult statusResult = runGitCommand("git", "status", "--porcelain=v1");
+    /**
+     * 解析 porcelain v2（-z）输出为 branch、changed、staged、untracked。
+     *
+     * <p>记录格式：</p>
+     * <pre>
+     *   # branch.head &lt;name&gt;|(detached)
+     *   1 &lt;XY&gt; &lt;sub&gt; &lt;mH&gt; &lt;mI&gt; &lt;mW&gt; &lt;hH&gt; &lt;hI&gt; &lt;path&gt;
+     *   2 &lt;XY&gt; ... &lt;Xscore&gt; &lt;path&gt;\0&lt;origPath&gt;
+     *   u &lt;XY&gt; ... &lt;path&gt;
+     *   ? &lt;path&gt;
+     * </pre>
+     */
+    static Map<String, Object> parseStatusV2(String out) {
+        String branch = "";
         List<String> changed = new ArrayList<>();
         List<String> staged = new ArrayList<>();
         List<String> untracked = new ArrayList<>();
 
-        for (String line : statusResult.stdout.split("\n")) {
-            if (line.length() < 4) continue;
-            String x = line.substring(0, 1);
-            String y = line.substring(1, 2);
-            String filePath = line.substring(3);
+        String[] records = out.split("\0");
+        for (int i = 0; i < records.length; i++) {
+            String record = records[i];
+            if (record.length() < 2) continue;
 
-            // 未跟踪的目录：保留尾部斜杠，使前端可区分文件与文件夹
-            if ("?".equals(x) && "?".equals(y)) {
-                untracked.add(filePath);
-            } else {
+            char type = record.charAt(0);
+            if (type == '#') {
+                if (record.startsWith("# branch.head ")) {
+                    branch = record.substring("# branch.head ".length());
+                }
+            } else if (type == '?') {
+                // 未跟踪的目录：保留尾部斜杠，使前端可区分文件与文件夹
+                untracked.add(record.substring(2));
+            } else if (type == '1' || type == '2' || type == 'u') {
+                // 字段数：普通 9、重命名 10（原路径为下一条记录）、冲突 11，路径为最后一个字段
+                int fields = type == '1' ? 9 : (type == '2' ? 10 : 11);
+                String[] parts = record.split(" ", fields);
+                if (parts.length < fields) continue;
+
+                String filePath = parts[fields - 1];
+                if (type == '2') {
+                    i++; // 跳过原路径
+                }
                 // 已跟踪的路径：去除尾部斜杠（git 不会对已跟踪目录加斜杠，仅做安全处理）
                 if (filePath.endsWith("/")) {
                     filePath = filePath.substring(0, filePath.length() - 1);
                 }
-                if (!" ".equals(x) && "?".equals(x) == false) staged.add(filePath);
-                if (!" ".equals(y) && "?".equals(y) == false) changed.add(filePath);
+
+                char x = parts[1].charAt(0);
+                char y = parts[1].charAt(1);
+                if (x != '.') staged.add(filePath);
+                if (y != '.') changed.add(filePath);
             }
         }
-        data.put("changed", changed);
-        data.put("staged", staged);
-        data.put("untracked", untracked);
 
-        return Result.succeed(data);
+        Map<String, Object> data = new LinkedHashMap<>();
+        // 分离 HEAD 时沿用旧行为（branch --show-current 输出为空）
+        data.put("branch", branch.isEmpty() || "(detached)".equals(branch) ? "master" : branch);
+        data.put("changed", Collections.unmodifiableList(changed));
+        data.put("staged", Collections.unmodifiableList(staged));
+        data.put("untracked", Collections.unmodifiableList(untracked));
+        return data;
+    }
+
+    /**
+     * 已解析的 status（绑定监听根与其溢出代次）
+     */
+    private static class CachedStatus {
+        final FileWatchService.WatchRoot root;
+        final long epoch;
+        final long createdAt;
+        final Map<String, Object> data;
+
+        CachedStatus(FileWatchService.WatchRoot root, Map<String, Object> data) {
+            this.root = root;
+            this.epoch = root.getEpoch();
+            this.createdAt = System.currentTimeMillis();
+            this.data = data;
+        }
+
+        boolean isValid(FileWatchService.WatchRoot current) {
+            return root == current && epoch == current.getEpoch()
+                    && System.currentTimeMillis() - createdAt < STATUS_MAX_AGE_MS;
+        }
     }
 
     /**
@@ -300,6 +391,10 @@ public class GitService {
      * @throws Exception Git 命令执行异常
      */
     public Result<Map> init(Boolean initialCommit) throws Exception {
+        return withIndexLock(() -> doInit(initialCommit));
+    }
+
+    private Result<Map> doInit(Boolean initialCommit) throws Exception {
         // 安全校验：确认不是已有仓库
         if (isGitRepo()) {
             return Result.failure(400, "Already a git repository");
@@ -307,6 +402,7 @@ public class GitService {
 
         // 执行 git init
         ProcessResult initResult = runGitCommand("git", "init");
+        invalidateStatus();
         if (initResult.exitCode != 0) {
             return Result.failure(500, "git init failed: " + initResult.stderr);
         }
@@ -338,6 +434,7 @@ public class GitService {
             runGitCommand("git", "-c", "user.name=SolonCode",
                     "-c", "user.email=soloncode@noear.org",
                     "commit", "-m", "Initial commit");
+            invalidateStatus();
         }
 
         Map<String, Object> data = new LinkedHashMap<>();
@@ -426,6 +523,185 @@ public class GitService {
         return Result.succeed(data);
     }
 
+    /**
+     * 分页 Diff 第一层：变更文件列表（含增删行数），不含 diff 内容。
+     * <p>已跟踪文件来自一次 {@code git diff <base> --numstat -z}（base 为 HEAD，尚无提交时为空树），
+     * 同时覆盖已暂存与未暂存的变更；未跟踪文件取自 status（行数未知）。</p>
+     *
+     * @param offset 起始下标
+     * @param limit  本页最多文件数
+     * @return 包含 total、offset、hasMore、files 的结果对象
+     */
+    public Result<Map> diffFiles(int offset, int limit) throws Exception {
+        if (offset < 0 || limit <= 0) {
+            return Result.failure(400, "Invalid offset or limit");
+        }
+
+        ProcessResult result = runGitCommand("git", "diff", resolveDiffBase(), "--numstat", "-z");
+        if (result.exitCode != 0) {
+            return Result.failure(500, "git diff failed: " + result.stderr);
+        }
+
+        List<Map<String, Object>> files = parseNumstat(result.stdout);
+
+        Map<String, Object> status = status().getData();
+        Object untracked = status == null ? null : status.get("untracked");
+        if (untracked instanceof List) {
+            for (Object path : (List<?>) untracked) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("path", path);
+                item.put("untracked", true);
+                files.add(item);
+            }
+        }
+
+        int from = Math.min(offset, files.size());
+        int to = (int) Math.min((long) from + limit, files.size());
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("total", files.size());
+        data.put("offset", from);
+        data.put("hasMore", to < files.size());
+        data.put("files", new ArrayList<>(files.subList(from, to)));
+        return Result.succeed(data);
+    }
+
+    /**
+     * 分页 Diff 第二层：单个文件的 diff 片段（按行分页，支持“加载更多”）。
+     * <p>读满所需行后立即终止 git 进程，超大文件也只读取当前页。</p>
+     *
+     * @param path   文件路径
+     * @param offset 起始行（0 起）
+     * @param limit  本页最多行数
+     * @return 包含 diff、offset、nextOffset、hasMore 的结果对象
+     */
+    public Result<Map> diffFile(String path, int offset, int limit) throws Exception {
+        if (path == null || path.trim().isEmpty()) {
+            return Result.failure(400, "Path is required");
+        }
+        if (path.contains("..") || path.startsWith("/")) {
+            return Result.failure(400, "Invalid path");
+        }
+        if (offset < 0 || limit <= 0) {
+            return Result.failure(400, "Invalid offset or limit");
+        }
+
+        LineWindow window = new LineWindow(offset, limit);
+        ProcessRunner.Result result = streamGitCommand(window, "git", "diff", resolveDiffBase(), "--", path);
+        if (result.exitCode != 0 && !window.isFull()) {
+            return Result.failure(500, "git diff failed: " + result.stderr);
+        }
+
+        // 已跟踪文件无差异时，按未跟踪文件输出整文件新增
+        if (window.lines == 0 && !window.isFull() && isUntrackedFile(path)) {
+            window = new LineWindow(offset, limit);
+            streamGitCommand(window, "git", "diff", "--no-index", "--", nullDevicePath(), path);
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("path", path);
+        data.put("diff", window.toString());
+        data.put("offset", offset);
+        data.put("nextOffset", offset + window.taken);
+        data.put("hasMore", window.isFull());
+        return Result.succeed(data);
+    }
+
+    /**
+     * Diff 基准：有提交时为 HEAD，否则为空树（新仓库的首次提交前）
+     */
+    private String resolveDiffBase() throws Exception {
+        ProcessResult head = runGitCommand("git", "rev-parse", "--verify", "-q", "HEAD");
+        return head.exitCode == 0 ? "HEAD" : EMPTY_TREE;
+    }
+
+    /**
+     * 解析 {@code --numstat -z} 输出。
+     * <p>普通记录为 {@code added\tdeleted\tpath\0}；重命名为 {@code added\tdeleted\t\0old\0new\0}；
+     * 二进制文件的行数为 "-"。</p>
+     */
+    static List<Map<String, Object>> parseNumstat(String out) {
+        List<Map<String, Object>> files = new ArrayList<>();
+        String[] records = out.split("\0");
+        for (int i = 0; i < records.length; i++) {
+            String[] parts = records[i].split("\t", 3);
+            if (parts.length < 3) continue;
+
+            Map<String, Object> item = new LinkedHashMap<>();
+            if (parts[2].isEmpty()) {
+                if (i + 2 >= records.length) break;
+                item.put("path", records[i + 2]);
+                item.put("oldPath", records[i + 1]);
+                i += 2;
+            } else {
+                item.put("path", parts[2]);
+            }
+
+            if ("-".equals(parts[0])) {
+                item.put("binary", true);
+            } else {
+                item.put("additions", Integer.parseInt(parts[0]));
+                item.put("deletions", Integer.parseInt(parts[1]));
+            }
+            files.add(item);
+        }
+        return files;
+    }
+
+    /**
+     * 按行截取输出窗口：跳过前 offset 行，收集 limit 行；
+     * 读到窗口之后的内容即中止进程（hasMore）。
+     */
+    static class LineWindow implements ProcessRunner.OutputConsumer {
+        private final int offset;
+        private final int limit;
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        /** 已读取的完整行数（含跳过的） */
+        int lines;
+        /** 窗口内已收集的行数 */
+        int taken;
+        private boolean full;
+
+        LineWindow(int offset, int limit) {
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        public void accept(byte[] b, int off, int len) throws IOException {
+            int end = off + len;
+            int start = off;
+            for (int i = off; i < end; i++) {
+                if (taken == limit) {
+                    // 窗口之后还有内容：标记 hasMore 并中止进程
+                    full = true;
+                    throw new IOException("window is full");
+                }
+                if (b[i] != '\n') continue;
+
+                if (lines >= offset) {
+                    buf.write(b, start, i + 1 - start);
+                    taken++;
+                }
+                lines++;
+                start = i + 1;
+            }
+            if (taken < limit && lines >= offset && start < end) {
+                // 未以换行结尾的片段先收下（下一段继续补齐本行）
+                buf.write(b, start, end - start);
+            }
+        }
+
+        boolean isFull() {
+            return full;
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
     /**
      * 判断路径是否为工作区中的未跟踪普通文件。
      */
@@ -492,6 +768,10 @@ public class GitService {
      * @throws Exception Git 命令执行异常
      */
     public Result<Map> stage(String path) throws Exception {
+        return withIndexLock(() -> doStage(path));
+    }
+
+    private Result<Map> doStage(String path) throws Exception {
         if (!isGitRepo()) {
             return Result.failure(400, "Not a git repository");
         }
@@ -504,6 +784,7 @@ public class GitService {
         }
 
         ProcessResult addResult = runGitCommand("git", "add", "--", path);
+        invalidateStatus();
         if (addResult.exitCode != 0) {
             return Result.failure(500, "git add failed: " + addResult.stderr);
         }
@@ -521,6 +802,10 @@ public class GitService {
      * @throws Exception Git 命令执行异常
      */
     public Result<Map> unstage(String path) throws Exception {
+        return withIndexLock(() -> doUnstage(path));
+    }
+
+    private Result<Map> doUnstage(String path) throws Exception {
         if (!isGitRepo()) {
             return Result.failure(400, "Not a git repository");
         }
@@ -533,6 +818,7 @@ public class GitService {
         }
 
         ProcessResult resetResult = runGitCommand("git", "reset", "HEAD", "--", path);
+        invalidateStatus();
         if (resetResult.exitCode != 0) {
             return Result.failure(500, "git reset failed: " + resetResult.stderr);
         }
@@ -554,6 +840,10 @@ public class GitService {
      * @throws Exception Git 命令执行异常
      */
     public Result<Map> discard(String path) throws Exception {
+        return withIndexLock(() -> doDiscard(path));
+    }
+
+    private Result<Map> doDiscard(String path) throws Exception {
         if (!isGitRepo()) {
             return Result.failure(400, "Not a git repository");
         }
@@ -587,6 +877,24 @@ public class GitService {
             inHead = false;
         }
 
+        try {
+            Result<Map> failure = discardPath(path, inHead, targetFile);
+            if (failure != null) {
+                return failure;
+            }
+        } finally {
+            invalidateStatus();
+        }
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("path", path);
+        return Result.succeed(data);
+    }
+
+    /**
+     * 执行回滚；失败时返回错误结果，成功返回 null
+     */
+    private Result<Map> discardPath(String path, boolean inHead, File targetFile) throws Exception {
         if (inHead) {
             // 已跟踪：将暂存区与工作区一并恢复到 HEAD
             ProcessResult checkoutResult = runGitCommand("git", "checkout", "HEAD", "--", path);
@@ -613,10 +921,7 @@ public class GitService {
                 }
             }
         }
-
-        Map<String, Object> data = new LinkedHashMap<>();
-        data.put("path", path);
-        return Result.succeed(data);
+        return null;
     }
 
     /**
@@ -662,9 +967,81 @@ public class GitService {
 
         Map<String, Object> data = new LinkedHashMap<>();
         data.put("content", result.stdout);
+        if (result.truncated) {
+            data.put("truncated", true);
+        }
         return Result.succeed(data);
     }
 
+    /**
+     * 流式输出 Git 仓库中指定版本的文件内容（git show ref:path），不在内存中缓冲整个文件。
+     *
+     * @param consumer 输出消费方（抛出异常表示客户端已断开，进程随即终止）
+     * @return 执行结果（exitCode 非 0 且未输出任何内容表示文件不存在）
+     * @throws IllegalArgumentException 路径非法
+     */
+    public ProcessRunner.Result streamFileContent(String path, String ref, ProcessRunner.OutputConsumer consumer) throws Exception {
+        if (path == null || path.contains("..") || path.startsWith("/")) {
+            throw new IllegalArgumentException("Invalid path");
+        }
+        if (ref == null || ref.isEmpty()) ref = "HEAD";
+
+        return streamGitCommand(consumer, "git", "show", ref + ":" + path);
+    }
+
+    /**
+     * 流式输出 Git Diff：依次输出未暂存与已暂存的变更；单文件为未跟踪文件时输出整文件新增 diff。
+     * <p>与 {@link #diff(String)} 不同，不截断、不生成 stat，适合大 diff 逐步渲染。</p>
+     *
+     * @param path     可选的文件路径，为空时输出全部变更
+     * @param consumer 输出消费方（抛出异常表示客户端已断开，进程随即终止）
+     * @return 最后一条命令的执行结果（cancelled 表示客户端中止）
+     * @throws IllegalArgumentException 路径非法
+     */
+    public ProcessRunner.Result streamDiff(String path, ProcessRunner.OutputConsumer consumer) throws Exception {
+        if (path != null && (path.contains("..") || path.startsWith("/"))) {
+            throw new IllegalArgumentException("Invalid path");
+        }
+        boolean hasPath = path != null && !path.trim().isEmpty();
+
+        long[] written = new long[1];
+        ProcessRunner.OutputConsumer counting = (buf, off, len) -> {
+            written[0] += len;
+            consumer.accept(buf, off, len);
+        };
+
+        List<String> unstagedCmd = new ArrayList<>(Arrays.asList("git", "diff"));
+        if (hasPath) { unstagedCmd.add("--"); unstagedCmd.add(path); }
+        ProcessRunner.Result result = streamGitCommand(counting, unstagedCmd.toArray(new String[0]));
+        if (result.cancelled || result.timedOut) {
+            return result;
+        }
+
+        long unstagedBytes = written[0];
+        boolean[] separated = new boolean[1];
+        ProcessRunner.OutputConsumer staged = (buf, off, len) -> {
+            // 与 diff() 一致：两段之间以空行分隔
+            if (!separated[0] && unstagedBytes > 0) {
+                separated[0] = true;
+                counting.accept(new byte[]{'\n'}, 0, 1);
+            }
+            counting.accept(buf, off, len);
+        };
+
+        List<String> stagedCmd = new ArrayList<>(Arrays.asList("git", "diff", "--cached"));
+        if (hasPath) { stagedCmd.add("--"); stagedCmd.add(path); }
+        result = streamGitCommand(staged, stagedCmd.toArray(new String[0]));
+        if (result.cancelled || result.timedOut) {
+            return result;
+        }
+
+        // 未跟踪文件：普通 git diff 无输出，按整文件新增输出
+        if (hasPath && written[0] == 0 && isUntrackedFile(path)) {
+            result = streamGitCommand(counting, "git", "diff", "--no-index", "--", nullDevicePath(), path);
+        }
+        return result;
+    }
+
     /**
      * Git 提交：支持精确文件列表或全量 add -A。
      *
@@ -674,6 +1051,10 @@ public class GitService {
      * @throws Exception Git 命令执行异常
      */
     public Result<Map> commit(String message, List<String> files) throws Exception {
+        return withIndexLock(() -> doCommit(message, files));
+    }
+
+    private Result<Map> doCommit(String message, List<String> files) throws Exception {
         if (!isGitRepo()) {
             return Result.failure(400, "Not a git repository");
         }
@@ -698,6 +1079,7 @@ public class GitService {
         } else {
             addResult = runGitCommand("git", "add", "-A");
         }
+        invalidateStatus();
         if (addResult.exitCode != 0) {
             return Result.failure(500, "git add failed: " + addResult.stderr);
         }
@@ -707,6 +1089,7 @@ public class GitService {
                 "-c", "user.name=SolonCode",
                 "-c", "user.email=soloncode@noear.org",
                 "commit", "-m", message.trim());
+        invalidateStatus();
         if (commitResult.exitCode != 0) {
             String err = commitResult.stderr.trim();
             if (err.isEmpty()) err = commitResult.stdout.trim();
@@ -739,7 +1122,8 @@ public class GitService {
                     HarnessEngine.CTX_MODEL_SELECTED,
                     engine.getMainModel().getNameOrModel()
             );
-            ChatModel chatModel = engine.getModelOrDefInstance(selectedModel);
+            ModelRouter router = ModelRouter.getInstance();
+            ChatModel chatModel = engine.getModelOrDefInstance(router.route(selectedModel, sessionId, engine::hasModel));
             ReActAgent agent = engine.getAgentOrMain("git-summary");
 
             // 收集 diff 内容（最多 15 个文件）
@@ -785,22 +1169,41 @@ public class GitService {
                     + "变更统计：" + statInfo
                     + "\n\n--- Diff 内容 ---\n" + combinedDiff;
 
-            String summary = agent.prompt(userMessage)
-                    .options(o -> o.chatModel(chatModel))
-                    .call()
-                    .getContent();
-
-            // 清理 Markdown 格式
-            if (summary != null) {
-                summary = summary.replace("**", "")
-                        .replace("*", "")
-                        .replaceAll("^#+\\s", "")
-                        .replace("`", "")
-                        .trim();
+            // diff 未变时直接复用上次的摘要（不再消耗 token）
+            SideTaskCache cache = SideTaskCache.getInstance();
+            String modelName = chatModel.getConfig().getModel();
+            String summary = cache.get("git-summary", modelName, userMessage);
+            boolean cached = summary != null;
+
+            if (!cached) {
+                // 模型组开启对冲时：主成员超过其 TTFT 百分位仍未返回，向次优成员并发一份
+                summary = router.hedge(selectedModel, sessionId, engine::hasModel, member -> {
+                    try {
+                        return agent.prompt(userMessage)
+                                .options(o -> o.chatModel(engine.getModelOrDefInstance(member)))
+                                .call()
+                                .getContent();
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Throwable e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                });
+
+                // 清理 Markdown 格式
+                if (summary != null) {
+                    summary = summary.replace("**", "")
+                            .replace("*", "")
+                            .replaceAll("^#+\\s", "")
+                            .replace("`", "")
+                            .trim();
+                    cache.put("git-summary", modelName, userMessage, summary);
+                }
             }
 
             Map<String, Object> data = new LinkedHashMap<>();
             data.put("summary", summary != null ? summary : "");
+            data.put("cached", cached);
             return Result.succeed(data);
         } catch (Throwable e) {
             LOG.error("[Web] gitSummary error: {}", e.getMessage());
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.web.service;
+
+import org.noear.solon.ai.harness.HarnessEngine;
+import org.noear.solon.ai.talents.mount.MountDir;
+import org.noear.solon.ai.talents.mount.MountType;
+import org.noear.solon.codecli.portal.FileWatchService;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * GitService 实例池 —— 每个工作区目录一个不可变的 {@link GitService}。
+ *
+ * <h3>设计说明</h3>
+ * <ul>
+ *   <li>按工作区真实路径复用实例（不同挂载指向同一目录时共享 status 缓存）</li>
+ *   <li>index 写锁按仓库根（向上查找 .git 所在目录）分配，同一仓库的不同工作区共享</li>
+ *   <li>文件监听变更按监听根路径分发到对应实例，使其 status 缓存失效</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ * @see GitService
+ */
+public class GitServicePool {
+    private final File defaultWorkspaceDir;
+    private final HarnessEngine engine;
+    private final FileWatchService watcher;
+
+    /** 工作区真实路径 → GitService */
+    private final Map<String, GitService> services = new ConcurrentHashMap<>();
+    /** 仓库根路径 → index 写锁 */
+    private final Map<String, Lock> repoLocks = new ConcurrentHashMap<>();
+
+    /**
+     * @param workspace 默认工作区根目录路径
+     * @param engine    AI Agent 执行引擎
+     * @param watcher   文件监听服务，可为 null（status 不缓存）
+     */
+    public GitServicePool(String workspace, HarnessEngine engine, FileWatchService watcher) {
+        this.defaultWorkspaceDir = new File(workspace);
+        this.engine = engine;
+        this.watcher = watcher;
+
+        if (watcher != null) {
+            watcher.addListener(changes -> {
+                Set<String> wsIds = new HashSet<>();
+                for (FileWatchService.ChangeEntry change : changes) {
+                    wsIds.add(change.wsId);
+                }
+                wsIds.forEach(this::invalidateStatus);
+            });
+            watcher.addGitListener(this::invalidateStatus);
+        }
+    }
+
+    /**
+     * 获取工作区对应的 GitService。
+     *
+     * @param workspaceId 工作区标识（为空或 "workspace" 表示默认工作区，否则为 FILES 类型挂载）
+     * @throws IllegalArgumentException 挂载不存在或类型不是 FILES
+     */
+    public GitService get(String workspaceId) {
+        File dir = resolveGitDir(workspaceId);
+        Path path = dir.toPath().toAbsolutePath().normalize();
+        return services.computeIfAbsent(path.toString(),
+                k -> new GitService(path.toFile(), engine, watcher, lockOf(path)));
+    }
+
+    /**
+     * 根据工作区标识解析 Git 工作目录。
+     */
+    private File resolveGitDir(String workspaceId) {
+        if (workspaceId == null || workspaceId.isEmpty() || "workspace".equals(workspaceId)) {
+            return defaultWorkspaceDir;
+        }
+        MountDir mount = engine.getMount(workspaceId);
+        if (mount == null) {
+            throw new IllegalArgumentException("Mount not found: " + workspaceId);
+        }
+        if (mount.getType() != MountType.FILES) {
+            throw new IllegalArgumentException("Mount is not FILES type: " + workspaceId);
+        }
+        return mount.getRealPath().toFile();
+    }
+
+    /**
+     * 取工作区所属仓库的 index 写锁（找不到 .git 时按工作区自身加锁）
+     */
+    private Lock lockOf(Path dir) {
+        Path repoRoot = dir;
+        for (Path p = dir; p != null; p = p.getParent()) {
+            if (Files.exists(p.resolve(".git"))) {
+                repoRoot = p;
+                break;
+            }
+        }
+        return repoLocks.computeIfAbsent(repoRoot.toString(), k -> new ReentrantLock());
+    }
+
+    private void invalidateStatus(String wsId) {
+        FileWatchService.WatchRoot root = watcher.getRoot(wsId);
+        if (root == null) {
+            return;
+        }
+        GitService service = services.get(root.getPath().toString());
+        if (service != null) {
+            service.invalidateStatus();
+        }
+    }
+}
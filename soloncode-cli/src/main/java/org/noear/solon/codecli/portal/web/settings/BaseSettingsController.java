@@ -2,6 +2,7 @@ package org.noear.solon.codecli.portal.web.settings;
 
 import org.noear.solon.ai.harness.HarnessEngine;
 import org.noear.solon.codecli.config.AgentSettings;
+import org.noear.solon.codecli.config.models.ModelCatalogService;
 import org.noear.solon.codecli.config.models.ModelSpecService;
 import org.noear.solon.codecli.config.models.ModelsAdapterManager;
 import org.noear.solon.codecli.portal.FileWatchService;
@@ -45,6 +46,11 @@ public class BaseSettingsController {
      */
     protected final ModelSpecService modelSpecService;
 
+    /**
+     * 供应商模型目录（并发拉取与缓存各供应商的模型列表）
+     */
+    protected final ModelCatalogService modelCatalogService;
+
     /**
      * 统一配置管理器，管理 LLM 模型、MCP 服务器、OpenApi 服务器的持久化数据
      */
@@ -74,6 +80,7 @@ public class BaseSettingsController {
         this.marketManager = MarketManager.getInstance();
         this.modelsAdapterManager = ModelsAdapterManager.getInstance();
         this.modelSpecService = ModelSpecService.getInstance();
+        this.modelCatalogService = ModelCatalogService.getInstance();
     }
 
     /**
@@ -10,8 +10,8 @@ import org.noear.solon.codecli.config.AgentSettings;
 import org.noear.solon.codecli.config.entity.ModelDo;
 import org.noear.solon.codecli.config.entity.ProviderDo;
 import org.noear.solon.codecli.config.models.ModelApiUrl;
+import org.noear.solon.codecli.config.models.ModelCatalogService;
 import org.noear.solon.codecli.config.models.ModelInfo;
-import org.noear.solon.codecli.config.models.ModelsAdapter;
 import org.noear.solon.codecli.portal.FileWatchService;
 import org.noear.solon.codecli.portal.web.WebGate;
 import org.noear.solon.core.handle.Result;
@@ -483,66 +483,113 @@ public class LlmSettingController extends BaseSettingsController {
 
     /**
      * 拉取供应商模型列表
+     *
+     * <p>优先返回模型目录缓存；缓存过期时先返回旧数据，后台拉取完成后通过 WebSocket 推送 provider_models 事件。</p>
      */
     @Post
     @Mapping("/web/settings/llm/providers/fetch")
-    public Result providersFetch(@Param("apiUrl") String apiUrl, @Param("apiKey") String apiKey, @Param("standard") String standard) {
+    public Result providersFetch(@Param("apiUrl") String apiUrl, @Param("apiKey") String apiKey, @Param("standard") String standard,
+                                 @Param(value = "name", required = false) String name,
+                                 @Param(value = "refresh", required = false) Boolean refresh) {
         if (Assert.isEmpty(apiUrl)) {
             return Result.failure("apiUrl is required");
         }
 
         try {
-            // 使用 ModelsAdapterManager 获取对应的提供商
-            ModelsAdapter provider = modelsAdapterManager.getAdapter(standard);
-            String baseUrl = provider.deriveBaseUrl(apiUrl);
-
-            // 构建请求头
-            Map<String, String> headers = new HashMap<>();
-            if (apiKey != null && !apiKey.isEmpty()) {
-                headers.put("Authorization", "Bearer " + apiKey);
-            }
-
-            // 调用提供商获取模型列表
-            List<ModelInfo> models = provider.fetchModels(settings.getGeneral().getUserAgent(), baseUrl, headers, apiKey);
+            ModelCatalogService.Source source = new ModelCatalogService.Source(name, standard, apiUrl, apiKey);
+            ModelCatalogService.Snapshot snapshot = modelCatalogService.get(source,
+                    settings.getGeneral().getUserAgent(),
+                    Boolean.TRUE.equals(refresh),
+                    this::broadcastProviderModels);
 
-            // 按 id 排序，保证每次返回顺序一致
-            models.sort(Comparator.comparing(ModelInfo::getId, Comparator.nullsLast(String::compareTo)));
+            return Result.succeed(toModelItems(snapshot.getModels()));
+        } catch (Exception e) {
+            LOG.warn("[Settings] Failed to fetch models: {}", e.getMessage());
+            return Result.failure("拉取模型列表失败: " + e.getMessage());
+        }
+    }
 
-            // 转换为前端需要的格式
-            List<Map<String, Object>> modelList = new ArrayList<>();
-            for (ModelInfo model : models) {
-                // 剥离模型名中的 [1m]/[256k] 后缀，避免影响后续请求
-                String modelId = stripContextLengthSuffix(model.getId());
-                Map<String, Object> item = new LinkedHashMap<>();
-                item.put("id", modelId);
-                item.put("object", model.getObject());
-                item.put("created", model.getCreated());
-                item.put("ownedBy", model.getOwnedBy());
-                item.put("owned_by", model.getOwnedBy());
-                item.put("type", model.getType());
-                item.put("displayName", model.getDisplayName());
-                item.put("display_name", model.getDisplayName());
-                item.put("maxInputTokens", model.getMaxInputTokens());
-                item.put("max_input_tokens", model.getMaxInputTokens());
-                item.put("maxTokens", model.getMaxTokens());
-                item.put("max_tokens", model.getMaxTokens());
-                long contextLength = resolveContextLength(model);
-                if (contextLength > 0) {
-                    item.put("contextLength", contextLength);
-                    item.put("context_length", contextLength);
-                }
-                modelList.add(item);
+    /**
+     * 拉取全部已启用供应商的模型列表（立即返回，结果按供应商到达顺序通过 WebSocket 推送 provider_models 事件）
+     */
+    @Post
+    @Mapping("/web/settings/llm/providers/catalog")
+    public Result providersCatalog(@Param(value = "refresh", required = false) Boolean refresh) {
+        List<ModelCatalogService.Source> sources = new ArrayList<>();
+        for (Map.Entry<String, ProviderDo> entry : settings.getProviders().entrySet()) {
+            ProviderDo provider = entry.getValue();
+            if (provider.isEnabled() && Assert.isNotEmpty(provider.getApiUrl())) {
+                sources.add(new ModelCatalogService.Source(entry.getKey(), provider.getStandard(), provider.getApiUrl(), provider.getApiKey()));
             }
+        }
+
+        modelCatalogService.fetchAll(sources, settings.getGeneral().getUserAgent(), Boolean.TRUE.equals(refresh),
+                this::broadcastProviderModels);
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("providers", sources.size());
+        return Result.succeed(data);
+    }
 
-            modelList.sort((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(String.valueOf(a.get("id")), String.valueOf(b.get("id"))));
+    /**
+     * 推送某个供应商的模型列表到前端
+     */
+    private void broadcastProviderModels(ModelCatalogService.Source source, ModelCatalogService.Snapshot snapshot) {
+        if (webGate == null) {
+            return;
+        }
 
-            return Result.succeed(modelList);
+        try {
+            ONode evt = new ONode().asObject()
+                    .set("type", "provider_models")
+                    .set("provider", source.getName())
+                    .set("standard", source.getStandard())
+                    .set("apiUrl", source.getApiUrl())
+                    .set("stale", snapshot.isStale())
+                    .set("fetchedAt", snapshot.getFetchedAt())
+                    .set("models", ONode.ofBean(toModelItems(snapshot.getModels())));
+            if (snapshot.getError() != null) {
+                evt.set("error", snapshot.getError());
+            }
+            webGate.broadcastRaw(evt.toJson());
         } catch (Exception e) {
-            LOG.warn("[Settings] Failed to fetch models: {}", e.getMessage());
-            return Result.failure("拉取模型列表失败: " + e.getMessage());
+            LOG.debug("[Settings] broadcast provider_models failed: {}", e.getMessage());
         }
     }
 
+    /**
+     * 转换为前端需要的格式
+     */
+    private List<Map<String, Object>> toModelItems(List<ModelInfo> models) {
+        List<Map<String, Object>> modelList = new ArrayList<>();
+        for (ModelInfo model : models) {
+            // 剥离模型名中的 [1m]/[256k] 后缀，避免影响后续请求
+            String modelId = stripContextLengthSuffix(model.getId());
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", modelId);
+            item.put("object", model.getObject());
+            item.put("created", model.getCreated());
+            item.put("ownedBy", model.getOwnedBy());
+            item.put("owned_by", model.getOwnedBy());
+            item.put("type", model.getType());
+            item.put("displayName", model.getDisplayName());
+            item.put("display_name", model.getDisplayName());
+            item.put("maxInputTokens", model.getMaxInputTokens());
+            item.put("max_input_tokens", model.getMaxInputTokens());
+            item.put("maxTokens", model.getMaxTokens());
+            item.put("max_tokens", model.getMaxTokens());
+            long contextLength = resolveContextLength(model);
+            if (contextLength > 0) {
+                item.put("contextLength", contextLength);
+                item.put("context_length", contextLength);
+            }
+            modelList.add(item);
+        }
+
+        modelList.sort((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(String.valueOf(a.get("id")), String.valueOf(b.get("id"))));
+        return modelList;
+    }
+
     /**
      * 同步供应商模型到 LLM 模型配置
      */
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.util;
+
+/**
+ * 达到预算上限（token 或费用），终止当前流
+ *
+ * <p>Goal 轮内计量（{@code GoalTokenMeter}）与 Print 模式费用计量（{@code CostMeter}）共用，各端只需一种判断。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class BudgetExceededException extends RuntimeException {
+    public BudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.util;
+
+import org.noear.solon.ai.chat.content.ImageBlock;
+import org.noear.solon.codecli.config.models.ModelSpecService;
+import org.noear.solon.codecli.config.models.ModelSpecService.ImageLimits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * 多模态图片预处理：按模型限制缩放并重新压缩到字节预算内，结果按内容哈希缓存到磁盘。
+ *
+ * <p>只影响发给模型的副本，原图（.uploads 下的文件）保持不变，供界面展示。
+ * 处理后的图片写入会话历史，后续轮次重发的也是小图。</p>
+ *
+ * <ul>
+ *   <li>已在限制内的图片原样返回（不重新编码，避免画质损失）</li>
+ *   <li>GIF（可能是动图）、SVG 及 ImageIO 无法解码的格式（如 webp）原样返回</li>
+ *   <li>含透明通道优先输出 PNG，超出字节预算再铺白底转 JPEG；其余输出 JPEG 并逐级降低质量</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class ImagePreprocessor {
+    private static final Logger LOG = LoggerFactory.getLogger(ImagePreprocessor.class);
+
+    /** 缓存目录容量上限，超出后按修改时间淘汰最旧的 */
+    private static final long MAX_CACHE_BYTES = 256L * 1024 * 1024;
+    private static final float[] JPEG_QUALITIES = {0.85f, 0.75f, 0.6f, 0.45f};
+    /** 最低质量仍超出预算时，每轮再缩小的比例 */
+    private static final double SHRINK_STEP = 0.75;
+    private static final int MIN_EDGE = 64;
+    /** 可解码的原图像素上限（约 1 亿像素），超出视为解压炸弹 */
+    static final long MAX_SOURCE_PIXELS = 100_000_000L;
+
+    private final Path cacheDir;
+
+    public ImagePreprocessor(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * 处理结果
+     */
+    public static class Processed {
+        private final byte[] data;
+        private final String mimeType;
+
+        Processed(byte[] data, String mimeType) {
+            this.data = data;
+            this.mimeType = mimeType;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+
+    /**
+     * 按模型能力预处理图片并构建 ImageBlock
+     *
+     * @param modelId 目标模型（决定图片限制）
+     */
+    public ImageBlock toImageBlock(byte[] original, String mimeType, String modelId) {
+        Processed processed = process(original, mimeType, ModelSpecService.getInstance().getImageLimits(modelId));
+        return ImageBlock.ofBase64(Base64.getEncoder().encodeToString(processed.getData()), processed.getMimeType());
+    }
+
+    /**
+     * 预处理一张图片（失败时回退原图，不影响发送）
+     *
+     * @param original 原图字节
+     * @param mimeType 原图 MIME 类型
+     * @param limits   目标模型的图片限制
+     */
+    public Processed process(byte[] original, String mimeType, ImageLimits limits) {
+        String mime = mimeType == null ? "" : mimeType.toLowerCase(Locale.ROOT);
+        if (mime.equals("image/gif") || mime.equals("image/svg+xml")) {
+            return new Processed(original, mimeType);
+        }
+
+        String hash = Digests.sha256Hex(original);
+        Processed cached = readCache(hash, limits);
+        if (cached != null) {
+            return cached;
+        }
+
+        Processed result;
+        try {
+            result = transform(original, mimeType, limits);
+        } catch (Throwable e) {
+            LOG.warn("[ImagePreprocessor] Failed to process image, sending original: {}", e.getMessage());
+            return new Processed(original, mimeType);
+        }
+
+        // 原样返回的不落缓存（下次仍只需读一次尺寸）
+        if (result.data != original) {
+            writeCache(hash, limits, result);
+        }
+        return result;
+    }
+
+    // ==================== 内部方法 ====================
+
+    static Processed transform(byte[] original, String mimeType, ImageLimits limits) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(original))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                // ImageIO 不支持的格式（如 JDK 8 下的 webp）
+                return new Processed(original, mimeType);
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                // 先只读图片头中的尺寸：像素数超限（解压炸弹）直接拒绝，不做解码
+                int[] size = {reader.getWidth(0), reader.getHeight(0)};
+                if ((long) size[0] * size[1] > MAX_SOURCE_PIXELS) {
+                    throw new IOException("Image dimensions too large: " + size[0] + "x" + size[1]);
+                }
+
+                double scale = fitScale(size[0], size[1], limits);
+                if (scale >= 1.0 && original.length <= limits.getMaxBytes()) {
+                    return new Processed(original, mimeType);
+                }
+                scale = Math.min(scale, 1.0);
+
+                // 按目标尺寸隔行隔列采样解码，内存只占目标的约 4 倍而不是整张原图
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = subsampling(scale);
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                BufferedImage source = reader.read(0, param);
+                return encode(source, size, scale, limits);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 解码时的采样步长：保留不少于目标两倍的边长，供逐级缩放保证清晰度
+     */
+    static int subsampling(double scale) {
+        return Math.max(1, (int) Math.floor(1.0 / (scale * 2)));
+    }
+
+    private static Processed encode(BufferedImage source, int[] size, double scale, ImageLimits limits) throws IOException {
+        boolean alpha = source.getColorModel().hasAlpha();
+
+        while (true) {
+            int w = Math.max(1, (int) Math.round(size[0] * scale));
+            int h = Math.max(1, (int) Math.round(size[1] * scale));
+            BufferedImage scaled = resize(source, w, h, alpha);
+
+            if (alpha) {
+                byte[] png = encodePng(scaled);
+                if (png.length <= limits.getMaxBytes()) {
+                    return new Processed(png, "image/png");
+                }
+                scaled = flatten(scaled);
+            }
+
+            byte[] jpeg = null;
+            for (float quality : JPEG_QUALITIES) {
+                jpeg = encodeJpeg(scaled, quality);
+                if (jpeg.length <= limits.getMaxBytes()) {
+                    return new Processed(jpeg, "image/jpeg");
+                }
+            }
+
+            if (Math.max(w, h) * SHRINK_STEP < MIN_EDGE) {
+                // 已无法再缩，交给服务端处理
+                return new Processed(jpeg, "image/jpeg");
+            }
+            scale *= SHRINK_STEP;
+        }
+    }
+
+    /**
+     * 满足长边与像素预算所需的缩放比例（>= 1 表示无需缩放）
+     */
+    static double fitScale(int width, int height, ImageLimits limits) {
+        double byEdge = (double) limits.getMaxEdge() / Math.max(width, height);
+        double byPixels = Math.sqrt((double) limits.getMaxPixels() / ((double) width * height));
+        return Math.min(byEdge, byPixels);
+    }
+
+    /**
+     * 逐级减半后再做一次双线性缩放（大比例缩小时比单次缩放更清晰）
+     */
+    private static BufferedImage resize(BufferedImage source, int width, int height, boolean alpha) {
+        int type = alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            if (w < width * 2 || h < height * 2) {
+                w = width;
+                h = height;
+            }
+
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w != width || h != height);
+
+        return current;
+    }
+
+    private static BufferedImage flatten(BufferedImage image) {
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    // ==================== 磁盘缓存 ====================
+
+    private Path cachePath(String hash, ImageLimits limits, String ext) {
+        return cacheDir.resolve(hash + "-" + limits.key() + "." + ext);
+    }
+
+    private Processed readCache(String hash, ImageLimits limits) {
+        try {
+            Path jpeg = cachePath(hash, limits, "jpg");
+            if (Files.isRegularFile(jpeg)) {
+                return new Processed(Files.readAllBytes(jpeg), "image/jpeg");
+            }
+            Path png = cachePath(hash, limits, "png");
+            if (Files.isRegularFile(png)) {
+                return new Processed(Files.readAllBytes(png), "image/png");
+            }
+        } catch (IOException e) {
+            LOG.debug("[ImagePreprocessor] Failed to read cache: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    private void writeCache(String hash, ImageLimits limits, Processed result) {
+        try {
+            Files.createDirectories(cacheDir);
+            Path target = cachePath(hash, limits, "image/png".equals(result.mimeType) ? "png" : "jpg");
+            Path tmp = Files.createTempFile(cacheDir, hash, ".tmp");
+            Files.write(tmp, result.data);
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            prune();
+        } catch (IOException e) {
+            LOG.debug("[ImagePreprocessor] Failed to write cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存目录超出容量时淘汰最旧的文件
+     */
+    private void prune() {
+        File[] files = cacheDir.toFile().listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        if (total <= MAX_CACHE_BYTES) {
+            return;
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            long len = f.length();
+            if (f.delete()) {
+                total -= len;
+            }
+        }
+    }
+}
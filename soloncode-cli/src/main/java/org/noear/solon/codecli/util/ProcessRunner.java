@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 外部进程执行器：stdout 与 stderr 并发排空、输出有界、截止时间从启动起算。
+ *
+ * <ul>
+ *   <li>两个输出流各由一个线程同时读取，避免一侧管道写满导致进程阻塞（死锁）</li>
+ *   <li>缓冲超出上限后继续排空但丢弃，结果标记 truncated</li>
+ *   <li>超时、或流式消费方抛出异常（如 HTTP 客户端断开）时强制结束进程</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ */
+public final class ProcessRunner {
+    private static final int BUFFER_SIZE = 8192;
+    /** 进程结束后等待输出读完的时间（孙进程可能仍持有管道） */
+    private static final long DRAIN_GRACE_MS = 1000;
+
+    private static final ExecutorService IO_POOL = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "process-io");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private ProcessRunner() {
+    }
+
+    /**
+     * 流式输出消费方
+     */
+    @FunctionalInterface
+    public interface OutputConsumer {
+        /**
+         * 接收一段输出；抛出异常表示不再需要输出（进程将被结束）
+         */
+        void accept(byte[] buf, int off, int len) throws IOException;
+    }
+
+    /**
+     * 执行结果
+     */
+    public static class Result {
+        /** 进程退出码；超时或取消时为 -1 */
+        public int exitCode;
+        public String stdout = "";
+        public String stderr = "";
+        public boolean timedOut;
+        /** 流式消费方中止 */
+        public boolean cancelled;
+        /** stdout 超出缓冲上限被截断 */
+        public boolean truncated;
+    }
+
+    /**
+     * 执行进程并把输出收集到有界缓冲
+     *
+     * @param pb             进程构建器（不要开启 redirectErrorStream 以外的重定向）
+     * @param timeoutMs      截止时间（从启动起算）
+     * @param maxStdoutBytes stdout 缓冲上限
+     */
+    public static Result run(ProcessBuilder pb, long timeoutMs, int maxStdoutBytes) throws IOException {
+        BoundedBuffer out = new BoundedBuffer(maxStdoutBytes);
+        Result result = execute(pb, timeoutMs, out);
+        result.stdout = out.toString();
+        result.truncated = out.truncated;
+        return result;
+    }
+
+    /**
+     * 执行进程并把 stdout 流式交给消费方（stderr 仍收集到有界缓冲）
+     *
+     * @param pb        进程构建器
+     * @param timeoutMs 截止时间（从启动起算）
+     * @param consumer  stdout 消费方
+     */
+    public static Result stream(ProcessBuilder pb, long timeoutMs, OutputConsumer consumer) throws IOException {
+        return execute(pb, timeoutMs, consumer);
+    }
+
+    private static Result execute(ProcessBuilder pb, long timeoutMs, OutputConsumer stdoutConsumer) throws IOException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        Process proc = pb.start();
+        // 不向子进程输入，立即关闭 stdin，防止其等待输入
+        proc.getOutputStream().close();
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        BoundedBuffer err = new BoundedBuffer(64 * 1024);
+
+        Drain outDrain = new Drain(proc.getInputStream(), stdoutConsumer, proc, cancelled);
+        Drain errDrain = new Drain(proc.getErrorStream(), err, proc, cancelled);
+        outDrain.future = IO_POOL.submit(outDrain);
+        errDrain.future = IO_POOL.submit(errDrain);
+
+        Result result = new Result();
+        try {
+            long remaining = deadline - System.currentTimeMillis();
+            boolean finished = remaining > 0 && proc.waitFor(remaining, TimeUnit.MILLISECONDS);
+            if (!finished) {
+                proc.destroyForcibly();
+                result.timedOut = !cancelled.get();
+            }
+
+            outDrain.await();
+            errDrain.await();
+        } catch (InterruptedException e) {
+            proc.destroyForcibly();
+            outDrain.detach();
+            errDrain.detach();
+            Thread.currentThread().interrupt();
+            result.cancelled = true;
+        }
+
+        result.cancelled |= cancelled.get();
+        result.exitCode = (result.timedOut || result.cancelled || proc.isAlive()) ? -1 : proc.exitValue();
+        result.stderr = err.toString();
+        if (result.timedOut) {
+            result.stderr = "Command timed out after " + (timeoutMs / 1000) + " seconds";
+        }
+        return result;
+    }
+
+    /**
+     * 输出排空任务
+     *
+     * <p>返回前必须保证不会再调用消费方（流式消费方通常直接写 HTTP 响应）：孙进程仍持有管道时，
+     * 阻塞中的 read 无法被中断，因此在同一把锁下标记脱离，之后读到的输出一律丢弃。</p>
+     */
+    private static final class Drain implements Runnable {
+        private final InputStream in;
+        private final OutputConsumer consumer;
+        private final Process proc;
+        private final AtomicBoolean cancelled;
+        private boolean detached;
+        Future<?> future;
+
+        Drain(InputStream in, OutputConsumer consumer, Process proc, AtomicBoolean cancelled) {
+            this.in = in;
+            this.consumer = consumer;
+            this.proc = proc;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public void run() {
+            byte[] buf = new byte[BUFFER_SIZE];
+            boolean consuming = true;
+            try (InputStream is = in) {
+                int len;
+                while ((len = is.read(buf)) != -1) {
+                    if (!consuming) continue;
+                    synchronized (this) {
+                        if (detached) {
+                            consuming = false;
+                            continue;
+                        }
+                        try {
+                            consumer.accept(buf, 0, len);
+                        } catch (IOException e) {
+                            // 消费方不再需要输出：结束进程，后续输出直接丢弃
+                            consuming = false;
+                            cancelled.set(true);
+                            proc.destroyForcibly();
+                        }
+                    }
+                }
+            } catch (IOException ignored) {
+                // 进程被结束、或脱离时关闭了管道
+            }
+        }
+
+        /**
+         * 等待输出读完；超过宽限时间则脱离
+         */
+        void await() throws InterruptedException {
+            try {
+                future.get(DRAIN_GRACE_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                detach();
+            } catch (java.util.concurrent.ExecutionException ignored) {
+            }
+        }
+
+        /**
+         * 脱离消费方：等进行中的一次 accept 完成后标记（此后不再回调），再关闭管道并取消任务
+         */
+        void detach() {
+            synchronized (this) {
+                detached = true;
+            }
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * 有界缓冲：超出上限的输出被丢弃
+     */
+    static class BoundedBuffer implements OutputConsumer {
+        private final int limit;
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        volatile boolean truncated;
+
+        BoundedBuffer(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void accept(byte[] b, int off, int len) {
+            int room = limit - buf.size();
+            if (len > room) {
+                truncated = true;
+                len = Math.max(room, 0);
+            }
+            buf.write(b, off, len);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.util;
+
+import org.noear.solon.codecli.config.AgentFlags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * 辅助任务（提交摘要、会话标题等小型 LLM 调用）结果缓存，持久化到磁盘。
+ *
+ * <p>键为 代理名 + 模型 + 规范化输入 的 sha256，输入不变时直接复用上次结果，不再消耗 token。</p>
+ *
+ * <ul>
+ *   <li>每个条目一个文件，写入采用临时文件 + 原子移动，进程间可安全共享</li>
+ *   <li>条目按写入时间过期（TTL），超出条目上限时淘汰最旧的</li>
+ *   <li>输入规范化：统一换行、去掉行尾空白及首尾空行（仅空白差异不影响命中）</li>
+ * </ul>
+ *
+ * @author noear 2026/10/18 created
+ */
+public class SideTaskCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SideTaskCache.class);
+
+    private static final long DEFAULT_TTL_MS = 7L * 24 * 60 * 60 * 1000;
+    private static final int DEFAULT_MAX_ENTRIES = 500;
+
+    private static volatile SideTaskCache instance;
+
+    public static SideTaskCache getInstance() {
+        if (instance == null) {
+            synchronized (SideTaskCache.class) {
+                if (instance == null) {
+                    instance = new SideTaskCache(Paths.get(AgentFlags.getUserHome(), AgentFlags.getHarnessCache(), "side-tasks"),
+                            DEFAULT_TTL_MS, DEFAULT_MAX_ENTRIES);
+                }
+            }
+        }
+        return instance;
+    }
+
+    private final Path cacheDir;
+    private final long ttlMs;
+    private final int maxEntries;
+
+    /**
+     * @param cacheDir   缓存目录
+     * @param ttlMs      条目有效期（从写入起算）
+     * @param maxEntries 条目上限
+     */
+    public SideTaskCache(Path cacheDir, long ttlMs, int maxEntries) {
+        this.cacheDir = cacheDir;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 读取缓存结果
+     *
+     * @return 未命中或已过期时为 null
+     */
+    public String get(String agentName, String model, String input) {
+        Path file = entryPath(agentName, model, input);
+        try {
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            if (System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis() > ttlMs) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOG.debug("[SideTaskCache] Failed to read cache: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入缓存结果（空结果不缓存）
+     */
+    public void put(String agentName, String model, String input, String value) {
+        if (value == null || value.isEmpty()) {
+            return;
+        }
+
+        Path target = entryPath(agentName, model, input);
+        try {
+            Files.createDirectories(cacheDir);
+            Path tmp = Files.createTempFile(cacheDir, "entry", ".tmp");
+            Files.write(tmp, value.getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            prune();
+        } catch (IOException e) {
+            LOG.debug("[SideTaskCache] Failed to write cache: {}", e.getMessage());
+        }
+    }
+
+    private Path entryPath(String agentName, String model, String input) {
+        String key = agentName + "\n" + model + "\n" + normalize(input);
+        return cacheDir.resolve(Digests.sha256Hex(key) + ".txt");
+    }
+
+    /**
+     * 规范化输入：统一换行、去掉行尾空白及首尾空行
+     */
+    static String normalize(String input) {
+        if (input == null) {
+            return "";
+        }
+        String[] lines = input.replace("\r\n", "\n").replace('\r', '\n').split("\n", -1);
+        StringBuilder buf = new StringBuilder(input.length());
+        for (String line : lines) {
+            int end = line.length();
+            while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+                end--;
+            }
+            buf.append(line, 0, end).append('\n');
+        }
+        return buf.toString().trim();
+    }
+
+    /**
+     * 超出条目上限时淘汰最旧的条目（顺带清理过期条目与残留临时文件）
+     */
+    private void prune() {
+        File[] files = cacheDir.toFile().listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int count = files.length;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            boolean expired = now - f.lastModified() > ttlMs;
+            if (!expired && count <= maxEntries) {
+                break;
+            }
+            if (f.delete()) {
+                count--;
+            }
+        }
+    }
+}
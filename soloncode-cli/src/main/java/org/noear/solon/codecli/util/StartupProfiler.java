@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.util;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 启动耗时分析（{@code --profile-startup}）。
+ *
+ * <p>启动过程中按阶段打点，就绪（出现输入提示或开始执行）时向 stderr 输出各阶段耗时。
+ * 未开启时所有打点均为空操作。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+public final class StartupProfiler {
+    /** 命令行开关 */
+    public static final String FLAG = "profile-startup";
+
+    private static volatile StartupProfiler current;
+
+    private final long startAt;
+    private final List<Phase> phases = new ArrayList<>();
+    private long lastAt;
+    private boolean reported;
+
+    StartupProfiler(long startAt) {
+        this.startAt = startAt;
+        this.lastAt = startAt;
+    }
+
+    /**
+     * 在 main 入口调用：带有 {@code --profile-startup} 时开启，并把 JVM 启动到 main 的耗时记为首个阶段
+     */
+    public static void start(String[] args) {
+        if (args == null) {
+            return;
+        }
+
+        for (String arg : args) {
+            if (("--" + FLAG).equals(arg)) {
+                StartupProfiler profiler = new StartupProfiler(ManagementFactory.getRuntimeMXBean().getStartTime());
+                profiler.mark("jvm", System.currentTimeMillis());
+                current = profiler;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 记录一个阶段（耗时为距上一次打点的时间）
+     */
+    public static void mark(String phase) {
+        StartupProfiler profiler = current;
+        if (profiler != null) {
+            profiler.mark(phase, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 记录最后一个阶段并输出报告（只输出一次）
+     */
+    public static void report(String phase) {
+        StartupProfiler profiler = current;
+        if (profiler != null) {
+            profiler.mark(phase, System.currentTimeMillis());
+            String text = profiler.format(true);
+            if (text != null) {
+                PrintStream err = System.err;
+                err.print(text);
+                err.flush();
+            }
+        }
+    }
+
+    synchronized void mark(String phase, long now) {
+        if (reported) {
+            return;
+        }
+
+        phases.add(new Phase(phase, Math.max(0, now - lastAt)));
+        lastAt = now;
+    }
+
+    /**
+     * 格式化报告
+     *
+     * @param finish 是否结束记录（之后的打点与报告均忽略）
+     * @return 报告文本；已结束过时为 null
+     */
+    synchronized String format(boolean finish) {
+        if (reported) {
+            return null;
+        }
+        reported = finish;
+
+        int width = 5;
+        for (Phase p : phases) {
+            width = Math.max(width, p.name.length());
+        }
+
+        long total = lastAt - startAt;
+        StringBuilder buf = new StringBuilder();
+        buf.append("Startup profile:\n");
+        for (Phase p : phases) {
+            buf.append("  ").append(pad(p.name, width))
+                    .append(String.format(Locale.ROOT, "%7d ms", p.elapsedMs))
+                    .append(String.format(Locale.ROOT, "  %5.1f%%", total > 0 ? p.elapsedMs * 100.0 / total : 0.0))
+                    .append('\n');
+        }
+        buf.append("  ").append(pad("total", width))
+                .append(String.format(Locale.ROOT, "%7d ms", total))
+                .append('\n');
+        return buf.toString();
+    }
+
+    private static String pad(String str, int width) {
+        StringBuilder buf = new StringBuilder(str);
+        while (buf.length() < width + 2) {
+            buf.append(' ');
+        }
+        return buf.toString();
+    }
+
+    private static class Phase {
+        final String name;
+        final long elapsedMs;
+
+        Phase(String name, long elapsedMs) {
+            this.name = name;
+            this.elapsedMs = elapsedMs;
+        }
+    }
+}
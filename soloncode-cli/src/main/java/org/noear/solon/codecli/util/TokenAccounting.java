@@ -0,0 +1,633 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.util;
+
+import org.noear.snack4.ONode;
+import org.noear.solon.ai.agent.AgentSession;
+import org.noear.solon.ai.agent.react.ReActTrace;
+import org.noear.solon.ai.chat.message.AssistantMessage;
+import org.noear.solon.ai.chat.message.ChatMessage;
+import org.noear.solon.codecli.config.AgentFlags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token 计量（本地计数 + 按模型自校准）。
+ *
+ * <ul>
+ *   <li>按模型家族选择分词器计数（o200k / cl100k / claude / gemini / 中文优化词表），分词器首次使用时创建</li>
+ *   <li>长文本按 家族 + 内容摘要 缓存计数结果，同一条消息在多轮上下文中只计算一次</li>
+ *   <li>模型请求前按会话所用模型本地计数即将发送的消息，与供应商返回的输入 token 对比，
+ *       按模型拟合 实际 = 系数 × 估算 + 固定开销（系统提示词、工具定义等不在消息里的部分），
+ *       持久化到磁盘；上下文用量与预算检查使用校准后的值</li>
+ * </ul>
+ *
+ * <p>注意：上下文压缩由引擎按其自身计数触发（没有按会话传入计数的入口），不使用这里的计量。
+ *
+ * @author noear 2026/10/18 created
+ */
+public class TokenAccounting {
+    private static final Logger LOG = LoggerFactory.getLogger(TokenAccounting.class);
+
+    private static final String CALIBRATION_FILE = "token-calibration.properties";
+
+    private static volatile TokenAccounting instance;
+
+    public static TokenAccounting getInstance() {
+        if (instance == null) {
+            synchronized (TokenAccounting.class) {
+                if (instance == null) {
+                    instance = new TokenAccounting(Paths.get(AgentFlags.getUserHome(), AgentFlags.getHarnessCache(), CALIBRATION_FILE));
+                }
+            }
+        }
+        return instance;
+    }
+
+    //-------
+
+    /** 短于该长度的文本不缓存（直接计算更快） */
+    static final int CACHE_MIN_CHARS = 64;
+    static final int CACHE_MAX_ENTRIES = 4096;
+    /** 参与校准的最小估算量（太小的样本噪声大） */
+    static final long CALIBRATION_MIN_TOKENS = 500;
+    /** 校准系数的取值范围（超出视为异常，截断） */
+    static final double RATIO_MIN = 0.5;
+    static final double RATIO_MAX = 2.0;
+    /** 历史样本的衰减权重（越小越偏向近期样本） */
+    static final double SAMPLE_DECAY = 0.8;
+    /** 拟合系数所需的最少样本数（之前只估固定开销） */
+    static final int FIT_MIN_SAMPLES = 3;
+    /** 拟合系数所需的估算值离散度（标准差 / 均值；样本估算值太接近时系数不可信） */
+    static final double FIT_MIN_SPREAD = 0.1;
+    /** 每条消息的结构开销（角色标记、分隔符） */
+    static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private final Path calibrationFile;
+    private final List<TokenCounter> customCounters = new CopyOnWriteArrayList<>();
+    private final Map<String, TokenCounter> builtinCounters = new ConcurrentHashMap<>();
+    private final Map<String, Calibration> calibrations = new ConcurrentHashMap<>();
+    private final Map<String, Integer> countCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, Integer>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > CACHE_MAX_ENTRIES;
+                }
+            });
+
+    private volatile boolean loaded;
+
+    /**
+     * @param calibrationFile 校准系数文件（为 null 时不持久化）
+     */
+    TokenAccounting(Path calibrationFile) {
+        this.calibrationFile = calibrationFile;
+    }
+
+    /**
+     * 注册自定义计数器（优先于内置计数器）
+     */
+    public void register(TokenCounter counter) {
+        if (counter != null) {
+            customCounters.add(0, counter);
+        }
+    }
+
+    /**
+     * 获取模型对应的计数器（未知模型使用 cl100k）
+     *
+     * @param model 模型 id 或模型配置名（可为 null）
+     */
+    public TokenCounter counterFor(String model) {
+        String modelId = model == null ? "" : model.toLowerCase(Locale.ROOT);
+
+        for (TokenCounter counter : customCounters) {
+            if (counter.matches(modelId)) {
+                return counter;
+            }
+        }
+
+        Profile profile = Profile.of(modelId);
+        return builtinCounters.computeIfAbsent(profile.family, k -> new PretokenCounter(profile));
+    }
+
+    /**
+     * 计算文本的 token 数（本地估算，未校准）
+     *
+     * @param model 模型 id 或模型配置名（可为 null）
+     */
+    public int count(String model, String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+
+        TokenCounter counter = counterFor(model);
+        if (text.length() < CACHE_MIN_CHARS) {
+            return counter.count(text);
+        }
+
+        String key = counter.getFamily() + ":" + text.length() + ":" + Integer.toHexString(text.hashCode());
+        Integer cached = countCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        int tokens = counter.count(text);
+        countCache.put(key, tokens);
+        return tokens;
+    }
+
+    /**
+     * 计算一组消息的 token 数（内容、工具调用与每条消息的结构开销；本地估算，未校准）
+     *
+     * @param model 模型 id 或模型配置名（可为 null）
+     */
+    public long count(String model, List<? extends ChatMessage> messages) {
+        long tokens = 0;
+        for (ChatMessage message : messages) {
+            tokens += MESSAGE_OVERHEAD_TOKENS + count(model, message.getContent());
+
+            if (message instanceof AssistantMessage) {
+                AssistantMessage assistant = (AssistantMessage) message;
+                if (assistant.getToolCalls() != null && assistant.getToolCalls().isEmpty() == false) {
+                    tokens += count(model, ONode.ofBean(assistant.getToolCalls()).toJson());
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 计算文本的 token 数（默认分词器）
+     */
+    public int count(String text) {
+        return count(null, text);
+    }
+
+    /**
+     * 校准系数（供应商实际值相对本地估算值的斜率；无样本时为 1）
+     */
+    public double ratio(String model) {
+        Calibration calibration = calibrationOf(model);
+        return calibration == null ? 1.0 : calibration.ratio;
+    }
+
+    /**
+     * 每次请求的固定开销（系统提示词、工具定义等本地未计数的部分；无样本时为 0）
+     */
+    public long overhead(String model) {
+        Calibration calibration = calibrationOf(model);
+        return calibration == null ? 0 : Math.round(calibration.overhead);
+    }
+
+    /**
+     * 校准后的 token 数（单次请求：估算 × 系数 + 固定开销）
+     */
+    public long calibrated(String model, long estimated) {
+        if (estimated <= 0) {
+            return estimated;
+        }
+
+        Calibration calibration = calibrationOf(model);
+        if (calibration == null) {
+            return estimated;
+        }
+        return Math.round(estimated * calibration.ratio + calibration.overhead);
+    }
+
+    /**
+     * 记录一次对比：本地估算的输入 token 与供应商返回的输入 token（按单次请求）
+     */
+    public void observe(String model, long estimated, long reported) {
+        observe(model, estimated, reported, 1);
+    }
+
+    /**
+     * 记录一次对比：本地估算的输入 token 与供应商返回的输入 token
+     *
+     * @param model     模型 id 或模型配置名
+     * @param estimated 本地估算（同一批请求的累计值）
+     * @param reported  供应商返回（同一批请求的累计值）
+     * @param requests  请求次数（固定开销每次请求都会计入）
+     */
+    public void observe(String model, long estimated, long reported, int requests) {
+        if (requests <= 0 || estimated < CALIBRATION_MIN_TOKENS || reported <= 0) {
+            return;
+        }
+
+        loadIfNeeded();
+
+        // 按单次请求的平均值作为一个样本
+        double x = estimated / (double) requests;
+        double y = reported / (double) requests;
+        Calibration calibration = calibrations.computeIfAbsent(keyOf(model), k -> new Calibration());
+        synchronized (calibration) {
+            calibration.add(x, y);
+        }
+
+        LOG.debug("[TokenAccounting] {} estimated {} / reported {} / requests {} -> ratio {}, overhead {}",
+                model, estimated, reported, requests,
+                String.format(Locale.ROOT, "%.3f", calibration.ratio), Math.round(calibration.overhead));
+        save();
+    }
+
+    /**
+     * 为一次运行创建计量（累计各次模型请求前的上下文估算，运行结束后与供应商用量对比）
+     */
+    public Tally tally(String model) {
+        return new Tally(this, model);
+    }
+
+    private Calibration calibrationOf(String model) {
+        loadIfNeeded();
+        return calibrations.get(keyOf(model));
+    }
+
+    private static String keyOf(String model) {
+        return model == null ? "" : model.toLowerCase(Locale.ROOT);
+    }
+
+    private void loadIfNeeded() {
+        if (loaded) {
+            return;
+        }
+
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+
+            if (calibrationFile != null && Files.isRegularFile(calibrationFile)) {
+                Properties props = new Properties();
+                try (InputStream in = Files.newInputStream(calibrationFile)) {
+                    props.load(in);
+                    for (String name : props.stringPropertyNames()) {
+                        // 旧格式（只有系数）不含样本统计，忽略后重新校准
+                        Calibration calibration = Calibration.parse(props.getProperty(name));
+                        if (calibration != null) {
+                            calibrations.putIfAbsent(name, calibration);
+                        }
+                    }
+                } catch (Throwable e) {
+                    LOG.debug("Token calibration read failure: {}", e.getMessage());
+                }
+            }
+
+            loaded = true;
+        }
+    }
+
+    private synchronized void save() {
+        if (calibrationFile == null) {
+            return;
+        }
+
+        Properties props = new Properties();
+        for (Map.Entry<String, Calibration> kv : calibrations.entrySet()) {
+            synchronized (kv.getValue()) {
+                props.setProperty(kv.getKey(), kv.getValue().format());
+            }
+        }
+
+        try {
+            Files.createDirectories(calibrationFile.getParent());
+
+            Path tmp = calibrationFile.resolveSibling(CALIBRATION_FILE + "." + System.nanoTime() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "local token estimate calibration: samples,weight,mean(x),mean(y),mean(x*x),mean(x*y)");
+            }
+            Files.move(tmp, calibrationFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Throwable e) {
+            LOG.debug("Token calibration write failure: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按模型的校准统计：单次请求的 估算(x) / 实际(y) 样本的衰减加权矩，
+     * 拟合 y = ratio × x + overhead（线性回归；样本不足或估算值太集中时只估固定开销）
+     */
+    static final class Calibration {
+        int samples;
+        double weight;
+        double meanX;
+        double meanY;
+        double meanXX;
+        double meanXY;
+
+        volatile double ratio = 1.0;
+        volatile double overhead;
+
+        void add(double x, double y) {
+            samples++;
+            weight = weight * SAMPLE_DECAY + 1;
+            // 新样本在加权均值中的占比
+            double a = 1 / weight;
+            meanX += (x - meanX) * a;
+            meanY += (y - meanY) * a;
+            meanXX += (x * x - meanXX) * a;
+            meanXY += (x * y - meanXY) * a;
+            fit();
+        }
+
+        private void fit() {
+            double variance = meanXX - meanX * meanX;
+            double spread = FIT_MIN_SPREAD * meanX;
+
+            double r;
+            if (samples >= FIT_MIN_SAMPLES && variance > spread * spread) {
+                r = clamp((meanXY - meanX * meanY) / variance);
+                if (meanY - r * meanX < 0) {
+                    // 截距为负（没有固定开销）：改为过原点拟合
+                    r = clamp(meanXY / meanXX);
+                }
+            } else if (meanY >= meanX) {
+                // 实际值偏大：优先视为固定开销（系统提示词、工具定义）
+                r = 1.0;
+            } else {
+                r = clamp(meanY / meanX);
+            }
+
+            ratio = r;
+            overhead = Math.max(0, meanY - r * meanX);
+        }
+
+        private static double clamp(double ratio) {
+            return Math.max(RATIO_MIN, Math.min(RATIO_MAX, ratio));
+        }
+
+        String format() {
+            return String.format(Locale.ROOT, "%d,%.4f,%.2f,%.2f,%.1f,%.1f",
+                    samples, weight, meanX, meanY, meanXX, meanXY);
+        }
+
+        static Calibration parse(String text) {
+            String[] parts = text == null ? new String[0] : text.split(",");
+            if (parts.length != 6) {
+                return null;
+            }
+
+            try {
+                Calibration calibration = new Calibration();
+                calibration.samples = Integer.parseInt(parts[0].trim());
+                calibration.weight = Double.parseDouble(parts[1].trim());
+                calibration.meanX = Double.parseDouble(parts[2].trim());
+                calibration.meanY = Double.parseDouble(parts[3].trim());
+                calibration.meanXX = Double.parseDouble(parts[4].trim());
+                calibration.meanXY = Double.parseDouble(parts[5].trim());
+                if (calibration.samples <= 0 || calibration.weight <= 0 || calibration.meanX <= 0) {
+                    return null;
+                }
+                calibration.fit();
+                return calibration;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 一次运行的估算累计
+     */
+    public static class Tally {
+        private final TokenAccounting accounting;
+        private final String model;
+        private final AtomicLong estimated = new AtomicLong();
+        private final AtomicInteger requests = new AtomicInteger();
+        /** 有请求未能本地计数（累计值不完整，不参与校准） */
+        private volatile boolean partial;
+
+        Tally(TokenAccounting accounting, String model) {
+            this.accounting = accounting;
+            this.model = model;
+        }
+
+        /**
+         * 记录一次模型请求前的上下文：本地计数主代理即将发送的消息，返回校准后的值；
+         * 取不到消息时返回框架的估算值（该次运行不参与校准）
+         *
+         * @param fallbackTokens 框架的上下文估算（ContextSizeEvent）
+         */
+        public long estimate(AgentSession session, long fallbackTokens) {
+            List<ChatMessage> messages = outgoingMessages(session);
+            if (messages == null) {
+                partial = true;
+                return fallbackTokens;
+            }
+            return estimate(accounting.count(model, messages));
+        }
+
+        /**
+         * 记录一次模型请求前的本地计数，返回校准后的值
+         */
+        public long estimate(long tokens) {
+            if (tokens > 0) {
+                estimated.addAndGet(tokens);
+                requests.incrementAndGet();
+            }
+            return accounting.calibrated(model, tokens);
+        }
+
+        /**
+         * 运行结束：与供应商返回的输入 token 累计值对比（只校准一次）
+         */
+        public void finish(long reportedPromptTokens) {
+            long total = estimated.getAndSet(0);
+            int count = requests.getAndSet(0);
+            if (partial) {
+                partial = false;
+                return;
+            }
+            accounting.observe(model, total, reportedPromptTokens, count);
+        }
+
+        private static List<ChatMessage> outgoingMessages(AgentSession session) {
+            if (session == null) {
+                return null;
+            }
+
+            ReActTrace trace = session.getContext().getAs("__main");
+            if (trace == null || trace.getWorkingMemory() == null) {
+                return null;
+            }
+            return trace.getWorkingMemory().getMessages();
+        }
+    }
+
+    /**
+     * 模型家族的分词特征（近似 BPE 预分词后的切分粒度）
+     */
+    static final class Profile {
+        static final Profile O200K = new Profile("o200k", 9, 4.0, 3, 0.8, 0.35, 2.0);
+        static final Profile CL100K = new Profile("cl100k", 7, 3.5, 3, 1.1, 0.5, 1.5);
+        static final Profile CLAUDE = new Profile("claude", 7, 3.5, 2, 1.2, 0.5, 1.5);
+        static final Profile GEMINI = new Profile("gemini", 8, 4.0, 1, 0.7, 0.35, 2.0);
+        /** 中文优化词表（qwen、deepseek、glm、kimi 等） */
+        static final Profile CJK = new Profile("cjk", 8, 4.0, 1, 0.65, 0.4, 2.0);
+
+        final String family;
+        /** 不超过该长度的字母串计为 1 个 token */
+        final int wordChars;
+        /** 更长的字母串按该长度切分 */
+        final double charsPerPiece;
+        /** 数字按该长度分组 */
+        final int digitsPerToken;
+        /** 每个中日韩字符的 token 数 */
+        final double cjkPerChar;
+        /** 其它非 ASCII 字母每个字符的 token 数 */
+        final double otherPerChar;
+        /** 标点符号串按该长度切分 */
+        final double punctPerToken;
+
+        Profile(String family, int wordChars, double charsPerPiece, int digitsPerToken,
+                double cjkPerChar, double otherPerChar, double punctPerToken) {
+            this.family = family;
+            this.wordChars = wordChars;
+            this.charsPerPiece = charsPerPiece;
+            this.digitsPerToken = digitsPerToken;
+            this.cjkPerChar = cjkPerChar;
+            this.otherPerChar = otherPerChar;
+            this.punctPerToken = punctPerToken;
+        }
+
+        static Profile of(String modelId) {
+            if (modelId.contains("gpt-4o") || modelId.contains("gpt-4.1") || modelId.contains("gpt-5")
+                    || modelId.contains("gpt-oss") || modelId.matches(".*\\bo[134](-.*)?")) {
+                return O200K;
+            }
+            if (modelId.contains("claude")) {
+                return CLAUDE;
+            }
+            if (modelId.contains("gemini") || modelId.contains("gemma")) {
+                return GEMINI;
+            }
+            if (modelId.contains("qwen") || modelId.contains("deepseek") || modelId.contains("glm")
+                    || modelId.contains("kimi") || modelId.contains("moonshot") || modelId.contains("minimax")
+                    || modelId.contains("doubao") || modelId.contains("ernie") || modelId.contains("hunyuan")) {
+                return CJK;
+            }
+            return CL100K;
+        }
+    }
+
+    /**
+     * 内置计数器：按 BPE 预分词规则切分（字母串、数字串、空白、标点、中日韩字符），
+     * 再按家族特征估算每段的 token 数；不需要加载词表
+     */
+    static final class PretokenCounter implements TokenCounter {
+        private final Profile profile;
+
+        PretokenCounter(Profile profile) {
+            this.profile = profile;
+        }
+
+        @Override
+        public String getFamily() {
+            return profile.family;
+        }
+
+        @Override
+        public boolean matches(String modelId) {
+            return Profile.of(modelId) == profile;
+        }
+
+        @Override
+        public int count(String text) {
+            if (text == null || text.isEmpty()) {
+                return 0;
+            }
+
+            double tokens = 0;
+            int n = text.length();
+            int i = 0;
+
+            while (i < n) {
+                char c = text.charAt(i);
+                int start = i;
+
+                if (isAsciiLetter(c)) {
+                    while (i < n && isAsciiLetter(text.charAt(i))) {
+                        i++;
+                    }
+                    int len = i - start;
+                    tokens += len <= profile.wordChars ? 1 : 1 + Math.ceil((len - profile.wordChars) / profile.charsPerPiece);
+                } else if (c >= '0' && c <= '9') {
+                    while (i < n && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+                        i++;
+                    }
+                    tokens += Math.ceil((i - start) / (double) profile.digitsPerToken);
+                } else if (Character.isWhitespace(c)) {
+                    while (i < n && Character.isWhitespace(text.charAt(i))) {
+                        i++;
+                    }
+                    // 单词前的单个空格并入该单词
+                    boolean leadingSpace = i - start == 1 && c == ' ' && i < n && Character.isLetterOrDigit(text.charAt(i));
+                    if (leadingSpace == false) {
+                        tokens += 1;
+                    }
+                } else if (isCjk(c)) {
+                    while (i < n && isCjk(text.charAt(i))) {
+                        i++;
+                    }
+                    tokens += (i - start) * profile.cjkPerChar;
+                } else if (Character.isLetter(c)) {
+                    while (i < n && Character.isLetter(text.charAt(i)) && isAsciiLetter(text.charAt(i)) == false
+                            && isCjk(text.charAt(i)) == false) {
+                        i++;
+                    }
+                    tokens += Math.max(1, (i - start) * profile.otherPerChar);
+                } else {
+                    // 标点符号（及其它字符）至少消费一个字符
+                    do {
+                        i++;
+                    } while (i < n && isPunct(text.charAt(i)));
+                    tokens += Math.ceil((i - start) / profile.punctPerToken);
+                }
+            }
+
+            return Math.max(1, (int) Math.ceil(tokens));
+        }
+
+        private static boolean isAsciiLetter(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+        }
+
+        private static boolean isPunct(char c) {
+            return Character.isLetterOrDigit(c) == false && Character.isWhitespace(c) == false;
+        }
+
+        private static boolean isCjk(char c) {
+            Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+            return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                    || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                    || block == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS
+                    || block == Character.UnicodeBlock.HIRAGANA
+                    || block == Character.UnicodeBlock.KATAKANA
+                    || block == Character.UnicodeBlock.HANGUL_SYLLABLES;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.util;
+
+import org.noear.solon.codecli.config.models.ModelSpecService;
+
+/**
+ * Token 费用估算（按输入/输出分别计费）。
+ *
+ * <p>优先使用模型规格（models.dev）中的单价，未收录的模型使用默认单价。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+public final class TokenCost {
+    /** 默认费用估算：每 1K 输入 token $0.003 */
+    public static final double COST_PER_1K_INPUT_TOKENS = 0.003;
+    /** 默认费用估算：每 1K 输出 token $0.015 */
+    public static final double COST_PER_1K_OUTPUT_TOKENS = 0.015;
+
+    private TokenCost() {
+    }
+
+    /**
+     * 估算费用（美元）
+     *
+     * @param promptTokens     输入 token
+     * @param completionTokens 输出 token
+     */
+    public static double estimateUsd(long promptTokens, long completionTokens) {
+        return Rate.DEFAULT.estimateUsd(promptTokens, completionTokens);
+    }
+
+    /**
+     * 按模型取单价（规格中没有价格时返回默认单价）
+     *
+     * @param modelId 模型 id（如 claude-sonnet-4-5）
+     */
+    public static Rate rateOf(String modelId) {
+        ModelSpecService.ModelSpec spec = ModelSpecService.getInstance().findSpec(modelId);
+        if (spec != null && (spec.getCostInput() > 0 || spec.getCostOutput() > 0)) {
+            // 规格单价为 美元 / 1M token
+            return new Rate(spec.getCostInput() / 1000.0, spec.getCostOutput() / 1000.0, false);
+        }
+        return Rate.DEFAULT;
+    }
+
+    /**
+     * 单价（美元 / 1K token）
+     */
+    public static final class Rate {
+        public static final Rate DEFAULT = new Rate(COST_PER_1K_INPUT_TOKENS, COST_PER_1K_OUTPUT_TOKENS, true);
+
+        private final double inputPer1K;
+        private final double outputPer1K;
+        private final boolean fallback;
+
+        public Rate(double inputPer1K, double outputPer1K, boolean fallback) {
+            this.inputPer1K = inputPer1K;
+            this.outputPer1K = outputPer1K;
+            this.fallback = fallback;
+        }
+
+        public double getInputPer1K() {
+            return inputPer1K;
+        }
+
+        public double getOutputPer1K() {
+            return outputPer1K;
+        }
+
+        /** 是否为默认单价（模型价格未知） */
+        public boolean isFallback() {
+            return fallback;
+        }
+
+        public double estimateUsd(long promptTokens, long completionTokens) {
+            double inputCost = (promptTokens / 1000.0) * inputPer1K;
+            double outputCost = (completionTokens / 1000.0) * outputPer1K;
+            return inputCost + outputCost;
+        }
+    }
+}
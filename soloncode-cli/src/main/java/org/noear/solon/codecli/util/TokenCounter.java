@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.util;
+
+/**
+ * 本地 token 计数器（按模型家族的分词器）
+ *
+ * <p>可通过 {@link TokenAccounting#register(TokenCounter)} 注册自定义实现（如加载完整词表的精确分词器），
+ * 注册的计数器优先于内置的近似计数器。</p>
+ *
+ * @author noear 2026/10/18 created
+ */
+public interface TokenCounter {
+    /**
+     * 分词器家族（如 o200k、cl100k、claude），同时作为计数缓存的分区
+     */
+    String getFamily();
+
+    /**
+     * 是否适用于该模型
+     *
+     * @param modelId 模型 id 或模型配置名（小写）
+     */
+    boolean matches(String modelId);
+
+    /**
+     * 计算文本的 token 数
+     */
+    int count(String text);
+}
@@ -277,7 +277,7 @@
     /** 加载工作区列表作为树的根节点；若树已存在则走智能刷新以保留展开状态 */
     function loadTree() {
         if ($treeEl.length && $treeEl.children().length) {
-            smartRefreshRoot();
+            incrementalRefresh();
             return;
         }
 
@@ -364,12 +364,8 @@
                     $childrenEl.addClass('open');
                     $aEl.addClass('open');
                     if (!$childrenEl.children().length) {
-                        var url = '/web/chat/filer/tree?depth=1';
-                        if (wsId !== 'workspace') {
-                            url += '&workspace=' + encodeURIComponent(wsId);
-                        }
-                        $.get(url, function(res) {
-                            var data = (res && res.data) ? res.data : [];
+                        $.get(workspaceTreeUrl(wsId, 0, 1), function(res) {
+                            var data = acceptTreeVersion(wsId, res);
                             renderTree(data, $childrenEl, indent + 1);
                         }).fail(function() {
                             console.error('[filer] load workspace tree error', wsId);
@@ -796,8 +792,100 @@
         return sortPathsByDepth(expandedDirs);
     }
 
+    // ---- 增量刷新（按版本号拉取变更，不整树重绘） ----
+
+    /** 各工作区根列表最近一次加载时的索引版本号 */
+    var treeVersions = {};
+
+    function workspaceTreeUrl(wsId, since, depth) {
+        var url = '/web/chat/filer/tree?depth=' + depth + '&since=' + since;
+        if (wsId && wsId !== 'workspace') {
+            url += '&workspace=' + encodeURIComponent(wsId);
+        }
+        return url;
+    }
+
+    /** 记录版本化结果的版本号，返回全量节点列表 */
+    function acceptTreeVersion(wsId, res) {
+        var data = (res && res.data) ? res.data : {};
+        if (data.version != null) {
+            treeVersions[wsId] = data.version;
+        }
+        return data.nodes || [];
+    }
+
+    /** 已展开目录的最大层级 + 1，增量结果只需覆盖到已渲染的深度 */
+    function renderedDepth($wsNode) {
+        var max = 0;
+        collectExpandedDirsUnder($wsNode).forEach(function(p) {
+            max = Math.max(max, p.split('/').length);
+        });
+        return max + 1;
+    }
+
+    /**
+     * 对已展开的工作区只拉取上次版本之后的增删；
+     * 工作区挂载有变化、版本过旧（服务端返回 full）或请求失败时退回智能刷新。
+     */
+    function incrementalRefresh() {
+        $.get('/web/chat/filer/workspaces', function(res) {
+            var wsList = (res && res.data) ? res.data : [];
+            var $wsNodes = $treeEl.children('.file-node[data-workspace-id]');
+            if (!$wsNodes.length || $wsNodes.length !== wsList.length) {
+                smartRefreshRoot();
+                return;
+            }
+
+            var pending = [];
+            for (var i = 0; i < wsList.length; i++) {
+                var ws = wsList[i];
+                var $wn = $wsNodes.filter('[data-workspace-id="' + CSS.escape(ws.id) + '"]').first();
+                if (!$wn.length) {
+                    smartRefreshRoot();
+                    return;
+                }
+                if ($wn.children('.file-node-children').hasClass('open') && treeVersions[ws.id] != null) {
+                    pending.push({ id: ws.id, $node: $wn });
+                }
+            }
+
+            var fallback = false;
+            function next() {
+                if (fallback) return;
+                var item = pending.shift();
+                if (!item) return;
+                $.get(workspaceTreeUrl(item.id, treeVersions[item.id], renderedDepth(item.$node)), function(res2) {
+                    var data = (res2 && res2.data) ? res2.data : null;
+                    if (!data || data.full) {
+                        fallback = true;
+                        smartRefreshRoot();
+                        return;
+                    }
+                    (data.removed || []).forEach(function(path) {
+                        removeTreeNode(item.id, path);
+                    });
+                    // 先建更浅路径，保证父目录先于子项插入
+                    (data.added || []).sort(function(a, b) {
+                        return a.path.split('/').length - b.path.split('/').length;
+                    }).forEach(function(node) {
+                        ensureTreeNode(item.id, node.path, node.type);
+                    });
+                    treeVersions[item.id] = data.version;
+                    next();
+                }).fail(function() {
+                    fallback = true;
+                    smartRefreshRoot();
+                });
+            }
+            next();
+        }).fail(function() {
+            smartRefreshRoot();
+        });
+    }
+
     function smartRefreshRoot() {
         var expandedState = collectExpandedState();
+        treeVersions = {};
 
         // 重新加载工作区列表（可能有新增/删除的挂载）
         $.get('/web/chat/filer/workspaces', function(res) {
@@ -836,13 +924,8 @@
                 $wc.addClass('open');
                 $wa.addClass('open');
 
-                var url = '/web/chat/filer/tree?depth=1';
-                if (ws.id !== 'workspace') {
-                    url += '&workspace=' + encodeURIComponent(ws.id);
-                }
-
-                $.get(url, function(res2) {
-                    var data2 = (res2 && res2.data) ? res2.data : [];
+                $.get(workspaceTreeUrl(ws.id, 0, 1), function(res2) {
+                    var data2 = acceptTreeVersion(ws.id, res2);
                     renderTree(data2, $wc, 1);
                     var dirs = sortPathsByDepth(entry.dirs || []);
                     restoreExpandedPathsSequential($wn, dirs, ws.id, 0, restoreNextWorkspace);
@@ -330,6 +330,39 @@
                 }
             });
         });
+
+        loadDiffStats();
+    }
+
+    // ---- 文件列表增删行数（diff/files 只跑 numstat，不生成 diff 正文）----
+    function loadDiffStats() {
+        fetch(gitUrl('/web/chat/git/diff/files', 'limit=500'))
+            .then(function(r) { return r.json(); })
+            .then(function(res) {
+                var files = (res && res.code === 200 && res.data) ? (res.data.files || []) : [];
+                var byPath = {};
+                files.forEach(function(f) { byPath[f.path] = f; });
+
+                gitDiffFileList.querySelectorAll('.git-file-item:not(.git-file-item-dir)').forEach(function(item) {
+                    var f = byPath[item.getAttribute('data-path')];
+                    var old = item.querySelector('.git-file-stat');
+                    if (old) old.remove();
+                    if (!f || f.untracked) return;
+
+                    var stat = document.createElement('span');
+                    stat.className = 'git-file-stat';
+                    if (f.binary) {
+                        stat.textContent = 'bin';
+                    } else {
+                        stat.innerHTML = '<span class="git-stat-add">+' + f.additions + '</span> '
+                            + '<span class="git-stat-del">-' + f.deletions + '</span>';
+                    }
+                    item.appendChild(stat);
+                });
+            })
+            .catch(function(e) {
+                console.warn('[gitdiff] diff stats error', e);
+            });
     }
 
     // ---- 目录展开/折叠：列出目录下文件列表 ----
@@ -1213,12 +1246,11 @@
 
         if (gitViewerContent) gitViewerContent.innerHTML = '<div style="padding:20px;color:var(--text-secondary)">' + I18n.t('common.loading') + '...</div>';
 
-        fetch(gitUrl('/web/chat/git/diff', 'path=' + encodeURIComponent(path)))
-            .then(function(r) { return r.json(); })
-            .then(function(res) {
-                var d = (res && res.data) ? res.data : {};
+        // 只取第一页，大 diff 也能立即渲染；其余按需「加载更多」
+        fetchDiffPage(path, 0)
+            .then(function(d) {
                 var diffText = d.diff || '';
-                if (!diffText.trim()) {
+                if (!diffText.trim() && !d.hasMore) {
                     // 后端已对未跟踪文件生成整文件新增 diff；此处仅作兜底空态
                     gitViewerContent.innerHTML = '<div style="padding:20px;color:var(--text-secondary)">'
                         + (status === '?'
@@ -1227,18 +1259,66 @@
                         + '</div>';
                 } else {
                     renderViewerDiff(diffText);
+                    renderDiffLoadMore(path, d);
                 }
             })
             .catch(function(e) {
                 if (gitViewerContent) gitViewerContent.innerHTML = '<div style="padding:20px;color:#cb2431">' + I18n.t('gitdiff.loadFailed') + ': ' + escapeHtml(e.message) + '</div>';
             })
             .finally(function() {
-                renderViewerActions(path, status);
+                renderViewerActions(path, status, true);
+            });
+    }
+
+    /** 每页 diff 行数 */
+    var DIFF_PAGE_LINES = 2000;
+
+    function fetchDiffPage(path, offset) {
+        return fetch(gitUrl('/web/chat/git/diff/file',
+                'path=' + encodeURIComponent(path) + '&offset=' + offset + '&limit=' + DIFF_PAGE_LINES))
+            .then(function(r) { return r.json(); })
+            .then(function(res) {
+                if (!res || res.code !== 200) throw new Error(gitActionError(res));
+                return res.data || {};
             });
     }
 
-    // ---- Diff Viewer：渲染操作按钮（添加到Git / 移出暂存 / 回滚）----
-    function renderViewerActions(path, status) {
+    /** diff 未读完时在末尾追加「加载更多」，点击后续接下一页（行号连续） */
+    function renderDiffLoadMore(path, page) {
+        if (!gitViewerContent || !page.hasMore) return;
+        var btn = document.createElement('button');
+        btn.className = 'git-action-btn git-diff-load-more';
+        btn.textContent = I18n.t('gitdiff.loadMore');
+        btn.addEventListener('click', function() {
+            btn.disabled = true;
+            btn.textContent = I18n.t('common.loading') + '...';
+            fetchDiffPage(path, page.nextOffset)
+                .then(function(next) {
+                    btn.remove();
+                    renderViewerDiff(next.diff || '', true);
+                    renderDiffLoadMore(path, next);
+                })
+                .catch(function(e) {
+                    btn.disabled = false;
+                    btn.textContent = I18n.t('gitdiff.loadFailed') + ': ' + e.message;
+                });
+        });
+        gitViewerContent.appendChild(btn);
+    }
+
+    /** 新窗口打开流式纯文本输出（大 diff / 大文件由浏览器边收边显示，不经 JSON 缓冲） */
+    function createRawLinkButton(label, url) {
+        var btn = document.createElement('button');
+        btn.className = 'git-action-btn git-action-raw';
+        btn.innerHTML = '<svg width="14" height="14" viewBox="0 0 24 24" fill="none" stroke="currentColor" stroke-width="2" stroke-linecap="round" stroke-linejoin="round"><path d="M18 13v6a2 2 0 0 1-2 2H5a2 2 0 0 1-2-2V8a2 2 0 0 1 2-2h6"/><polyline points="15 3 21 3 21 9"/><line x1="10" y1="14" x2="21" y2="3"/></svg> ' + label;
+        btn.addEventListener('click', function() {
+            window.open(url, '_blank');
+        });
+        return btn;
+    }
+
+    // ---- Diff Viewer：渲染操作按钮（添加到Git / 移出暂存 / 回滚 / 原始输出）----
+    function renderViewerActions(path, status, withRaw) {
         // 移除旧的操作栏（如有）
         var oldActions = gitViewer.querySelector('.git-viewer-actions');
         if (oldActions) oldActions.remove();
@@ -1386,6 +1466,17 @@
             hasAction = true;
         }
 
+        if (withRaw) {
+            actionBar.appendChild(createRawLinkButton(I18n.t('gitdiff.openRawDiff'),
+                gitUrl('/web/chat/git/diff/raw', 'path=' + encodeURIComponent(path))));
+            if (status !== '?') {
+                // 已跟踪文件：查看改动前（HEAD）的原文
+                actionBar.appendChild(createRawLinkButton(I18n.t('gitdiff.openHeadVersion'),
+                    gitUrl('/web/chat/git/file-content/raw', 'path=' + encodeURIComponent(path) + '&ref=HEAD')));
+            }
+            hasAction = true;
+        }
+
         if (!hasAction) return;
 
         // 插入到 header 后面、content 前面
@@ -1403,11 +1494,17 @@
     }
 
     // ---- Diff Viewer：渲染 diff 文本（带行号）----
-    function renderViewerDiff(raw) {
+    /** 分页续接时沿用上一页末尾的行号 */
+    var viewerDiffLineNo = { old: 0, new: 0 };
+
+    function renderViewerDiff(raw, append) {
         if (!gitViewerContent) return;
         var lines = (raw || '').split('\n');
+        // 末尾换行产生的空串不是一行（分页续接时会错位行号）
+        if (lines.length && lines[lines.length - 1] === '') lines.pop();
         var html = '';
-        var oldLineNo = 0, newLineNo = 0;
+        var oldLineNo = append ? viewerDiffLineNo.old : 0;
+        var newLineNo = append ? viewerDiffLineNo.new : 0;
         var hunkRe = /^@@\s+-(\d+)(?:,\d+)?\s+\+(\d+)(?:,\d+)?\s+@@/;
 
         for (var i = 0; i < lines.length; i++) {
@@ -1456,6 +1553,11 @@
                     + '</div>';
             }
         }
+        viewerDiffLineNo = { old: oldLineNo, new: newLineNo };
+        if (append) {
+            gitViewerContent.insertAdjacentHTML('beforeend', html);
+            return;
+        }
         gitViewerContent.innerHTML = html;
         gitViewerContent.scrollTop = 0;
     }
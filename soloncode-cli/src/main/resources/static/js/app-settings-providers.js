@@ -13,6 +13,7 @@
     var providers = [];
     var currentProvider = null; // 当前编辑的供应商（null 表示新增）
     var fetchedModels = []; // 已拉取的模型列表
+    var fetchedFrom = null; // 本次编辑中拉取模型的地址（用于接收后台刷新推送）
 
     // ==================== DOM 元素 ====================
     var $listView = $('#providersListView');
@@ -165,6 +166,8 @@
                 if (res.code === 200) {
                     providers = res.data || [];
                     renderProvidersList();
+                    // 后台预热各供应商的模型目录（并发拉取，结果经 WebSocket 推送）
+                    $.post('/web/settings/llm/providers/catalog');
                 }
             },
             error: function () {
@@ -208,6 +211,7 @@
     function showForm(provider) {
         currentProvider = provider;
         fetchedModels = (provider && provider.models) ? provider.models.slice() : [];
+        fetchedFrom = null;
 
         // 切换视图
         $listView.hide();
@@ -362,7 +366,10 @@
             data: {
                 apiUrl: apiUrl,
                 apiKey: apiKey,
-                standard: standard
+                standard: standard,
+                name: $('#providerName').val() || '',
+                // 用户主动拉取：跳过目录缓存（缓存优先仅用于预加载）
+                refresh: true
             },
             success: function (res) {
                 $btn.prop('disabled', false).html('<svg width="16" height="16" viewBox="0 0 24 24" fill="none" stroke="currentColor" stroke-width="2" stroke-linecap="round" stroke-linejoin="round"><polyline points="23 4 23 10 17 10"/><path d="M20.49 15a9 9 0 1 1-2.12-9.36L23 10"/></svg>');
@@ -370,44 +377,8 @@
                     try {
                         var data = typeof res.data === 'string' ? JSON.parse(res.data) : res.data;
                         var models = data.data || data.models || data || [];
-                        // 保留手动添加的模型，合并拉取的模型
-                        var manualModels = fetchedModels.filter(function (m) {
-                            return m.manual === true;
-                        });
-                        var fetchedMapped = models.map(function (m) {
-                            return {
-                                id: m.id || m.name || m,
-                                displayName: m.displayName || m.display_name || '',
-                                ownedBy: m.ownedBy || m.owned_by || '',
-                                type: m.type || '',
-                                maxInputTokens: m.maxInputTokens || m.max_input_tokens || m.contextLength || m.context_length || 0,
-                                maxTokens: m.maxTokens || m.max_tokens || 0,
-                                manual: false
-                            };
-                        });
-                        // 手动模型去重：如果手动模型 id 已在拉取列表中，保留手动标记
-                        var fetchedIds = {};
-                        fetchedMapped.forEach(function (m) { fetchedIds[m.id] = m; });
-                        manualModels.forEach(function (mm) {
-                            if (fetchedIds[mm.id]) {
-                                fetchedIds[mm.id].manual = true;
-                                if (mm.displayName) {
-                                    fetchedIds[mm.id].displayName = mm.displayName;
-                                }
-                                if (mm.ownedBy) {
-                                    fetchedIds[mm.id].ownedBy = mm.ownedBy;
-                                }
-                                if (mm.maxInputTokens) {
-                                    fetchedIds[mm.id].maxInputTokens = mm.maxInputTokens;
-                                }
-                                if (mm.maxTokens) {
-                                    fetchedIds[mm.id].maxTokens = mm.maxTokens;
-                                }
-                            } else {
-                                fetchedMapped.push(mm);
-                            }
-                        });
-                        fetchedModels = fetchedMapped;
+                        mergeFetchedModels(models);
+                        fetchedFrom = apiUrl;
                         // 加载 LLM 模型列表缓存，用于判断同步状态
                         loadLlmModelsCache(function () {
                             renderModelsList();
@@ -427,6 +398,60 @@
         });
     }
 
+    // 合并拉取到的模型：保留手动添加的模型及其自定义字段
+    function mergeFetchedModels(models) {
+        // 保留手动添加的模型，合并拉取的模型
+        var manualModels = fetchedModels.filter(function (m) {
+            return m.manual === true;
+        });
+        var fetchedMapped = models.map(function (m) {
+            return {
+                id: m.id || m.name || m,
+                displayName: m.displayName || m.display_name || '',
+                ownedBy: m.ownedBy || m.owned_by || '',
+                type: m.type || '',
+                maxInputTokens: m.maxInputTokens || m.max_input_tokens || m.contextLength || m.context_length || 0,
+                maxTokens: m.maxTokens || m.max_tokens || 0,
+                manual: false
+            };
+        });
+        // 手动模型去重：如果手动模型 id 已在拉取列表中，保留手动标记
+        var fetchedIds = {};
+        fetchedMapped.forEach(function (m) { fetchedIds[m.id] = m; });
+        manualModels.forEach(function (mm) {
+            if (fetchedIds[mm.id]) {
+                fetchedIds[mm.id].manual = true;
+                if (mm.displayName) {
+                    fetchedIds[mm.id].displayName = mm.displayName;
+                }
+                if (mm.ownedBy) {
+                    fetchedIds[mm.id].ownedBy = mm.ownedBy;
+                }
+                if (mm.maxInputTokens) {
+                    fetchedIds[mm.id].maxInputTokens = mm.maxInputTokens;
+                }
+                if (mm.maxTokens) {
+                    fetchedIds[mm.id].maxTokens = mm.maxTokens;
+                }
+            } else {
+                fetchedMapped.push(mm);
+            }
+        });
+        fetchedModels = fetchedMapped;
+    }
+
+    // 后台拉取完成的推送（provider_models）：本次编辑已拉取过同一地址时静默合并最新列表
+    function onProviderModels(evt) {
+        if (!fetchedFrom || !$formView.is(':visible') || evt.error || !evt.models) return;
+        if (fetchedFrom !== evt.apiUrl || $('#providerApiUrl').val() !== evt.apiUrl) return;
+        if (($('#providerStandard').val() || '') !== (evt.standard || '')) return;
+
+        mergeFetchedModels(evt.models);
+        loadLlmModelsCache(function () {
+            renderModelsList();
+        });
+    }
+
     // 加载 LLM 模型列表缓存
     function loadLlmModelsCache(callback) {
         $.get('/web/settings/llm/models', function (res) {
@@ -712,7 +737,8 @@
     window.settingsProviders = {
         init: init,
         loadList: loadProvidersList,
-        showList: showList
+        showList: showList,
+        onProviderModels: onProviderModels
     };
 
     // Provider API Key 显示切换
@@ -1194,6 +1194,14 @@ function handleWebGateChunk(chunk) {
         return;
     }
 
+    // 供应商模型目录推送（后台拉取完成，系统级广播）
+    if (chunk.type === 'provider_models') {
+        if (window.settingsProviders && typeof window.settingsProviders.onProviderModels === 'function') {
+            window.settingsProviders.onProviderModels(chunk);
+        }
+        return;
+    }
+
     if (!sid) return;
 
     // 即使 sess 不存在，也优先处理 todowrite（更新左侧 todo 进度）
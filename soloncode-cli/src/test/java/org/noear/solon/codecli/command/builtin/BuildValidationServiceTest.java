@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 构建验证服务 单元测试（指纹缓存、截止时间、输出尾部）
+ */
+@DisabledOnOs(OS.WINDOWS)
+class BuildValidationServiceTest {
+
+    @TempDir
+    Path workspace;
+
+    @Test
+    void unchangedWorkspaceShouldReuseVerdict() throws Exception {
+        BuildValidationService service = new BuildValidationService();
+        Files.write(workspace.resolve("A.java"), "class A {}".getBytes(StandardCharsets.UTF_8));
+        // 每次真正执行都会追加一行，用于统计执行次数（写入 target，不影响指纹）
+        Files.createDirectories(workspace.resolve("target"));
+        String command = "echo run >> target/runs.log; exit 0";
+
+        BuildValidationService.Verdict first = service.run(workspace, command, 10_000);
+        BuildValidationService.Verdict second = service.run(workspace, command, 10_000);
+
+        assertTrue(first.isPassed());
+        assertFalse(first.cached);
+        assertTrue(second.isPassed());
+        assertTrue(second.cached);
+        assertEquals(1, Files.readAllLines(workspace.resolve("target/runs.log")).size());
+
+        // 源码变化后重新执行
+        Files.write(workspace.resolve("B.java"), "class B {}".getBytes(StandardCharsets.UTF_8));
+        BuildValidationService.Verdict third = service.run(workspace, command, 10_000);
+        assertFalse(third.cached);
+        assertEquals(2, Files.readAllLines(workspace.resolve("target/runs.log")).size());
+    }
+
+    @Test
+    void fingerprintShouldIgnoreBuildOutputAndHiddenDirs() throws Exception {
+        BuildValidationService service = new BuildValidationService();
+        Files.write(workspace.resolve("pom.xml"), "<project/>".getBytes(StandardCharsets.UTF_8));
+        String before = service.fingerprint(workspace);
+
+        Files.createDirectories(workspace.resolve("target/classes"));
+        Files.write(workspace.resolve("target/classes/A.class"), new byte[]{1, 2, 3});
+        Files.createDirectories(workspace.resolve(".git"));
+        Files.write(workspace.resolve(".git/index"), new byte[]{4});
+        assertEquals(before, service.fingerprint(workspace));
+
+        Files.write(workspace.resolve("pom.xml"), "<project></project>".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(before, service.fingerprint(workspace));
+    }
+
+    @Test
+    void timedOutRunShouldNotBeCached() throws Exception {
+        BuildValidationService service = new BuildValidationService();
+        long start = System.currentTimeMillis();
+
+        BuildValidationService.Verdict verdict = service.run(workspace, "sleep 30", 300);
+
+        assertTrue(verdict.timedOut);
+        assertFalse(verdict.isPassed());
+        assertTrue(System.currentTimeMillis() - start < 5_000);
+        assertFalse(service.run(workspace, "sleep 30", 300).cached);
+    }
+
+    @Test
+    void timedOutBuildProcessShouldNotOutliveRun() throws Exception {
+        BuildValidationService service = new BuildValidationService();
+        // 模拟 mvn/gradle 这类脚本启动的构建：超时后不应继续运行并写入工作区
+        Files.write(workspace.resolve("build.sh"),
+                "sleep 1\necho late > late.txt\n".getBytes(StandardCharsets.UTF_8));
+
+        BuildValidationService.Verdict verdict = service.run(workspace, "sh build.sh", 200);
+
+        assertTrue(verdict.timedOut);
+        Thread.sleep(1_500);
+        assertFalse(Files.exists(workspace.resolve("late.txt")));
+    }
+
+    @Test
+    void onlySimpleCommandsShouldBeExecuted() {
+        assertEquals("exec mvn compile -q -o", BuildValidationService.shellCommand("mvn compile -q -o"));
+        assertEquals("a; b", BuildValidationService.shellCommand("a; b"));
+        assertEquals("a | b", BuildValidationService.shellCommand("a | b"));
+    }
+
+    @Test
+    void failureShouldKeepOutputTail() throws Exception {
+        BuildValidationService service = new BuildValidationService();
+
+        BuildValidationService.Verdict verdict = service.run(workspace,
+                "head -c 100000 /dev/zero | tr '\\0' 'x'; echo; echo 'error: boom' 1>&2; exit 2", 10_000);
+
+        assertEquals(2, verdict.exitCode);
+        assertTrue(verdict.output.trim().endsWith("error: boom"));
+        assertTrue(verdict.output.length() <= 4096);
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Goal 并行拆分 单元测试（并行执行、预算汇总、冲突检测、worktree 隔离与合并）
+ */
+class GoalFanOutTest {
+
+    @TempDir
+    Path workspace;
+
+    @TempDir
+    Path cacheDir;
+
+    private LoopTask parentGoal(long maxTokens) {
+        LoopTask parent = new LoopTask("fix all modules", 0, null, LoopTask.TaskType.GOAL, true);
+        parent.setMaxTokens(maxTokens);
+        return parent;
+    }
+
+    @Test
+    void subGoalsRunInParallelAndRollUpTokens() {
+        GoalFanOut fanOut = new GoalFanOut(new LoopPromptBuilder(3), 3, 5);
+        LoopTask parent = parentGoal(30_000);
+        // 三个子目标必须同时在执行，任一串行都会超时
+        CountDownLatch allStarted = new CountDownLatch(3);
+
+        GoalFanOut.Report report = fanOut.run(parent, Arrays.asList("fix a", "fix b", "fix c"), workspace, false,
+                (sub, prompt) -> {
+                    assertSame(sub.task, fanOut.getChildTask(sub.sessionId));
+                    allStarted.countDown();
+                    assertTrue(allStarted.await(5, TimeUnit.SECONDS), "sub-goals should run concurrently");
+                    sub.task.getGoalState().achieve();
+                    return LoopExecutionResult.fromExecution(true, 1_000, "done " + sub.index);
+                });
+
+        assertEquals(3, report.getAchievedCount());
+        assertEquals(3_000, report.getConsumedTokens());
+        assertEquals(3_000, parent.getGoalState().getConsumedTokens());
+        assertTrue(report.conflicts.isEmpty());
+        assertNull(fanOut.getChildTask(report.subGoals.get(0).sessionId), "children unregistered after run");
+        assertSame(report, fanOut.getReport(parent.getId()));
+        // 预算均分
+        assertEquals(10_000, report.subGoals.get(0).task.getGoalState().getMaxTokens());
+    }
+
+    @Test
+    void subGoalStopsAtRoundLimitOrBudget() {
+        GoalFanOut fanOut = new GoalFanOut(new LoopPromptBuilder(3), 2, 3);
+        LoopTask parent = parentGoal(20_000);
+
+        GoalFanOut.Report report = fanOut.run(parent, Arrays.asList("never done", "expensive"), workspace, false,
+                (sub, prompt) -> LoopExecutionResult.fromExecution(true, sub.index == 1 ? 100 : 12_000, "working"));
+
+        GoalFanOut.SubGoal rounds = report.subGoals.get(0);
+        GoalFanOut.SubGoal budget = report.subGoals.get(1);
+        assertEquals(3, rounds.task.getCurrentIteration());
+        assertEquals(GoalState.Status.PURSUING, rounds.task.getGoalState().getStatus());
+        assertEquals(1, budget.task.getCurrentIteration());
+        assertEquals(GoalState.Status.BUDGET_LIMITED, budget.task.getGoalState().getStatus());
+        assertEquals(12_300, parent.getGoalState().getConsumedTokens());
+    }
+
+    @Test
+    void sameFileTouchedBySeveralSubGoalsIsConflict() {
+        GoalFanOut fanOut = new GoalFanOut(new LoopPromptBuilder(3), 2, 1);
+        LoopTask parent = parentGoal(0);
+
+        GoalFanOut.Report report = fanOut.run(parent, Arrays.asList("a", "b"), workspace, false,
+                (sub, prompt) -> {
+                    sub.touchedFiles.add("shared/Util.java");
+                    sub.touchedFiles.add("own/" + sub.index + ".java");
+                    sub.task.getGoalState().achieve();
+                    return LoopExecutionResult.fromExecution(true, 10, "ok");
+                });
+
+        assertEquals(Collections.singletonMap("shared/Util.java", Arrays.asList(1, 2)), report.conflicts);
+        assertTrue(report.takeUnreviewedConflicts());
+        assertFalse(report.takeUnreviewedConflicts(), "conflicts block completion only once");
+    }
+
+    @Test
+    void touchedFileFromToolArgs() {
+        Path base = Paths.get("/work/repo");
+        Map<String, Object> args = new HashMap<>();
+        args.put("file_path", "/work/repo/src/A.java");
+
+        assertEquals("src/A.java", GoalFanOut.touchedFile("write", args, base));
+        args.put("file_path", "src/B.java");
+        assertEquals("src/B.java", GoalFanOut.touchedFile("edit", args, base));
+        assertNull(GoalFanOut.touchedFile("read", args, base));
+        assertNull(GoalFanOut.touchedFile("write", Collections.emptyMap(), base));
+    }
+
+    @Test
+    void isolatedSubGoalsSeeUncommittedWorkAndMergeBack() throws Exception {
+        initDirtyRepo();
+        Path worktrees = cacheDir.resolve("worktrees");
+        GoalFanOut fanOut = new GoalFanOut(new LoopPromptBuilder(3), 2, 1, worktrees);
+
+        GoalFanOut.Report report = fanOut.run(parentGoal(0), Arrays.asList("add a", "extend notes"), workspace, true,
+                (sub, prompt) -> {
+                    Path dir = sub.getWorkDir();
+                    assertNotNull(dir);
+                    assertTrue(dir.startsWith(worktrees), "worktree is created outside the working tree");
+                    // 快照包含未提交的修改与未跟踪文件
+                    assertEquals("v1\nlocal\n", read(dir.resolve("tracked.txt")));
+                    assertEquals("draft\n", read(dir.resolve("notes.txt")));
+
+                    if (sub.index == 1) {
+                        write(dir.resolve("a.txt"), "a\n");
+                    } else {
+                        write(dir.resolve("notes.txt"), "draft\nmore\n");
+                    }
+                    sub.task.getGoalState().achieve();
+                    return LoopExecutionResult.fromExecution(true, 10, "ok");
+                });
+
+        assertTrue(report.conflicts.isEmpty(), String.valueOf(report.conflicts));
+        assertEquals("a\n", read(workspace.resolve("a.txt")));
+        assertEquals("draft\nmore\n", read(workspace.resolve("notes.txt")));
+        assertEquals("v1\nlocal\n", read(workspace.resolve("tracked.txt")));
+        assertEquals(Collections.singleton("a.txt"), report.subGoals.get(0).touchedFiles);
+        // 合并后 worktree 已移除，真实暂存区未被改动
+        assertFalse(Files.exists(worktrees.resolve(report.subGoals.get(0).sessionId)));
+        assertEquals(0, git("diff", "--cached", "--quiet"));
+    }
+
+    @Test
+    void timedOutSubGoalIsNotMerged() throws Exception {
+        initDirtyRepo();
+        GoalFanOut fanOut = new GoalFanOut(new LoopPromptBuilder(3), 1, 1, cacheDir.resolve("worktrees"));
+        LoopTask parent = parentGoal(0);
+        parent.setMaxDurationMs(300L);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try {
+            GoalFanOut.Report report = fanOut.run(parent, Arrays.asList("slow", "never started"), workspace, true,
+                    (sub, prompt) -> {
+                        write(sub.getWorkDir().resolve("late.txt"), "late\n");
+                        // 模拟不响应中断的代理线程
+                        while (release.getCount() > 0) {
+                            try {
+                                release.await();
+                            } catch (InterruptedException ignored) {
+                            }
+                        }
+                        return LoopExecutionResult.fromExecution(true, 10, "late");
+                    });
+
+            GoalFanOut.SubGoal slow = report.subGoals.get(0);
+            assertNotNull(slow.mergeError);
+            assertNotNull(slow.error);
+            assertFalse(Files.exists(workspace.resolve("late.txt")), "running sub-goal must not be merged");
+            assertTrue(report.conflicts.containsKey("(worktree) " + slow.worktreeRoot));
+            assertTrue(Files.exists(slow.worktreeRoot), "worktree kept for review");
+            // 未开始的子目标没有改动，worktree 直接移除
+            assertNull(report.subGoals.get(1).mergeError);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void timedOutSubGoalStopsAndNoLongerRollsUpTokens() throws Exception {
+        GoalFanOut fanOut = new GoalFanOut(new LoopPromptBuilder(3), 1, 5);
+        LoopTask parent = parentGoal(0);
+        parent.setMaxDurationMs(300L);
+        CountDownLatch release = new CountDownLatch(1);
+        int[] rounds = new int[1];
+
+        GoalFanOut.Report report = fanOut.run(parent, Collections.singletonList("slow"), workspace, false,
+                (sub, prompt) -> {
+                    rounds[0]++;
+                    // 模拟不响应中断的代理线程
+                    while (release.getCount() > 0) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                    return LoopExecutionResult.fromExecution(true, 10, "late");
+                });
+
+        GoalFanOut.SubGoal slow = report.subGoals.get(0);
+        assertTrue(slow.isCancelled());
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (slow.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertFalse(slow.isRunning());
+        assertEquals(1, rounds[0], "cancelled sub-goal must not start another round");
+        assertEquals(0, parent.getGoalState().getConsumedTokens());
+    }
+
+    private void initDirtyRepo() throws Exception {
+        assumeTrue(git("init", "-q") == 0, "git not available");
+        write(workspace.resolve("tracked.txt"), "v1\n");
+        assertEquals(0, git("add", "tracked.txt"));
+        assertEquals(0, git("-c", "user.name=test", "-c", "user.email=test@localhost", "commit", "-q", "-m", "init"));
+
+        write(workspace.resolve("tracked.txt"), "v1\nlocal\n");
+        write(workspace.resolve("notes.txt"), "draft\n");
+    }
+
+    private int git(String... args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).directory(workspace.toFile()).redirectErrorStream(true).start();
+        while (process.getInputStream().read() >= 0) {
+            // drain
+        }
+        return process.waitFor();
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
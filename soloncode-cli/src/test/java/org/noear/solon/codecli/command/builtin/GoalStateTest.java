@@ -177,6 +177,29 @@ class GoalStateTest {
         assertTrue(gs.isBudgetCritical());
     }
 
+    @Test
+    void recordRoundShouldKeepPerRoundUsage() {
+        GoalState gs = new GoalState("test", 1000);
+        gs.recordRound(300);
+        gs.recordRound(100);
+        gs.recordRound(0); // 无用量的轮不记录
+
+        assertEquals(400, gs.getConsumedTokens());
+        assertEquals(java.util.Arrays.asList(300L, 100L), gs.getRoundTokens());
+        assertEquals(100, gs.getLastRoundTokens());
+        assertEquals(300, gs.getPeakRoundTokens());
+    }
+
+    @Test
+    void isNextRoundOverBudgetShouldUsePeakRound() {
+        GoalState gs = new GoalState("test", 1000);
+        gs.recordRound(400);
+        assertFalse(gs.isNextRoundOverBudget()); // 400 + 400 < 1000
+        gs.recordRound(200);
+        assertTrue(gs.isNextRoundOverBudget());  // 600 + 400 >= 1000
+        assertFalse(new GoalState("test", 0).isNextRoundOverBudget());
+    }
+
     // ===== 3. 序列化往返 =====
 
     @Test
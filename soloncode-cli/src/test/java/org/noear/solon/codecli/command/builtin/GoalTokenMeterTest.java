@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Goal 轮内 token 计量 单元测试
+ */
+class GoalTokenMeterTest {
+
+    @Test
+    void noBudgetShouldNotMeter() {
+        GoalState gs = new GoalState("test", 0);
+        assertNull(GoalTokenMeter.forRound(gs));
+        assertNull(GoalTokenMeter.forWrapUp(gs));
+    }
+
+    @Test
+    void crossingCriticalShouldFlagWithoutCancelling() {
+        GoalState gs = new GoalState("test", 10_000);
+        gs.recordRound(8_000);
+        GoalTokenMeter meter = GoalTokenMeter.forRound(gs);
+
+        assertFalse(meter.update(400, 0));
+        assertFalse(meter.isCritical());
+        assertFalse(meter.update(600, 0)); // 8000 + 600 >= 8500
+        assertTrue(meter.isCritical());
+        assertFalse(meter.isCancelled());
+        assertEquals(600, meter.getRoundTokens());
+    }
+
+    @Test
+    void hardLimitShouldCancelBeforePendingCallIsSent() {
+        GoalState gs = new GoalState("test", 10_000);
+        gs.recordRound(9_000);
+        GoalTokenMeter meter = GoalTokenMeter.forRound(gs);
+
+        assertFalse(meter.update(200, 500));
+        assertTrue(meter.update(300, 800)); // 9300 + 800 pending >= 10000
+        assertTrue(meter.isCancelled());
+        // 用量只增不减（累计值乱序到达时保留最大值）
+        assertTrue(meter.update(100, 0));
+        assertEquals(300, meter.getRoundTokens());
+    }
+
+    @Test
+    void wrapUpShouldHaveAllowanceBeyondBudget() {
+        GoalState gs = new GoalState("test", 10_000);
+        gs.recordRound(10_500);
+        GoalTokenMeter meter = GoalTokenMeter.forWrapUp(gs);
+
+        // 额外配额 max(8000, 10%) = 8000，上限 10500 + 8000
+        assertFalse(meter.update(7_000, 0));
+        assertFalse(meter.isCritical());
+        assertTrue(meter.update(8_000, 0));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 循环任务执行引擎 单元测试
+ */
+class LoopExecutorTest {
+
+    @Test
+    void concurrencyShouldBeBoundedAcrossSessions() throws Exception {
+        LoopExecutor executor = new LoopExecutor(2, 30_000, sid -> false);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(8);
+
+        for (int i = 0; i < 8; i++) {
+            executor.submit("s" + i, "t", LoopExecutor.PRIORITY_SCHEDULED, () -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(50);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, peak.get());
+        assertEquals(8L, executor.getMetrics().get("completed"));
+    }
+
+    @Test
+    void sameSessionShouldRunSerially() throws Exception {
+        LoopExecutor executor = new LoopExecutor(4, 30_000, sid -> false);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(3);
+
+        for (int i = 0; i < 3; i++) {
+            executor.submit("s", "t" + i, LoopExecutor.PRIORITY_SCHEDULED, () -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(30);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, peak.get());
+    }
+
+    @Test
+    void busySessionShouldBeQueuedNotDropped() throws Exception {
+        AtomicBoolean busy = new AtomicBoolean(true);
+        LoopExecutor executor = new LoopExecutor(2, 30_000, sid -> busy.get());
+        CountDownLatch done = new CountDownLatch(1);
+
+        executor.submit("s", "t", LoopExecutor.PRIORITY_SCHEDULED, done::countDown);
+        // 繁忙期间的重复触发合并为一个
+        executor.submit("s", "t", LoopExecutor.PRIORITY_SCHEDULED, done::countDown);
+
+        assertFalse(done.await(300, TimeUnit.MILLISECONDS));
+        Map<String, Object> metrics = executor.getMetrics();
+        assertEquals(1, metrics.get("queueDepth"));
+        assertEquals(1L, metrics.get("coalesced"));
+
+        busy.set(false);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void higherPriorityShouldRunFirst() throws Exception {
+        AtomicBoolean busy = new AtomicBoolean(true);
+        LoopExecutor executor = new LoopExecutor(1, 30_000, sid -> busy.get());
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+
+        executor.submit("a", "t", LoopExecutor.PRIORITY_SCHEDULED, () -> {
+            order.add("a");
+            done.countDown();
+        });
+        executor.submit("b", "t", LoopExecutor.PRIORITY_MANUAL, () -> {
+            order.add("b");
+            done.countDown();
+        });
+
+        busy.set(false);
+        executor.dispatch();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("b", order.get(0));
+    }
+
+    @Test
+    void waitingShouldAgePriority() {
+        LoopExecutor executor = new LoopExecutor(1, 1_000, sid -> false);
+        LoopExecutor.Job job = new LoopExecutor.Job("s/t", "s", LoopExecutor.PRIORITY_SCHEDULED, () -> {
+        });
+
+        assertEquals(0, executor.effectivePriority(job, job.enqueuedAt));
+        assertEquals(3, executor.effectivePriority(job, job.enqueuedAt + 3_500));
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
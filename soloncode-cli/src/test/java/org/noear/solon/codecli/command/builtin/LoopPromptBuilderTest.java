@@ -200,6 +200,43 @@ class LoopPromptBuilderTest {
         assertEquals("check status", result, "heartbeat should return prompt unchanged");
     }
 
+    // ===== 稳定前缀（前缀缓存友好） =====
+
+    @Test
+    void stablePrefixIsByteIdenticalAcrossRounds() {
+        // 同一模式下，迭代次数、预算消耗、上一轮摘要变化都不应影响稳定前缀
+        LoopTask round1 = createGoalTask(10000, 1000, 0);
+        LoopTask round3 = createGoalTask(10000, 2500, 2);
+        round3.updateLastExecution("previous step result");
+        round3.recordStagnation();
+        round3.recordStagnation();
+        round3.recordStagnation();
+
+        String prefix1 = builder.buildStablePrefix(round1);
+        String prefix3 = builder.buildStablePrefix(round3);
+        assertEquals(prefix1, prefix3, "stable prefix should not change between rounds");
+
+        // 变化内容全部位于前缀之后
+        String result = builder.buildEffectivePrompt(round3);
+        assertTrue(result.startsWith(prefix3), "effective prompt should start with stable prefix");
+        String state = result.substring(prefix3.length());
+        assertTrue(state.startsWith("--- 当前状态 (Round State) ---"), "state block should follow the prefix");
+        assertTrue(state.contains("已消耗 2.5k / 10.0k"), "budget info belongs to state block");
+        assertTrue(state.contains("上一轮执行摘要（第 2 轮）"), "last summary belongs to state block");
+        assertTrue(state.contains("进展质疑 (Stagnation Check)"), "stagnation check belongs to state block");
+        assertFalse(prefix3.contains("已消耗"), "prefix should not contain budget info");
+    }
+
+    @Test
+    void stablePrefixChangesOnlyWithMode() {
+        LoopTask full = createGoalTask(10000, 2000, 0);
+        LoopTask compact = createGoalTask(10000, 8000, 0);
+        LoopTask compactLater = createGoalTask(10000, 8400, 4);
+
+        assertNotEquals(builder.buildStablePrefix(full), builder.buildStablePrefix(compact));
+        assertEquals(builder.buildStablePrefix(compact), builder.buildStablePrefix(compactLater));
+    }
+
     // ===== budgetRatio 工具方法 =====
 
     @Test
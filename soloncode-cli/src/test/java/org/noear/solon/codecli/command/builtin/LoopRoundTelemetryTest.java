@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.codecli.util.TokenCost;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Goal 逐轮遥测 单元测试（前缀稳定性、费用估算、汇总）
+ */
+class LoopRoundTelemetryTest {
+
+    @Test
+    void prefixStabilityDetectedFromSecondRound() {
+        LoopRoundTelemetry telemetry = new LoopRoundTelemetry();
+
+        LoopRoundTelemetry.Round r1 = telemetry.record("t1", 1, "prefix", "state-1", 1000, 1000, 2000);
+        LoopRoundTelemetry.Round r2 = telemetry.record("t1", 2, "prefix", "state-22", 1000, 0, 1000);
+        LoopRoundTelemetry.Round r3 = telemetry.record("t1", 3, "prefix-compact", "s", 0, 0, 500);
+
+        assertFalse(r1.prefixStable);
+        assertTrue(r2.prefixStable);
+        assertFalse(r3.prefixStable);
+        assertEquals(0.018, r1.estimatedCostUsd, 0.000001);
+        assertEquals(6, r1.prefixChars);
+        assertEquals(8, r2.stateChars);
+    }
+
+    @Test
+    void summaryAndClear() {
+        LoopRoundTelemetry telemetry = new LoopRoundTelemetry();
+        telemetry.record("t1", 1, "p", "s", 1000, 0, 1000);
+        telemetry.record("t1", 2, "p", "s", 1000, 0, 1000);
+        telemetry.record("t2", 1, "q", "s", 0, 1000, 1000);
+
+        Map<String, Object> summary = telemetry.getSummary();
+        assertEquals(3, summary.get("rounds"));
+        assertEquals(1, summary.get("prefixStableRounds"));
+        assertEquals(2000L, summary.get("promptTokens"));
+
+        List<Map<String, Object>> rounds = telemetry.getRounds("t1");
+        assertEquals(2, rounds.size());
+        assertEquals(true, rounds.get(1).get("prefixStable"));
+
+        telemetry.clear("t1");
+        assertTrue(telemetry.getRounds("t1").isEmpty());
+        // 清除后重新开始，不再视为稳定
+        assertFalse(telemetry.record("t1", 3, "p", "s", 0, 0, 1).prefixStable);
+    }
+
+    @Test
+    void costUsesModelRate() {
+        LoopRoundTelemetry telemetry = new LoopRoundTelemetry();
+        TokenCost.Rate rate = new TokenCost.Rate(1.0, 2.0, false);
+
+        LoopRoundTelemetry.Round round = telemetry.record("t1", 1, "p", "s", 1000, 500, 1500, rate);
+        assertEquals(2.0, round.estimatedCostUsd, 0.000001);
+        assertEquals(2.0, (Double) telemetry.getSummary().get("estimatedCostUsd"), 0.000001);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 循环任务会话登记表 单元测试
+ */
+class LoopSessionRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void membershipShouldPersist() {
+        Path file = tempDir.resolve("loops").resolve("sessions.json");
+        LoopSessionRegistry registry = new LoopSessionRegistry(file);
+        assertFalse(registry.exists());
+
+        registry.add("web-a");
+        registry.add("web-b");
+        registry.add("web-a");
+        registry.remove("web-b");
+
+        LoopSessionRegistry reloaded = new LoopSessionRegistry(file);
+        assertTrue(reloaded.exists());
+        assertEquals(Collections.singletonList("web-a"), reloaded.list());
+    }
+
+    @Test
+    void resetShouldReplaceMembers() {
+        Path file = tempDir.resolve("sessions.json");
+        LoopSessionRegistry registry = new LoopSessionRegistry(file);
+        registry.add("old");
+
+        registry.reset(Arrays.asList("a", "b"));
+
+        assertEquals(Arrays.asList("a", "b"), new LoopSessionRegistry(file).list());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.noear.snack4.ONode;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 循环任务快照 + 追加日志 单元测试
+ */
+class LoopTaskJournalTest {
+
+    @TempDir
+    Path sessionDir;
+
+    @Test
+    void roundUpdatesShouldAppendSmallPatches() throws Exception {
+        LoopTask task = new LoopTask("test prompt", 0, null, LoopTask.TaskType.GOAL, true);
+        List<LoopTask> tasks = new ArrayList<>(Collections.singletonList(task));
+
+        LoopTaskJournal journal = new LoopTaskJournal(sessionDir);
+        journal.save(tasks);
+        long afterPut = Files.size(journalFile());
+
+        task.incrementIteration();
+        task.getGoalState().addTokens(1200);
+        journal.save(tasks);
+        long patchSize = Files.size(journalFile()) - afterPut;
+
+        // 未变化时不写入
+        journal.save(tasks);
+        assertEquals(afterPut + patchSize, Files.size(journalFile()));
+        assertTrue(patchSize < afterPut, "patch should be smaller than the full task");
+        assertFalse(Files.exists(sessionDir.resolve(LoopTaskJournal.SNAPSHOT_FILE)));
+
+        List<ONode> loaded = new LoopTaskJournal(sessionDir).load();
+        assertEquals(1, loaded.size());
+        LoopTask restored = LoopTask.fromONode(loaded.get(0));
+        assertEquals(1, restored.getCurrentIteration());
+        assertEquals(1200, restored.getGoalState().getConsumedTokens());
+    }
+
+    @Test
+    void removedTaskShouldNotBeRestored() throws Exception {
+        LoopTask a = new LoopTask("a", 5);
+        LoopTask b = new LoopTask("b", 5);
+        List<LoopTask> tasks = new ArrayList<>();
+        tasks.add(a);
+        tasks.add(b);
+
+        LoopTaskJournal journal = new LoopTaskJournal(sessionDir);
+        journal.save(tasks);
+        tasks.remove(a);
+        journal.save(tasks);
+
+        List<ONode> loaded = new LoopTaskJournal(sessionDir).load();
+        assertEquals(1, loaded.size());
+        assertEquals(b.getId(), loaded.get(0).get("id").getString());
+    }
+
+    @Test
+    void saveWithoutLoadShouldOverwriteStaleState() throws Exception {
+        LoopTask a = new LoopTask("a", 5);
+        LoopTask b = new LoopTask("b", 5);
+        List<LoopTask> tasks = new ArrayList<>();
+        tasks.add(a);
+        tasks.add(b);
+        new LoopTaskJournal(sessionDir).save(tasks);
+
+        // 新实例未 load 就保存：b 已删除，不能在恢复时复活
+        tasks.remove(b);
+        new LoopTaskJournal(sessionDir).save(tasks);
+
+        List<ONode> loaded = new LoopTaskJournal(sessionDir).load();
+        assertEquals(1, loaded.size());
+        assertEquals(a.getId(), loaded.get(0).get("id").getString());
+        assertFalse(Files.exists(journalFile()));
+    }
+
+    @Test
+    void tornTailShouldBeTruncated() throws Exception {
+        LoopTask task = new LoopTask("test prompt", 0, null, LoopTask.TaskType.GOAL, true);
+        List<LoopTask> tasks = new ArrayList<>(Collections.singletonList(task));
+
+        new LoopTaskJournal(sessionDir).save(tasks);
+        long validSize = Files.size(journalFile());
+
+        // 模拟写入中途崩溃：一条不完整的记录
+        Files.write(journalFile(), "0badc0de {\"op\":\"patch\",\"id\":".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        LoopTaskJournal journal = new LoopTaskJournal(sessionDir);
+        List<ONode> loaded = journal.load();
+        assertEquals(1, loaded.size());
+        assertEquals(validSize, Files.size(journalFile()));
+
+        // 截断后可继续追加并回放
+        task.incrementIteration();
+        journal.save(tasks);
+        LoopTask restored = LoopTask.fromONode(new LoopTaskJournal(sessionDir).load().get(0));
+        assertEquals(1, restored.getCurrentIteration());
+    }
+
+    @Test
+    void journalShouldCompactIntoSnapshot() throws Exception {
+        LoopTask task = new LoopTask("test prompt", 0, null, LoopTask.TaskType.GOAL, true);
+        List<LoopTask> tasks = new ArrayList<>(Collections.singletonList(task));
+
+        LoopTaskJournal journal = new LoopTaskJournal(sessionDir);
+        for (int i = 0; i < 300; i++) {
+            task.incrementIteration();
+            journal.save(tasks);
+        }
+
+        assertTrue(Files.exists(sessionDir.resolve(LoopTaskJournal.SNAPSHOT_FILE)));
+        assertTrue(Files.size(journalFile()) < 300 * 64);
+
+        LoopTask restored = LoopTask.fromONode(new LoopTaskJournal(sessionDir).load().get(0));
+        assertEquals(300, restored.getCurrentIteration());
+    }
+
+    @Test
+    void lineChecksumShouldRejectCorruption() {
+        String line = new String(LoopTaskJournal.encodeLine("{\"op\":\"del\",\"id\":\"x\"}"), StandardCharsets.UTF_8).trim();
+
+        assertEquals("{\"op\":\"del\",\"id\":\"x\"}", LoopTaskJournal.decodeLine(line));
+        assertNull(LoopTaskJournal.decodeLine(line.replace("\"x\"", "\"y\"")));
+        assertNull(LoopTaskJournal.decodeLine("garbage"));
+    }
+
+    private Path journalFile() {
+        return sessionDir.resolve(LoopTaskJournal.JOURNAL_FILE);
+    }
+}
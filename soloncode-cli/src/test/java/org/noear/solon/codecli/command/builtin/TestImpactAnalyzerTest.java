@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.command.builtin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 测试影响分析 单元测试
+ */
+class TestImpactAnalyzerTest {
+
+    @TempDir
+    Path workspace;
+
+    private TestImpactAnalyzer newAnalyzer() throws IOException {
+        write("src/test/java/a/b/FooTest.java", "package a.b;\nclass FooTest { }");
+        write("src/test/java/a/b/SameTest.java", "package a.b;\nclass SameTest { Bar bar; }");
+        write("src/test/java/x/ImportTest.java", "package x;\nimport a.b.Baz;\nclass ImportTest { }");
+        write("src/test/java/x/WildcardTest.java", "package x;\nimport a.c.*;\nclass WildcardTest { }");
+        return new TestImpactAnalyzer(workspace, workspace.resolve(".cache/test-impact.json"));
+    }
+
+    @Test
+    void namingPackageAndImportHeuristics() throws Exception {
+        TestImpactAnalyzer analyzer = newAnalyzer();
+
+        assertEquals(Collections.singleton("a.b.FooTest"),
+                analyzer.selectTests(Collections.singletonList("src/main/java/a/b/Foo.java")));
+        assertEquals(Collections.singleton("a.b.SameTest"),
+                analyzer.selectTests(Collections.singletonList("src/main/java/a/b/Bar.java")));
+        assertEquals(Collections.singleton("x.ImportTest"),
+                analyzer.selectTests(Collections.singletonList("src/main/java/a/b/Baz.java")));
+        assertEquals(Collections.singleton("x.WildcardTest"),
+                analyzer.selectTests(Collections.singletonList("mod/src/main/java/a/c/Qux.java")));
+    }
+
+    @Test
+    void changedTestsAndDocsShouldNotForceFullSuite() throws Exception {
+        TestImpactAnalyzer analyzer = newAnalyzer();
+
+        Set<String> selected = analyzer.selectTests(Arrays.asList(
+                "src/test/java/x/ImportTest.java",
+                "src/test/java/x/RemovedTest.java",
+                "README.md",
+                ".soloncode/cache/test-impact.json"));
+
+        assertEquals(Collections.singleton("x.ImportTest"), selected);
+    }
+
+    @Test
+    void unmappableChangeShouldRequireFullSuite() throws Exception {
+        TestImpactAnalyzer analyzer = newAnalyzer();
+
+        assertNull(analyzer.selectTests(Arrays.asList("src/main/java/a/b/Foo.java", "pom.xml")));
+        assertNull(analyzer.selectTests(Collections.singletonList("src/main/resources/app.yml")));
+    }
+
+    @Test
+    void watchedChangesCoveredByFullSuiteAreCleared() throws Exception {
+        TestImpactAnalyzer analyzer = newAnalyzer();
+
+        analyzer.recordChanges(Collections.singletonList("src/main/java/a/b/Foo.java"));
+        assertEquals(Collections.singleton("a.b.FooTest"), analyzer.selectTests());
+
+        // 选择测试之后才记录的变更，不随本次全量通过而清除
+        analyzer.recordChanges(Collections.singletonList("src/main/java/a/b/Bar.java"));
+        analyzer.markFullSuitePassed();
+        assertEquals(Collections.singleton("a.b.SameTest"), analyzer.selectTests());
+    }
+
+    @Test
+    void gitWorkspaceShouldNotRecordChanges() throws Exception {
+        TestImpactAnalyzer analyzer = newAnalyzer();
+        Process git = new ProcessBuilder("git", "init", "-q").directory(workspace.toFile()).start();
+        assumeTrue(git.waitFor() == 0);
+
+        analyzer.recordChanges(Collections.singletonList("src/main/java/a/b/Foo.java"));
+        // 仓库尚无提交，git 不可用作变更来源；监听变更也未被记录
+        assertNull(analyzer.selectTests());
+    }
+
+    @Test
+    void mainClassNameFromPath() {
+        assertEquals("a.b.Foo", TestImpactAnalyzer.mainClassName("src/main/java/a/b/Foo.java"));
+        assertEquals("a.Foo", TestImpactAnalyzer.mainClassName("mod/src/main/kotlin/a/Foo.kt"));
+        assertNull(TestImpactAnalyzer.mainClassName("src/main/resources/Foo.java.txt"));
+        assertNull(TestImpactAnalyzer.mainClassName("web/app.js"));
+    }
+
+    @Test
+    void selectedCommands() {
+        Set<String> tests = new LinkedHashSet<>(Arrays.asList("a.b.FooTest", "x.ImportTest"));
+
+        assertEquals("mvn test -Dtest=FooTest,ImportTest -Dsurefire.failIfNoSpecifiedTests=false -DfailIfNoTests=false",
+                TestsPassValidator.mavenSelectedCommand("mvn", tests));
+        assertEquals("gradle test --daemon --tests a.b.FooTest --tests x.ImportTest",
+                TestsPassValidator.gradleSelectedCommand("gradle", tests));
+    }
+
+    private void write(String rel, String content) throws IOException {
+        Path file = workspace.resolve(rel);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,178 @@
+package org.noear.solon.codecli.config.models;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.codecli.config.models.ModelCatalogService.Snapshot;
+import org.noear.solon.codecli.config.models.ModelCatalogService.Source;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ModelCatalogService 单元测试（缓存、后台刷新、并发拉取与截止时间）
+ */
+public class ModelCatalogServiceTest {
+
+    @Test
+    public void testFreshCacheIsNotRefetched() {
+        FakeAdapter adapter = new FakeAdapter();
+        adapter.models.put("http://a", Arrays.asList("m2", "m1"));
+
+        ModelCatalogService catalog = new ModelCatalogService(std -> adapter, 60_000, 5_000, 2);
+        Source source = new Source("a", "openai", "http://a", "k");
+
+        Snapshot first = catalog.get(source, "ua", false, null);
+        Snapshot second = catalog.get(source, "ua", false, null);
+
+        assertEquals(Arrays.asList("m1", "m2"), ids(first));
+        assertFalse(second.isStale());
+        assertEquals(1, adapter.calls.get());
+
+        catalog.get(source, "ua", true, null);
+        assertEquals(2, adapter.calls.get());
+    }
+
+    @Test
+    public void testStaleCacheIsServedThenRevalidated() throws Exception {
+        FakeAdapter adapter = new FakeAdapter();
+        adapter.models.put("http://a", Collections.singletonList("old"));
+
+        ModelCatalogService catalog = new ModelCatalogService(std -> adapter, 0, 5_000, 2);
+        Source source = new Source("a", "openai", "http://a", "k");
+        catalog.get(source, "ua", false, null);
+
+        adapter.models.put("http://a", Collections.singletonList("new"));
+        CountDownLatch fresh = new CountDownLatch(1);
+        List<Snapshot> pushed = new CopyOnWriteArrayList<>();
+
+        Snapshot served = catalog.get(source, "ua", false, (s, snapshot) -> {
+            pushed.add(snapshot);
+            fresh.countDown();
+        });
+
+        assertTrue(served.isStale());
+        assertEquals(Collections.singletonList("old"), ids(served));
+
+        assertTrue(fresh.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("new"), ids(pushed.get(0)));
+    }
+
+    @Test
+    public void testFailedFetchKeepsPreviousModels() {
+        FakeAdapter adapter = new FakeAdapter();
+        adapter.models.put("http://a", Collections.singletonList("m1"));
+
+        ModelCatalogService catalog = new ModelCatalogService(std -> adapter, 60_000, 5_000, 2);
+        Source source = new Source("a", "openai", "http://a", "k");
+        catalog.get(source, "ua", false, null);
+
+        // 适配器出错时返回空列表
+        adapter.models.put("http://a", Collections.emptyList());
+        Snapshot snapshot = catalog.get(source, "ua", true, null);
+
+        assertTrue(snapshot.isStale());
+        assertNotNull(snapshot.getError());
+        assertEquals(Collections.singletonList("m1"), ids(snapshot));
+    }
+
+    @Test
+    public void testFetchAllDoesNotWaitForSlowProvider() throws Exception {
+        FakeAdapter adapter = new FakeAdapter();
+        adapter.models.put("http://fast", Collections.singletonList("f1"));
+        adapter.models.put("http://slow", Collections.singletonList("s1"));
+        adapter.delays.put("http://slow", 2_000L);
+
+        ModelCatalogService catalog = new ModelCatalogService(std -> adapter, 60_000, 300, 4);
+        List<Source> sources = Arrays.asList(
+                new Source("slow", "openai", "http://slow", null),
+                new Source("fast", "openai", "http://fast", null));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        Map<String, Snapshot> results = new ConcurrentHashMap<>();
+
+        long startAt = System.currentTimeMillis();
+        catalog.fetchAll(sources, "ua", false, (source, snapshot) -> {
+            order.add(source.getName());
+            results.put(source.getName(), snapshot);
+        }).get(5, TimeUnit.SECONDS);
+
+        assertTrue(System.currentTimeMillis() - startAt < 1_500, "deadline should cut off the slow provider");
+        assertEquals(Arrays.asList("fast", "slow"), order);
+        assertEquals(Collections.singletonList("f1"), ids(results.get("fast")));
+        assertTrue(results.get("slow").getModels().isEmpty());
+        assertNotNull(results.get("slow").getError());
+    }
+
+    @Test
+    public void testQueuedProviderIsNotTimedOutWhileWaiting() throws Exception {
+        FakeAdapter adapter = new FakeAdapter();
+        adapter.models.put("http://slow", Collections.singletonList("s1"));
+        adapter.models.put("http://queued", Collections.singletonList("q1"));
+        adapter.delays.put("http://slow", 500L);
+
+        // 单个工作线程：queued 需等 slow 结束才开始拉取，等待时间超过截止时间
+        ModelCatalogService catalog = new ModelCatalogService(std -> adapter, 60_000, 300, 1);
+        List<Source> sources = Arrays.asList(
+                new Source("slow", "openai", "http://slow", null),
+                new Source("queued", "openai", "http://queued", null));
+
+        Map<String, Snapshot> results = new ConcurrentHashMap<>();
+        catalog.fetchAll(sources, "ua", false, (source, snapshot) -> results.put(source.getName(), snapshot))
+                .get(5, TimeUnit.SECONDS);
+
+        assertNotNull(results.get("slow").getError());
+        assertNull(results.get("queued").getError());
+        assertEquals(Collections.singletonList("q1"), ids(results.get("queued")));
+    }
+
+    private static List<String> ids(Snapshot snapshot) {
+        List<String> ids = new ArrayList<>();
+        for (ModelInfo m : snapshot.getModels()) {
+            ids.add(m.getId());
+        }
+        return ids;
+    }
+
+    static class FakeAdapter implements ModelsAdapter {
+        final Map<String, List<String>> models = new ConcurrentHashMap<>();
+        final Map<String, Long> delays = new ConcurrentHashMap<>();
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String getStandard() {
+            return "openai";
+        }
+
+        @Override
+        public List<ModelInfo> fetchModels(String userAgent, String baseUrl, Map<String, String> headers, String apiKey) {
+            calls.incrementAndGet();
+
+            Long delay = delays.get(baseUrl);
+            if (delay != null) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            List<ModelInfo> result = new ArrayList<>();
+            for (String id : models.getOrDefault(baseUrl, Collections.emptyList())) {
+                ModelInfo info = new ModelInfo();
+                info.setId(id);
+                result.add(info);
+            }
+            return result;
+        }
+
+        @Override
+        public String deriveBaseUrl(String apiUrl) {
+            return apiUrl;
+        }
+    }
+}
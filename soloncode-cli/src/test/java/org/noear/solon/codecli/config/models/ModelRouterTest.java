@@ -0,0 +1,206 @@
+package org.noear.solon.codecli.config.models;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.codecli.config.entity.ModelGroupDo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ModelRouter 单元测试（成员选择、会话固定与切换、探针统计、对冲）
+ */
+public class ModelRouterTest {
+
+    @Test
+    public void testPlainModelIsNotRouted() {
+        ModelRouter router = newRouter(new AtomicLong(1_000), group("a", "b"));
+
+        assertEquals("other", router.route("other", "s1", m -> true));
+        assertNull(router.route(null, "s1", m -> true));
+        assertEquals("a", router.route("fast", "s1", m -> true));
+        // 不可用的成员被跳过
+        assertEquals("b", router.route("fast", "s2", m -> "a".equals(m) == false));
+    }
+
+    @Test
+    public void testFailoverAfterConsecutiveErrors() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ModelRouter router = newRouter(clock, group("a", "b"));
+
+        assertEquals("a", router.route("fast", "s1", m -> true));
+
+        router.probe("a").failed();
+        assertEquals("a", router.route("fast", "s1", m -> true));
+
+        router.probe("a").failed();
+        assertEquals("b", router.route("fast", "s1", m -> true));
+
+        // 冷却结束后 a 可被试探，但已切换的会话保持在 b 上
+        clock.addAndGet(ModelRouter.COOLDOWN_MS);
+        assertEquals("b", router.route("fast", "s1", m -> true));
+    }
+
+    @Test
+    public void testClearlyFasterMemberIsPreferred() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ModelRouter router = newRouter(clock, group("a", "b"));
+
+        for (int i = 0; i < 5; i++) {
+            call(router.probe("a"), clock, 3_000, 2_000, 400);
+            call(router.probe("b"), clock, 400, 1_000, 4_000);
+        }
+
+        assertEquals("b", router.route("fast", "new-session", m -> true));
+        assertEquals(Arrays.asList("b", "a"), router.rank(router.getGroup("fast"), m -> true));
+    }
+
+    @Test
+    public void testProbeRecordsTtft() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ModelRouter router = newRouter(clock, group("a"));
+
+        for (int i = 0; i < ModelRouter.MIN_HEDGE_SAMPLES; i++) {
+            call(router.probe("a"), clock, 200 + i * 100, 500, 1_000);
+        }
+
+        assertEquals(600, router.health("a").ttftPercentile(100, clock.get()));
+        assertEquals(400, router.health("a").ttftPercentile(50, clock.get()));
+        assertEquals(0.0, router.health("a").errorRate(clock.get()));
+    }
+
+    @Test
+    public void testSideTasksDoNotRecordTtft() throws Exception {
+        AtomicLong clock = new AtomicLong(1_000);
+        ModelRouter router = newRouter(clock, group("a"));
+
+        for (int i = 0; i < ModelRouter.MIN_HEDGE_SAMPLES; i++) {
+            call(router.probe("a"), clock, 200, 500, 1_000);
+        }
+        double score = router.health("a").score(clock.get());
+
+        // 非流式辅助调用的整体耗时不计入 TTFT 与评分
+        for (int i = 0; i < ModelRouter.MIN_HEDGE_SAMPLES; i++) {
+            assertEquals("ok", router.hedge("fast", null, m -> true, member -> {
+                clock.addAndGet(10_000);
+                return "ok";
+            }));
+        }
+        assertEquals(200, router.health("a").ttftPercentile(100, clock.get()));
+        assertEquals(score, router.health("a").score(clock.get()), 1e-9);
+
+        // 失败仍计入错误率
+        assertThrows(IllegalStateException.class, () -> router.hedge("fast", null, m -> true, member -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertTrue(router.health("a").errorRate(clock.get()) > 0);
+    }
+
+    @Test
+    public void testHedgeReturnsBackupWhenPrimaryIsSlow() throws Exception {
+        ModelGroupDo group = group("a", "b");
+        group.setHedge(true);
+        ModelRouter router = new ModelRouter(System::currentTimeMillis);
+        router.setGroups(() -> Collections.singletonMap("fast", group));
+
+        for (int i = 0; i < ModelRouter.MIN_HEDGE_SAMPLES; i++) {
+            router.health("a").completed(System.currentTimeMillis(), 50);
+        }
+
+        long startAt = System.currentTimeMillis();
+        String result = router.hedge("fast", null, m -> true, member -> {
+            if ("a".equals(member)) {
+                sleep(3_000);
+            }
+            return member;
+        });
+
+        assertEquals("b", result);
+        assertTrue(System.currentTimeMillis() - startAt < 2_000);
+    }
+
+    @Test
+    public void testNoHedgeWithoutEnoughSamples() throws Exception {
+        ModelGroupDo group = group("a", "b");
+        group.setHedge(true);
+        ModelRouter router = new ModelRouter(System::currentTimeMillis);
+        router.setGroups(() -> Collections.singletonMap("fast", group));
+
+        assertEquals("a", router.hedge("fast", null, m -> true, member -> member));
+    }
+
+    @Test
+    public void testHedgeDeadlineIgnoresStreamingTtft() throws Exception {
+        AtomicLong clock = new AtomicLong(1_000);
+        ModelGroupDo group = group("a", "b");
+        group.setHedge(true);
+        ModelRouter router = newRouter(clock, group);
+
+        // 流式 TTFT 很短，但非流式辅助调用需要完整生成：不能据 TTFT 对冲
+        for (int i = 0; i < ModelRouter.MIN_HEDGE_SAMPLES; i++) {
+            call(router.probe("a"), clock, 50, 500, 1_000);
+        }
+        assertEquals(-1, router.health("a").durationPercentile(90, clock.get()));
+
+        for (int i = 0; i < ModelRouter.MIN_HEDGE_SAMPLES; i++) {
+            assertEquals("a", router.hedge("fast", null, m -> true, member -> {
+                clock.addAndGet(2_000);
+                return member;
+            }));
+        }
+        assertEquals(2_000, router.health("a").durationPercentile(90, clock.get()));
+    }
+
+    @Test
+    public void testPinnedSessionsAreEvictedLeastRecentlyUsed() {
+        AtomicLong clock = new AtomicLong(1_000);
+        ModelRouter router = newRouter(clock, group("a", "b"));
+
+        assertEquals("a", router.route("fast", "active", m -> true));
+
+        // b 明显更快：新会话选 b，已固定的会话仍留在 a
+        for (int i = 0; i < 5; i++) {
+            call(router.probe("a"), clock, 3_000, 2_000, 400);
+            call(router.probe("b"), clock, 400, 1_000, 4_000);
+        }
+        for (int i = 0; i < 2_000; i++) {
+            router.route("fast", "other-" + i, m -> true);
+            if (i % 100 == 0) {
+                assertEquals("a", router.route("fast", "active", m -> true));
+            }
+        }
+
+        assertEquals("a", router.route("fast", "active", m -> true));
+    }
+
+    private static void call(ModelRouter.Probe probe, AtomicLong clock, long ttftMs, long genMs, int chars) {
+        probe.callStart();
+        clock.addAndGet(ttftMs);
+        probe.output(chars / 2);
+        clock.addAndGet(genMs);
+        probe.output(chars - chars / 2);
+        probe.callEnd();
+    }
+
+    private static ModelRouter newRouter(AtomicLong clock, ModelGroupDo group) {
+        ModelRouter router = new ModelRouter(clock::get);
+        router.setGroups(() -> Collections.singletonMap("fast", group));
+        return router;
+    }
+
+    private static ModelGroupDo group(String... members) {
+        ModelGroupDo group = new ModelGroupDo();
+        group.setMembers(Arrays.asList(members));
+        return group;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.noear.solon.codecli.config.models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.noear.solon.codecli.config.models.ModelSpecService.ModelSpec;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ModelSpecService 单元测试（索引、别名、磁盘缓存）
+ */
+public class ModelSpecServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testAliasesStripProviderDateAndLatest() {
+        assertEquals(Arrays.asList("anthropic/claude-sonnet-4.5-20250929", "claude-sonnet-4.5-20250929",
+                        "claude-sonnet-4.5", "claude-sonnet-4-5"),
+                ModelSpecService.aliasesOf(" Anthropic/Claude-Sonnet-4.5-20250929 "));
+
+        assertEquals(Arrays.asList("gpt-4o-2024-08-06", "gpt-4o"), ModelSpecService.aliasesOf("gpt-4o-2024-08-06"));
+        assertEquals(Arrays.asList("claude-3-5-haiku-latest", "claude-3-5-haiku"), ModelSpecService.aliasesOf("claude-3-5-haiku-latest"));
+    }
+
+    @Test
+    public void testIndexPrefersIdOverNameAndAlias() {
+        Map<String, ModelSpec> specs = new LinkedHashMap<>();
+        specs.put("claude-sonnet-4-5", spec("claude-sonnet-4-5", "Claude Sonnet 4.5", 200_000));
+        specs.put("claude-sonnet-4-5-20250929", spec("claude-sonnet-4-5-20250929", "Claude Sonnet 4.5 (dated)", 1_000_000));
+        specs.put("gpt-4o", spec("gpt-4o", "GPT-4o", 128_000));
+
+        Map<String, ModelSpec> index = ModelSpecService.buildIndex(specs);
+
+        // 精确 id 命中，不被其它规格的别名覆盖
+        assertEquals(200_000, index.get("claude-sonnet-4-5").getContext());
+        assertEquals(1_000_000, index.get("claude-sonnet-4-5-20250929").getContext());
+        // 名称忽略大小写
+        assertEquals("gpt-4o", index.get("gpt-4o").getId());
+        assertEquals("gpt-4o", index.get(ModelSpecService.normalize("GPT-4o ")).getId());
+    }
+
+    @Test
+    public void testLookupFromDiskCacheWithoutNetwork() throws Exception {
+        Files.write(tempDir.resolve(ModelSpecService.CACHE_FILE),
+                ("{\"claude-haiku-4-5\":{\"id\":\"claude-haiku-4-5\",\"name\":\"Claude Haiku 4.5\","
+                        + "\"limit\":{\"context\":200000,\"output\":64000},\"cost\":{\"input\":1,\"output\":5}}}")
+                        .getBytes(StandardCharsets.UTF_8));
+        // 缓存仍在有效期内：不发起重新验证
+        Files.write(tempDir.resolve(ModelSpecService.CACHE_META_FILE),
+                ("fetched_at=" + System.currentTimeMillis() + "\n").getBytes(StandardCharsets.UTF_8));
+
+        ModelSpecService service = new ModelSpecService(tempDir);
+
+        assertEquals(200_000L, service.getContextLength("anthropic/claude-haiku-4-5-20251001"));
+        assertEquals(200_000L, service.getContextLength("Claude Haiku 4.5"));
+        assertEquals(5.0, service.findSpec("claude-haiku-4.5").getCostOutput(), 1e-9);
+        assertNull(service.findSpec("unknown-model"));
+        assertNull(service.getContextLength(""));
+    }
+
+    private static ModelSpec spec(String id, String name, long context) {
+        ModelSpec spec = new ModelSpec();
+        spec.setId(id);
+        spec.setName(name);
+        spec.setContext(context);
+        return spec;
+    }
+}
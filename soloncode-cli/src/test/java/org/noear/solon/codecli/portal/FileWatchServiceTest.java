@@ -285,6 +285,39 @@ public class FileWatchServiceTest {
         assertTrue(received.isEmpty(), "no changes should be received from excluded dir");
     }
 
+    /**
+     * 测试：.git 元数据（index、分支引用）变化通知 git 监听器，且不进入文件树变更
+     */
+    @Test
+    public void testGitMetaListener() throws Exception {
+        Path gitDir = tempRoot.resolve(".git");
+        Files.createDirectories(gitDir.resolve("refs").resolve("heads"));
+
+        List<ChangeEntry> received = new CopyOnWriteArrayList<>();
+        List<String> gitChanged = new CopyOnWriteArrayList<>();
+        CountDownLatch indexLatch = new CountDownLatch(1);
+
+        service.addRoot("test-ws", tempRoot).addHandler(received::addAll);
+        service.addGitListener(wsId -> {
+            gitChanged.add(wsId);
+            indexLatch.countDown();
+        });
+
+        startAndWait();
+        assertTrue(service.getRoot("test-ws").isGitWatched());
+
+        Files.write(gitDir.resolve("index"), "index".getBytes());
+        assertTrue(indexLatch.await(15, TimeUnit.SECONDS), "index change should be notified");
+        assertEquals("test-ws", gitChanged.get(0));
+
+        gitChanged.clear();
+        Files.write(gitDir.resolve("refs").resolve("heads").resolve("main"), "sha".getBytes());
+        Thread.sleep(3000);
+        assertTrue(gitChanged.contains("test-ws"), "branch ref change should be notified");
+
+        assertTrue(received.isEmpty(), ".git changes should not reach file tree handlers");
+    }
+
     /**
      * 测试：多根目录，变更只分发到对应根的 handler
      */
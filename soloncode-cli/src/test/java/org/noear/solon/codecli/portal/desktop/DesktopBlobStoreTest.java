@@ -0,0 +1,151 @@
+package org.noear.solon.codecli.portal.desktop;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.noear.solon.codecli.util.Digests;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DesktopBlobStore 单元测试（分片续传、秒传、引用释放与过期回收）
+ */
+public class DesktopBlobStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testChunkedUploadRoundTrip() throws Exception {
+        DesktopBlobStore store = new DesktopBlobStore(tempDir.resolve("blobs"));
+        byte[] data = bytes("hello chunked upload");
+        String hash = Digests.sha256Hex(data);
+        int half = data.length / 2;
+
+        assertEquals(0, store.begin(hash, data.length));
+        assertEquals(half, store.append(hash, data.length, 0,
+                new ByteArrayInputStream(Arrays.copyOfRange(data, 0, half))));
+
+        // 续传：返回已接收字节数，偏移不一致时拒绝
+        assertEquals(half, store.begin(hash, data.length));
+        assertThrows(IllegalStateException.class, () -> store.append(hash, data.length, 0,
+                new ByteArrayInputStream(data)));
+
+        assertEquals(data.length, store.append(hash, data.length, half,
+                new ByteArrayInputStream(Arrays.copyOfRange(data, half, data.length))));
+        assertArrayEquals(data, store.read(hash));
+        assertEquals(data.length, store.size(hash));
+
+        // 秒传：已存在的 blob 直接返回完整大小
+        assertEquals(data.length, store.begin(hash, data.length));
+        assertEquals(hash, store.put(data));
+
+        // 重新打开后索引仍有效
+        assertArrayEquals(data, new DesktopBlobStore(tempDir.resolve("blobs")).read(hash));
+    }
+
+    @Test
+    public void testHashMismatchIsRejected() throws Exception {
+        DesktopBlobStore store = new DesktopBlobStore(tempDir.resolve("blobs"));
+        byte[] data = bytes("real content");
+        String hash = Digests.sha256Hex(bytes("other content"));
+
+        store.begin(hash, data.length);
+        assertThrows(IllegalArgumentException.class, () -> store.append(hash, data.length, 0,
+                new ByteArrayInputStream(data)));
+        assertThrows(IllegalArgumentException.class, () -> store.size(hash));
+        assertThrows(IllegalArgumentException.class, () -> store.begin("not-a-hash", 1));
+    }
+
+    @Test
+    public void testRelinkReleasesPreviousBlob() throws Exception {
+        DesktopBlobStore store = new DesktopBlobStore(tempDir.resolve("blobs"));
+        Path dest = tempDir.resolve("work/.uploads/a.txt");
+        Files.createDirectories(dest.getParent());
+
+        String first = store.put(bytes("first"));
+        String second = store.put(bytes("second"));
+
+        store.link(first, dest);
+        assertEquals("first", new String(Files.readAllBytes(dest), StandardCharsets.UTF_8));
+
+        // 同一位置改为引用另一个 blob：旧 blob 没有其他引用，被删除
+        store.link(second, dest);
+        assertEquals("second", new String(Files.readAllBytes(dest), StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> store.size(first));
+        assertEquals(6, store.size(second));
+    }
+
+    @Test
+    public void testStaleUnreferencedBlobIsEvictedOnLoad() throws Exception {
+        Path root = tempDir.resolve("blobs");
+        DesktopBlobStore store = new DesktopBlobStore(root);
+        String orphan = store.put(bytes("orphan"));
+        String kept = store.put(bytes("kept"));
+
+        Path dest = tempDir.resolve("work/.uploads/kept.txt");
+        Files.createDirectories(dest.getParent());
+        store.link(kept, dest);
+
+        // 将两个 blob 的入库时间改为两天前
+        long old = System.currentTimeMillis() - 2L * 24 * 60 * 60 * 1000;
+        Path index = root.resolve("index.json");
+        String json = new String(Files.readAllBytes(index), StandardCharsets.UTF_8);
+        Matcher m = Pattern.compile("(\"mtime\"\\s*:\\s*)\\d+").matcher(json);
+        Files.write(index, m.replaceAll("$1" + old).getBytes(StandardCharsets.UTF_8));
+        for (String hash : new String[]{orphan, kept}) {
+            Files.setLastModifiedTime(root.resolve("sha256").resolve(hash.substring(0, 2)).resolve(hash),
+                    FileTime.fromMillis(old));
+        }
+
+        DesktopBlobStore reopened = new DesktopBlobStore(root);
+        assertThrows(IllegalArgumentException.class, () -> reopened.size(orphan));
+        assertFalse(Files.exists(root.resolve("sha256").resolve(orphan.substring(0, 2)).resolve(orphan)));
+        // 仍被工作区附件引用的 blob 不回收
+        assertEquals(4, reopened.size(kept));
+    }
+
+    @Test
+    public void testEditedAttachmentDoesNotChangeBlob() throws Exception {
+        DesktopBlobStore store = new DesktopBlobStore(tempDir.resolve("blobs"));
+        Path first = tempDir.resolve("work1/.uploads/a.txt");
+        Path second = tempDir.resolve("work2/.uploads/a.txt");
+        Files.createDirectories(first.getParent());
+        Files.createDirectories(second.getParent());
+
+        String hash = store.put(bytes("content"));
+        store.link(hash, first);
+        store.link(hash, second);
+
+        // 就地编辑一个工作区的附件：另一个工作区与存储中的内容都不受影响
+        Files.write(first, bytes("changed"));
+        assertFalse(Files.isSameFile(first, tempDir.resolve("blobs/sha256").resolve(hash.substring(0, 2)).resolve(hash)));
+        assertEquals("content", new String(Files.readAllBytes(second), StandardCharsets.UTF_8));
+        assertArrayEquals(bytes("content"), store.read(hash));
+    }
+
+    @Test
+    public void testPartialUploadsAreCapped() throws Exception {
+        DesktopBlobStore store = new DesktopBlobStore(tempDir.resolve("blobs"));
+        for (int i = 0; i < DesktopBlobStore.MAX_PARTIALS; i++) {
+            assertEquals(0, store.begin(Digests.sha256Hex(bytes("part-" + i)), 16));
+        }
+
+        String extra = Digests.sha256Hex(bytes("extra"));
+        assertThrows(IllegalStateException.class, () -> store.begin(extra, 16));
+        // 已登记的上传仍可续传
+        assertEquals(0, store.begin(Digests.sha256Hex(bytes("part-0")), 16));
+    }
+}
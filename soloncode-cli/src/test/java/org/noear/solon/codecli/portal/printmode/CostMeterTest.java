@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.printmode;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.noear.solon.codecli.util.BudgetExceededException;
+import org.noear.solon.codecli.util.TokenCost;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CostMeter 单元测试
+ *
+ * <p>测试实时费用计量：按模型单价累计、共享预算、预估终止与 cost 事件节流。</p>
+ *
+ * @author noear
+ */
+public class CostMeterTest {
+
+    /** $1 / 1K 输入，$2 / 1K 输出，便于计算 */
+    private static final TokenCost.Rate RATE = new TokenCost.Rate(1.0, 2.0, false);
+
+    @Test
+    @DisplayName("按模型单价累计，用量只增不减")
+    public void testRecord() {
+        CostMeter meter = new CostMeter("m", RATE, new CostMeter.Budget(null));
+
+        assertEquals(1.0 + 1.0, meter.record(1000, 500), 1e-9);
+        // 迟到的较小用量不回退
+        assertEquals(2.0, meter.record(800, 500), 1e-9);
+        assertEquals(3.0 + 2.0, meter.record(3000, 1000), 1e-9);
+        assertEquals(5.0, meter.getBudget().getSpentUsd(), 1e-9);
+        assertFalse(meter.getBudget().isExhausted());
+    }
+
+    @Test
+    @DisplayName("多个运行共享预算")
+    public void testSharedBudget() {
+        CostMeter.Budget budget = new CostMeter.Budget(10.0);
+        CostMeter a = new CostMeter("a", RATE, budget);
+        CostMeter b = new CostMeter("b", RATE, budget);
+
+        a.check(4000, 0, 0);
+        b.check(5000, 0, 0);
+        assertEquals(9.0, budget.getSpentUsd(), 1e-9);
+
+        // 已花费 9，再发送 1K 上下文即达到上限：请求不发出
+        assertThrows(BudgetExceededException.class, () -> a.check(4000, 0, 1000));
+        assertTrue(budget.wouldExceed(1.0));
+        assertFalse(budget.isExhausted());
+
+        b.record(6000, 0);
+        assertTrue(budget.isExhausted());
+        assertFalse(budget.isExceeded());
+        a.record(4001, 0);
+        assertTrue(budget.isExceeded());
+    }
+
+    @Test
+    @DisplayName("无上限时只计量不终止")
+    public void testUnlimited() {
+        CostMeter meter = new CostMeter("m", RATE, new CostMeter.Budget(null));
+
+        assertDoesNotThrow(() -> meter.check(1_000_000, 1_000_000, 1_000_000));
+        assertFalse(meter.getBudget().isExceeded());
+    }
+
+    @Test
+    @DisplayName("cost 事件：费用变化且超过最小间隔才发出")
+    public void testShouldEmit() {
+        CostMeter meter = new CostMeter("m", RATE, new CostMeter.Budget(null));
+        long now = 10_000;
+
+        meter.record(1000, 0);
+        assertTrue(meter.shouldEmit(now));
+        meter.record(2000, 0);
+        assertFalse(meter.shouldEmit(now + 10));
+        assertTrue(meter.shouldEmit(now + CostMeter.COST_EVENT_INTERVAL_MS));
+        // 费用未变化
+        assertFalse(meter.shouldEmit(now + 5 * CostMeter.COST_EVENT_INTERVAL_MS));
+    }
+
+    @Test
+    @DisplayName("默认单价与 TokenCost.estimateUsd 一致")
+    public void testDefaultRate() {
+        assertTrue(TokenCost.Rate.DEFAULT.isFallback());
+        assertEquals(TokenCost.estimateUsd(1000, 1000), TokenCost.Rate.DEFAULT.estimateUsd(1000, 1000), 1e-12);
+        assertEquals(0.018, TokenCost.Rate.DEFAULT.estimateUsd(1000, 1000), 1e-9);
+    }
+}
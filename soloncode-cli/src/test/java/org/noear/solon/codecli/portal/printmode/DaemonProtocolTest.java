@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.printmode;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 常驻进程协议 单元测试
+ *
+ * <p>测试端点文件读写、输出帧编解码与客户端参数判断；不启动 HarnessEngine。</p>
+ *
+ * @author noear
+ */
+public class DaemonProtocolTest {
+
+    @TempDir
+    Path workspace;
+
+    @Test
+    @DisplayName("端点文件写入后可读回，缺失或损坏时返回 null")
+    public void testEndpointRoundTrip() throws Exception {
+        Path file = DaemonProtocol.endpointFile(workspace.toString());
+        assertNull(DaemonProtocol.Endpoint.load(file));
+
+        new DaemonProtocol.Endpoint(4321, "secret", "99", "v1").save(file);
+        DaemonProtocol.Endpoint loaded = DaemonProtocol.Endpoint.load(file);
+
+        assertNotNull(loaded);
+        assertEquals(4321, loaded.port);
+        assertEquals("secret", loaded.token);
+        assertEquals("99", loaded.pid);
+        assertEquals("v1", loaded.version);
+
+        java.nio.file.Files.write(file, "port=abc".getBytes(StandardCharsets.UTF_8));
+        assertNull(DaemonProtocol.Endpoint.load(file));
+    }
+
+    @Test
+    @DisplayName("输出帧：stdout/stderr 分流并以 EXIT 帧结束")
+    public void testFramesPump() throws Exception {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(wire);
+        PrintStream stdout = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.OUT), true, "UTF-8");
+        PrintStream stderr = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.ERR), true, "UTF-8");
+        stdout.println("{\"result\":\"你好\"}");
+        stderr.println("Error: boom");
+        out.writeByte(DaemonProtocol.EXIT);
+        out.writeInt(PrintMode.EXIT_MAX_TURNS);
+        out.flush();
+
+        PrintStream origOut = System.out;
+        PrintStream origErr = System.err;
+        ByteArrayOutputStream capturedOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream capturedErr = new ByteArrayOutputStream();
+        int exitCode;
+        try {
+            System.setOut(new PrintStream(capturedOut, true, "UTF-8"));
+            System.setErr(new PrintStream(capturedErr, true, "UTF-8"));
+            exitCode = PrintClient.pump(new DataInputStream(new ByteArrayInputStream(wire.toByteArray())));
+        } finally {
+            System.setOut(origOut);
+            System.setErr(origErr);
+        }
+
+        assertEquals(PrintMode.EXIT_MAX_TURNS, exitCode);
+        assertEquals("{\"result\":\"你好\"}", new String(capturedOut.toByteArray(), StandardCharsets.UTF_8).trim());
+        assertEquals("Error: boom", new String(capturedErr.toByteArray(), StandardCharsets.UTF_8).trim());
+    }
+
+    @Test
+    @DisplayName("超长帧被拒绝")
+    public void testFrameTooLarge() throws Exception {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(wire);
+        DaemonProtocol.writeBytes(out, new byte[16]);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(wire.toByteArray()));
+        assertThrows(IOException.class, () -> DaemonProtocol.readBytes(in, 8));
+    }
+
+    @Test
+    @DisplayName("客户端参数判断：no-daemon 开关与 daemon stop")
+    public void testClientArgs() {
+        assertTrue(PrintClient.hasFlag(new String[]{"run", "hi", "--no-daemon"}, "no-daemon"));
+        assertTrue(PrintClient.hasFlag(new String[]{"run", "-no-daemon"}, "no-daemon"));
+        assertFalse(PrintClient.hasFlag(new String[]{"run", "no-daemon"}, "no-daemon"));
+
+        assertTrue(DaemonProtocol.isStopRequest(new String[]{"daemon", "stop"}));
+        assertFalse(DaemonProtocol.isStopRequest(new String[]{"daemon"}));
+        assertEquals(PrintClient.NOT_HANDLED, PrintClient.tryRun(new String[]{"web"}));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017-2026 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.codecli.portal.printmode;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.noear.snack4.ONode;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PrintBatch 单元测试
+ *
+ * <p>测试批量模式的纯逻辑部分：JSONL 解析、记录与汇总构建、退出码。</p>
+ *
+ * @author noear
+ */
+public class PrintBatchTest {
+
+    @Test
+    @DisplayName("JSONL 解析：跳过空行与注释，保留逐条选项")
+    public void testParseItems() {
+        List<PrintBatch.BatchItem> items = PrintBatch.parseItems(Arrays.asList(
+                "{\"id\":\"t1\",\"prompt\":\"hello\",\"model\":\"sonnet\",\"max_turns\":5}",
+                "",
+                "# comment",
+                "{\"prompt\":\"list\",\"json_schema\":{\"type\":\"array\"}}"));
+
+        assertEquals(2, items.size());
+
+        PrintBatch.BatchItem first = items.get(0);
+        assertEquals(0, first.index);
+        assertEquals(1, first.line);
+        assertEquals("t1", first.id);
+        assertEquals("hello", first.prompt);
+        assertEquals("sonnet", first.model);
+        assertEquals(Integer.valueOf(5), first.maxTurns);
+        assertNull(first.error);
+
+        PrintBatch.BatchItem second = items.get(1);
+        assertEquals(1, second.index);
+        assertEquals(4, second.line);
+        assertNull(second.id);
+        assertTrue(second.jsonSchema.contains("array"));
+    }
+
+    @Test
+    @DisplayName("JSONL 解析：无效行保留为错误条目，不中断整批")
+    public void testParseInvalidItems() {
+        List<PrintBatch.BatchItem> items = PrintBatch.parseItems(Arrays.asList(
+                "{\"id\":\"no-prompt\"}",
+                "{not json",
+                "{\"prompt\":\"ok\"}"));
+
+        assertEquals(3, items.size());
+        assertNotNull(items.get(0).error);
+        assertNotNull(items.get(1).error);
+        assertNull(items.get(2).error);
+    }
+
+    @Test
+    @DisplayName("记录与汇总：失败、跳过与费用")
+    public void testRecordAndSummary() {
+        PrintBatch.BatchItem ok = new PrintBatch.BatchItem(0, 1);
+        ok.exitCode = PrintMode.EXIT_SUCCESS;
+        ok.result = new PrintMode.PrintResult();
+        ok.result.answer = "done";
+        ok.costUsd = 0.0123456789;
+
+        PrintBatch.BatchItem skipped = new PrintBatch.BatchItem(1, 2);
+        skipped.exitCode = PrintMode.EXIT_BUDGET_EXCEEDED;
+        skipped.error = "Skipped: batch budget exceeded";
+
+        PrintBatch.BatchItem failed = new PrintBatch.BatchItem(2, 3);
+        failed.exitCode = PrintMode.EXIT_NO_PROMPT;
+        failed.error = "Missing prompt at line 3";
+
+        ONode record = PrintBatch.buildItemRecord(ok);
+        assertEquals("batch_item", record.get("type").getString());
+        assertEquals("done", record.get("result").getString());
+        assertFalse(record.get("is_error").getBoolean());
+        assertEquals(0.012346, record.get("total_cost_usd").getDouble(), 1e-9);
+
+        List<PrintBatch.BatchItem> items = Arrays.asList(ok, skipped, failed);
+        ONode summary = PrintBatch.buildSummary(items, 0.5, 0.4, 100);
+        assertEquals(3, summary.get("total").getInt());
+        assertEquals(1, summary.get("succeeded").getInt());
+        assertEquals(1, summary.get("failed").getInt());
+        assertEquals(1, summary.get("skipped").getInt());
+        assertTrue(summary.get("budget_exceeded").getBoolean());
+
+        assertEquals(PrintMode.EXIT_BUDGET_EXCEEDED, PrintBatch.exitCodeOf(items, true));
+        assertEquals(PrintMode.EXIT_ERROR, PrintBatch.exitCodeOf(items, false));
+        assertEquals(PrintMode.EXIT_SUCCESS, PrintBatch.exitCodeOf(Arrays.asList(ok), false));
+    }
+
+    @Test
+    @DisplayName("流事件：批量条目标记序号与 id，非批量运行不标记")
+    public void testTagBatchItem() {
+        PrintMode.PrintResult single = new PrintMode.PrintResult();
+        ONode plain = PrintMode.tagBatchItem(new ONode(), single);
+        assertNull(plain.getOrNull("batch_index"));
+
+        PrintMode.PrintResult item = new PrintMode.PrintResult();
+        item.batchIndex = 2;
+        ONode noId = PrintMode.tagBatchItem(new ONode(), item);
+        assertEquals(2, noId.get("batch_index").getInt());
+        assertNull(noId.getOrNull("batch_id"));
+
+        item.batchId = "t3";
+        ONode tagged = PrintMode.tagBatchItem(new ONode(), item);
+        assertEquals(2, tagged.get("batch_index").getInt());
+        assertEquals("t3", tagged.get("batch_id").getString());
+    }
+}
@@ -365,6 +365,42 @@ public class PrintModeOptionsTest {
         assertNull(opts.getMaxBudgetUsd());
     }
 
+    // ========== batch ==========
+
+    @Test
+    @DisplayName("batch 文件与并发数")
+    public void testBatch() {
+        MultiMap<String> argx = buildArgx("run", "batch=prompts.jsonl", "batch-parallelism=8");
+        PrintModeOptions opts = PrintModeOptions.parse(argx);
+
+        assertEquals("prompts.jsonl", opts.getBatch());
+        assertEquals(8, opts.getBatchParallelism());
+        assertNull(opts.getPrompt());
+    }
+
+    @Test
+    @DisplayName("batch-parallelism 无效值使用默认并发数")
+    public void testBatchParallelismInvalid() {
+        MultiMap<String> argx = buildArgx("run", "batch=prompts.jsonl", "batch-parallelism=0");
+        PrintModeOptions opts = PrintModeOptions.parse(argx);
+
+        assertEquals(PrintModeOptions.DEFAULT_BATCH_PARALLELISM, opts.getBatchParallelism());
+        assertNull(PrintModeOptions.parse(buildArgx("run", "test")).getBatch());
+    }
+
+    // ========== 引擎级选项（常驻进程回退判断） ==========
+
+    @Test
+    @DisplayName("引擎级选项：仅按请求生效的选项不算")
+    public void testHasEngineOptions() {
+        assertFalse(PrintModeOptions.parse(buildArgx("run", "test", "model=sonnet", "max-turns=3",
+                "output-format=json", "max-budget-usd=1")).hasEngineOptions());
+
+        assertTrue(PrintModeOptions.parse(buildArgx("run", "test", "allowedTools=Read")).hasEngineOptions());
+        assertTrue(PrintModeOptions.parse(buildArgx("run", "test", "permission-mode=plan")).hasEngineOptions());
+        assertTrue(PrintModeOptions.parse(buildArgx("run", "test", "add-dir=../lib")).hasEngineOptions());
+    }
+
     // ========== 工具规则语法 parseToolRule ==========
 
     @Test
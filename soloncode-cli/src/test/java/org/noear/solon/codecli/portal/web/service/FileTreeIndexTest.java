@@ -0,0 +1,130 @@
+package org.noear.solon.codecli.portal.web.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.noear.solon.codecli.portal.FileWatchService;
+import org.noear.solon.codecli.portal.FileWatchService.ChangeEntry;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FileTreeIndex 单元测试
+ *
+ * <p>验证目录 listing 缓存、变更失效与按版本号的净变更合并。</p>
+ */
+public class FileTreeIndexTest {
+    private static final Set<String> EXCLUDED = Collections.singleton("target");
+
+    private FileWatchService watcher;
+    private FileTreeIndex index;
+    private Path tempRoot;
+
+    @BeforeAll
+    public static void setUpClass() {
+        // macOS JDK 8 使用 PollingWatchService，默认 10 秒轮询一次，缩短为 1 秒加速测试
+        System.setProperty("sun.nio.fs.pollInterval", "1");
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tempRoot = Files.createTempDirectory("fti-test-").toAbsolutePath().normalize();
+        Files.createDirectories(tempRoot.resolve("src"));
+        Files.write(tempRoot.resolve("b.txt"), "b".getBytes());
+        Files.write(tempRoot.resolve("A.txt"), "a".getBytes());
+        Files.createDirectories(tempRoot.resolve("target"));
+
+        watcher = new FileWatchService();
+        watcher.addRoot("workspace", tempRoot);
+        watcher.start();
+        Thread.sleep(2000);
+
+        index = new FileTreeIndex();
+        index.attach(watcher);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        watcher.stop();
+        Files.walkFileTree(tempRoot, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void testListSortsAndFilters() {
+        List<FileTreeIndex.Entry> entries = index.list("workspace", tempRoot, tempRoot, EXCLUDED);
+
+        assertEquals(3, entries.size());
+        assertEquals("src", entries.get(0).name);
+        assertTrue(entries.get(0).directory);
+        assertEquals("A.txt", entries.get(1).name);
+        assertEquals("b.txt", entries.get(2).name);
+    }
+
+    @Test
+    public void testListIsCachedUntilInvalidated() throws Exception {
+        List<FileTreeIndex.Entry> first = index.list("workspace", tempRoot, tempRoot, EXCLUDED);
+        assertSame(first, index.list("workspace", tempRoot, tempRoot, EXCLUDED));
+
+        index.apply(Collections.singletonList(new ChangeEntry("workspace", "c.txt", "create", "file")));
+
+        assertNotSame(first, index.list("workspace", tempRoot, tempRoot, EXCLUDED));
+    }
+
+    @Test
+    public void testChangesSinceMergesNetEffect() {
+        long v0 = index.version("workspace", tempRoot);
+        assertTrue(v0 > 0);
+
+        index.apply(Arrays.asList(
+                new ChangeEntry("workspace", "c.txt", "create", "file"),
+                new ChangeEntry("workspace", "b.txt", "delete", null)));
+        long v1 = index.version("workspace", tempRoot);
+
+        index.apply(Arrays.asList(
+                new ChangeEntry("workspace", "c.txt", "modify", "file"),
+                new ChangeEntry("workspace", "d.txt", "create", "file"),
+                new ChangeEntry("workspace", "d.txt", "delete", null)));
+        long v2 = index.version("workspace", tempRoot);
+
+        List<ChangeEntry> all = index.changesSince("workspace", tempRoot, v0, v2);
+        assertEquals(2, all.size());
+        assertEquals("b.txt", all.get(0).path);
+        assertEquals("delete", all.get(0).kind);
+        assertEquals("c.txt", all.get(1).path);
+        assertEquals("create", all.get(1).kind);
+
+        List<ChangeEntry> tail = index.changesSince("workspace", tempRoot, v1, v2);
+        assertEquals(1, tail.size());
+        assertEquals("modify", tail.get(0).kind);
+    }
+
+    @Test
+    public void testUnknownVersionFallsBackToFull() {
+        long v = index.version("workspace", tempRoot);
+
+        assertNull(index.changesSince("workspace", tempRoot, 1L, v));
+        assertNull(index.changesSince("workspace", tempRoot, v + 100, v));
+        assertNull(index.changesSince("other", tempRoot, v, v));
+    }
+}
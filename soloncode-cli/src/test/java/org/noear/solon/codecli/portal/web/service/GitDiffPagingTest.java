@@ -0,0 +1,63 @@
+package org.noear.solon.codecli.portal.web.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GitService 分页 Diff 测试（numstat 解析与按行窗口）
+ */
+public class GitDiffPagingTest {
+
+    @Test
+    public void testParseNumstat() {
+        String out = "3\t1\ta.txt\0"
+                + "0\t0\t\0old name.txt\0new name.txt\0"
+                + "-\t-\tlogo.png\0";
+
+        List<Map<String, Object>> files = GitService.parseNumstat(out);
+
+        assertEquals(3, files.size());
+        assertEquals("a.txt", files.get(0).get("path"));
+        assertEquals(3, files.get(0).get("additions"));
+        assertEquals(1, files.get(0).get("deletions"));
+        assertEquals("new name.txt", files.get(1).get("path"));
+        assertEquals("old name.txt", files.get(1).get("oldPath"));
+        assertEquals(true, files.get(2).get("binary"));
+        assertNull(files.get(2).get("additions"));
+    }
+
+    @Test
+    public void testLineWindowAcrossChunks() throws Exception {
+        GitService.LineWindow window = new GitService.LineWindow(1, 2);
+
+        feed(window, "l0\nl");
+        feed(window, "1\nl2");
+        assertThrows(IOException.class, () -> feed(window, "\nl3\n"));
+
+        assertEquals("l1\nl2\n", window.toString());
+        assertEquals(2, window.taken);
+        assertTrue(window.isFull());
+    }
+
+    @Test
+    public void testLineWindowLastPage() throws Exception {
+        GitService.LineWindow window = new GitService.LineWindow(2, 10);
+
+        feed(window, "l0\nl1\nl2\nl3\n");
+
+        assertEquals("l2\nl3\n", window.toString());
+        assertEquals(2, window.taken);
+        assertFalse(window.isFull());
+    }
+
+    private static void feed(GitService.LineWindow window, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        window.accept(bytes, 0, bytes.length);
+    }
+}
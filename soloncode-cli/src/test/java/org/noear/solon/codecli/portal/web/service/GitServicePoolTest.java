@@ -0,0 +1,41 @@
+package org.noear.solon.codecli.portal.web.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GitServicePool 单元测试
+ */
+public class GitServicePoolTest {
+    private Path tempRoot;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        tempRoot = Files.createTempDirectory("git-pool-test-").toAbsolutePath().normalize();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        tempRoot.toFile().delete();
+    }
+
+    @Test
+    public void testDefaultWorkspaceIsPooled() {
+        GitServicePool pool = new GitServicePool(tempRoot.toString(), null, null);
+
+        GitService a = pool.get(null);
+        GitService b = pool.get("workspace");
+        GitService c = pool.get("");
+
+        assertSame(a, b);
+        assertSame(a, c);
+        assertEquals(new File(tempRoot.toString()), a.getWorkspaceDir());
+    }
+}
@@ -0,0 +1,49 @@
+package org.noear.solon.codecli.portal.web.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GitService porcelain v2 解析测试
+ */
+public class GitStatusParseTest {
+
+    @Test
+    public void testParseAllRecordTypes() {
+        String out = String.join("\0",
+                "# branch.oid 76dd2228b99727f792bfbd8847ccd610326cde7f",
+                "# branch.head feature/x",
+                "1 MM N... 100644 100644 100644 7898192 9382bc7 a.txt",
+                "2 R. N... 100644 100644 100644 6178079 6178079 R100 new name.txt",
+                "old name.txt",
+                "1 .M N... 100644 100644 100644 f2ad6c7 f2ad6c7 sp ace.txt",
+                "u UU N... 100644 100644 100644 100644 1111111 2222222 3333333 conflict.txt",
+                "? newdir/",
+                "? u.txt",
+                "") + "\n";
+
+        Map<String, Object> data = GitService.parseStatusV2(out);
+
+        assertEquals("feature/x", data.get("branch"));
+        assertEquals(Arrays.asList("a.txt", "new name.txt", "conflict.txt"), data.get("staged"));
+        assertEquals(Arrays.asList("a.txt", "sp ace.txt", "conflict.txt"), data.get("changed"));
+        assertEquals(Arrays.asList("newdir/", "u.txt"), data.get("untracked"));
+    }
+
+    @Test
+    public void testDetachedAndCleanTree() {
+        String out = "# branch.oid 76dd2228\0# branch.head (detached)\0";
+
+        Map<String, Object> data = GitService.parseStatusV2(out);
+
+        assertEquals("master", data.get("branch"));
+        assertEquals(Collections.emptyList(), data.get("staged"));
+        assertEquals(Collections.emptyList(), data.get("changed"));
+        assertEquals(Collections.emptyList(), data.get("untracked"));
+    }
+}
@@ -0,0 +1,33 @@
+package org.noear.solon.codecli.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Digests 单元测试（sha256 十六进制与流式文件摘要一致）
+ */
+public class DigestsTest {
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testSha256HexMatchesKnownVector() {
+        assertEquals(ABC_SHA256, Digests.sha256Hex("abc"));
+        assertEquals(ABC_SHA256, Digests.sha256Hex("abc".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testFileDigestMatchesBytesDigest() throws Exception {
+        Path file = tempDir.resolve("abc.txt");
+        Files.write(file, "abc".getBytes(StandardCharsets.UTF_8));
+        assertEquals(ABC_SHA256, Digests.sha256Hex(file));
+    }
+}
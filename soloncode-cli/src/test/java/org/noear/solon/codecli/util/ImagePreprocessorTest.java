@@ -0,0 +1,194 @@
+package org.noear.solon.codecli.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.noear.solon.codecli.config.models.ModelSpecService.ImageLimits;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ImagePreprocessor 单元测试
+ *
+ * <p>验证按模型限制缩放、字节预算压缩、原样透传与按内容哈希缓存。</p>
+ */
+public class ImagePreprocessorTest {
+    private Path cacheDir;
+    private ImagePreprocessor preprocessor;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("img-pre-test-");
+        preprocessor = new ImagePreprocessor(cacheDir);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        File[] files = cacheDir.toFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        cacheDir.toFile().delete();
+    }
+
+    @Test
+    public void testLargeImageIsDownscaledWithinLimits() throws IOException {
+        byte[] original = png(3840, 2160, false);
+        ImageLimits limits = ImageLimits.CLAUDE;
+
+        ImagePreprocessor.Processed result = preprocessor.process(original, "image/png", limits);
+        BufferedImage out = ImageIO.read(new ByteArrayInputStream(result.getData()));
+
+        assertTrue(Math.max(out.getWidth(), out.getHeight()) <= limits.getMaxEdge());
+        assertTrue((long) out.getWidth() * out.getHeight() <= limits.getMaxPixels());
+        assertTrue(result.getData().length <= limits.getMaxBytes());
+        // 保持宽高比
+        assertEquals(3840.0 / 2160.0, (double) out.getWidth() / out.getHeight(), 0.01);
+    }
+
+    @Test
+    public void testSmallImageIsPassedThrough() throws IOException {
+        byte[] original = png(200, 100, false);
+
+        ImagePreprocessor.Processed result = preprocessor.process(original, "image/png", ImageLimits.DEFAULT);
+
+        assertSame(original, result.getData());
+        assertEquals("image/png", result.getMimeType());
+    }
+
+    @Test
+    public void testOversizedBytesAreRecompressed() throws IOException {
+        // 尺寸在限制内，但噪点图 PNG 超出字节预算
+        byte[] original = png(1000, 1000, false);
+        ImageLimits limits = new ImageLimits(2048, 4_000_000, 200_000);
+        assertTrue(original.length > limits.getMaxBytes());
+
+        ImagePreprocessor.Processed result = preprocessor.process(original, "image/png", limits);
+
+        assertEquals("image/jpeg", result.getMimeType());
+        assertTrue(result.getData().length <= limits.getMaxBytes());
+    }
+
+    @Test
+    public void testAlphaImageKeepsPngWhenWithinBudget() throws IOException {
+        byte[] original = png(3000, 3000, true);
+
+        ImagePreprocessor.Processed result = preprocessor.process(original, "image/png",
+                new ImageLimits(500, 250_000, 10_000_000));
+
+        assertEquals("image/png", result.getMimeType());
+        BufferedImage out = ImageIO.read(new ByteArrayInputStream(result.getData()));
+        assertTrue(out.getColorModel().hasAlpha());
+        assertEquals(500, out.getWidth());
+    }
+
+    @Test
+    public void testProcessedVariantIsCachedByContentHash() throws IOException {
+        byte[] original = png(3000, 2000, false);
+
+        ImagePreprocessor.Processed first = preprocessor.process(original, "image/png", ImageLimits.DEFAULT);
+        assertEquals(1, cacheDir.toFile().listFiles().length);
+
+        ImagePreprocessor.Processed second = new ImagePreprocessor(cacheDir)
+                .process(original, "image/png", ImageLimits.DEFAULT);
+        assertArrayEquals(first.getData(), second.getData());
+        assertEquals(first.getMimeType(), second.getMimeType());
+
+        // 不同限制分开缓存
+        preprocessor.process(original, "image/png", ImageLimits.OPENAI);
+        assertEquals(2, cacheDir.toFile().listFiles().length);
+    }
+
+    @Test
+    public void testUndecodableImageFallsBackToOriginal() {
+        byte[] original = "not an image".getBytes();
+
+        ImagePreprocessor.Processed result = preprocessor.process(original, "image/webp", ImageLimits.DEFAULT);
+
+        assertSame(original, result.getData());
+        assertEquals("image/webp", result.getMimeType());
+    }
+
+    @Test
+    public void testFitScale() {
+        ImageLimits limits = new ImageLimits(1000, 500_000, 1_000_000);
+
+        assertEquals(0.5, ImagePreprocessor.fitScale(2000, 500, limits), 0.0001);
+        assertEquals(Math.sqrt(0.5), ImagePreprocessor.fitScale(1000, 1000, limits), 0.0001);
+        assertTrue(ImagePreprocessor.fitScale(100, 100, limits) > 1.0);
+    }
+
+    @Test
+    public void testOversizedDimensionsAreRejectedWithoutDecoding() throws IOException {
+        // 仅有 IHDR 的 PNG 声明 50000x50000：若解码会分配约 10 GB
+        byte[] bomb = pngHeader(50_000, 50_000);
+
+        assertThrows(IOException.class, () -> ImagePreprocessor.transform(bomb, "image/png", ImageLimits.CLAUDE));
+        // process 回退原图，不抛出
+        assertSame(bomb, preprocessor.process(bomb, "image/png", ImageLimits.CLAUDE).getData());
+    }
+
+    @Test
+    public void testSubsamplingKeepsTwiceTheTargetSize() {
+        assertEquals(1, ImagePreprocessor.subsampling(1.0));
+        assertEquals(1, ImagePreprocessor.subsampling(0.4));
+        assertEquals(5, ImagePreprocessor.subsampling(0.1));
+    }
+
+    private static byte[] pngHeader(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+        ByteBuffer ihdr = ByteBuffer.allocate(17);
+        ihdr.put("IHDR".getBytes(StandardCharsets.US_ASCII)).putInt(width).putInt(height)
+                .put((byte) 8).put((byte) 2).put((byte) 0).put((byte) 0).put((byte) 0);
+        CRC32 crc = new CRC32();
+        crc.update(ihdr.array());
+        out.write(ByteBuffer.allocate(4).putInt(13).array());
+        out.write(ihdr.array());
+        out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+        return out.toByteArray();
+    }
+
+    private static byte[] png(int width, int height, boolean alpha) throws IOException {
+        BufferedImage image = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.BLUE);
+            g.fillRect(0, 0, width / 2, height / 2);
+        } finally {
+            g.dispose();
+        }
+
+        if (!alpha) {
+            // 噪点让 PNG 难以压缩，模拟真实截图的体积
+            Random random = new Random(42);
+            for (int y = height / 2; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    image.setRGB(x, y, random.nextInt(0xFFFFFF));
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,96 @@
+package org.noear.solon.codecli.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ProcessRunner 单元测试
+ *
+ * <p>验证 stdout/stderr 并发排空、有界缓冲、截止时间与流式中止。</p>
+ */
+@DisabledOnOs(OS.WINDOWS)
+public class ProcessRunnerTest {
+
+    private static ProcessBuilder sh(String script) {
+        return new ProcessBuilder("sh", "-c", script);
+    }
+
+    @Test
+    public void testCollectsBothStreams() throws Exception {
+        ProcessRunner.Result result = ProcessRunner.run(sh("echo out; echo err 1>&2; exit 3"), 10_000, 1024);
+
+        assertEquals(3, result.exitCode);
+        assertEquals("out\n", result.stdout);
+        assertEquals("err\n", result.stderr);
+        assertFalse(result.timedOut);
+        assertFalse(result.truncated);
+    }
+
+    @Test
+    public void testLargeStderrDoesNotDeadlock() throws Exception {
+        // 先向 stderr 写满管道（远超 64KB 管道容量），再写 stdout
+        ProcessRunner.Result result = ProcessRunner.run(
+                sh("head -c 1000000 /dev/zero 1>&2; echo done"), 10_000, 1024);
+
+        assertEquals(0, result.exitCode);
+        assertEquals("done\n", result.stdout);
+        assertFalse(result.timedOut);
+    }
+
+    @Test
+    public void testStdoutIsBounded() throws Exception {
+        ProcessRunner.Result result = ProcessRunner.run(sh("head -c 100000 /dev/zero"), 10_000, 1000);
+
+        assertEquals(0, result.exitCode);
+        assertEquals(1000, result.stdout.length());
+        assertTrue(result.truncated);
+    }
+
+    @Test
+    public void testDeadlineCountsFromStart() throws Exception {
+        long start = System.currentTimeMillis();
+        // 持续输出且永不结束：读取不会阻塞截止时间
+        ProcessRunner.Result result = ProcessRunner.run(sh("yes"), 500, 1024);
+
+        assertTrue(result.timedOut);
+        assertEquals(-1, result.exitCode);
+        assertTrue(System.currentTimeMillis() - start < 5_000);
+    }
+
+    @Test
+    public void testStreamingConsumerCanCancel() throws Exception {
+        AtomicLong received = new AtomicLong();
+        long start = System.currentTimeMillis();
+
+        ProcessRunner.Result result = ProcessRunner.stream(sh("yes"), 10_000, (buf, off, len) -> {
+            if (received.addAndGet(len) > 100_000) {
+                throw new IOException("client gone");
+            }
+        });
+
+        assertTrue(result.cancelled);
+        assertFalse(result.timedOut);
+        assertEquals(-1, result.exitCode);
+        assertTrue(System.currentTimeMillis() - start < 5_000);
+    }
+
+    @Test
+    public void testConsumerIsNotCalledAfterReturn() throws Exception {
+        AtomicLong calls = new AtomicLong();
+        // 后台孙进程继承管道并持续输出约 3 秒，主进程立即退出
+        ProcessRunner.Result result = ProcessRunner.stream(
+                sh("(for i in $(seq 1 60); do echo x; sleep 0.05; done) & echo first"), 10_000,
+                (buf, off, len) -> calls.incrementAndGet());
+
+        assertEquals(0, result.exitCode);
+        long afterReturn = calls.get();
+        Thread.sleep(500);
+        assertEquals(afterReturn, calls.get());
+    }
+}
@@ -0,0 +1,56 @@
+package org.noear.solon.codecli.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SideTaskCache 单元测试
+ */
+public class SideTaskCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testHitIsKeyedByAgentModelAndInput() {
+        SideTaskCache cache = new SideTaskCache(tempDir, 60_000, 100);
+        cache.put("git-summary", "model-a", "diff --git a/x b/x\n+1\n", "feat: x");
+
+        // 仅行尾空白与换行风格不同，仍命中
+        assertEquals("feat: x", cache.get("git-summary", "model-a", "diff --git a/x b/x  \r\n+1\r\n"));
+        assertNull(cache.get("git-summary", "model-b", "diff --git a/x b/x\n+1\n"));
+        assertNull(cache.get("session-title", "model-a", "diff --git a/x b/x\n+1\n"));
+        assertNull(cache.get("git-summary", "model-a", "diff --git a/x b/x\n+2\n"));
+    }
+
+    @Test
+    public void testExpiredEntryIsMissed() throws Exception {
+        SideTaskCache cache = new SideTaskCache(tempDir, 1_000, 100);
+        cache.put("git-summary", "m", "input", "value");
+
+        File[] files = tempDir.toFile().listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].setLastModified(System.currentTimeMillis() - 5_000));
+
+        assertNull(cache.get("git-summary", "m", "input"));
+        assertEquals(0, tempDir.toFile().listFiles().length);
+    }
+
+    @Test
+    public void testOldestEntriesAreEvicted() throws Exception {
+        SideTaskCache cache = new SideTaskCache(tempDir, 60_000, 2);
+        cache.put("a", "m", "1", "one");
+        tempDir.resolve(tempDir.toFile().list()[0]).toFile().setLastModified(System.currentTimeMillis() - 3_000);
+        cache.put("a", "m", "2", "two");
+        cache.put("a", "m", "3", "three");
+
+        assertEquals(2, tempDir.toFile().listFiles().length);
+        assertNull(cache.get("a", "m", "1"));
+        assertEquals("three", cache.get("a", "m", "3"));
+    }
+}
@@ -0,0 +1,47 @@
+package org.noear.solon.codecli.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StartupProfiler 单元测试
+ */
+public class StartupProfilerTest {
+
+    @Test
+    public void testPhasesAreMeasuredFromPreviousMark() {
+        StartupProfiler profiler = new StartupProfiler(1_000);
+        profiler.mark("jvm", 1_120);
+        profiler.mark("settings", 1_150);
+        profiler.mark("engine", 1_400);
+
+        String report = profiler.format(true);
+
+        assertTrue(report.startsWith("Startup profile:\n"));
+        assertTrue(report.matches("(?s).*jvm\\s+120 ms\\s+30\\.0%.*"), report);
+        assertTrue(report.matches("(?s).*settings\\s+30 ms\\s+7\\.5%.*"), report);
+        assertTrue(report.matches("(?s).*engine\\s+250 ms\\s+62\\.5%.*"), report);
+        assertTrue(report.matches("(?s).*total\\s+400 ms\\n"), report);
+    }
+
+    @Test
+    public void testReportIsPrintedOnce() {
+        StartupProfiler profiler = new StartupProfiler(0);
+        profiler.mark("jvm", 10);
+
+        assertNotNull(profiler.format(true));
+
+        // 报告后的打点被忽略，不再重复输出
+        profiler.mark("late", 50);
+        assertNull(profiler.format(true));
+    }
+
+    @Test
+    public void testClockGoingBackwardsIsClamped() {
+        StartupProfiler profiler = new StartupProfiler(100);
+        profiler.mark("jvm", 90);
+
+        assertTrue(profiler.format(false).matches("(?s).*jvm\\s+0 ms.*"));
+    }
+}
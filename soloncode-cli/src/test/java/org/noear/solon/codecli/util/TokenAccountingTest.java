@@ -0,0 +1,153 @@
+package org.noear.solon.codecli.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TokenAccounting 单元测试（按家族计数、自定义计数器、校准与持久化）
+ */
+public class TokenAccountingTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testCountsEnglishByWords() {
+        TokenAccounting accounting = new TokenAccounting(null);
+
+        assertEquals(0, accounting.count("gpt-4", ""));
+        assertEquals(10, accounting.count("gpt-4", "The quick brown fox jumps over the lazy dog."));
+        // 长标识符会被切分成多个 token
+        assertTrue(accounting.count("gpt-4", "AbstractSingletonProxyFactoryBean") > 3);
+    }
+
+    @Test
+    public void testFamiliesDiffer() {
+        TokenAccounting accounting = new TokenAccounting(null);
+
+        assertEquals("o200k", accounting.counterFor("gpt-4o-mini").getFamily());
+        assertEquals("o200k", accounting.counterFor("o3-mini").getFamily());
+        assertEquals("claude", accounting.counterFor("claude-sonnet-4-5").getFamily());
+        assertEquals("cjk", accounting.counterFor("qwen3-coder-plus").getFamily());
+        assertEquals("cl100k", accounting.counterFor(null).getFamily());
+
+        // 中文优化词表：中文与数字的切分粒度不同
+        String zh = "上下文压缩阈值按模型校准";
+        assertTrue(accounting.count("qwen-max", zh) < accounting.count("gpt-4", zh));
+        assertEquals(3, accounting.count("gpt-4", "1234567"));
+        assertEquals(7, accounting.count("qwen-max", "1234567"));
+    }
+
+    @Test
+    public void testUnusualCharactersTerminate() {
+        TokenAccounting accounting = new TokenAccounting(null);
+
+        // 非 ASCII 数字、表情、组合符号
+        assertTrue(accounting.count("٣٤ 😀 é  ") > 0);
+    }
+
+    @Test
+    public void testCustomCounterTakesPriority() {
+        TokenAccounting accounting = new TokenAccounting(null);
+        accounting.register(new TokenCounter() {
+            @Override
+            public String getFamily() {
+                return "fixed";
+            }
+
+            @Override
+            public boolean matches(String modelId) {
+                return modelId.startsWith("my-");
+            }
+
+            @Override
+            public int count(String text) {
+                return 42;
+            }
+        });
+
+        assertEquals(42, accounting.count("My-Model", "hello"));
+        assertEquals(1, accounting.count("gpt-4", "hello"));
+    }
+
+    @Test
+    public void testCalibrationIsPersisted() throws Exception {
+        Path file = tempDir.resolve("token-calibration.properties");
+        TokenAccounting accounting = new TokenAccounting(file);
+
+        assertEquals(1000, accounting.calibrated("m", 1000));
+
+        // 样本太小，不参与校准
+        accounting.observe("m", 100, 300);
+        assertEquals(1.0, accounting.ratio("m"));
+        assertEquals(0, accounting.overhead("m"));
+
+        // 样本不足以拟合系数时，偏大的部分先视为固定开销
+        accounting.observe("m", 1000, 1500);
+        assertEquals(1.0, accounting.ratio("m"));
+        assertEquals(500, accounting.overhead("m"));
+        assertEquals(1500, accounting.calibrated("m", 1000));
+
+        // 偏小时按比例缩小
+        accounting.observe("s", 1000, 800);
+        assertEquals(0.8, accounting.ratio("s"), 1e-9);
+        assertEquals(0, accounting.overhead("s"));
+
+        // 按比例偏差的样本拟合出系数，没有固定开销
+        accounting.observe("p", 1000, 1300);
+        accounting.observe("p", 2000, 2600);
+        accounting.observe("p", 3000, 3900);
+        assertEquals(1.3, accounting.ratio("p"), 1e-6);
+        assertEquals(0, accounting.overhead("p"));
+
+        TokenAccounting reloaded = new TokenAccounting(file);
+        assertEquals(1.3, reloaded.ratio("P"), 1e-3);
+        assertEquals(500, reloaded.overhead("M"));
+
+        // 旧格式（只有系数）被忽略
+        Path legacy = tempDir.resolve("legacy.properties");
+        Files.write(legacy, "m=1.5\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1.0, new TokenAccounting(legacy).ratio("m"));
+    }
+
+    @Test
+    public void testFixedOverheadDoesNotInflateRatio() {
+        TokenAccounting accounting = new TokenAccounting(null);
+
+        // 系统提示词与工具定义每次请求约 8000 token，不在本地计数的消息里
+        accounting.observe("m", 2000, 10_000);
+        accounting.observe("m", 4000, 12_000);
+        accounting.observe("m", 6000, 14_000);
+
+        assertEquals(1.0, accounting.ratio("m"), 1e-6);
+        assertEquals(8000, accounting.overhead("m"));
+        assertEquals(11_000, accounting.calibrated("m", 3000));
+    }
+
+    @Test
+    public void testTally() {
+        TokenAccounting accounting = new TokenAccounting(null);
+
+        TokenAccounting.Tally tally = accounting.tally("m");
+        assertEquals(400, tally.estimate(400));
+        assertEquals(600, tally.estimate(600));
+        tally.finish(2000);
+
+        // 两次请求，每次多出 500：按固定开销计入上下文用量
+        assertEquals(1.0, accounting.ratio("m"), 1e-9);
+        assertEquals(500, accounting.overhead("m"));
+        assertEquals(1500, tally.estimate(1000));
+
+        // 有请求未能本地计数时，累计值不完整，不参与校准
+        assertEquals(5000, tally.estimate(null, 5000));
+        tally.finish(100_000);
+        assertEquals(500, accounting.overhead("m"));
+        assertEquals(1000, accounting.tally("other").estimate(1000));
+    }
+}
@@ -28,6 +28,7 @@ import { withRetry } from '../utils/retry';
 import { chatQueueService, MAX_CHAT_QUEUE_SIZE, type QueuedChatMessage } from '../services/chatQueueService';
 import { checkpointService } from '../services/checkpointService';
 import { permissionService } from '../services/permissionService';
+import { base64ToBytes, uploadService } from '../services/uploadService';
 import './ChatView.css';
 
 export type PromptCreationType = 'skill' | 'agent' | 'automation';
@@ -2176,10 +2177,11 @@ export function ChatView({ currentConversation, plugins, workspacePath, projectN
         goalObjective: options.mode === 'goal' ? messageText.trim() : undefined,
       };
 
-      // 附件数据（图�?base64，文本内容）
+      // 附件：文本内联；图片与文件先分片上传，消息中只携带 sha256（上传失败时退回内联 base64）
       if (options.attachments && options.attachments.length > 0) {
         const uploadAttachments = options.attachments.filter(att => options.mode === 'goal' || att.type !== 'text');
-        if (uploadAttachments.length > 0) request.attachments = uploadAttachments.map(att => {
+        const uploadPort = WebSocketManager.getInstance().getBackendPort() || FALLBACK_PORT;
+        if (uploadAttachments.length > 0) request.attachments = await Promise.all(uploadAttachments.map(async att => {
           if (att.type === 'text') {
             return {
               type: 'file',
@@ -2189,25 +2191,21 @@ export function ChatView({ currentConversation, plugins, workspacePath, projectN
               encoding: 'text',
             };
           }
-          if (att.type === 'image') {
-            // content 鏄?data URL: "data:image/png;base64,..."
-            const match = att.content.match(/^data:([^;]+);base64,(.+)$/);
-            return {
-              type: 'image',
-              name: att.name,
-              data: match ? match[2] : att.content,
-              mimeType: match ? match[1] : 'image/png',
-              encoding: 'base64',
-            };
+          // 图片 content 为 data URL: "data:image/png;base64,..."；文件 content 为 base64
+          const match = att.type === 'image' ? att.content.match(/^data:([^;]+);base64,(.+)$/) : null;
+          const type = att.type === 'image' ? 'image' : 'file';
+          const data = match ? match[2] : att.content;
+          const mimeType = match ? match[1] : (att.mimeType || (type === 'image' ? 'image/png' : 'application/octet-stream'));
+          try {
+            const bytes = base64ToBytes(data);
+            if (bytes.length > 0) {
+              return { type, name: att.name, hash: await uploadService.upload(uploadPort, bytes), mimeType };
+            }
+          } catch (uploadError) {
+            console.warn('[ChatView] 附件分片上传失败，改为内联发送', uploadError);
           }
-          return {
-            type: 'file',
-            name: att.name,
-            data: att.content,
-            mimeType: att.mimeType || 'application/octet-stream',
-            encoding: 'base64',
-          };
-        });
+          return { type, name: att.name, data, mimeType, encoding: 'base64' };
+        }));
       }
 
       await wsManager.sendMessage(request);
@@ -0,0 +1,81 @@
+/**
+ * 附件分片上传：按 sha256 内容寻址，消息中只携带 hash，不再内联 base64。
+ * 同一内容重复发送时后端直接返回完成（秒传）；中断后按服务端返回的 offset 续传。
+ */
+
+type BackendResult<T> = { code?: number; data?: T; message?: string; description?: string };
+
+interface UploadState {
+  hash: string;
+  size: number;
+  offset: number;
+  complete: boolean;
+}
+
+/** 单个分片大小 */
+export const UPLOAD_CHUNK_BYTES = 1024 * 1024;
+/** 偏移冲突（409）后重新 begin 的次数上限 */
+const MAX_RESYNC = 3;
+
+function url(port?: number | null, path = '') { return `http://localhost:${port || 4808}${path}`; }
+
+async function result<T>(response: Response): Promise<{ code: number; data?: T; message?: string }> {
+  const payload = await response.json().catch(() => ({})) as BackendResult<T>;
+  const code = payload.code ?? (response.ok ? 200 : response.status);
+  return { code, data: payload.data, message: payload.message || payload.description };
+}
+
+function requireState(res: { code: number; data?: UploadState; message?: string }): UploadState {
+  if (res.code !== 200 || !res.data) throw new Error(res.message || '附件上传失败');
+  return res.data;
+}
+
+export function base64ToBytes(base64: string): Uint8Array {
+  const binary = atob(base64);
+  const bytes = new Uint8Array(binary.length);
+  for (let i = 0; i < binary.length; i++) bytes[i] = binary.charCodeAt(i);
+  return bytes;
+}
+
+export async function sha256Hex(bytes: Uint8Array): Promise<string> {
+  const digest = new Uint8Array(await crypto.subtle.digest('SHA-256', bytes));
+  return Array.from(digest, b => b.toString(16).padStart(2, '0')).join('');
+}
+
+async function begin(port: number | null | undefined, hash: string, size: number) {
+  return requireState(await result<UploadState>(await fetch(url(port, '/desktop/uploads/begin'), {
+    method: 'POST',
+    headers: { 'Content-Type': 'application/json' },
+    body: JSON.stringify({ hash, size }),
+  })));
+}
+
+export const uploadService = {
+  /** 上传内容并返回其 sha256，供消息 attachments[].hash 引用 */
+  async upload(port: number | null | undefined, bytes: Uint8Array): Promise<string> {
+    const hash = await sha256Hex(bytes);
+    const size = bytes.length;
+    let state = await begin(port, hash, size);
+    let resync = 0;
+
+    while (!state.complete) {
+      const end = Math.min(state.offset + UPLOAD_CHUNK_BYTES, size);
+      const query = `hash=${hash}&size=${size}&offset=${state.offset}`;
+      const res = await result<UploadState>(await fetch(url(port, `/desktop/uploads/chunk?${query}`), {
+        method: 'POST',
+        headers: { 'Content-Type': 'application/octet-stream' },
+        body: bytes.slice(state.offset, end),
+      }));
+      if (res.code === 409 && resync < MAX_RESYNC) {
+        // 偏移不一致（并发上传同一内容或上次中断）：按服务端进度续传
+        resync++;
+        state = await begin(port, hash, size);
+        continue;
+      }
+      const next = requireState(res);
+      if (!next.complete && next.offset <= state.offset) throw new Error('附件上传没有进展');
+      state = next;
+    }
+    return hash;
+  },
+};
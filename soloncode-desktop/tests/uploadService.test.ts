@@ -0,0 +1,60 @@
+import assert from 'node:assert/strict';
+import test from 'node:test';
+import { base64ToBytes, sha256Hex, uploadService, UPLOAD_CHUNK_BYTES } from '../src/services/uploadService.ts';
+
+function json(data: unknown) {
+  return new Response(JSON.stringify(data), { status: 200, headers: { 'Content-Type': 'application/json' } });
+}
+
+test('hashes content as lowercase sha256 hex', async () => {
+  assert.equal(await sha256Hex(base64ToBytes('YWJj')),
+    'ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad');
+});
+
+test('uploads in chunks and resumes from the server offset after a conflict', async () => {
+  const bytes = new Uint8Array(UPLOAD_CHUNK_BYTES + 10).fill(7);
+  const hash = await sha256Hex(bytes);
+  const offsets: number[] = [];
+  let received = 0;
+  let conflicted = false;
+
+  const originalFetch = globalThis.fetch;
+  globalThis.fetch = (async (input: string | URL, init?: RequestInit) => {
+    const target = new URL(String(input));
+    if (target.pathname === '/desktop/uploads/begin') {
+      return json({ code: 200, data: { hash, size: bytes.length, offset: received, complete: received === bytes.length } });
+    }
+    const offset = Number(target.searchParams.get('offset'));
+    offsets.push(offset);
+    if (!conflicted && offset > 0) {
+      conflicted = true;
+      return json({ code: 409, message: 'offset mismatch' });
+    }
+    received = offset + (init?.body as Uint8Array).length;
+    return json({ code: 200, data: { hash, size: bytes.length, offset: received, complete: received === bytes.length } });
+  }) as typeof fetch;
+
+  try {
+    assert.equal(await uploadService.upload(4808, bytes), hash);
+  } finally {
+    globalThis.fetch = originalFetch;
+  }
+  assert.deepEqual(offsets, [0, UPLOAD_CHUNK_BYTES, UPLOAD_CHUNK_BYTES]);
+});
+
+test('skips the transfer when the blob already exists', async () => {
+  const bytes = base64ToBytes('YWJj');
+  let chunks = 0;
+  const originalFetch = globalThis.fetch;
+  globalThis.fetch = (async (input: string | URL) => {
+    if (new URL(String(input)).pathname === '/desktop/uploads/chunk') chunks++;
+    return json({ code: 200, data: { hash: '', size: 3, offset: 3, complete: true } });
+  }) as typeof fetch;
+
+  try {
+    await uploadService.upload(4808, bytes);
+  } finally {
+    globalThis.fetch = originalFetch;
+  }
+  assert.equal(chunks, 0);
+});